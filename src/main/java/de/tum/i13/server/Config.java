@@ -1,6 +1,7 @@
 package de.tum.i13.server;
 
 import de.tum.i13.server.cache.CachingStrategy;
+import de.tum.i13.server.persistentstorage.StorageEngine;
 import de.tum.i13.shared.BaseConfig;
 import de.tum.i13.shared.Preconditions;
 import org.apache.logging.log4j.LogManager;
@@ -72,6 +73,24 @@ public class Config extends BaseConfig {
             defaultValue = "100")
     public int cacheSize;
 
+    /**
+     * Memory in KiB of the cache
+     */
+    @CommandLine.Option(names = {"-cm",
+            "-cacheMemory"}, description = "Memory of the cache in KiB, estimated from the lengths of the cached " +
+            "keys and values. 0 bounds the cache by the number of keys given by -c instead. Default: " +
+            "${DEFAULT-VALUE}", defaultValue = "0")
+    public long cacheMemory;
+
+    /**
+     * Keep the cached values outside the heap
+     */
+    @CommandLine.Option(names = {"-oh",
+            "-offHeapCache"}, description = "Keep the keys and values of the cache as bytes outside the heap, " +
+            "evicting them in FIFO order. Requires -cacheMemory, which must not exceed -XX:MaxDirectMemorySize, " +
+            "and ignores -s. Default: ${DEFAULT-VALUE}", defaultValue = "false")
+    public boolean offHeapCache;
+
     /**
      * Number of replicas
      */
@@ -86,6 +105,14 @@ public class Config extends BaseConfig {
             defaultValue = "FIFO")
     public CachingStrategy cachingStrategy;
 
+    /**
+     * Engine used to persist the key-value pairs
+     */
+    @CommandLine.Option(names = {"-e",
+            "-storageEngine"}, description = "Engine used to persist the key-value pairs. Default: " +
+            "${DEFAULT-VALUE}. Valid values: ${COMPLETION-CANDIDATES}", defaultValue = "BTREE")
+    public StorageEngine storageEngine;
+
     /**
      * BTree minimum degree
      */
@@ -96,6 +123,67 @@ public class Config extends BaseConfig {
     )
     public int minimumDegree;
 
+    /**
+     * Number of BTree chunks kept in memory
+     */
+    @CommandLine.Option(names = {"-bp",
+            "-bufferPoolSize"}, description = "Number of BTree chunks kept in memory by the buffer pool, 0 disables " +
+            "the buffer pool. Default: ${DEFAULT-VALUE}", defaultValue = "256")
+    public int bufferPoolSize;
+
+    /**
+     * Store the BTree in a single paged file instead of one file per node
+     */
+    @CommandLine.Option(names = {"-ps",
+            "-pagedStorage"}, description = "Store the BTree nodes in fixed-size pages of a single file instead of " +
+            "one file per node. Default: ${DEFAULT-VALUE}", defaultValue = "false")
+    public boolean pagedStorage;
+
+    /**
+     * Read the paged BTree file through memory mappings
+     */
+    @CommandLine.Option(names = {"-mm",
+            "-memoryMapped"}, description = "Read the paged BTree file through memory mappings, so searches don't " +
+            "copy nodes into the heap. Only used with -pagedStorage. Default: ${DEFAULT-VALUE}",
+            defaultValue = "false")
+    public boolean memoryMapped;
+
+    /**
+     * Maximum time between a commit and the sync of the write-ahead log
+     */
+    @CommandLine.Option(names = {"-ws",
+            "-walSyncInterval"}, description = "Maximum time in milliseconds between a commit and the sync of the " +
+            "BTree's write-ahead log, 0 syncs on every commit. Default: ${DEFAULT-VALUE}", defaultValue = "10")
+    public long walSyncInterval;
+
+    /**
+     * Minimum size of the values that are compressed in the BTree's nodes
+     */
+    @CommandLine.Option(names = {"-vc",
+            "-valueCompressionThreshold"}, description = "Minimum size in bytes of the values that are compressed " +
+            "with DEFLATE when BTree nodes are written, 0 disables the compression. Default: ${DEFAULT-VALUE}",
+            defaultValue = "0")
+    public int valueCompressionThreshold;
+
+    /**
+     * Minimum length of the values stored in a value log instead of the BTree's
+     * nodes
+     */
+    @CommandLine.Option(names = {"-vl",
+            "-valueLogThreshold"}, description = "Minimum length in characters of the values that are appended to " +
+            "a separate value log, so that the BTree's nodes only store pointers to them. 0 stores all values in " +
+            "the nodes. Default: ${DEFAULT-VALUE}", defaultValue = "0")
+    public int valueLogThreshold;
+
+    /**
+     * Maximum size of the LSM tree's memtable in KiB
+     */
+    @CommandLine.Option(names = {"-mt",
+            "-memTableSize"}, description = "Maximum size in KiB of the in-memory table of the LSM storage engine " +
+            "before it is flushed to disk. Only used with -storageEngine LSM. Default: ${DEFAULT-VALUE}",
+            defaultValue = "4096")
+    public long memTableSize;
+
     /**
      * Parse the command line arguments into a Config object
      *
@@ -134,7 +222,15 @@ public class Config extends BaseConfig {
                 ", bootstrap=" + bootstrap +
                 ", dataDir=" + dataDir +
                 ", logfile=" + logfile +
+                ", storageEngine=" + storageEngine +
                 ", btreeMinDegree=" + minimumDegree +
+                ", bufferPoolSize=" + bufferPoolSize +
+                ", pagedStorage=" + pagedStorage +
+                ", memoryMapped=" + memoryMapped +
+                ", walSyncInterval=" + walSyncInterval +
+                ", valueCompressionThreshold=" + valueCompressionThreshold +
+                ", valueLogThreshold=" + valueLogThreshold +
+                ", memTableSize=" + memTableSize +
                 ", usageHelp=" + usageHelp +
                 ", replicationFactor=" + replicationFactor +
                 '}';
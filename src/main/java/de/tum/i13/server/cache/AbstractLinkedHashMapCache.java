@@ -6,18 +6,24 @@ import de.tum.i13.shared.Preconditions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Optional;
 
 /**
- * A {@link Cache} that uses as {@link LinkedHashMap} at its base.
+ * A {@link Cache} that uses as {@link LinkedHashMap} at its base. Once the
+ * weight of the entries (see {@link Weigher}) exceeds the capacity, the eldest
+ * entries are evicted.
  */
 public abstract class AbstractLinkedHashMapCache implements Cache {
 
     private static final Logger LOGGER = LogManager.getLogger(AbstractLinkedHashMapCache.class);
-    private final FixedSizeLinkedHashMap<String, String> cache;
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+    private final LinkedHashMap<String, String> cache;
+    private final long capacity;
+    private final Weigher weigher;
+    private long weight;
 
     /**
      * Constructs an empty cache with the given size and {@link CachingStrategy}.
@@ -30,9 +36,25 @@ public abstract class AbstractLinkedHashMapCache implements Cache {
      * @see LinkedHashMap
      */
     protected AbstractLinkedHashMapCache(int size, boolean cachingStrategy) {
-        Preconditions.check(size > 0, "Cache must have a size greater than 0");
+        this(size, Weigher.ENTRIES, cachingStrategy);
+    }
+
+    /**
+     * Constructs an empty cache with the given capacity and {@link CachingStrategy}.
+     *
+     * @param capacity        the capacity of the cache in units of the weigher, must be greater than 0
+     * @param weigher         the {@link Weigher} of the entries, must not be null
+     * @param cachingStrategy the caching strategy - true for {@link CachingStrategy#LRU}, false for
+     *                        {@link CachingStrategy#FIFO}
+     * @see LinkedHashMap
+     */
+    protected AbstractLinkedHashMapCache(long capacity, Weigher weigher, boolean cachingStrategy) {
+        Preconditions.check(capacity > 0, "Cache must have a size greater than 0");
+        Preconditions.notNull(weigher, "Weigher cannot be null");
 
-        cache = new FixedSizeLinkedHashMap<>(size, 0.75f, cachingStrategy);
+        cache = new LinkedHashMap<>((int) Math.min(capacity, MAX_INITIAL_CAPACITY), 0.75f, cachingStrategy);
+        this.capacity = capacity;
+        this.weigher = weigher;
     }
 
     @Override
@@ -48,19 +70,53 @@ public abstract class AbstractLinkedHashMapCache implements Cache {
     private KVMessage putKeyToValue(String key, String value) {
         LOGGER.debug("Putting key {} to value {}", key, value);
 
-        return Optional.ofNullable(cache.put(key, value))
-                .map(previousValue -> new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE))
+        final long entryWeight = weigher.weigh(key, value);
+        if (entryWeight > capacity) {
+            LOGGER.debug("Not caching key {}, which is heavier than the cache", key);
+            return Optional.ofNullable(removeEntry(key))
+                    .map(previousValue -> new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE))
+                    .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS));
+        }
+
+        final String previousValue = cache.put(key, value);
+        weight += entryWeight - (previousValue == null ? 0 : weigher.weigh(key, previousValue));
+        evictEldestEntries();
+
+        return Optional.ofNullable(previousValue)
+                .map(previous -> new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE))
                 .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS));
     }
 
     private KVMessage deleteKey(String key) {
         LOGGER.debug("Deleting key {}", key);
 
-        return Optional.ofNullable(cache.remove(key))
+        return Optional.ofNullable(removeEntry(key))
                 .map(previousValue -> new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS))
                 .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.DELETE_ERROR));
     }
 
+    private String removeEntry(String key) {
+        final String previousValue = cache.remove(key);
+        if (previousValue != null) {
+            weight -= weigher.weigh(key, previousValue);
+        }
+        return previousValue;
+    }
+
+    /**
+     * Evicts the eldest entries until the entries fit the capacity. Every entry fits the capacity on its own, so
+     * the loop ends before the map is empty.
+     */
+    private void evictEldestEntries() {
+        final Iterator<Map.Entry<String, String>> iterator = cache.entrySet().iterator();
+        while (weight > capacity) {
+            final Map.Entry<String, String> eldest = iterator.next();
+            LOGGER.debug("Evicting key {}", eldest.getKey());
+            weight -= weigher.weigh(eldest.getKey(), eldest.getValue());
+            iterator.remove();
+        }
+    }
+
     @Override
     public synchronized KVMessage get(String key) {
         Preconditions.notNull(key, "Key cannot be null");
@@ -71,37 +127,4 @@ public abstract class AbstractLinkedHashMapCache implements Cache {
                 .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR));
     }
 
-    private static class FixedSizeLinkedHashMap<K, V> extends LinkedHashMap<K, V> {
-
-        private static final Logger LOGGER = LogManager.getLogger(FixedSizeLinkedHashMap.class);
-        private final int maxEntries;
-
-        private FixedSizeLinkedHashMap(int maxEntries, float loadFactor, boolean accessOrder) {
-            super(maxEntries, loadFactor, accessOrder);
-            this.maxEntries = maxEntries;
-        }
-
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
-            LOGGER.debug("Check for eldest entry");
-
-            return this.size() > maxEntries;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof FixedSizeLinkedHashMap)) return false;
-            if (!super.equals(o)) return false;
-            FixedSizeLinkedHashMap<?, ?> that = (FixedSizeLinkedHashMap<?, ?>) o;
-            return maxEntries == that.maxEntries;
-        }
-
-        @Override
-        public int hashCode() {
-            return Objects.hash(super.hashCode(), maxEntries);
-        }
-
-    }
-
 }
@@ -1,27 +1,45 @@
 package de.tum.i13.server.cache;
 
+import com.google.common.util.concurrent.Striped;
 import de.tum.i13.server.kv.KVMessage;
 import de.tum.i13.server.kv.KVMessage.StatusType;
 import de.tum.i13.server.kv.KVMessageImpl;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.shared.Preconditions;
+import de.tum.i13.shared.persistentstorage.CloseableIterator;
 import de.tum.i13.shared.persistentstorage.GetException;
 import de.tum.i13.shared.persistentstorage.PersistentStorage;
 import de.tum.i13.shared.persistentstorage.PutException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.stream.Collectors;
 
 /**
- * A persistent storage with a cache layer in front of the storage
+ * A persistent storage with a cache layer in front of the storage. The cache is
+ * a {@link StripedCache}, so cache hits on different keys don't contend. Writes
+ * hold an exclusive lock of their key's stripe, while cache misses only hold a
+ * shared one while they read the storage. This keeps a miss from putting a
+ * value into the cache that a concurrent write already replaced, without
+ * holding a global lock during disk I/O.
  */
-public class CachedPersistentStorage implements PersistentStorage {
+public class CachedPersistentStorage implements PersistentStorage, AutoCloseable {
 
     private static final Logger LOGGER = LogManager.getLogger(CachedPersistentStorage.class);
+
+    /**
+     * Number of lock stripes keys are assigned to
+     */
+    public static final int LOCK_STRIPES = 256;
+
     private final Cache cache;
     private final PersistentStorage persistentStorage;
+    private final Striped<ReadWriteLock> keyLocks;
 
     /**
      * Constructs a new storage with the given storage and caching configuration
@@ -32,23 +50,47 @@ public class CachedPersistentStorage implements PersistentStorage {
      */
     public CachedPersistentStorage(PersistentStorage persistentStorage, CachingStrategy cachingStrategy,
                                    int cacheSize) {
+        this(persistentStorage, cachingStrategy, cacheSize, Weigher.ENTRIES);
+    }
+
+    /**
+     * Constructs a new storage with the given storage and a cache bounded by
+     * the given {@link Weigher}, e.g. by the bytes of its entries
+     *
+     * @param persistentStorage the {@link PersistentStorage} to use as a backend, must not be null
+     * @param cachingStrategy   the {@link CachingStrategy} to use, most not be null
+     * @param cacheCapacity     the capacity of the cache in units of the weigher, must be greater than 0
+     * @param weigher           the {@link Weigher} of the cache entries, must not be null
+     */
+    public CachedPersistentStorage(PersistentStorage persistentStorage, CachingStrategy cachingStrategy,
+                                   long cacheCapacity, Weigher weigher) {
+        this(persistentStorage, new StripedCache(cachingStrategy, cacheCapacity, weigher));
+    }
+
+    /**
+     * Constructs a new storage with the given storage and cache, e.g. one
+     * keeping its values outside the heap (see {@link StripedCache#offHeap(long)})
+     *
+     * @param persistentStorage the {@link PersistentStorage} to use as a backend, must not be null
+     * @param cache             the {@link Cache} in front of the storage, must be safe for concurrent use and must
+     *                          not be null
+     */
+    public CachedPersistentStorage(PersistentStorage persistentStorage, Cache cache) {
         Preconditions.notNull(persistentStorage, "Persistent storage cannot be null");
-        Preconditions.notNull(cachingStrategy, "Caching strategy cannot be null");
-        Preconditions.check(cacheSize > 0, "Cache size must be greater than 0");
+        Preconditions.notNull(cache, "Cache cannot be null");
 
         this.persistentStorage = persistentStorage;
-        this.cache = switch (cachingStrategy) {
-            case LFU -> new LFUCache(cacheSize);
-            case LRU -> new LRUCache(cacheSize);
-            case FIFO -> new FIFOCache(cacheSize);
-        };
+        this.cache = cache;
+        this.keyLocks = Striped.readWriteLock(LOCK_STRIPES);
     }
 
     @Override
-    public synchronized KVMessage put(String key, String value) throws PutException {
+    public KVMessage put(String key, String value) throws PutException {
         Preconditions.notNull(key, "Key cannot be null");
         LOGGER.info("Trying to put key {} with value {}", key, value);
 
+        final Lock lock = keyLocks.get(key).writeLock();
+        lock.lock();
         try {
             final StatusType storageStatus = persistentStorage.put(key, value).getStatus();
 
@@ -62,6 +104,85 @@ public class CachedPersistentStorage implements PersistentStorage {
                     key,
                     value
             );
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts the batch into the storage with a single batch operation, then updates the cache for each key
+     */
+    @Override
+    public List<KVMessage> putAll(List<Pair<String>> elements) throws PutException {
+        Preconditions.notNull(elements, "Elements cannot be null");
+        LOGGER.info("Trying to put {} keys", elements.size());
+
+        final List<Lock> locks = lockKeys(elements.stream().map(element -> element.key).collect(Collectors.toList()));
+        try {
+            final List<KVMessage> storageResponses = persistentStorage.putAll(elements);
+
+            final List<KVMessage> responses = new ArrayList<>(elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                final Pair<String> element = elements.get(i);
+                responses.add(finalizePuttingKeyToValue(element.key, element.value,
+                        storageResponses.get(i).getStatus()));
+            }
+            return responses;
+        } catch (PutException exception) {
+            throw new PutException(
+                    exception,
+                    "Could not put %s keys into persistent storage",
+                    elements.size()
+            );
+        } finally {
+            unlockKeys(locks);
+        }
+    }
+
+    /**
+     * Deletes the batch from the storage with a single batch operation, then updates the cache for each key
+     */
+    @Override
+    public List<KVMessage> deleteAll(List<String> keys) throws PutException {
+        Preconditions.notNull(keys, "Keys cannot be null");
+        LOGGER.info("Trying to delete {} keys", keys.size());
+
+        final List<Lock> locks = lockKeys(keys);
+        try {
+            final List<KVMessage> storageResponses = persistentStorage.deleteAll(keys);
+
+            final List<KVMessage> responses = new ArrayList<>(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                responses.add(finalizeDeletingKey(keys.get(i), storageResponses.get(i).getStatus()));
+            }
+            return responses;
+        } catch (PutException exception) {
+            throw new PutException(
+                    exception,
+                    "Could not delete %s keys from persistent storage",
+                    keys.size()
+            );
+        } finally {
+            unlockKeys(locks);
+        }
+    }
+
+    /**
+     * Locks the stripes of the keys exclusively, in a consistent order so that batches can't deadlock
+     */
+    private List<Lock> lockKeys(List<String> keys) {
+        final List<Lock> locks = new ArrayList<>();
+        for (ReadWriteLock stripe : keyLocks.bulkGet(keys)) {
+            final Lock lock = stripe.writeLock();
+            lock.lock();
+            locks.add(lock);
+        }
+        return locks;
+    }
+
+    private void unlockKeys(List<Lock> locks) {
+        for (int i = locks.size() - 1; i >= 0; i--) {
+            locks.get(i).unlock();
         }
     }
 
@@ -123,7 +244,7 @@ public class CachedPersistentStorage implements PersistentStorage {
     }
 
     @Override
-    public synchronized KVMessage get(String key) throws GetException {
+    public KVMessage get(String key) throws GetException {
         Preconditions.notNull(key, "Key cannot be null");
         LOGGER.info("Trying to get value of key {}", key);
 
@@ -148,6 +269,8 @@ public class CachedPersistentStorage implements PersistentStorage {
      */
     private KVMessage handleCacheMiss(String key) throws GetException {
         LOGGER.debug("Handling cache miss of key {}", key);
+        final Lock lock = keyLocks.get(key).readLock();
+        lock.lock();
         try {
             final KVMessage storageResponse = persistentStorage.get(key);
             final StatusType storageStatus = storageResponse.getStatus();
@@ -171,6 +294,8 @@ public class CachedPersistentStorage implements PersistentStorage {
                     "Could not get key %s from persistent storage",
                     key
             );
+        } finally {
+            lock.unlock();
         }
     }
 
@@ -181,7 +306,8 @@ public class CachedPersistentStorage implements PersistentStorage {
         LOGGER.debug("Updating cache with key {} and value {}", key, storageValue);
         final KVMessage cachePutResponse = cache.put(key, storageValue);
         final StatusType cachePutStatus = cachePutResponse.getStatus();
-        if (cachePutStatus == StatusType.PUT_SUCCESS) {
+        // Concurrent misses of the same key may both update the cache
+        if (cachePutStatus == StatusType.PUT_SUCCESS || cachePutStatus == StatusType.PUT_UPDATE) {
             LOGGER.debug("Successfully updated cache with key {} and value {}", key, storageValue);
             return new KVMessageImpl(key, storageValue, StatusType.GET_SUCCESS);
         } else {
@@ -195,8 +321,29 @@ public class CachedPersistentStorage implements PersistentStorage {
     }
 
     @Override
-    public synchronized List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException {
+    public List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException {
         return this.persistentStorage.getRange(lowerBound, upperBound);
     }
 
+    @Override
+    public CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound) throws GetException {
+        return this.persistentStorage.iterateRange(lowerBound, upperBound);
+    }
+
+    /**
+     * Close the backing storage, if it can be closed
+     */
+    @Override
+    public void close() {
+        if (!(this.persistentStorage instanceof AutoCloseable)) {
+            return;
+        }
+
+        try {
+            ((AutoCloseable) this.persistentStorage).close();
+        } catch (Exception e) {
+            LOGGER.warn("Could not close persistent storage", e);
+        }
+    }
+
 }
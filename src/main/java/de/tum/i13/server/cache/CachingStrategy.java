@@ -17,5 +17,9 @@ public enum CachingStrategy {
     /**
      * First In First Out strategy
      */
-    FIFO
+    FIFO,
+    /**
+     * Window TinyLFU strategy, which only admits keys that are used more frequently than the keys they displace
+     */
+    TINY_LFU
 }
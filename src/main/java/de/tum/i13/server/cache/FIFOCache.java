@@ -14,6 +14,16 @@ public class FIFOCache extends AbstractLinkedHashMapCache {
         super(size, false);
     }
 
+    /**
+     * Constructs a cache with the given capacity
+     *
+     * @param capacity the capacity of the cache in units of the weigher
+     * @param weigher  the {@link Weigher} of the entries
+     */
+    public FIFOCache(long capacity, Weigher weigher) {
+        super(capacity, weigher, false);
+    }
+
     @Override
     public CachingStrategy getCachingStrategy() {
         return CachingStrategy.FIFO;
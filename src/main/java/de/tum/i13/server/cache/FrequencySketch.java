@@ -0,0 +1,103 @@
+package de.tum.i13.server.cache;
+
+import de.tum.i13.shared.Preconditions;
+
+/**
+ * Count-min sketch estimating how often keys were accessed recently, used by
+ * {@link TinyLFUCache} to decide which keys to admit. Each key has a 4-bit
+ * counter in each of four rows, and its frequency is the minimum of them. The
+ * counters of a row are packed 16 to a {@code long}. Once the number of
+ * increments reaches ten times the table size, all counters are halved, so the
+ * sketch forgets old accesses.
+ */
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+            0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_COUNT = 15;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int size; // increments since the last reset
+
+    /**
+     * Creates a sketch for a cache of the given size
+     *
+     * @param capacity the number of keys of the cache, must be greater than 0
+     */
+    FrequencySketch(int capacity) {
+        Preconditions.check(capacity > 0, "Capacity must be greater than 0");
+
+        int tableSize = Integer.highestOneBit(Math.max(8, capacity - 1)) << 1;
+        this.table = new long[tableSize];
+        this.tableMask = tableSize - 1;
+        this.sampleSize = 10 * tableSize;
+    }
+
+    /**
+     * Estimates how often a key was accessed
+     *
+     * @param key the key
+     * @return the estimated frequency, at most 15
+     */
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int offset = (start + i) << 2;
+            int count = (int) ((this.table[this.indexOf(hash, i)] >>> offset) & 0xf);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * Records an access of a key
+     *
+     * @param key the key
+     */
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        int start = (hash & 3) << 2;
+
+        boolean incremented = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            int index = this.indexOf(hash, i);
+            int offset = (start + i) << 2;
+            if (((this.table[index] >>> offset) & 0xf) < MAX_COUNT) {
+                this.table[index] += 1L << offset;
+                incremented = true;
+            }
+        }
+
+        if (incremented && ++this.size == this.sampleSize) {
+            this.reset();
+        }
+    }
+
+    // Halve all counters
+    private void reset() {
+        for (int i = 0; i < this.table.length; i++) {
+            this.table[i] = (this.table[i] >>> 1) & RESET_MASK;
+        }
+        this.size /= 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long index = (hash + SEEDS[row]) * SEEDS[row];
+        index += index >>> 32;
+        return (int) index & this.tableMask;
+    }
+
+    // Scramble the bits of the hash code, since String hash codes of similar keys are close
+    private static int spread(int hash) {
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
@@ -6,31 +6,37 @@ import de.tum.i13.shared.Preconditions;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.List;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.Optional;
 
 /**
  * A {@link Cache} with the {@link CachingStrategy} {@link CachingStrategy#LFU}
+ * <p>
+ * Keys are kept in buckets of keys with the same access frequency, which form a
+ * list in ascending order of frequency. Every operation moves a key by at most
+ * one bucket, so all operations take constant time. A full cache evicts the
+ * key that most recently entered the bucket with the lowest frequency, until
+ * the weight of the keys (see {@link Weigher}) fits its capacity.
  */
 public class LFUCache implements Cache {
 
     private static final Logger LOGGER = LogManager.getLogger(LFUCache.class);
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
     /**
-     * Map of keys to nodes storing information about value and index in access frequency list
+     * Map of keys to nodes storing information about value and frequency bucket
      */
-    private final Map<String, MapNode> keyNodeMap;
+    private final Map<String, Node> keyNodeMap;
     /**
-     * List sorted in descending order according to access frequency
+     * Bucket with the lowest access frequency, null if the cache is empty
      */
-    private final List<ListNode> accessFrequencyList;
+    private Bucket lowestBucket;
     /**
-     * The maximum number of entries in this cache
+     * The maximum weight of the entries in this cache
      */
-    private final int size;
+    private final long capacity;
+    private final Weigher weigher;
+    private long weight;
 
     /**
      * Constructs a cache with the given size
@@ -38,11 +44,22 @@ public class LFUCache implements Cache {
      * @param size the size of the cache, must be greater than 0
      */
     public LFUCache(int size) {
-        Preconditions.check(size > 0, "Cache must have a size greater than 0");
+        this(size, Weigher.ENTRIES);
+    }
+
+    /**
+     * Constructs a cache with the given capacity
+     *
+     * @param capacity the capacity of the cache in units of the weigher, must be greater than 0
+     * @param weigher  the {@link Weigher} of the entries, must not be null
+     */
+    public LFUCache(long capacity, Weigher weigher) {
+        Preconditions.check(capacity > 0, "Cache must have a size greater than 0");
+        Preconditions.notNull(weigher, "Weigher cannot be null");
 
-        this.keyNodeMap = new HashMap<>(size);
-        this.accessFrequencyList = new ArrayList<>(size);
-        this.size = size;
+        this.keyNodeMap = new HashMap<>((int) Math.min(capacity, MAX_INITIAL_CAPACITY));
+        this.capacity = capacity;
+        this.weigher = weigher;
     }
 
     @Override
@@ -51,35 +68,29 @@ public class LFUCache implements Cache {
         LOGGER.info("Trying to get value of key {}", key);
 
         return Optional.ofNullable(keyNodeMap.get(key))
-                .map(value -> updateKeyFrequency(key, value))
+                .map(node -> {
+                    updateKeyFrequency(key, node);
+                    return (KVMessage) new KVMessageImpl(key, node.value, KVMessage.StatusType.GET_SUCCESS);
+                })
                 .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR));
     }
 
     /**
-     * Increase the frequency of the key and potentially move it forward in the frequency list
+     * Increase the frequency of the key by moving it to the bucket of the next higher frequency
      */
-    private KVMessage updateKeyFrequency(String key, MapNode mapNode) {
+    private void updateKeyFrequency(String key, Node node) {
         LOGGER.debug("Updating frequency of key {}", key);
 
-        final int currentIndex = mapNode.listIndex;
-        final ListNode currentListNode = accessFrequencyList.get(currentIndex);
-
-        currentListNode.incrementFrequency();
-
-        final ListIterator<ListNode> iterator = accessFrequencyList.listIterator(currentIndex);
-        if (iterator.hasPrevious()) {
-            final int previousIndex = iterator.previousIndex();
-            final ListNode previousListNode = iterator.previous();
-            if (previousListNode.accessFrequency < currentListNode.accessFrequency) {
-                LOGGER.debug("Moving key {} forward in list due to updated frequency", key);
-                accessFrequencyList.set(previousIndex, currentListNode);
-                accessFrequencyList.set(currentIndex, previousListNode);
-                keyNodeMap.get(currentListNode.key).listIndex = previousIndex;
-                keyNodeMap.get(previousListNode.key).listIndex = currentIndex;
-            }
+        final Bucket currentBucket = node.bucket;
+        final long frequency = currentBucket.frequency + 1;
+
+        Bucket nextBucket = currentBucket.next;
+        if (nextBucket == null || nextBucket.frequency != frequency) {
+            nextBucket = insertBucketAfter(currentBucket, frequency);
         }
 
-        return new KVMessageImpl(key, mapNode.value, KVMessage.StatusType.GET_SUCCESS);
+        unlinkNode(node);
+        nextBucket.append(node);
     }
 
     @Override
@@ -98,98 +109,163 @@ public class LFUCache implements Cache {
      */
     private KVMessage putKeyToValue(String key, String value) {
         LOGGER.debug("Putting key {} to value {}", key, value);
+        if (weigher.weigh(key, value) > capacity) {
+            LOGGER.debug("Not caching key {}, which is heavier than the cache", key);
+            return deleteKey(key).getStatus() == KVMessage.StatusType.DELETE_SUCCESS
+                    ? new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE)
+                    : new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
+        }
+
         return Optional.ofNullable(keyNodeMap.get(key))
-                .map(mapNode -> putPresentKey(key, value, mapNode))
+                .map(node -> putPresentKey(key, value, node))
                 .orElseGet(() -> putAbsentKey(key, value));
     }
 
     /**
      * Deletes a key in the cache because of an absent value
-     * Shifts all the keys following the key to delete in the frequency list one position to the left
      */
     private KVMessage deleteKey(String key) {
         LOGGER.debug("Deleting key {}", key);
 
-        final Optional<MapNode> optMapNode = Optional.ofNullable(keyNodeMap.get(key));
-        if (optMapNode.isEmpty()) {
+        final Node node = keyNodeMap.remove(key);
+        if (node == null) {
             LOGGER.debug("Skipping deleting already absent key {}", key);
             return new KVMessageImpl(key, KVMessage.StatusType.DELETE_ERROR);
-        } else {
-            final MapNode mapNode = optMapNode.get();
-            LOGGER.debug("Deleting key {} with previous value {}", key, mapNode.value);
-            keyNodeMap.remove(key);
-            final ListIterator<ListNode> iterator = accessFrequencyList.listIterator(mapNode.listIndex);
-            iterator.next();
-            while (iterator.hasNext()) {
-                final int nextIndex = iterator.nextIndex();
-                accessFrequencyList.set(nextIndex - 1, accessFrequencyList.get(nextIndex));
-                keyNodeMap.get(accessFrequencyList.get(nextIndex - 1).key).listIndex = nextIndex - 1;
-                iterator.next();
-            }
-            iterator.remove();
-            return new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS);
         }
+
+        LOGGER.debug("Deleting key {} with previous value {}", key, node.value);
+        weight -= weigher.weigh(key, node.value);
+        unlinkNode(node);
+        return new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS);
     }
 
     /**
      * Updates a key in the cache, if the key was already present
      */
-    private KVMessage putPresentKey(String key, String value, MapNode mapNode) {
-        LOGGER.debug("Putting key {} with previously present value {} to value {}", key, mapNode.value, value);
-        mapNode.value = value;
-        updateKeyFrequency(key, mapNode);
+    private KVMessage putPresentKey(String key, String value, Node node) {
+        LOGGER.debug("Putting key {} with previously present value {} to value {}", key, node.value, value);
+        weight += weigher.weigh(key, value) - weigher.weigh(key, node.value);
+        node.value = value;
+        updateKeyFrequency(key, node);
+        evictKeys(node);
         return new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE);
     }
 
     /**
      * Updates a key in the cache, if it was not present before
-     * Replaces the key last in the list, if the cache was already full, otherwise is appended to end
+     * Replaces the keys last added to the lowest frequency bucket, if the cache is full afterwards
      */
     private KVMessage putAbsentKey(String key, String value) {
         LOGGER.debug("Putting key {} with previously absent value to value {}", key, value);
-        if (accessFrequencyList.size() < size) {
-            LOGGER.debug("Putting key {} to value {} in non-full cache", key, value);
-            keyNodeMap.put(key, new MapNode(value, accessFrequencyList.size()));
-            accessFrequencyList.add(new ListNode(key));
-        } else {
-            LOGGER.debug("Putting key {} to value {} in full cache", key, value);
-            final int indexLFU = accessFrequencyList.size() - 1;
-            keyNodeMap.remove(accessFrequencyList.get(indexLFU).key);
-            keyNodeMap.put(key, new MapNode(value, indexLFU));
-            accessFrequencyList.set(indexLFU, new ListNode(key));
+
+        if (lowestBucket == null || lowestBucket.frequency != 0) {
+            final Bucket bucket = new Bucket(0);
+            bucket.next = lowestBucket;
+            if (lowestBucket != null) lowestBucket.previous = bucket;
+            lowestBucket = bucket;
         }
+
+        final Node node = new Node(key, value);
+        keyNodeMap.put(key, node);
+        lowestBucket.append(node);
+        weight += weigher.weigh(key, value);
+        evictKeys(node);
         return new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
     }
 
+    /**
+     * Evicts the keys last added to the lowest frequency bucket until the keys fit the capacity, except for the
+     * given key, which fits the capacity on its own
+     */
+    private void evictKeys(Node kept) {
+        while (weight > capacity) {
+            Node evicted = lowestBucket.tail;
+            if (evicted == kept) {
+                evicted = kept.previous != null ? kept.previous : lowestBucket.next.tail;
+            }
+
+            LOGGER.debug("Evicting key {} from full cache", evicted.key);
+            keyNodeMap.remove(evicted.key);
+            weight -= weigher.weigh(evicted.key, evicted.value);
+            unlinkNode(evicted);
+        }
+    }
+
+    /**
+     * Creates a bucket for the given frequency directly after the given bucket
+     */
+    private Bucket insertBucketAfter(Bucket bucket, long frequency) {
+        final Bucket inserted = new Bucket(frequency);
+        inserted.previous = bucket;
+        inserted.next = bucket.next;
+        if (bucket.next != null) bucket.next.previous = inserted;
+        bucket.next = inserted;
+        return inserted;
+    }
+
+    /**
+     * Removes the node from its bucket and removes the bucket if it becomes empty
+     */
+    private void unlinkNode(Node node) {
+        final Bucket bucket = node.bucket;
+        bucket.remove(node);
+
+        if (bucket.head == null) {
+            if (bucket.previous != null) bucket.previous.next = bucket.next;
+            else lowestBucket = bucket.next;
+            if (bucket.next != null) bucket.next.previous = bucket.previous;
+        }
+    }
+
     @Override
     public CachingStrategy getCachingStrategy() {
         return CachingStrategy.LFU;
     }
 
-    private static class MapNode {
+    private static class Node {
 
+        private final String key;
         private String value;
-        private int listIndex;
+        private Bucket bucket;
+        private Node previous;
+        private Node next;
 
-        private MapNode(String value, int listIndex) {
+        private Node(String key, String value) {
+            this.key = key;
             this.value = value;
-            this.listIndex = listIndex;
         }
 
     }
 
-    private static class ListNode {
+    private static class Bucket {
 
-        private final String key;
-        private int accessFrequency;
+        private final long frequency;
+        private Bucket previous;
+        private Bucket next;
+        private Node head;
+        private Node tail;
 
-        private ListNode(String key) {
-            this.key = key;
-            this.accessFrequency = 0;
+        private Bucket(long frequency) {
+            this.frequency = frequency;
+        }
+
+        private void append(Node node) {
+            node.bucket = this;
+            node.previous = tail;
+            node.next = null;
+            if (tail != null) tail.next = node;
+            else head = node;
+            tail = node;
         }
 
-        private void incrementFrequency() {
-            this.accessFrequency++;
+        private void remove(Node node) {
+            if (node.previous != null) node.previous.next = node.next;
+            else head = node.next;
+            if (node.next != null) node.next.previous = node.previous;
+            else tail = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.bucket = null;
         }
 
     }
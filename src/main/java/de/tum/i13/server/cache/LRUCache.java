@@ -14,6 +14,16 @@ public class LRUCache extends AbstractLinkedHashMapCache {
         super(size, true);
     }
 
+    /**
+     * Constructs a cache with the given capacity
+     *
+     * @param capacity the capacity of the cache in units of the weigher
+     * @param weigher  the {@link Weigher} of the entries
+     */
+    public LRUCache(long capacity, Weigher weigher) {
+        super(capacity, weigher, true);
+    }
+
     @Override
     public CachingStrategy getCachingStrategy() {
         return CachingStrategy.LRU;
@@ -0,0 +1,221 @@
+package de.tum.i13.server.cache;
+
+import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.server.kv.KVMessageImpl;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link Cache} that keeps its keys and values as UTF-8 bytes in a direct
+ * {@link ByteBuffer} outside the heap, so large caches don't burden the
+ * garbage collector. Only an index from keys to buffer offsets stays on the
+ * heap.
+ * <p>
+ * The buffer is a ring of records, each consisting of the byte lengths of key
+ * and value followed by their bytes. Puts append a record at the head of the
+ * ring and evict the records at its tail until the new record fits, so keys
+ * are evicted in the order they were written, like with
+ * {@link CachingStrategy#FIFO}. Updates and deletes only change the index, and
+ * the records they leave behind are dropped once the tail passes them.
+ */
+public class OffHeapCache implements Cache {
+
+    private static final Logger LOGGER = LogManager.getLogger(OffHeapCache.class);
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+
+    /**
+     * Bytes of the lengths preceding the key and value of a record
+     */
+    public static final int RECORD_HEADER_BYTES = 2 * Integer.BYTES;
+
+    /**
+     * Minimum capacity of a segment of a {@link StripedCache} of off-heap
+     * caches, so that segments hold the largest values many times over
+     */
+    public static final long MIN_SEGMENT_CAPACITY = 1 << 24;
+
+    private final ByteBuffer buffer;
+    /**
+     * Map of keys to the offsets of their records
+     */
+    private final Map<String, Integer> keyOffsetMap;
+    /**
+     * Offset of the oldest record
+     */
+    private int tail;
+    /**
+     * Offset after the newest record
+     */
+    private int head;
+    /**
+     * Offset after the last record before the ring wrapped around, only
+     * meaningful if {@link #wrapped}
+     */
+    private int end;
+    /**
+     * Whether the records occupy [tail, end) and [0, head) instead of [tail, head)
+     */
+    private boolean wrapped;
+    /**
+     * Number of records in the buffer, including records of updated or
+     * deleted keys
+     */
+    private int records;
+
+    /**
+     * Constructs a cache that allocates the given number of bytes outside the
+     * heap. Direct memory is limited by the JVM option
+     * {@code -XX:MaxDirectMemorySize}.
+     *
+     * @param capacity the capacity of the cache in bytes, must be greater than 0
+     *                 and at most {@link Integer#MAX_VALUE}
+     */
+    public OffHeapCache(long capacity) {
+        Preconditions.check(capacity > 0 && capacity <= Integer.MAX_VALUE,
+                "Cache must have a size greater than 0 and at most " + Integer.MAX_VALUE);
+
+        this.buffer = ByteBuffer.allocateDirect((int) capacity);
+        this.keyOffsetMap = new HashMap<>((int) Math.min(capacity / Weigher.ENTRY_OVERHEAD_BYTES,
+                MAX_INITIAL_CAPACITY));
+    }
+
+    @Override
+    public synchronized KVMessage get(String key) {
+        Preconditions.notNull(key, "Key cannot be null");
+        LOGGER.info("Trying to get value of key {}", key);
+
+        return Optional.ofNullable(keyOffsetMap.get(key))
+                .map(offset -> (KVMessage) new KVMessageImpl(key, readValue(offset),
+                        KVMessage.StatusType.GET_SUCCESS))
+                .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR));
+    }
+
+    @Override
+    public synchronized KVMessage put(String key, String value) {
+        Preconditions.notNull(key, "Key cannot be null");
+        LOGGER.info("Trying to put key {} with value {}", key, value);
+
+        return Optional.ofNullable(value)
+                .map(newValue -> putKeyToValue(key, newValue))
+                .orElseGet(() -> deleteKey(key));
+    }
+
+    /**
+     * Updates the key in the cache with an actual present value
+     */
+    private KVMessage putKeyToValue(String key, String value) {
+        LOGGER.debug("Putting key {} to value {}", key, value);
+
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        final long recordLength = (long) RECORD_HEADER_BYTES + keyBytes.length + valueBytes.length;
+
+        // Evicting records may evict the key itself, so check for it first
+        final boolean present = keyOffsetMap.remove(key) != null;
+        if (recordLength > buffer.capacity()) {
+            LOGGER.debug("Not caching key {}, which is larger than the cache", key);
+        } else {
+            final int offset = reserve((int) recordLength);
+            buffer.putInt(offset, keyBytes.length);
+            buffer.putInt(offset + Integer.BYTES, valueBytes.length);
+            buffer.put(offset + RECORD_HEADER_BYTES, keyBytes);
+            buffer.put(offset + RECORD_HEADER_BYTES + keyBytes.length, valueBytes);
+            keyOffsetMap.put(key, offset);
+        }
+
+        return present
+                ? new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE)
+                : new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
+    }
+
+    /**
+     * Deletes a key in the cache because of an absent value
+     */
+    private KVMessage deleteKey(String key) {
+        LOGGER.debug("Deleting key {}", key);
+
+        return Optional.ofNullable(keyOffsetMap.remove(key))
+                .map(previousOffset -> new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS))
+                .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.DELETE_ERROR));
+    }
+
+    /**
+     * Evicts the oldest records until a record of the given length fits at
+     * the head of the ring, and appends it
+     *
+     * @return the offset of the appended record
+     */
+    private int reserve(int recordLength) {
+        while (true) {
+            if (records == 0) {
+                tail = head = 0;
+                wrapped = false;
+            }
+
+            if (!wrapped && head + recordLength <= buffer.capacity()) {
+                break;
+            } else if (!wrapped) {
+                end = head;
+                head = 0;
+                wrapped = true;
+            } else if (head + recordLength <= tail) {
+                break;
+            } else {
+                evictTail();
+            }
+        }
+
+        final int offset = head;
+        head += recordLength;
+        records++;
+        return offset;
+    }
+
+    /**
+     * Drops the oldest record and evicts its key, if the record is still the
+     * key's current one
+     */
+    private void evictTail() {
+        final int keyLength = buffer.getInt(tail);
+        final int valueLength = buffer.getInt(tail + Integer.BYTES);
+        final String key = readString(tail + RECORD_HEADER_BYTES, keyLength);
+
+        final Integer offset = keyOffsetMap.get(key);
+        if (offset != null && offset == tail) {
+            LOGGER.debug("Evicting key {}", key);
+            keyOffsetMap.remove(key);
+        }
+
+        tail += RECORD_HEADER_BYTES + keyLength + valueLength;
+        records--;
+        if (wrapped && tail == end) {
+            tail = 0;
+            wrapped = false;
+        }
+    }
+
+    private String readValue(int offset) {
+        final int keyLength = buffer.getInt(offset);
+        final int valueLength = buffer.getInt(offset + Integer.BYTES);
+        return readString(offset + RECORD_HEADER_BYTES + keyLength, valueLength);
+    }
+
+    private String readString(int offset, int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public CachingStrategy getCachingStrategy() {
+        return CachingStrategy.FIFO;
+    }
+
+}
@@ -0,0 +1,180 @@
+package de.tum.i13.server.cache;
+
+import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.shared.Preconditions;
+
+import java.util.function.LongFunction;
+
+/**
+ * A {@link Cache} that is split into independent segments, each a cache of the
+ * same {@link CachingStrategy} with its own lock. Keys are assigned to segments
+ * by their hash code, and every segment evicts its own keys once it is full.
+ * Operations on keys of different segments therefore never contend, at the
+ * price of an eviction order that is only exact within a segment. Small caches
+ * consist of a single segment, so they behave exactly like their strategy. The
+ * capacity of the cache is expressed in units of a {@link Weigher}, either
+ * entries or bytes, or in bytes outside the heap for {@link #offHeap(long)}.
+ */
+public class StripedCache implements Cache {
+
+    /**
+     * Maximum number of segments of a cache
+     */
+    public static final int MAX_SEGMENTS = 64;
+
+    /**
+     * Minimum number of entries per segment. Caches that can't give every
+     * segment that many entries have fewer segments.
+     */
+    public static final int MIN_SEGMENT_SIZE = 64;
+
+    private final Cache[] segments;
+    private final CachingStrategy cachingStrategy;
+
+    /**
+     * Constructs a cache with the given size and {@link CachingStrategy}
+     *
+     * @param cachingStrategy the {@link CachingStrategy} of the segments, must
+     *                        not be null
+     * @param size            the size of the cache, must be greater than 0
+     */
+    public StripedCache(CachingStrategy cachingStrategy, int size) {
+        this(cachingStrategy, size, Weigher.ENTRIES);
+    }
+
+    /**
+     * Constructs a cache with the given capacity, {@link Weigher} and
+     * {@link CachingStrategy}
+     *
+     * @param cachingStrategy the {@link CachingStrategy} of the segments, must
+     *                        not be null
+     * @param capacity        the capacity of the cache in units of the weigher,
+     *                        must be greater than 0
+     * @param weigher         the {@link Weigher} of the entries, must not be null
+     */
+    public StripedCache(CachingStrategy cachingStrategy, long capacity, Weigher weigher) {
+        this(cachingStrategy, capacity, weigher, segmentCount(capacity, weigher));
+    }
+
+    /**
+     * Constructs a cache with the given size, {@link CachingStrategy} and
+     * number of segments. The size is split evenly among the segments.
+     *
+     * @param cachingStrategy the {@link CachingStrategy} of the segments, must
+     *                        not be null
+     * @param size            the size of the cache, must be greater than 0
+     * @param segmentCount    the number of segments, must be a power of two not
+     *                        greater than the size
+     */
+    public StripedCache(CachingStrategy cachingStrategy, int size, int segmentCount) {
+        this(cachingStrategy, size, Weigher.ENTRIES, segmentCount);
+    }
+
+    /**
+     * Constructs a cache with the given capacity, {@link Weigher},
+     * {@link CachingStrategy} and number of segments. The capacity is split
+     * evenly among the segments.
+     *
+     * @param cachingStrategy the {@link CachingStrategy} of the segments, must
+     *                        not be null
+     * @param capacity        the capacity of the cache in units of the weigher,
+     *                        must be greater than 0
+     * @param weigher         the {@link Weigher} of the entries, must not be null
+     * @param segmentCount    the number of segments, must be a power of two not
+     *                        greater than the capacity
+     */
+    public StripedCache(CachingStrategy cachingStrategy, long capacity, Weigher weigher, int segmentCount) {
+        this(segmentFactory(cachingStrategy, weigher), capacity, segmentCount);
+    }
+
+    /**
+     * Constructs a cache of segments created by the given factory. The
+     * capacity is split evenly among the segments.
+     *
+     * @param segmentFactory the factory creating a segment of the given
+     *                       capacity, must not be null
+     * @param capacity       the capacity of the cache, must be greater than 0
+     * @param segmentCount   the number of segments, must be a power of two not
+     *                       greater than the capacity
+     */
+    private StripedCache(LongFunction<Cache> segmentFactory, long capacity, int segmentCount) {
+        Preconditions.check(capacity > 0, "Cache must have a size greater than 0");
+        Preconditions.check(segmentCount > 0 && Integer.bitCount(segmentCount) == 1 && segmentCount <= capacity,
+                "Segment count must be a power of two not greater than the size");
+
+        this.segments = new Cache[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // The first segments take the remainder of the split
+            this.segments[i] = segmentFactory.apply(capacity / segmentCount + (i < capacity % segmentCount ? 1 : 0));
+        }
+        this.cachingStrategy = this.segments[0].getCachingStrategy();
+    }
+
+    /**
+     * Constructs a cache of {@link OffHeapCache} segments, which keep their
+     * values outside the heap
+     *
+     * @param capacity the capacity of the cache in bytes, must be greater than 0
+     * @return the cache
+     */
+    public static StripedCache offHeap(long capacity) {
+        return new StripedCache(OffHeapCache::new, capacity,
+                segmentCount(capacity, OffHeapCache.MIN_SEGMENT_CAPACITY));
+    }
+
+    private static LongFunction<Cache> segmentFactory(CachingStrategy cachingStrategy, Weigher weigher) {
+        Preconditions.notNull(cachingStrategy, "Caching strategy cannot be null");
+        Preconditions.notNull(weigher, "Weigher cannot be null");
+
+        return switch (cachingStrategy) {
+            case LFU -> segmentCapacity -> new LFUCache(segmentCapacity, weigher);
+            case LRU -> segmentCapacity -> new LRUCache(segmentCapacity, weigher);
+            case FIFO -> segmentCapacity -> new FIFOCache(segmentCapacity, weigher);
+            case TINY_LFU -> segmentCapacity -> new TinyLFUCache(segmentCapacity, weigher);
+        };
+    }
+
+    private static int segmentCount(long capacity, Weigher weigher) {
+        Preconditions.notNull(weigher, "Weigher cannot be null");
+        return segmentCount(capacity, weigher.getMinSegmentCapacity());
+    }
+
+    private static int segmentCount(long capacity, long minSegmentCapacity) {
+        long segmentCount = Math.min(MAX_SEGMENTS, Math.max(1, capacity / minSegmentCapacity));
+        return Integer.highestOneBit((int) segmentCount);
+    }
+
+    private Cache segmentFor(String key) {
+        // Spread the high bits of the hash code, like HashMap does
+        int hash = key.hashCode();
+        hash ^= hash >>> 16;
+        return this.segments[hash & (this.segments.length - 1)];
+    }
+
+    @Override
+    public KVMessage get(String key) {
+        Preconditions.notNull(key, "Key cannot be null");
+        return this.segmentFor(key).get(key);
+    }
+
+    @Override
+    public KVMessage put(String key, String value) {
+        Preconditions.notNull(key, "Key cannot be null");
+        return this.segmentFor(key).put(key, value);
+    }
+
+    @Override
+    public CachingStrategy getCachingStrategy() {
+        return this.cachingStrategy;
+    }
+
+    /**
+     * Get the number of segments of this cache
+     *
+     * @return the number of segments
+     */
+    public int getSegmentCount() {
+        return this.segments.length;
+    }
+
+}
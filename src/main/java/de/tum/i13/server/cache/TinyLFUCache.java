@@ -0,0 +1,276 @@
+package de.tum.i13.server.cache;
+
+import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.server.kv.KVMessageImpl;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A {@link Cache} with the {@link CachingStrategy} {@link CachingStrategy#TINY_LFU}
+ * <p>
+ * New keys enter a small LRU admission window. Keys evicted from the window
+ * compete with the next victim of the main region, and only the one with the
+ * higher estimated frequency (see {@link FrequencySketch}) stays. The main
+ * region is a segmented LRU: keys enter its probation segment and move to its
+ * protected segment when they are accessed again. Keys that are accessed only
+ * once, e.g. by a scan, therefore can't displace frequently used keys. The
+ * window and the regions are bounded by the weight of their keys (see
+ * {@link Weigher}). All operations take constant time.
+ *
+ * @see <a href="https://arxiv.org/abs/1512.00727">TinyLFU: A Highly Efficient Cache Admission Policy</a>
+ */
+public class TinyLFUCache implements Cache {
+
+    private static final Logger LOGGER = LogManager.getLogger(TinyLFUCache.class);
+    private static final int MAX_INITIAL_CAPACITY = 1 << 16;
+    private static final int MAX_SKETCH_CAPACITY = 1 << 24;
+
+    /**
+     * Share of the cache capacity used by the admission window, in percent
+     */
+    public static final int WINDOW_PERCENTAGE = 1;
+
+    /**
+     * Share of the main region used by the protected segment, in percent
+     */
+    public static final int PROTECTED_PERCENTAGE = 80;
+
+    private final Map<String, Node> keyNodeMap;
+    private final FrequencySketch sketch;
+    private final Segment window;
+    private final Segment probation;
+    private final Segment protectedSegment;
+    private final Weigher weigher;
+    private final long capacity;
+    private final long windowCapacity;
+    private final long mainCapacity;
+    private final long protectedCapacity;
+
+    /**
+     * Constructs a cache with the given size
+     *
+     * @param size the size of the cache, must be greater than 0
+     */
+    public TinyLFUCache(int size) {
+        this(size, Weigher.ENTRIES);
+    }
+
+    /**
+     * Constructs a cache with the given capacity
+     *
+     * @param capacity the capacity of the cache in units of the weigher, must be greater than 0
+     * @param weigher  the {@link Weigher} of the entries, must not be null
+     */
+    public TinyLFUCache(long capacity, Weigher weigher) {
+        Preconditions.check(capacity > 0, "Cache must have a size greater than 0");
+        Preconditions.notNull(weigher, "Weigher cannot be null");
+
+        // The lightest possible entry bounds the number of keys the sketch has to tell apart
+        final long maxKeys = Math.max(1, capacity / weigher.weigh("", ""));
+        this.keyNodeMap = new HashMap<>((int) Math.min(maxKeys, MAX_INITIAL_CAPACITY));
+        this.sketch = new FrequencySketch((int) Math.min(maxKeys, MAX_SKETCH_CAPACITY));
+        this.window = new Segment();
+        this.probation = new Segment();
+        this.protectedSegment = new Segment();
+        this.weigher = weigher;
+        this.capacity = capacity;
+        this.windowCapacity = Math.max(1, capacity * WINDOW_PERCENTAGE / 100);
+        this.mainCapacity = capacity - this.windowCapacity;
+        this.protectedCapacity = this.mainCapacity * PROTECTED_PERCENTAGE / 100;
+    }
+
+    @Override
+    public synchronized KVMessage get(String key) {
+        Preconditions.notNull(key, "Key cannot be null");
+        LOGGER.info("Trying to get value of key {}", key);
+
+        sketch.increment(key);
+        return Optional.ofNullable(keyNodeMap.get(key))
+                .map(node -> {
+                    onHit(node);
+                    return (KVMessage) new KVMessageImpl(key, node.value, KVMessage.StatusType.GET_SUCCESS);
+                })
+                .orElseGet(() -> new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR));
+    }
+
+    @Override
+    public synchronized KVMessage put(String key, String value) {
+        Preconditions.notNull(key, "Key cannot be null");
+        LOGGER.info("Trying to put key {} with value {}", key, value);
+
+        return Optional.ofNullable(value)
+                .map(newValue -> putKeyToValue(key, newValue))
+                .orElseGet(() -> deleteKey(key));
+    }
+
+    /**
+     * Updates the key in the cache with an actual present value
+     */
+    private KVMessage putKeyToValue(String key, String value) {
+        LOGGER.debug("Putting key {} to value {}", key, value);
+        sketch.increment(key);
+
+        final long weight = weigher.weigh(key, value);
+        if (weight > capacity) {
+            LOGGER.debug("Not caching key {}, which is heavier than the cache", key);
+            return deleteKey(key).getStatus() == KVMessage.StatusType.DELETE_SUCCESS
+                    ? new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE)
+                    : new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
+        }
+
+        final Node node = keyNodeMap.get(key);
+        if (node != null) {
+            LOGGER.debug("Putting key {} with previously present value {} to value {}", key, node.value, value);
+            node.segment.weight += weight - node.weight;
+            node.value = value;
+            node.weight = weight;
+            onHit(node);
+            evictKeys();
+            return new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE);
+        }
+
+        LOGGER.debug("Putting key {} with previously absent value to value {}", key, value);
+        final Node added = new Node(key, value, weight);
+        keyNodeMap.put(key, added);
+        window.append(added);
+        evictKeys();
+        return new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
+    }
+
+    /**
+     * Deletes a key in the cache because of an absent value
+     */
+    private KVMessage deleteKey(String key) {
+        LOGGER.debug("Deleting key {}", key);
+
+        final Node node = keyNodeMap.remove(key);
+        if (node == null) {
+            LOGGER.debug("Skipping deleting already absent key {}", key);
+            return new KVMessageImpl(key, KVMessage.StatusType.DELETE_ERROR);
+        }
+
+        node.segment.remove(node);
+        return new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS);
+    }
+
+    /**
+     * Moves an accessed key to the most recently used end of its segment, keys
+     * on probation are promoted to the protected segment
+     */
+    private void onHit(Node node) {
+        final Segment segment = node.segment;
+        segment.remove(node);
+
+        if (segment != probation) {
+            segment.append(node);
+            return;
+        }
+
+        protectedSegment.append(node);
+        while (protectedSegment.weight > protectedCapacity) {
+            final Node demoted = protectedSegment.head;
+            protectedSegment.remove(demoted);
+            probation.append(demoted);
+        }
+    }
+
+    /**
+     * Moves keys out of the window and the main region until both fit their
+     * capacity
+     */
+    private void evictKeys() {
+        while (window.weight > windowCapacity) {
+            admit(window.head);
+        }
+        // Updated keys may have made the main region heavier
+        while (probation.weight + protectedSegment.weight > mainCapacity) {
+            evictKey(probation.head != null ? probation.head : protectedSegment.head);
+        }
+    }
+
+    /**
+     * Moves a key evicted from the window into the main region, if it is used
+     * more frequently than each of the main region's victims it displaces
+     */
+    private void admit(Node candidate) {
+        window.remove(candidate);
+        probation.append(candidate);
+
+        while (probation.weight + protectedSegment.weight > mainCapacity) {
+            final Node victim = probation.head != candidate ? probation.head : protectedSegment.head;
+            if (victim != null && sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                LOGGER.debug("Admitting key {} in place of key {}", candidate.key, victim.key);
+                evictKey(victim);
+            } else {
+                LOGGER.debug("Rejecting key {}", candidate.key);
+                evictKey(candidate);
+                return;
+            }
+        }
+    }
+
+    private void evictKey(Node node) {
+        node.segment.remove(node);
+        keyNodeMap.remove(node.key);
+    }
+
+    @Override
+    public CachingStrategy getCachingStrategy() {
+        return CachingStrategy.TINY_LFU;
+    }
+
+    private static class Node {
+
+        private final String key;
+        private String value;
+        private long weight;
+        private Segment segment;
+        private Node previous;
+        private Node next;
+
+        private Node(String key, String value, long weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+        }
+
+    }
+
+    /**
+     * Doubly-linked list of keys from least to most recently used
+     */
+    private static class Segment {
+
+        private Node head;
+        private Node tail;
+        private long weight;
+
+        private void append(Node node) {
+            node.segment = this;
+            node.previous = tail;
+            node.next = null;
+            if (tail != null) tail.next = node;
+            else head = node;
+            tail = node;
+            weight += node.weight;
+        }
+
+        private void remove(Node node) {
+            if (node.previous != null) node.previous.next = node.next;
+            else head = node.next;
+            if (node.next != null) node.next.previous = node.previous;
+            else tail = node.previous;
+            node.previous = null;
+            node.next = null;
+            node.segment = null;
+            weight -= node.weight;
+        }
+
+    }
+
+}
@@ -0,0 +1,62 @@
+package de.tum.i13.server.cache;
+
+/**
+ * The units a {@link Cache}'s capacity is expressed in. A cache evicts entries
+ * until the total weight of its entries fits its capacity. Entries heavier
+ * than the whole capacity are not cached.
+ */
+public enum Weigher {
+    /**
+     * Every entry weighs 1, so the capacity is the number of entries
+     */
+    ENTRIES(StripedCache.MIN_SEGMENT_SIZE) {
+        @Override
+        public long weigh(String key, String value) {
+            return 1;
+        }
+    },
+    /**
+     * Entries weigh the bytes they occupy on the heap, so the capacity is the
+     * memory of the cache. Characters are counted as two bytes and every entry
+     * adds {@link #ENTRY_OVERHEAD_BYTES}, so the weight is an upper bound.
+     */
+    BYTES(1 << 20) {
+        @Override
+        public long weigh(String key, String value) {
+            return ENTRY_OVERHEAD_BYTES + 2L * (key.length() + value.length());
+        }
+    };
+
+    /**
+     * Estimated bytes of an entry besides the characters of its key and value:
+     * headers of the strings and their arrays, the cache's node and the entry
+     * of its map
+     */
+    public static final int ENTRY_OVERHEAD_BYTES = 160;
+
+    private final long minSegmentCapacity;
+
+    Weigher(long minSegmentCapacity) {
+        this.minSegmentCapacity = minSegmentCapacity;
+    }
+
+    /**
+     * Get the weight of an entry
+     *
+     * @param key   the key of the entry
+     * @param value the value of the entry
+     * @return the weight of the entry, greater than 0
+     */
+    public abstract long weigh(String key, String value);
+
+    /**
+     * Get the minimum capacity of a segment of a {@link StripedCache}, so that
+     * segments hold enough entries to evict sensibly
+     *
+     * @return the minimum capacity of a segment
+     */
+    public long getMinSegmentCapacity() {
+        return this.minSegmentCapacity;
+    }
+
+}
@@ -1,14 +1,18 @@
 package de.tum.i13.server.kv.commandprocessing.handlers;
 
+import com.google.common.collect.Iterables;
 import de.tum.i13.shared.persistentstorage.PersistentStorage;
 import de.tum.i13.shared.persistentstorage.PutException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
- * {@link Runnable} for asynchronously deleting a set of keys from storage
+ * {@link Runnable} for asynchronously deleting a set of keys from storage, in
+ * batches of at most {@link PersistentStorage#DELETE_BATCH_SIZE} keys. The
+ * keys of failed batches are retried once after the other batches.
  */
 public class AsyncDeleteHandler implements Runnable {
 
@@ -32,13 +36,28 @@ public class AsyncDeleteHandler implements Runnable {
     public void run() {
         LOGGER.info("Deleting {} replicated keys from self.", keys.size());
 
-        for (String key : keys) {
+        List<String> failedKeys = deleteInBatches(keys);
+        if (!failedKeys.isEmpty()) {
+            LOGGER.info("Retrying to delete {} replicated keys.", failedKeys.size());
+            failedKeys = deleteInBatches(failedKeys);
+        }
+
+        if (!failedKeys.isEmpty()) {
+            LOGGER.error("Could not delete {} replicated keys.", failedKeys.size());
+        }
+    }
+
+    private List<String> deleteInBatches(List<String> keysToDelete) {
+        List<String> failedKeys = new ArrayList<>();
+        for (List<String> batch : Iterables.partition(keysToDelete, PersistentStorage.DELETE_BATCH_SIZE)) {
             try {
-                storage.put(key, null);
+                storage.deleteAll(batch);
             } catch (PutException e) {
-                LOGGER.error("Could not delete item with key {}.", key);
+                LOGGER.warn("Could not delete batch of {} replicated keys.", batch.size(), e);
+                failedKeys.addAll(batch);
             }
         }
+        return failedKeys;
     }
 
 }
@@ -8,6 +8,7 @@ import de.tum.i13.shared.hashing.HashingAlgorithm;
 import de.tum.i13.shared.net.CommunicationClient;
 import de.tum.i13.shared.net.CommunicationClientException;
 import de.tum.i13.shared.net.NetworkLocation;
+import de.tum.i13.shared.persistentstorage.CloseableIterator;
 import de.tum.i13.shared.persistentstorage.GetException;
 import de.tum.i13.shared.persistentstorage.NetworkPersistentStorage;
 import de.tum.i13.shared.persistentstorage.PersistentStorage;
@@ -16,7 +17,6 @@ import de.tum.i13.shared.persistentstorage.WrappingPersistentStorage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -75,32 +75,34 @@ public class HandoffHandler implements Runnable {
             return;
         }
 
-        List<Pair<String>> itemsToSend = new LinkedList<>();
-
-        // Fetch items from storage
-        try {
-            LOGGER.info("Fetching range from database");
-            itemsToSend = this.getRange(lowerBound, upperBound);
-        } catch (GetException e) {
-            LOGGER.error("Error while getting key range during handoff.", e);
-        }
-
-        // Send items to peer
-        for (Pair<String> item : itemsToSend) {
-            try {
-                LOGGER.info("Sending item with key {} to peer {}.", item.key, peer);
-                KVMessage response = netPeerStorage.put(item.key, item.value);
-
-                if (response.getStatus() == KVMessage.StatusType.PUT_SUCCESS) {
-                    LOGGER.info("Sent item with key {} to peer {}.", item.key, peer);
-                    nodesToDelete.add(item.key);
-                } else {
-                    LOGGER.error("Failed to send item with key {} to peer {}.", item.key, peer);
+        // Items are read from storage while they are sent, the range is released as soon as the handoff ends
+        int itemCount = 0;
+        LOGGER.info("Fetching range from database");
+        try (CloseableIterator<Pair<String>> itemsToSend = this.iterateRange(lowerBound, upperBound)) {
+            while (itemsToSend.hasNext()) {
+                Pair<String> item = itemsToSend.next();
+                itemCount++;
+
+                try {
+                    LOGGER.info("Sending item with key {} to peer {}.", item.key, peer);
+                    KVMessage response = netPeerStorage.put(item.key, item.value);
+
+                    if (response.getStatus() == KVMessage.StatusType.PUT_SUCCESS) {
+                        LOGGER.info("Sent item with key {} to peer {}.", item.key, peer);
+                        nodesToDelete.add(item.key);
+                    } else {
+                        LOGGER.error("Failed to send item with key {} to peer {}.", item.key, peer);
+                    }
+                } catch (PutException e) {
+                    LOGGER.error("Could not send item with key {} to peer {}.", item.key, peer, e);
                 }
-            } catch (PutException e) {
-                LOGGER.error("Could not send item with key {} to peer {}.", item.key, peer, e);
             }
+        } catch (GetException e) {
+            LOGGER.error("Error while getting key range during handoff.", e);
+        } catch (IllegalStateException e) {
+            LOGGER.error("Error while reading key range during handoff.", e);
         }
+        LOGGER.info("Handed off {} items to {}", itemCount, peer);
 
         // Delete items after sending (only sucessful ones)
         if (this.isShutdown) {
@@ -118,21 +120,24 @@ public class HandoffHandler implements Runnable {
         }
     }
 
-    private List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException {
+    private CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound)
+            throws GetException {
 
         int hashSize = this.hashingAlgorithm.getHashSizeBits() / 4;
         String paddedLower = HashingAlgorithm.padLeftZeros(lowerBound, hashSize);
         String paddedUpper = HashingAlgorithm.padLeftZeros(upperBound, hashSize);
 
         if (paddedLower.compareTo(paddedUpper) <= 0) {
-            return this.storage.getRange(paddedLower, paddedUpper);
+            return this.storage.iterateRange(paddedLower, paddedUpper);
         }
 
-        List<Pair<String>> result = new LinkedList<>();
-        result.addAll(this.storage.getRange("0".repeat(hashSize), paddedUpper));
-        result.addAll(this.storage.getRange(paddedLower, "f".repeat(hashSize)));
-
-        return result;
+        CloseableIterator<Pair<String>> lowerRange = this.storage.iterateRange("0".repeat(hashSize), paddedUpper);
+        try {
+            return CloseableIterator.concat(lowerRange, this.storage.iterateRange(paddedLower, "f".repeat(hashSize)));
+        } catch (GetException e) {
+            lowerRange.close();
+            throw e;
+        }
     }
 
 }
@@ -0,0 +1,17 @@
+package de.tum.i13.server.persistentstorage;
+
+/**
+ * The different engines a server can use to persist its key-value pairs.
+ */
+public enum StorageEngine {
+    /**
+     * Persistent B-Tree, see
+     * {@link de.tum.i13.server.persistentstorage.btree.BTreePersistentStorage}
+     */
+    BTREE,
+    /**
+     * Log-structured merge tree, see
+     * {@link de.tum.i13.server.persistentstorage.lsm.LSMPersistentStorage}
+     */
+    LSM
+}
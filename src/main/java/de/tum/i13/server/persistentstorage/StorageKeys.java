@@ -0,0 +1,76 @@
+package de.tum.i13.server.persistentstorage;
+
+import de.tum.i13.shared.hashing.HashingAlgorithm;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Encodes key hashes as the keys used by the storage engines. Every byte of
+ * the hash becomes one character in {@code [0, 255]}, so a 128-bit hash is a
+ * 16-character string that the JVM stores with one byte per character.
+ * Comparing such keys with {@link String#compareTo(String)} compares the
+ * hashes as unsigned numbers, so the keys keep the order of the hash ring.
+ * <p>
+ * The {@link de.tum.i13.shared.persistentstorage.PersistentStorage} interface
+ * still describes ranges by hexadecimal hashes, which are converted with
+ * {@link #fromHex(String, int)}.
+ */
+public final class StorageKeys {
+
+    private StorageKeys() {
+    }
+
+    /**
+     * Encode the bytes of a hash as a key
+     *
+     * @param hash big-endian bytes of the hash
+     * @return key of the hash
+     */
+    public static String fromBytes(byte[] hash) {
+        return new String(hash, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Encode a hexadecimal hash as a key
+     *
+     * @param hex          hexadecimal hash, with or without prefix and padding
+     * @param hashSizeBits size of the hash in bits
+     * @return key of the hash
+     */
+    public static String fromHex(String hex, int hashSizeBits) {
+        return fromBytes(HashingAlgorithm.convertHashToBytes(HashingAlgorithm.convertHexToHash(hex), hashSizeBits));
+    }
+
+    /**
+     * Get the smallest key of a hash size
+     *
+     * @param hashSizeBits size of the hash in bits
+     * @return key of the hash 0
+     */
+    public static String lowest(int hashSizeBits) {
+        return fromBytes(new byte[hashSizeBits / 8]);
+    }
+
+    /**
+     * Get the largest key of a hash size
+     *
+     * @param hashSizeBits size of the hash in bits
+     * @return key of the hash with all bits set
+     */
+    public static String highest(int hashSizeBits) {
+        return "\u00ff".repeat(hashSizeBits / 8);
+    }
+
+    /**
+     * Check if a key is a padded hexadecimal hash, the format used by storages
+     * written before keys were stored as bytes
+     *
+     * @param key          key to check
+     * @param hashSizeBits size of the hash in bits
+     * @return true if the key is a hexadecimal hash
+     */
+    public static boolean isHexKey(String key, int hashSizeBits) {
+        return key.length() == hashSizeBits / 4 && key.chars().allMatch(c -> Character.digit(c, 16) >= 0);
+    }
+
+}
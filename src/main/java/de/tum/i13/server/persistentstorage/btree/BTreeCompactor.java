@@ -0,0 +1,124 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import com.google.common.util.concurrent.RateLimiter;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Packs the sparse nodes of a {@link PersistentBTree} into fewer, denser
+ * nodes while the tree is in use. A compaction pass walks the tree one
+ * root-to-leaf path at a time (see {@link PersistentBTree#compactPath}), so
+ * each step only latches a few nodes for a short transaction. The pages
+ * written by a pass are limited to a budget per second, which keeps the pass
+ * from competing with the operations of the tree for I/O. Passes started with
+ * {@link #schedule()} run on a background thread.
+ *
+ * @param <V> Type of values used in the BTree
+ */
+public class BTreeCompactor<V> implements AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(BTreeCompactor.class);
+
+    /**
+     * Pages a compaction pass writes per second by default
+     */
+    public static final double DEFAULT_PAGES_PER_SECOND = 200;
+
+    private final PersistentBTree<V> tree;
+
+    private final RateLimiter pageBudget;
+
+    private final ExecutorService executor;
+
+    private final AtomicBoolean scheduled;
+
+    private final Object passLock;
+
+    /**
+     * Create a compactor for a tree
+     *
+     * @param tree           tree to compact
+     * @param pagesPerSecond maximum number of pages written per second
+     */
+    public BTreeCompactor(PersistentBTree<V> tree, double pagesPerSecond) {
+        Preconditions.notNull(tree);
+        Preconditions.check(pagesPerSecond > 0, "Page budget must be positive");
+
+        this.tree = tree;
+        this.pageBudget = RateLimiter.create(pagesPerSecond);
+        this.executor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("btree-compactor").setDaemon(true).build());
+        this.scheduled = new AtomicBoolean(false);
+        this.passLock = new Object();
+    }
+
+    /**
+     * Run a compaction pass over the whole tree
+     *
+     * @return number of pages written by the pass
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown if the tree is
+     *                                  closed
+     */
+    public long compact() throws StorageException, PersistentBTreeException {
+        synchronized (this.passLock) {
+            long written = 0;
+            String fromKey = null;
+
+            do {
+                PersistentBTree.CompactedPath path = this.tree.compactPath(fromKey);
+                written += path.writtenNodes;
+                fromKey = path.nextKey;
+
+                // Reading a path is cheap, only written pages count against the budget
+                if (path.writtenNodes > 0)
+                    this.pageBudget.acquire(path.writtenNodes);
+            } while (fromKey != null);
+
+            LOGGER.info("Compacted tree, wrote {} pages", written);
+            return written;
+        }
+    }
+
+    /**
+     * Run a compaction pass on the background thread, unless a pass is already
+     * waiting to run
+     */
+    public void schedule() {
+        if (!this.scheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.executor.execute(() -> {
+            this.scheduled.set(false);
+            try {
+                this.compact();
+            } catch (StorageException | PersistentBTreeException e) {
+                LOGGER.error("Could not compact tree", e);
+            }
+        });
+    }
+
+    /**
+     * Stop the background thread. A running pass is finished first.
+     */
+    @Override
+    public void close() {
+        this.executor.shutdown();
+        try {
+            this.executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
@@ -1,33 +1,131 @@
 package de.tum.i13.server.persistentstorage.btree;
 
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.tum.i13.server.kv.KVMessage;
 import de.tum.i13.server.kv.KVMessageImpl;
+import de.tum.i13.server.persistentstorage.StorageKeys;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.Superblock;
+import de.tum.i13.server.persistentstorage.btree.io.vlog.ValueLog;
+import de.tum.i13.server.persistentstorage.btree.io.vlog.ValuePointer;
 import de.tum.i13.shared.Preconditions;
 import de.tum.i13.shared.hashing.HashingAlgorithm;
+import de.tum.i13.shared.persistentstorage.CloseableIterator;
 import de.tum.i13.shared.persistentstorage.GetException;
 import de.tum.i13.shared.persistentstorage.PersistentStorage;
 import de.tum.i13.shared.persistentstorage.PutException;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
+import java.lang.ref.Cleaner;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Uses a Persistent B-Tree (https://en.wikipedia.org/wiki/B-tree) implemented
- * by ({@link PersistentBTree}) to provide a {@link PersistentStorage}.
+ * by ({@link PersistentBTree}) to provide a {@link PersistentStorage}. A
+ * {@link KeyFilter} of the stored keys answers most gets of missing keys
+ * without searching the tree. The filter is saved when the storage is closed.
+ * If it wasn't saved, e.g. after a crash, it is rebuilt from a snapshot of the
+ * tree in the background, and gets search the tree until it is complete.
+ * <p>
+ * If a {@link ValueLog} is given, values above a size threshold are appended
+ * to it and the tree only stores {@link ValuePointer}s to them, so that nodes
+ * stay small. Once enough of a sealed segment of the log is garbage, a
+ * background thread moves its live values to the end of the log and deletes
+ * it once no snapshot taken before the move is open anymore.
+ * <p>
+ * Removals leave sparsely filled nodes behind. After every
+ * {@link #COMPACTION_REMOVALS} removals, a {@link BTreeCompactor} packs them
+ * into fewer nodes in the background.
+ * <p>
+ * Range reads, e.g. of a handoff, read a {@link Snapshot} of the tree, so they
+ * return a consistent state without blocking writers.
  */
 public class BTreePersistentStorage implements PersistentStorage, AutoCloseable {
 
     private static final Logger LOGGER = LogManager.getLogger(BTreePersistentStorage.class);
 
+    /**
+     * Name of the file the key filter is usually saved to, in the folder of the
+     * tree
+     */
+    public static final String KEY_FILTER_FILE = "keys.bloom";
+
+    /**
+     * Name of the folder the value log is usually stored in, in the folder of
+     * the tree
+     */
+    public static final String VALUE_LOG_FOLDER = "vlog";
+
+    /**
+     * Share of garbage in a sealed segment of the value log after which the
+     * segment is collected
+     */
+    public static final double GARBAGE_COLLECTION_RATIO = 0.5;
+
+    /**
+     * Number of removals after which the tree is compacted in the background
+     */
+    public static final int COMPACTION_REMOVALS = 10_000;
+
+    // Key of the element that marked trees whose keys are all stored as bytes in previous versions, the format
+    // flags of the superblock replace it
+    private static final String LEGACY_BINARY_KEYS_MARKER = "";
+
+    // Closes the snapshots of abandoned range iterators
+    private static final Cleaner SNAPSHOT_CLEANER = Cleaner.create();
+
     private PersistentBTree<Pair<String>> tree;
 
+    private final PersistentBTreeStorageHandler<Pair<String>> storageHandler;
+
     private final HashingAlgorithm hashAlg;
 
+    private final KeyFilter keyFilter;
+
+    private volatile boolean keyFilterReady; // false while the filter misses stored keys
+
+    private volatile boolean keyFilterBuildCancelled;
+
+    private ExecutorService keyFilterBuilder; // null unless the filter is rebuilt
+
+    private final Path keyFilterPath; // null if the filter is not saved
+
+    private final int valueLogThreshold;
+
+    private final ReadWriteLock valueLogLock; // shared by writes, held exclusively while values are moved
+
+    private final Object collectionLock;
+
+    private final AtomicBoolean collectionScheduled;
+
+    private final Map<Integer, Long> retiredSegments; // collected segments by the epoch after their values were moved
+
+    private ValueLog valueLog; // null if all values are stored in the tree
+
+    private ExecutorService collector; // null if there is no value log
+
+    private final AtomicInteger removals; // since the last compaction was scheduled
+
+    private BTreeCompactor<Pair<String>> compactor;
+
     /**
      * Create a new B-Tree with a given minimum degree (see
      * {@link PersistentBTree}).
@@ -43,6 +141,50 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
     public BTreePersistentStorage(int minimumDegree, PersistentBTreeStorageHandler<Pair<String>> storageHandler,
                                   HashingAlgorithm hashingAlgorithm)
             throws StorageException {
+        this(minimumDegree, storageHandler, hashingAlgorithm, null);
+    }
+
+    /**
+     * Create a new B-Tree with a given minimum degree (see
+     * {@link PersistentBTree}), whose key filter is saved at the given path
+     * when the storage is closed.
+     *
+     * @param minimumDegree    B-Tree minimum degree
+     * @param storageHandler   Handler used by the BTree to persist
+     * @param hashingAlgorithm algorithm to be use to hash data uses as key in BTree
+     * @param keyFilterPath    path where the key filter is saved, {@code null}
+     *                         to rebuild the filter every time
+     * @throws StorageException An exception is thrown when an error occures while
+     *                          saving tree to persistent storage
+     */
+    public BTreePersistentStorage(int minimumDegree, PersistentBTreeStorageHandler<Pair<String>> storageHandler,
+                                  HashingAlgorithm hashingAlgorithm, Path keyFilterPath)
+            throws StorageException {
+        this(minimumDegree, storageHandler, hashingAlgorithm, keyFilterPath, null, 0);
+    }
+
+    /**
+     * Create a new B-Tree with a given minimum degree (see
+     * {@link PersistentBTree}), which stores large values in a value log.
+     *
+     * @param minimumDegree     B-Tree minimum degree
+     * @param storageHandler    Handler used by the BTree to persist
+     * @param hashingAlgorithm  algorithm to be use to hash data uses as key in
+     *                          BTree
+     * @param keyFilterPath     path where the key filter is saved, {@code null}
+     *                          to rebuild the filter every time
+     * @param valueLog          log for large values, {@code null} to store all
+     *                          values in the tree. The storage takes ownership
+     *                          of the log.
+     * @param valueLogThreshold minimum length of the values stored in the value
+     *                          log
+     * @throws StorageException An exception is thrown when an error occures while
+     *                          saving tree to persistent storage
+     */
+    public BTreePersistentStorage(int minimumDegree, PersistentBTreeStorageHandler<Pair<String>> storageHandler,
+                                  HashingAlgorithm hashingAlgorithm, Path keyFilterPath, ValueLog valueLog,
+                                  int valueLogThreshold)
+            throws StorageException {
         try {
             this.tree = new PersistentBTree<>(minimumDegree, storageHandler.load(), storageHandler);
         } catch (StorageException e) {
@@ -53,13 +195,132 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
             this.tree = new PersistentBTree<>(minimumDegree, storageHandler);
         }
 
+        this.storageHandler = storageHandler;
         this.hashAlg = hashingAlgorithm;
+        this.keyFilterPath = keyFilterPath;
+        this.valueLog = valueLog;
+        this.valueLogThreshold = valueLogThreshold;
+        this.valueLogLock = new ReentrantReadWriteLock();
+        this.collectionLock = new Object();
+        this.collectionScheduled = new AtomicBoolean(false);
+        this.retiredSegments = new ConcurrentHashMap<>();
+        this.collector = this.createCollector();
+        this.removals = new AtomicInteger();
+        this.compactor = new BTreeCompactor<>(this.tree, BTreeCompactor.DEFAULT_PAGES_PER_SECOND);
+
+        KeyFilter savedFilter = keyFilterPath == null ? null : KeyFilter.load(keyFilterPath);
+        if (!this.hasBinaryKeys()) {
+            this.keyFilter = this.convertKeys();
+            this.keyFilterReady = true;
+        } else if (savedFilter != null) {
+            this.keyFilter = savedFilter;
+            this.keyFilterReady = true;
+        } else {
+            // Puts add their keys to the empty filter while the stored keys are added in the background
+            this.keyFilter = new KeyFilter(KeyFilter.DEFAULT_EXPECTED_KEYS);
+            this.startKeyFilterBuild();
+        }
+    }
+
+    private boolean hasBinaryKeys() throws StorageException {
+        try {
+            // The flag is set before the marker is removed, so an interrupted replacement is finished here
+            if (this.tree.search(LEGACY_BINARY_KEYS_MARKER) != null) {
+                this.markBinaryKeys();
+                this.tree.remove(LEGACY_BINARY_KEYS_MARKER);
+                return true;
+            }
+            return (this.storageHandler.getFormatFlags() & Superblock.BINARY_KEYS) != 0;
+        } catch (IllegalStateException | PersistentBTreeException e) {
+            throw new StorageException(e, "Could not read the key format of the tree");
+        }
+    }
+
+    // Converts keys stored as hexadecimal hashes to binary keys, which needs a scan of the whole tree anyway
+    private KeyFilter convertKeys() throws StorageException {
+        KeyFilter filter = new KeyFilter(KeyFilter.DEFAULT_EXPECTED_KEYS);
+        int hashSizeBits = this.hashAlg.getHashSizeBits();
+        List<Pair<Pair<String>>> hexElements = new ArrayList<>();
+
+        try {
+            Iterator<Pair<Pair<String>>> elements = this.tree.iterateRange(StorageKeys.lowest(hashSizeBits),
+                    StorageKeys.highest(hashSizeBits));
+            elements.forEachRemaining(element -> {
+                if (StorageKeys.isHexKey(element.key, hashSizeBits)) {
+                    hexElements.add(element);
+                } else {
+                    filter.put(element.key);
+                }
+            });
+
+            // Inserting first makes the conversion safe to repeat if it is interrupted
+            for (Pair<Pair<String>> element : hexElements) {
+                String key = this.normalizeKey(element.value.key);
+                filter.put(key);
+                this.tree.insert(key, element.value);
+                this.tree.remove(element.key);
+            }
+
+            // Only flagged trees skip the conversion, so an interrupted conversion is finished on the next start
+            this.markBinaryKeys();
+        } catch (IllegalStateException | PersistentBTreeException e) {
+            throw new StorageException(e, "Could not build key filter");
+        }
+
+        if (!hexElements.isEmpty()) {
+            LOGGER.info("Converted {} hexadecimal keys to binary keys", hexElements.size());
+        }
+        LOGGER.info("Built key filter from stored keys");
+        return filter;
     }
 
+    private void markBinaryKeys() throws StorageException {
+        this.storageHandler.setFormatFlags(this.storageHandler.getFormatFlags() | Superblock.BINARY_KEYS);
+    }
+
+    // Adds the keys of a snapshot of the tree to the filter, keys inserted after the snapshot are added by the puts
+    private void startKeyFilterBuild() {
+        this.keyFilterBuildCancelled = false;
+        this.keyFilterBuilder = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("key-filter-build").setDaemon(true).build());
+        this.keyFilterBuilder.execute(() -> {
+            int hashSizeBits = this.hashAlg.getHashSizeBits();
+            try (Snapshot<Pair<String>> snapshot = this.tree.snapshot()) {
+                Iterator<Pair<Pair<String>>> elements = snapshot.iterateRange(StorageKeys.lowest(hashSizeBits),
+                        StorageKeys.highest(hashSizeBits));
+                while (elements.hasNext() && !this.keyFilterBuildCancelled) {
+                    this.keyFilter.put(elements.next().key);
+                }
+            } catch (IllegalStateException | PersistentBTreeException e) {
+                LOGGER.error("Could not build key filter, gets will search the tree", e);
+                return;
+            }
+
+            if (!this.keyFilterBuildCancelled) {
+                this.keyFilterReady = true;
+                LOGGER.info("Built key filter from stored keys");
+            }
+        });
+        this.keyFilterBuilder.shutdown();
+    }
+
+    // A flag instead of an interrupt stops the build, since interrupting a read would close the files it reads
+    private void stopKeyFilterBuild() {
+        if (this.keyFilterBuilder == null) {
+            return;
+        }
+
+        this.keyFilterBuildCancelled = true;
+        try {
+            this.keyFilterBuilder.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        this.keyFilterBuilder = null;
+    }
 
     private String normalizeKey(String key) {
-        String intermediate = this.hashAlg.hash(key).toString(16);
-        return HashingAlgorithm.padLeftZeros(intermediate, this.hashAlg.getHashSizeBits() / 4);
+        return StorageKeys.fromBytes(this.hashAlg.hashBytes(key));
     }
 
     @Override
@@ -68,7 +329,13 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
         LOGGER.info("Trying to get value of key {}", key);
 
         try {
-            Pair<String> keyValue = this.tree.search(this.normalizeKey(key));
+            String normalizedKey = this.normalizeKey(key);
+            if (this.keyFilterReady && !this.keyFilter.mightContain(normalizedKey)) {
+                LOGGER.info("No value with key {} (filtered)", key);
+                return new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR);
+            }
+
+            Pair<String> keyValue = this.loadValue(normalizedKey, this.tree.search(normalizedKey));
 
             if (keyValue == null) {
                 LOGGER.info("No value with key {}", key);
@@ -82,13 +349,27 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
     }
 
     @Override
-    public synchronized KVMessage put(String key, String value) throws PutException {
+    public KVMessage put(String key, String value) throws PutException {
         Preconditions.notNull(key, "Key cannot be null");
 
         try {
             if (value == null) {
                 LOGGER.info("Trying to delete key {}", key);
-                boolean deleted = this.tree.remove(this.normalizeKey(key));
+                String normalizedKey = this.normalizeKey(key);
+                boolean deleted;
+
+                this.valueLogLock.readLock().lock();
+                try {
+                    Pair<String> removedValue = this.tree.remove(normalizedKey);
+                    deleted = removedValue != null;
+                    this.markGarbage(removedValue);
+                } finally {
+                    this.valueLogLock.readLock().unlock();
+                }
+
+                if (deleted && this.removals.incrementAndGet() % COMPACTION_REMOVALS == 0) {
+                    this.compactor.schedule();
+                }
                 LOGGER.info("Deleted key {}", key);
 
                 return deleted ? new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS)
@@ -97,18 +378,29 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
 
             LOGGER.info("Trying to put key {} with value {}", key, value);
 
-            Pair<String> previousValue = this.tree.insert(this.normalizeKey(key), new Pair<>(key, value));
+            // The filter must contain the key before a search can find it
+            String normalizedKey = this.normalizeKey(key);
+            this.keyFilter.put(normalizedKey);
+            Pair<String> previousValue;
+
+            this.valueLogLock.readLock().lock();
+            try {
+                previousValue = this.tree.insert(normalizedKey, new Pair<>(key, this.storeValue(key, value)));
+                this.markGarbage(previousValue);
+            } finally {
+                this.valueLogLock.readLock().unlock();
+            }
 
             // Note: this returns a PUT_SUCCESS if the value already exists but is updated
             // with the same value.
-            if (previousValue != null && !value.equals(previousValue.value)) {
+            if (this.isUpdate(previousValue, value)) {
                 LOGGER.info("Updated key {} with value {}", key, value);
 
                 return new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE);
             }
 
             // String tree = (new PersistentBTreeDisplay<Pair<String>>()).traverseCondensed(this.tree);
-            LOGGER.info("Put key {} ({}) with value {}", key, this.normalizeKey(key), value);
+            LOGGER.info("Put key {} with value {}", key, value);
 
             return new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
         } catch (Exception e) {
@@ -117,26 +409,452 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
         }
     }
 
+    /**
+     * Put a batch of key-value pairs in a single transaction of the tree (see
+     * {@link PersistentBTree#insertAll(List)}), so the batch is made durable at
+     * once.
+     */
+    @Override
+    public List<KVMessage> putAll(List<Pair<String>> elements) throws PutException {
+        Preconditions.notNull(elements, "Elements cannot be null");
+        LOGGER.info("Trying to put {} keys", elements.size());
+
+        try {
+            // The filter must contain the keys before a search can find them
+            List<String> normalizedKeys = new ArrayList<>(elements.size());
+            for (Pair<String> element : elements) {
+                Preconditions.notNull(element.key, "Key cannot be null");
+                Preconditions.notNull(element.value, "Value cannot be null");
+                String normalizedKey = this.normalizeKey(element.key);
+                this.keyFilter.put(normalizedKey);
+                normalizedKeys.add(normalizedKey);
+            }
+
+            List<Pair<String>> previousValues;
+
+            this.valueLogLock.readLock().lock();
+            try {
+                List<Pair<Pair<String>>> stored = new ArrayList<>(elements.size());
+                for (int i = 0; i < elements.size(); i++) {
+                    Pair<String> element = elements.get(i);
+                    stored.add(new Pair<>(normalizedKeys.get(i),
+                            new Pair<>(element.key, this.storeValue(element.key, element.value))));
+                }
+
+                previousValues = this.tree.insertAll(stored);
+                previousValues.forEach(this::markGarbage);
+            } finally {
+                this.valueLogLock.readLock().unlock();
+            }
+
+            List<KVMessage> responses = new ArrayList<>(elements.size());
+            for (int i = 0; i < elements.size(); i++) {
+                Pair<String> element = elements.get(i);
+                Pair<String> previousValue = previousValues.get(i);
+                responses.add(this.isUpdate(previousValue, element.value)
+                        ? new KVMessageImpl(element.key, KVMessage.StatusType.PUT_UPDATE)
+                        : new KVMessageImpl(element.key, KVMessage.StatusType.PUT_SUCCESS));
+            }
+
+            LOGGER.info("Put {} keys", elements.size());
+            return responses;
+        } catch (Exception e) {
+            throw new PutException(e, "An error occured while putting %d keys into storage.", elements.size());
+        }
+    }
+
+    /**
+     * Delete a batch of keys in a single transaction of the tree (see
+     * {@link PersistentBTree#removeAll(List)}), so the batch is made durable at
+     * once.
+     */
+    @Override
+    public List<KVMessage> deleteAll(List<String> keys) throws PutException {
+        Preconditions.notNull(keys, "Keys cannot be null");
+        LOGGER.info("Trying to delete {} keys", keys.size());
+
+        try {
+            List<String> normalizedKeys = new ArrayList<>(keys.size());
+            for (String key : keys) {
+                Preconditions.notNull(key, "Key cannot be null");
+                normalizedKeys.add(this.normalizeKey(key));
+            }
+
+            List<Pair<String>> removedValues;
+
+            this.valueLogLock.readLock().lock();
+            try {
+                removedValues = this.tree.removeAll(normalizedKeys);
+                removedValues.forEach(this::markGarbage);
+            } finally {
+                this.valueLogLock.readLock().unlock();
+            }
+
+            List<KVMessage> responses = new ArrayList<>(keys.size());
+            int deletedCount = 0;
+            for (int i = 0; i < keys.size(); i++) {
+                boolean deleted = removedValues.get(i) != null;
+                responses.add(new KVMessageImpl(keys.get(i),
+                        deleted ? KVMessage.StatusType.DELETE_SUCCESS : KVMessage.StatusType.DELETE_ERROR));
+                deletedCount += deleted ? 1 : 0;
+            }
+
+            int previousRemovals = this.removals.getAndAdd(deletedCount);
+            if (previousRemovals / COMPACTION_REMOVALS != (previousRemovals + deletedCount) / COMPACTION_REMOVALS) {
+                this.compactor.schedule();
+            }
+
+            LOGGER.info("Deleted {} of {} keys", deletedCount, keys.size());
+            return responses;
+        } catch (Exception e) {
+            throw new PutException(e, "An error occured while deleting %d keys from storage.", keys.size());
+        }
+    }
+
     /**
      * Closes tree ensuring that modifying operations (inserts and deletes) can
-     * finish first.
+     * finish first. The storage handler is closed and the key filter is saved
+     * afterwards, unless it is still being built. A running collection of the
+     * value log and a running compaction are finished before.
      */
     @Override
     public synchronized void close() {
+        this.stopKeyFilterBuild();
+        this.compactor.close();
+
+        if (this.collector != null) {
+            this.collector.shutdown();
+            try {
+                this.collector.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            try {
+                this.deleteRetiredSegments();
+            } catch (StorageException e) {
+                LOGGER.error("Could not delete collected segments of the value log", e);
+            }
+        }
+
         this.tree.close();
+
+        try {
+            this.storageHandler.close();
+        } catch (StorageException e) {
+            LOGGER.error("Could not close storage handler", e);
+        }
+
+        if (this.valueLog != null) {
+            this.valueLog.close();
+        }
+
+        if (this.keyFilterPath != null && this.keyFilterReady) {
+            try {
+                this.keyFilter.save(this.keyFilterPath);
+            } catch (StorageException e) {
+                LOGGER.warn("Could not save key filter, it will be rebuilt", e);
+            }
+        } else if (this.keyFilterPath != null) {
+            LOGGER.info("Key filter is incomplete, it will be rebuilt");
+        }
     }
 
     /**
-     * Enables tree operations have it has been closed.
+     * Enables tree operations have it has been closed. The saved key filter
+     * is deleted, since it would miss the following writes. An incomplete key
+     * filter continues to be built.
      */
     public synchronized void reopen() {
+        if (this.keyFilterPath != null) {
+            try {
+                KeyFilter.delete(this.keyFilterPath);
+            } catch (StorageException e) {
+                LOGGER.error("Could not delete saved key filter", e);
+                throw new IllegalStateException(e);
+            }
+        }
+
+        if (this.valueLog != null) {
+            try {
+                this.valueLog = new ValueLog(this.valueLog.getFolder(), this.valueLog.getSegmentSize());
+            } catch (StorageException e) {
+                LOGGER.error("Could not reopen value log", e);
+                throw new IllegalStateException(e);
+            }
+            this.collector = this.createCollector();
+        }
+
+        try {
+            this.storageHandler.reopen();
+        } catch (StorageException e) {
+            LOGGER.error("Could not reopen storage handler", e);
+            throw new IllegalStateException(e);
+        }
+
+        this.compactor = new BTreeCompactor<>(this.tree, BTreeCompactor.DEFAULT_PAGES_PER_SECOND);
         this.tree.reopen();
+
+        if (!this.keyFilterReady) {
+            this.startKeyFilterBuild();
+        }
+    }
+
+    /**
+     * Pack the sparsely filled nodes of the tree into fewer nodes (see
+     * {@link BTreeCompactor})
+     *
+     * @return number of pages written
+     * @throws StorageException An exception is thrown if the nodes can't be
+     *                          written
+     */
+    public long compact() throws StorageException {
+        try {
+            return this.compactor.compact();
+        } catch (PersistentBTreeException e) {
+            throw new StorageException(e, "Could not compact tree");
+        }
+    }
+
+    /**
+     * Get statistics about how densely the nodes of the tree are filled
+     *
+     * @return fill statistics of the tree
+     * @throws StorageException An exception is thrown if the nodes can't be
+     *                          read
+     */
+    public FillStatistics getFillStatistics() throws StorageException {
+        try {
+            return this.tree.getFillStatistics();
+        } catch (PersistentBTreeException e) {
+            throw new StorageException(e, "Could not read fill statistics");
+        }
+    }
+
+    /**
+     * Collect the sealed segments of the value log in which at least a given
+     * share of the bytes is garbage. The live values of the segments are
+     * appended to the log again, then the segments are deleted. Snapshots
+     * taken before the values were moved still point to the segments, so
+     * they are only deleted once these snapshots are closed.
+     *
+     * @param minGarbageRatio minimum share of garbage, between 0 and 1
+     * @return number of collected segments
+     * @throws StorageException An exception is thrown if the values can't be
+     *                          moved or the segments can't be deleted
+     */
+    public int collectGarbage(double minGarbageRatio) throws StorageException {
+        if (this.valueLog == null) {
+            return 0;
+        }
+
+        synchronized (this.collectionLock) {
+            List<Integer> segments = new ArrayList<>(this.valueLog.getCollectableSegments(minGarbageRatio));
+            segments.removeAll(this.retiredSegments.keySet());
+
+            for (int segmentId : segments) {
+                int moved = 0;
+                for (Pair<ValuePointer> record : this.valueLog.listRecords(segmentId)) {
+                    if (this.moveValue(record.key, record.value)) {
+                        moved++;
+                    }
+                }
+
+                // After a crash, the tree must not point to the deleted segment
+                this.storageHandler.sync();
+                this.retiredSegments.put(segmentId, this.tree.getEpoch());
+                LOGGER.info("Collected value log segment {}, moved {} live values", segmentId, moved);
+            }
+
+            this.deleteRetiredSegments();
+            return segments.size();
+        }
+    }
+
+    // Delete the collected segments that no open snapshot points to anymore
+    private void deleteRetiredSegments() throws StorageException {
+        synchronized (this.collectionLock) {
+            long oldestSnapshotEpoch = this.tree.getOldestSnapshotEpoch();
+            Iterator<Map.Entry<Integer, Long>> segments = this.retiredSegments.entrySet().iterator();
+            while (segments.hasNext()) {
+                Map.Entry<Integer, Long> segment = segments.next();
+                if (oldestSnapshotEpoch >= segment.getValue()) {
+                    this.valueLog.deleteSegment(segment.getKey());
+                    segments.remove();
+                }
+            }
+        }
+    }
+
+    // Delete the segments a closed snapshot kept alive in the background
+    private void releaseRetiredSegments() {
+        if (this.retiredSegments.isEmpty()) {
+            return;
+        }
+
+        try {
+            this.collector.execute(() -> {
+                try {
+                    this.deleteRetiredSegments();
+                } catch (StorageException e) {
+                    LOGGER.error("Could not delete collected segments of the value log", e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.debug("Storage is closed, collected segments are deleted by the next collection");
+        }
+    }
+
+    // Append a value to the end of the log if the tree still points to the given record
+    private boolean moveValue(String key, ValuePointer pointer) throws StorageException {
+        String normalizedKey = this.normalizeKey(key);
+
+        this.valueLogLock.writeLock().lock();
+        try {
+            Pair<String> stored = this.tree.search(normalizedKey);
+            if (stored == null || !ValuePointer.isPointer(stored.value)
+                    || !ValuePointer.decode(stored.value).isSameRecord(pointer)) {
+                return false;
+            }
+
+            String value = this.valueLog.read(pointer);
+            this.tree.insert(normalizedKey, new Pair<>(stored.key, this.valueLog.append(stored.key, value).encode()));
+            return true;
+        } catch (PersistentBTreeException e) {
+            throw new StorageException(e, "Could not move value of key %s", key);
+        } finally {
+            this.valueLogLock.writeLock().unlock();
+        }
+    }
+
+    private ExecutorService createCollector() {
+        if (this.valueLog == null) {
+            return null;
+        }
+
+        return Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("value-log-gc").setDaemon(true).build());
+    }
+
+    // Count a replaced value as garbage of the value log, the collection starts once enough is garbage
+    private void markGarbage(Pair<String> stored) {
+        if (this.valueLog == null || stored == null || !ValuePointer.isPointer(stored.value)) {
+            return;
+        }
+
+        this.valueLog.markGarbage(ValuePointer.decode(stored.value));
+        if (this.valueLog.getCollectableSegments(GARBAGE_COLLECTION_RATIO).isEmpty()
+                || !this.collectionScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        this.collector.execute(() -> {
+            try {
+                this.collectGarbage(GARBAGE_COLLECTION_RATIO);
+            } catch (StorageException e) {
+                LOGGER.error("Could not collect garbage of the value log", e);
+            } finally {
+                this.collectionScheduled.set(false);
+            }
+        });
+    }
+
+    // Large values are appended to the value log, the others are stored in the tree
+    private String storeValue(String key, String value) throws StorageException {
+        if (this.valueLog != null && value.length() >= this.valueLogThreshold) {
+            return this.valueLog.append(key, value).encode();
+        }
+        return ValuePointer.escape(value);
+    }
+
+    /**
+     * Check if a put replaced a different value. Values in the value log are
+     * compared by the length and checksum of their records, so the log is only
+     * read for pointers stored without a checksum.
+     */
+    private boolean isUpdate(Pair<String> previous, String value) throws StorageException {
+        if (previous == null) {
+            return false;
+        }
+
+        if (ValuePointer.isPointer(previous.value)) {
+            ValuePointer pointer = ValuePointer.decode(previous.value);
+            if (pointer.getChecksum() != ValuePointer.NO_CHECKSUM) {
+                return !ValueLog.isRecordOf(pointer, previous.key, value);
+            }
+        }
+        return !value.equals(this.readStoredValue(previous));
+    }
+
+    /**
+     * Read the value stored in the tree or the value log
+     *
+     * @return the value, or {@code null} if it was in a deleted segment of the
+     * value log
+     */
+    private String readStoredValue(Pair<String> stored) throws StorageException {
+        if (!ValuePointer.isPointer(stored.value)) {
+            return ValuePointer.unescape(stored.value);
+        }
+
+        if (this.valueLog == null) {
+            throw new StorageException("Value of key %s is stored in a value log, which is not enabled", stored.key);
+        }
+        return this.valueLog.read(ValuePointer.decode(stored.value));
+    }
+
+    /**
+     * Replace a pointer to the value log by its value. If the collection
+     * deleted the segment of the value in the meantime, the key is searched
+     * again to find the value's new location.
+     */
+    private Pair<String> loadValue(String normalizedKey, Pair<String> stored)
+            throws StorageException, PersistentBTreeException {
+        while (stored != null) {
+            String value = this.readStoredValue(stored);
+            if (value != null) {
+                return new Pair<>(stored.key, value);
+            }
+
+            Pair<String> moved = this.tree.search(normalizedKey);
+            if (moved != null && moved.value.equals(stored.value)) {
+                throw new StorageException("Value of key %s is missing from the value log", stored.key);
+            }
+            stored = moved;
+        }
+        return null;
+    }
+
+    /**
+     * Replace a pointer to the value log of an element of a snapshot by its
+     * value. The segments the snapshot points to are kept until it is closed,
+     * so the value is read from the location the snapshot saw.
+     */
+    private Pair<String> loadSnapshotValue(Pair<Pair<String>> element) {
+        try {
+            String value = this.readStoredValue(element.value);
+            if (value == null) {
+                throw new StorageException("Value of key %s is missing from the value log", element.value.key);
+            }
+            return new Pair<>(element.value.key, value);
+        } catch (StorageException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
     @Override
     public List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException {
         try {
-            return this.tree.searchRange(lowerBound, upperBound).stream().map(elem -> elem.value).collect(Collectors.toList());
+            List<Pair<String>> values = new ArrayList<>();
+            try (Snapshot<Pair<String>> snapshot = this.tree.snapshot()) {
+                for (Pair<Pair<String>> element : snapshot.searchRange(this.normalizeBound(lowerBound),
+                        this.normalizeBound(upperBound))) {
+                    values.add(this.loadSnapshotValue(element));
+                }
+            } finally {
+                this.releaseRetiredSegments();
+            }
+            return values;
         } catch (Exception e) {
             throw new GetException(e, "An error occurred while fetching elements in range %s-%s from storage.",
                     lowerBound,
@@ -144,4 +862,79 @@ public class BTreePersistentStorage implements PersistentStorage, AutoCloseable
         }
     }
 
+    /**
+     * Get an iterator over a range of a snapshot of the tree, so the iterated
+     * elements are consistent while writes continue. The snapshot keeps the
+     * versions of the nodes changed after it and the value log segments it
+     * points to alive, so it is closed as soon as the iterator is closed or
+     * exhausted. An abandoned iterator only releases
+     * it when it is garbage collected.
+     */
+    @Override
+    public CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound) throws GetException {
+        try {
+            SnapshotIterator<Pair<String>> elements = new SnapshotIterator<>(this.tree.snapshot(),
+                    this.normalizeBound(lowerBound), this.normalizeBound(upperBound), this::releaseRetiredSegments);
+            return CloseableIterator.of(Iterators.transform(elements, this::loadSnapshotValue), elements::close);
+        } catch (PersistentBTreeException e) {
+            throw new GetException(e, "An error occurred while iterating elements in range %s-%s from storage.",
+                    lowerBound, upperBound);
+        }
+    }
+
+    private String normalizeBound(String hexBound) {
+        return StorageKeys.fromHex(hexBound, this.hashAlg.getHashSizeBits());
+    }
+
+    /**
+     * Iterator over a range of a snapshot, which closes the snapshot once it is
+     * closed, or the range is exhausted or can't be read. The snapshot of an
+     * iterator that is never closed is closed when the iterator is garbage
+     * collected. A given action runs after the snapshot is closed.
+     *
+     * @param <V> Type of values used in the BTree
+     */
+    private static final class SnapshotIterator<V> implements CloseableIterator<Pair<V>> {
+
+        private final Iterator<Pair<V>> elements;
+        private final Cleaner.Cleanable closer;
+
+        private SnapshotIterator(Snapshot<V> snapshot, String lowerBound, String upperBound, Runnable onClose) {
+            this.elements = snapshot.iterateRange(lowerBound, upperBound);
+            // The action must not reference the iterator, otherwise it is never collected
+            this.closer = SNAPSHOT_CLEANER.register(this, () -> {
+                snapshot.close();
+                onClose.run();
+            });
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                boolean hasNext = this.elements.hasNext();
+                if (!hasNext) {
+                    this.closer.clean();
+                }
+                return hasNext;
+            } catch (RuntimeException e) {
+                this.closer.clean();
+                throw e;
+            }
+        }
+
+        @Override
+        public Pair<V> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return this.elements.next();
+        }
+
+        @Override
+        public void close() {
+            this.closer.clean();
+        }
+
+    }
+
 }
@@ -0,0 +1,155 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.shared.Preconditions;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Builds a {@link PersistentBTree} bottom-up from elements given in ascending
+ * key order. Each level of the tree has one open node, to which elements are
+ * appended until it holds as many elements as the fill factor allows. The next
+ * element of a full node becomes a separator in the level above, and the full
+ * node is written as the separator's left child. Thus, every node is written
+ * once, and only one node per level is kept in memory.
+ * <p>
+ * The last node of each level may end up with too few elements. Once all
+ * elements are added, these nodes are filled from their left siblings, from
+ * the root down.
+ *
+ * @param <V> Type of values used in the BTree
+ */
+class BulkLoader<V> {
+
+    private static final int PAGES_PER_FLUSH = 1024; // pages written before they are flushed to storage
+
+    private final int minimumDegree;
+    private final int capacity; // number of elements of full nodes
+    private final PersistentBTreeStorageHandler<V> storageHandler;
+    private final List<OpenNode> levels; // open node of each level, leaves first
+    private String lastKey; // key of the last added element
+    private int unflushedPages; // pages written since the last flush
+
+    /**
+     * Create a new bulk loader
+     *
+     * @param minimumDegree  minimum degree of the tree
+     * @param fillFactor     fraction of the maximum number of elements that
+     *                       nodes are filled with, in (0, 1]. Nodes always get at
+     *                       least {@code minimumDegree - 1} elements.
+     * @param storageHandler handler used to store the tree
+     */
+    BulkLoader(int minimumDegree, double fillFactor, PersistentBTreeStorageHandler<V> storageHandler) {
+        Preconditions.check(fillFactor > 0 && fillFactor <= 1, "Fill factor must be in (0, 1]");
+        int maxElements = 2 * minimumDegree - 1;
+
+        this.minimumDegree = minimumDegree;
+        this.capacity = Math.max(minimumDegree - 1, Math.min(maxElements, (int) Math.round(fillFactor * maxElements)));
+        this.storageHandler = storageHandler;
+        this.levels = new ArrayList<>();
+    }
+
+    /**
+     * Add the next element. Its key must be greater than the keys of all
+     * elements added before.
+     *
+     * @param element element to add
+     * @throws StorageException Is thrown when a node can't be written
+     */
+    void add(Pair<V> element) throws StorageException {
+        Preconditions.notNull(element);
+        Preconditions.check(this.lastKey == null || this.lastKey.compareTo(element.key) < 0,
+                "Elements must be added in strictly ascending key order");
+
+        this.lastKey = element.key;
+        this.add(0, element, null);
+    }
+
+    /**
+     * Write the open nodes and fill the ones with too few elements
+     *
+     * @param latches latches of the current operation, used to latch the nodes
+     *                that are filled
+     * @return root of the built tree, or null if no element was added
+     * @throws StorageException Is thrown when a node can't be written
+     */
+    PersistentBTreeNode<V> finish(NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> root = null;
+
+        for (OpenNode open : this.levels) {
+            if (root != null) {
+                open.childrenIds.add(root.getId());
+            }
+            root = this.write(open);
+        }
+        this.levels.clear();
+
+        if (root == null) {
+            return null;
+        }
+
+        // The right edge is filled top-down, so a node never loses an element it needs
+        latches.exclusive(root);
+        PersistentBTreeNode<V> node = root;
+
+        while (!node.isLeaf()) {
+            PersistentBTreeNode<V> child = node.fillLastChild(latches);
+
+            // Merging the only two children of the root leaves it empty
+            if (node == root && node.getElementCount() == 0) {
+                root = child;
+            }
+            node = child;
+        }
+
+        return root;
+    }
+
+    private void add(int level, Pair<V> element, Integer leftChild) throws StorageException {
+        if (level == this.levels.size()) {
+            this.levels.add(new OpenNode());
+        }
+
+        OpenNode open = this.levels.get(level);
+        if (leftChild != null) {
+            open.childrenIds.add(leftChild);
+        }
+
+        if (open.elements.size() < this.capacity) {
+            open.elements.add(element);
+            return;
+        }
+
+        // The node is complete, the element separates it from the next node of its level
+        PersistentBTreeNode<V> node = this.write(open);
+        this.levels.set(level, new OpenNode());
+        this.add(level + 1, element, node.getId());
+    }
+
+    private PersistentBTreeNode<V> write(OpenNode open) throws StorageException {
+        PersistentBTreeNode<V> node = new PersistentBTreeNode<>(this.minimumDegree, open.elements, open.childrenIds,
+                this.storageHandler);
+
+        // Written nodes can't be reached from the stored tree until the load finishes
+        if (++this.unflushedPages >= PAGES_PER_FLUSH) {
+            this.storageHandler.flushPages();
+            this.unflushedPages = 0;
+        }
+
+        return node;
+    }
+
+    /**
+     * Node of a level that still receives elements
+     */
+    private class OpenNode {
+
+        private final List<Pair<V>> elements = new ArrayList<>();
+        private final List<Integer> childrenIds = new ArrayList<>();
+
+    }
+
+}
@@ -0,0 +1,86 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+/**
+ * Statistics about how densely the nodes of a {@link PersistentBTree} are
+ * filled (see {@link PersistentBTree#getFillStatistics()}). Deletions leave
+ * nodes with as few as minimumDegree-1 elements, which a
+ * {@link BTreeCompactor} packs into fewer nodes again.
+ */
+public final class FillStatistics {
+
+    private final int minimumDegree;
+    private final long nodes;
+    private final long leaves;
+    private final long elements;
+    private final int height;
+
+    /**
+     * Create statistics of a tree
+     *
+     * @param minimumDegree minimum degree of the tree
+     * @param nodes         number of nodes
+     * @param leaves        number of leaf nodes
+     * @param elements      number of elements
+     * @param height        number of levels
+     */
+    public FillStatistics(int minimumDegree, long nodes, long leaves, long elements, int height) {
+        this.minimumDegree = minimumDegree;
+        this.nodes = nodes;
+        this.leaves = leaves;
+        this.elements = elements;
+        this.height = height;
+    }
+
+    /**
+     * Get the number of nodes, which is also the number of pages
+     *
+     * @return number of nodes
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Get the number of leaf nodes
+     *
+     * @return number of leaves
+     */
+    public long getLeaves() {
+        return leaves;
+    }
+
+    /**
+     * Get the number of elements stored in the tree
+     *
+     * @return number of elements
+     */
+    public long getElements() {
+        return elements;
+    }
+
+    /**
+     * Get the number of levels of the tree
+     *
+     * @return height of the tree, 0 if it is empty
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Get the share of the nodes' capacity that is used
+     *
+     * @return elements divided by the maximum number of elements of all nodes,
+     * between 0 and 1
+     */
+    public double getFillFactor() {
+        return this.nodes == 0 ? 0 : (double) this.elements / (this.nodes * (2L * this.minimumDegree - 1));
+    }
+
+    @Override
+    public String toString() {
+        return String.format("FillStatistics{nodes=%d, leaves=%d, elements=%d, height=%d, fillFactor=%.3f}",
+                this.nodes, this.leaves, this.elements, this.height, this.getFillFactor());
+    }
+
+}
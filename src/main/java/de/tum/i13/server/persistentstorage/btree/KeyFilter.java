@@ -0,0 +1,222 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Bloom filter (https://en.wikipedia.org/wiki/Bloom_filter) of the keys
+ * stored in a {@link PersistentBTree}. A key the filter doesn't contain is
+ * definitely not in the tree, so searches for it don't need to read any node.
+ * <p>
+ * Keys are never removed from the filter, deleted keys only cost a search.
+ * Once a filter holds as many keys as it was sized for, a new filter of twice
+ * the size is added, so the false positive rate stays bounded as the tree
+ * grows. Keys are hashed as ISO-8859-1 bytes, the encoding of the keys of
+ * {@link de.tum.i13.server.persistentstorage.StorageKeys}. All methods are
+ * thread-safe.
+ * <p>
+ * Filters are only valid for the tree they were built from. A saved filter is
+ * therefore deleted when it is loaded, so that a filter which misses writes
+ * made after loading it is never read.
+ */
+class KeyFilter {
+
+    private static final Logger LOGGER = LogManager.getLogger(KeyFilter.class);
+
+    /**
+     * Number of keys the first filter is sized for
+     */
+    static final int DEFAULT_EXPECTED_KEYS = 1 << 16;
+
+    private static final double FALSE_POSITIVE_RATE = 0.01;
+    private static final int MAGIC = 0x43444b46; // "CDKF"
+    // Version of the saved format, filters of other versions are rebuilt
+    private static final int VERSION = 1;
+
+    private final List<Segment> segments; // the last segment receives new keys
+
+    /**
+     * Create a new empty filter
+     *
+     * @param expectedKeys number of keys the first filter is sized for
+     */
+    KeyFilter(int expectedKeys) {
+        this.segments = new CopyOnWriteArrayList<>();
+        this.segments.add(new Segment(expectedKeys));
+    }
+
+    private KeyFilter(List<Segment> segments) {
+        this.segments = new CopyOnWriteArrayList<>(segments);
+    }
+
+    /**
+     * Add a key to the filter
+     *
+     * @param key key to add
+     */
+    void put(String key) {
+        Segment last = this.segments.get(this.segments.size() - 1);
+        last.filter.put(key);
+
+        if (last.filter.approximateElementCount() >= last.expectedKeys) {
+            this.grow(last);
+        }
+    }
+
+    /**
+     * Check if a key might be in the tree
+     *
+     * @param key key to check
+     * @return false if the key is definitely not in the tree
+     */
+    boolean mightContain(String key) {
+        for (Segment segment : this.segments) {
+            if (segment.filter.mightContain(key)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized void grow(Segment full) {
+        // Another thread may have grown the filter already
+        if (this.segments.get(this.segments.size() - 1) == full) {
+            this.segments.add(new Segment((int) Math.min(Integer.MAX_VALUE, 2L * full.expectedKeys)));
+            LOGGER.debug("Grew key filter to {} segments", this.segments.size());
+        }
+    }
+
+    /**
+     * Save the filter. Writes made to the tree afterwards must also be added
+     * to the saved filter, so the filter must only be saved once the tree is
+     * closed.
+     *
+     * @param filePath path where the filter is stored
+     * @throws StorageException an exception is thrown if the filter can't be
+     *                          written
+     */
+    synchronized void save(Path filePath) throws StorageException {
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(this.segments.size());
+            for (Segment segment : this.segments) {
+                out.writeInt(segment.expectedKeys);
+                segment.filter.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing key filter %s", filePath);
+        }
+
+        try {
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing key filter %s", filePath);
+        }
+    }
+
+    /**
+     * Load a saved filter and delete it from disk
+     *
+     * @param filePath path where the filter is stored
+     * @return loaded filter, or {@code null} if there is no valid saved filter
+     */
+    static KeyFilter load(Path filePath) {
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+
+        KeyFilter filter;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(filePath)))) {
+            filter = read(in);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Could not read key filter {}", filePath, e);
+            filter = null;
+        }
+
+        try {
+            Files.delete(filePath);
+        } catch (IOException e) {
+            LOGGER.warn("Could not delete key filter {}, it can't be used", filePath, e);
+            return null;
+        }
+
+        return filter;
+    }
+
+    /**
+     * Delete a saved filter, e.g. because the tree will be changed
+     *
+     * @param filePath path where the filter is stored
+     * @throws StorageException an exception is thrown if the filter can't be
+     *                          deleted
+     */
+    static void delete(Path filePath) throws StorageException {
+        try {
+            Files.deleteIfExists(filePath);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while deleting key filter %s", filePath);
+        }
+    }
+
+    private static KeyFilter read(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Invalid key filter magic");
+        }
+        int version = in.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported key filter version " + version);
+        }
+
+        int segmentCount = in.readInt();
+        List<Segment> segments = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < segmentCount; i++) {
+            int expectedKeys = in.readInt();
+            segments.add(new Segment(expectedKeys, BloomFilter.readFrom((InputStream) in,
+                    Funnels.stringFunnel(StandardCharsets.ISO_8859_1))));
+        }
+
+        if (segments.isEmpty()) {
+            throw new IOException("Key filter has no segments");
+        }
+        return new KeyFilter(segments);
+    }
+
+    /**
+     * Bloom filter together with the number of keys it was sized for
+     */
+    private static class Segment {
+
+        private final int expectedKeys;
+        private final BloomFilter<CharSequence> filter;
+
+        private Segment(int expectedKeys) {
+            this(expectedKeys, BloomFilter.create(Funnels.stringFunnel(StandardCharsets.ISO_8859_1), expectedKeys,
+                    FALSE_POSITIVE_RATE));
+        }
+
+        private Segment(int expectedKeys, BloomFilter<CharSequence> filter) {
+            this.expectedKeys = expectedKeys;
+            this.filter = filter;
+        }
+
+    }
+
+}
@@ -0,0 +1,212 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.function.Consumer;
+
+/**
+ * Latches held by a single operation on a {@link PersistentBTree}. Nodes are
+ * always latched top-down, and siblings only while their parent is latched
+ * exclusively, so operations can't deadlock. The state of a node is recorded
+ * when it is first latched exclusively, which allows the operation to release
+ * nodes it did not modify (latch coupling) and to restore the nodes it did
+ * modify if it fails. While snapshots are open, the state of a node is also
+ * kept as a {@link NodeVersion} before it is modified (see {@link Snapshot}).
+ *
+ * @param <V> Type of values used in the BTree
+ */
+class NodeLatches<V> {
+
+    private final List<Lock> held; // held locks, in the order they were acquired
+    private final Map<PersistentBTreeNode<V>, PersistentBTreeNode.State<V>> before; // state of exclusively latched nodes
+    private final List<Runnable> undos; // changes outside of nodes to undo if the operation fails
+    private final Consumer<PersistentBTreeNode<V>> versionKeeper; // null if no snapshot is open
+
+    /**
+     * Create a new set of latches, which doesn't hold any latch
+     */
+    NodeLatches() {
+        this(null);
+    }
+
+    /**
+     * Create a new set of latches, which doesn't hold any latch and keeps the
+     * versions of nodes before they are latched exclusively
+     *
+     * @param versionKeeper action keeping the version of a node, null if no
+     *                      versions are kept
+     */
+    NodeLatches(Consumer<PersistentBTreeNode<V>> versionKeeper) {
+        this.held = new ArrayList<>();
+        this.before = new IdentityHashMap<>();
+        this.undos = new ArrayList<>();
+        this.versionKeeper = versionKeeper;
+    }
+
+    /**
+     * Acquire a lock and hold it until it is released or
+     * {@link #releaseAll()} is called
+     *
+     * @param lock lock to acquire
+     */
+    void lock(Lock lock) {
+        lock.lock();
+        this.held.add(lock);
+    }
+
+    /**
+     * Release the last acquisition of a lock held by this operation
+     *
+     * @param lock lock to release
+     */
+    void unlock(Lock lock) {
+        int index = this.held.lastIndexOf(lock);
+        if (index >= 0) {
+            this.held.remove(index).unlock();
+        }
+    }
+
+    /**
+     * Check if the operation holds a lock
+     *
+     * @param lock lock to check
+     * @return true if the lock is held by this operation
+     */
+    boolean holds(Lock lock) {
+        return this.held.contains(lock);
+    }
+
+    /**
+     * Latch a node for reading
+     *
+     * @param node node to latch
+     */
+    void shared(PersistentBTreeNode<V> node) {
+        this.lock(node.latch.readLock());
+    }
+
+    /**
+     * Latch a node for writing and record its state if it wasn't latched
+     * exclusively before
+     *
+     * @param node node to latch
+     */
+    void exclusive(PersistentBTreeNode<V> node) {
+        this.lock(node.latch.writeLock());
+        if (this.before.containsKey(node)) {
+            return;
+        }
+
+        this.before.put(node, node.getState());
+        if (this.versionKeeper != null) {
+            this.versionKeeper.accept(node);
+        }
+    }
+
+    /**
+     * Latch a node for reading or writing
+     *
+     * @param node      node to latch
+     * @param exclusive true if the node is latched for writing
+     */
+    void latch(PersistentBTreeNode<V> node, boolean exclusive) {
+        if (exclusive) {
+            this.exclusive(node);
+        } else {
+            this.shared(node);
+        }
+    }
+
+    /**
+     * Release the last latch acquired on a node
+     *
+     * @param node node to release
+     */
+    void release(PersistentBTreeNode<V> node) {
+        int index = this.held.size() - 1;
+        while (index >= 0 && this.held.get(index) != node.latch.readLock()
+                && this.held.get(index) != node.latch.writeLock()) {
+            index--;
+        }
+
+        if (index >= 0) {
+            this.held.remove(index).unlock();
+        }
+
+        // Other operations may modify the node once it is released, so it must not be restored
+        if (!this.held.contains(node.latch.writeLock())) {
+            this.before.remove(node);
+        }
+    }
+
+    /**
+     * Release the last latch acquired on a node, unless the node was modified
+     * while it was latched exclusively. Modified nodes must stay latched until
+     * the operation's transaction ends.
+     *
+     * @param node node to release
+     */
+    void releaseIfUnmodified(PersistentBTreeNode<V> node) {
+        PersistentBTreeNode.State<V> state = this.before.get(node);
+        if (state == null || !state.isModified(node)) {
+            this.release(node);
+        }
+    }
+
+    /**
+     * Register an action that undoes a change made under one of the held
+     * latches, e.g. replacing the tree's root
+     *
+     * @param undo action undoing the change
+     */
+    void addUndo(Runnable undo) {
+        this.undos.add(undo);
+    }
+
+    /**
+     * Restore all nodes modified by the operation to their state when they were
+     * first latched exclusively and undo all other registered changes. Must be
+     * called before the latches are released.
+     */
+    void restore() {
+        for (Map.Entry<PersistentBTreeNode<V>, PersistentBTreeNode.State<V>> entry : this.before.entrySet()) {
+            entry.getKey().setState(entry.getValue());
+        }
+
+        for (int i = this.undos.size() - 1; i >= 0; i--) {
+            this.undos.get(i).run();
+        }
+    }
+
+    /**
+     * Mark the nodes modified by the operation with the epoch of its commit.
+     * Must be called after the operation's transaction ended and before the
+     * latches are released.
+     *
+     * @param epoch epoch of the commit
+     */
+    void commit(long epoch) {
+        for (Map.Entry<PersistentBTreeNode<V>, PersistentBTreeNode.State<V>> entry : this.before.entrySet()) {
+            if (entry.getValue().isModified(entry.getKey())) {
+                entry.getKey().epoch = epoch;
+            }
+        }
+    }
+
+    /**
+     * Release all held latches, in the reverse order of their acquisition
+     */
+    void releaseAll() {
+        for (int i = this.held.size() - 1; i >= 0; i--) {
+            this.held.get(i).unlock();
+        }
+
+        this.held.clear();
+        this.before.clear();
+        this.undos.clear();
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+
+import java.util.List;
+
+/**
+ * Immutable state of a {@link PersistentBTreeNode}, read by {@link Snapshot}s.
+ * Nodes keep the versions that open snapshots may need in a chain, newest
+ * first. The children of a version are the node objects themselves, so a
+ * snapshot reads them at its epoch as well.
+ *
+ * @param <V> Type of values used in the BTree
+ */
+final class NodeVersion<V> {
+
+    final long epoch; // epoch of the commit that produced this state
+    final boolean leaf;
+    final List<Pair<V>> elements; // sorted by key
+    final List<PersistentBTreeNode<V>> children; // null for children a read doesn't need, empty for a leaf
+    volatile NodeVersion<V> previous; // next older version, null if there is none
+
+    NodeVersion(long epoch, boolean leaf, List<Pair<V>> elements, List<PersistentBTreeNode<V>> children,
+                NodeVersion<V> previous) {
+        this.epoch = epoch;
+        this.leaf = leaf;
+        this.elements = elements;
+        this.children = children;
+        this.previous = previous;
+    }
+
+    /**
+     * Find the first element whose key is not less than a key
+     *
+     * @param key key to compare
+     * @return index of the element, or the number of elements if there is none
+     */
+    int findIndexOfFirstGreaterOrEqualThen(String key) {
+        int low = 0;
+        int high = this.elements.size();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(this.elements.get(mid).key) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Find the first element whose key is greater than a key
+     *
+     * @param key key to compare
+     * @return index of the element, or the number of elements if there is none
+     */
+    int findIndexOfFirstGreaterThen(String key) {
+        int low = 0;
+        int high = this.elements.size();
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(this.elements.get(mid).key) >= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+}
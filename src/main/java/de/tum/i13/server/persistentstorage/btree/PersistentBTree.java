@@ -1,6 +1,5 @@
 package de.tum.i13.server.persistentstorage.btree;
 
-import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
@@ -10,17 +9,38 @@ import org.apache.logging.log4j.Logger;
 
 import java.io.Closeable;
 import java.io.Serializable;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * This class represents a BTree (https://en.wikipedia.org/wiki/B-tree) that can
- * persist in memory. This implementation is also thread-safe, allowing for
- * concurrent reads. The way persistance is done is injected using a
+ * persist in memory. This implementation is also thread-safe. Operations latch
+ * the nodes they access top-down (latch coupling, see {@link NodeLatches}), so
+ * reads and writes of different parts of the tree run concurrently. Writes run
+ * concurrently if the storage handler supports concurrent transactions. The
+ * way persistance is done is injected using a
  * {@link PersistentBTreeStorageHandler}.
+ * <p>
+ * Every committed modification advances the tree's epoch. A {@link Snapshot}
+ * reads the tree as of the epoch it was taken at, without latching nodes:
+ * while snapshots are open, writers keep the previous versions of the nodes
+ * they modify, which are reclaimed once no open snapshot reads them.
  *
  * @param <V> Type of values used in the BTree
  */
@@ -29,12 +49,18 @@ public class PersistentBTree<V> implements Serializable, Closeable {
     private static final long serialVersionUID = 6529685098267757690L;
     private static final Logger LOGGER = LogManager.getLogger(PersistentBTree.class);
 
-    PersistentBTreeNode<V> root; // Root node
+    PersistentBTreeNode<V> root; // Root node, guarded by rootLatch
     private final int minimumDegree; // Minimum degree
     private final PersistentBTreeStorageHandler<V> storageHandler;
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(); // used to ensure concurrent reads, and
-    // exclusive
-    // access writes
+    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(); // shared by all operations, exclusive
+    // while the tree is closed
+    private final ReadWriteLock rootLatch = new ReentrantReadWriteLock(); // guards the root pointer
+    private final Lock writeLock = new ReentrantLock(); // serializes writes without concurrent transactions
+    private final ReadWriteLock snapshotGate = new ReentrantReadWriteLock(); // shared by writes, exclusive while a snapshot is taken
+    private final AtomicLong epoch = new AtomicLong(); // epoch of the last commit
+    private final NavigableMap<Long, Integer> snapshotEpochs = new TreeMap<>(); // open snapshots per epoch, guarded by itself
+    private final Set<PersistentBTreeNode<V>> versionedNodes = new HashSet<>(); // nodes with kept versions, guarded by snapshotEpochs
+    private volatile boolean snapshotsOpen;
     private AtomicBoolean treeClosed;
     private boolean useTransactions = true;
 
@@ -114,13 +140,14 @@ public class PersistentBTree<V> implements Serializable, Closeable {
      * Remove element with 'key' from the tree.
      *
      * @param key key of the element to remove
-     * @return true if the value was removed, false otherwise
+     * @return value of the removed element, or null if there was no element
+     * with the key
      * @throws StorageException         An exception is thrown if a problem occurs
      *                                  with persistent storage.
      * @throws PersistentBTreeException An exception is thrown when an operation is
      *                                  performed in a closed tree
      */
-    public boolean remove(String key) throws StorageException, PersistentBTreeException {
+    public V remove(String key) throws StorageException, PersistentBTreeException {
         Preconditions.notNull(key);
 
         if (treeClosed.get()) {
@@ -128,33 +155,7 @@ public class PersistentBTree<V> implements Serializable, Closeable {
                     "Could not perform operation because tree is closed");
         }
 
-        if (root == null)
-            return false;
-
-        this.readWriteLock.writeLock().lock();
-        if (this.useTransactions)
-            this.storageHandler.beginTransaction();
-
-        try {
-            // Call the remove function for root
-            boolean result = root.remove(key);
-
-            // If the root node has 0 keys, make its first child as the new root
-            // if it has a child, otherwise set root as NULL
-            if (root.getElementCount() == 0) {
-                root = root.isLeaf() ? null : root.getChildren().get(0);
-            }
-
-            this.readWriteLock.writeLock().unlock();
-            this.storageHandler.save(this);
-            if (this.useTransactions)
-                this.storageHandler.endTransaction();
-            return result;
-        } catch (StorageException e) {
-            if (this.useTransactions)
-                this.storageHandler.rollbackTransaction();
-            throw e;
-        }
+        return this.modify(latches -> this.remove(key, latches));
     }
 
     /**
@@ -177,14 +178,14 @@ public class PersistentBTree<V> implements Serializable, Closeable {
         }
 
         this.readWriteLock.readLock().lock();
+        NodeLatches<V> latches = new NodeLatches<>();
 
-        if (this.root == null) {
-            this.readWriteLock.readLock().unlock();
-            return null;
-        } else {
-            V searchResult = this.root.search(key);
+        try {
+            PersistentBTreeNode<V> node = this.latchRoot(latches, false);
+            return node == null ? null : node.search(key, latches);
+        } finally {
+            latches.releaseAll();
             this.readWriteLock.readLock().unlock();
-            return searchResult;
         }
     }
 
@@ -201,6 +202,44 @@ public class PersistentBTree<V> implements Serializable, Closeable {
      */
     public List<Pair<V>> searchRange(String lowerBound, String upperBound) throws StorageException,
             PersistentBTreeException {
+        return this.searchRange(lowerBound, true, upperBound, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get an iterator over the key-value pairs in the range
+     * [lowerBound-upperBound] (limits included), in key order. The iterator reads
+     * the range lazily, about one node at a time, so the range doesn't have to
+     * fit in memory. No latches are held between reads, which means that changes
+     * made to the tree while iterating may or may not be seen by the iterator.
+     * If reading from the tree fails, the iterator throws an
+     * {@link IllegalStateException} with the cause of the failure.
+     *
+     * @param lowerBound lower bound for keys
+     * @param upperBound upper bounds for keys
+     * @return iterator over the key-value pairs with keys in range
+     * [lowerBound-upperBound]
+     */
+    public Iterator<Pair<V>> iterateRange(String lowerBound, String upperBound) {
+        Preconditions.check(lowerBound.compareTo(upperBound) <= 0);
+        return new RangeIterator<>(this::searchRange, lowerBound, upperBound, 2 * this.minimumDegree - 1);
+    }
+
+    /**
+     * Searches for at most {@code limit} key-value pairs in the range
+     * [lowerBound-upperBound], starting with the smallest key
+     *
+     * @param lowerBound lower bound for keys
+     * @param inclusive  true if the lower bound is included in the range
+     * @param upperBound upper bounds for keys (included)
+     * @param limit      maximum number of key-value pairs to return
+     * @return key-value pairs with the smallest keys in the range
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    List<Pair<V>> searchRange(String lowerBound, boolean inclusive, String upperBound, int limit)
+            throws StorageException, PersistentBTreeException {
         Preconditions.check(lowerBound.compareTo(upperBound) <= 0);
 
         if (treeClosed.get()) {
@@ -209,14 +248,19 @@ public class PersistentBTree<V> implements Serializable, Closeable {
         }
 
         this.readWriteLock.readLock().lock();
+        NodeLatches<V> latches = new NodeLatches<>();
+        List<Pair<V>> result = new ArrayList<>();
+
+        try {
+            PersistentBTreeNode<V> node = this.latchRoot(latches, false);
+            if (node != null) {
+                node.searchRange(lowerBound, inclusive, upperBound, limit, result, latches);
+            }
 
-        if (this.root == null) {
-            this.readWriteLock.readLock().unlock();
-            return new LinkedList<>();
-        } else {
-            LinkedList<Pair<V>> result = this.root.searchRange(lowerBound, upperBound);
-            this.readWriteLock.readLock().unlock();
             return result;
+        } finally {
+            latches.releaseAll();
+            this.readWriteLock.readLock().unlock();
         }
     }
 
@@ -240,51 +284,268 @@ public class PersistentBTree<V> implements Serializable, Closeable {
                     "Could not perform operation because tree is closed");
         }
 
-        try {
-            if (this.useTransactions)
-                this.storageHandler.beginTransaction();
+        return this.modify(latches -> this.insert(key, value, latches));
+    }
 
-            this.readWriteLock.writeLock().lock();
+    /**
+     * Insert elements in a single transaction, which saves the tree once. The
+     * elements are inserted in key order, so consecutive inserts mostly modify
+     * nodes that are already latched and loaded. Elements with the same key are
+     * inserted in the given order. Since the batch keeps all modified nodes
+     * latched, it runs exclusively: other operations on the tree wait until it
+     * is committed, reads of {@link Snapshot}s don't. If an insert fails, none of
+     * the elements is inserted.
+     *
+     * @param elements elements to insert
+     * @return previous value of each element's key, in the order of the given
+     * elements, or null for keys that did not exist
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    public List<V> insertAll(List<Pair<V>> elements) throws StorageException, PersistentBTreeException {
+        Preconditions.notNull(elements);
+        for (Pair<V> element : elements) {
+            Preconditions.notNull(element.key);
+            Preconditions.notNull(element.value);
+        }
 
-            // If tree is empty
-            if (root == null) {
-                this.createRoot(key, value);
-                this.storageHandler.save(this);
-                this.readWriteLock.writeLock().unlock();
-                if (this.useTransactions)
-                    this.storageHandler.endTransaction();
-                return null;
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        List<V> previous = new ArrayList<>(Collections.nCopies(elements.size(), null));
+        this.modifyExclusively(latches -> {
+            for (int i : sortedIndexes(elements, element -> element.key)) {
+                Pair<V> element = elements.get(i);
+                previous.set(i, this.insertExclusively(element.key, element.value, latches));
             }
+            return null;
+        });
+        return previous;
+    }
 
-            V previousValue = searchAndInsert(key, value);
+    /**
+     * Remove elements in a single transaction, which saves the tree once. The
+     * keys are removed in key order and the batch runs exclusively, like in
+     * {@link #insertAll(List)}. If a removal fails, none of the keys is removed.
+     *
+     * @param keys keys of the elements to remove
+     * @return for each key, in the order of the given keys, the value of the
+     * removed element or null if there was no element with the key
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    public List<V> removeAll(List<String> keys) throws StorageException, PersistentBTreeException {
+        Preconditions.notNull(keys);
+        keys.forEach(Preconditions::notNull);
 
-            if (previousValue != null) {
-                this.storageHandler.save(this);
-                this.readWriteLock.writeLock().unlock();
-                if (this.useTransactions)
-                    this.storageHandler.endTransaction();
-                return previousValue;
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        List<V> removed = new ArrayList<>(Collections.nCopies(keys.size(), null));
+        this.modifyExclusively(latches -> {
+            for (int i : sortedIndexes(keys, key -> key)) {
+                removed.set(i, this.removeExclusively(keys.get(i), latches));
             }
+            return null;
+        });
+        return removed;
+    }
 
-            // If root is full, then tree grows in height
-            if (root.isFull())
-                this.insertFull(key, value);
-                // If root is not full, call insertNonFull for root
-            else
-                root.insertNonFull(key, value);
-            if (this.useTransactions)
-                this.storageHandler.endTransaction();
-            this.storageHandler.save(this);
-            this.readWriteLock.writeLock().unlock();
+    // Indexes of elements, ordered by key and then by position
+    private static <T> List<Integer> sortedIndexes(List<T> elements, Function<T, String> key) {
+        List<Integer> indexes = IntStream.range(0, elements.size()).boxed().collect(Collectors.toList());
+        indexes.sort(Comparator.comparing(i -> key.apply(elements.get(i))));
+        return indexes;
+    }
 
-            return null;
-        } catch (StorageException ex) {
-            if (this.useTransactions)
-                this.root = this.storageHandler.rollbackTransaction();
-            throw ex;
+    /**
+     * Load elements into an empty tree. The tree is built bottom-up (see
+     * {@link BulkLoader}), which writes every node once instead of inserting the
+     * elements one by one. The loaded elements become visible with a single
+     * save of the tree. Until then, written nodes are flushed to storage
+     * periodically, so the elements don't have to fit in memory. If the load
+     * fails, the tree stays empty.
+     *
+     * @param elements   elements to load, in strictly ascending key order
+     * @param fillFactor fraction of the maximum number of elements that nodes
+     *                   are filled with, in (0, 1]
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when the tree is
+     *                                  closed or not empty
+     */
+    public void bulkLoad(Iterator<Pair<V>> elements, double fillFactor) throws StorageException,
+            PersistentBTreeException {
+        Preconditions.notNull(elements);
+        BulkLoader<V> loader = new BulkLoader<>(this.minimumDegree, fillFactor, this.storageHandler);
+
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        boolean loaded = this.modify(latches -> {
+            // Other operations wait until the loaded tree is complete
+            latches.lock(this.rootLatch.writeLock());
+            if (this.root != null)
+                return false;
+
+            while (elements.hasNext()) {
+                loader.add(elements.next());
+            }
+
+            this.replaceRoot(loader.finish(latches), latches);
+            return true;
+        });
+
+        if (!loaded) {
+            throw new PersistentBTreeException("Could not bulk load elements because tree is not empty");
         }
     }
 
+    /**
+     * Get statistics about how densely the nodes of the tree are filled. The
+     * tree is walked one root-to-leaf path at a time, so operations can run in
+     * between. Changes made while walking may or may not be counted.
+     *
+     * @return fill statistics of the tree
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    public FillStatistics getFillStatistics() throws StorageException, PersistentBTreeException {
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        long nodes = 0;
+        long leaves = 0;
+        long elements = 0;
+        int height = 0;
+        String fromKey = null;
+
+        do {
+            this.readWriteLock.readLock().lock();
+            NodeLatches<V> latches = new NodeLatches<>();
+
+            try {
+                PersistentBTreeNode<V> node = this.latchRoot(latches, false);
+                if (node == null)
+                    break;
+
+                String nextKey = null;
+                int depth = 1;
+                boolean entered = fromKey == null; // the root is counted on the first path
+                while (!node.isLeaf()) {
+                    if (entered) {
+                        nodes++;
+                        elements += node.getElementCount();
+                    }
+
+                    // The path enters new nodes below the node holding the key it starts from
+                    entered = entered || node.contains(fromKey);
+
+                    int idx = node.findChildAfter(fromKey);
+                    if (idx < node.getElementCount())
+                        nextKey = node.getKey(idx);
+
+                    PersistentBTreeNode<V> child = node.getChild(idx);
+                    latches.shared(child);
+                    latches.release(node);
+                    node = child;
+                    depth++;
+                }
+
+                nodes++;
+                leaves++;
+                elements += node.getElementCount();
+                height = Math.max(height, depth);
+                fromKey = nextKey;
+            } finally {
+                latches.releaseAll();
+                this.readWriteLock.readLock().unlock();
+            }
+        } while (fromKey != null);
+
+        return new FillStatistics(this.minimumDegree, nodes, leaves, elements, height);
+    }
+
+    /**
+     * Pack the nodes on one root-to-leaf path into fewer nodes (see
+     * {@link PersistentBTreeNode#compactChildren}). The path leads to the keys
+     * following {@code fromKey}, so repeating the compaction with the returned
+     * key until it is null visits every node of the tree (see
+     * {@link BTreeCompactor}). Each path is compacted in its own transaction.
+     *
+     * @param fromKey key after which the path starts, null for the first path
+     * @return key to compact the next path from and the number of written
+     * nodes
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    CompactedPath compactPath(String fromKey) throws StorageException, PersistentBTreeException {
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        return this.modify(latches -> {
+            // The root may lose its last element
+            latches.lock(this.rootLatch.writeLock());
+
+            PersistentBTreeNode<V> node = this.root;
+            if (node == null)
+                return new CompactedPath(null, 0);
+            latches.exclusive(node);
+
+            String nextKey = null;
+            int written = 0;
+            boolean root = true;
+            boolean rootReplaced = false;
+
+            while (!node.isLeaf()) {
+                int idx = node.findChildAfter(fromKey);
+                written += node.compactChildren(idx, root, latches);
+
+                // The merged children become the new root, which is compacted again
+                if (root && node.getElementCount() == 0) {
+                    node = node.getChild(0);
+                    this.replaceRoot(node, latches);
+                    rootReplaced = true;
+                    continue;
+                }
+
+                if (root && !rootReplaced)
+                    latches.unlock(this.rootLatch.writeLock());
+                root = false;
+
+                if (idx < node.getElementCount())
+                    nextKey = node.getKey(idx);
+
+                PersistentBTreeNode<V> child = node.getChild(idx);
+                latches.exclusive(child);
+                latches.releaseIfUnmodified(node);
+                node = child;
+            }
+
+            if (root && !rootReplaced)
+                latches.unlock(this.rootLatch.writeLock());
+            return new CompactedPath(nextKey, written);
+        });
+    }
+
     /**
      * Delete tree from storage
      *
@@ -318,64 +579,390 @@ public class PersistentBTree<V> implements Serializable, Closeable {
     }
 
     /**
-     * Search for an element with {@code key}. If found, replace it's value with
-     * {@code value}.
+     * Take a snapshot of the tree. The snapshot reads the tree as it is now,
+     * no matter which modifications follow, and its reads never wait for
+     * writers. Taking a snapshot waits until running modifications are
+     * committed. The snapshot must be closed, so the versions of the nodes it
+     * reads can be reclaimed.
+     *
+     * @return snapshot of the tree
+     * @throws PersistentBTreeException An exception is thrown when an operation is
+     *                                  performed in a closed tree
+     */
+    public Snapshot<V> snapshot() throws PersistentBTreeException {
+        if (treeClosed.get()) {
+            throw new PersistentBTreeException(
+                    "Could not perform operation because tree is closed");
+        }
+
+        this.snapshotGate.writeLock().lock();
+        try {
+            long snapshotEpoch = this.epoch.get();
+            synchronized (this.snapshotEpochs) {
+                this.snapshotEpochs.merge(snapshotEpoch, 1, Integer::sum);
+                this.snapshotsOpen = true;
+            }
+
+            // No writer holds a latch, so the root is stable
+            return new Snapshot<>(this, this.root, snapshotEpoch);
+        } finally {
+            this.snapshotGate.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Close a snapshot and reclaim the node versions that no open snapshot
+     * reads anymore
+     *
+     * @param snapshotEpoch epoch of the closed snapshot
+     */
+    void closeSnapshot(long snapshotEpoch) {
+        synchronized (this.snapshotEpochs) {
+            this.snapshotEpochs.computeIfPresent(snapshotEpoch, (key, count) -> count > 1 ? count - 1 : null);
+            this.snapshotsOpen = !this.snapshotEpochs.isEmpty();
+
+            // Holding the lock keeps new snapshots from being taken while their versions would be removed
+            this.versionedNodes.removeIf(node -> node.trimVersions(this.snapshotEpochs.navigableKeySet()));
+        }
+    }
+
+    /**
+     * Get the epoch of the last commit, a snapshot taken now reads this epoch
+     *
+     * @return current epoch of the tree
+     */
+    long getEpoch() {
+        return this.epoch.get();
+    }
+
+    /**
+     * Get the epoch of the oldest open snapshot
+     *
+     * @return epoch of the oldest open snapshot, or {@link Long#MAX_VALUE} if
+     * no snapshot is open
+     */
+    long getOldestSnapshotEpoch() {
+        synchronized (this.snapshotEpochs) {
+            return this.snapshotEpochs.isEmpty() ? Long.MAX_VALUE : this.snapshotEpochs.firstKey();
+        }
+    }
+
+    /**
+     * Get the number of nodes that keep versions for open snapshots
+     *
+     * @return number of nodes with versions
+     */
+    int getVersionedNodeCount() {
+        synchronized (this.snapshotEpochs) {
+            return this.versionedNodes.size();
+        }
+    }
+
+    // Keep the version of a node that is about to be modified for the open snapshots
+    private void preserveVersion(PersistentBTreeNode<V> node) {
+        try {
+            node.preserveVersion();
+        } catch (StorageException e) {
+            throw new IllegalStateException("Could not keep version of node " + node.getId(), e);
+        }
+
+        synchronized (this.snapshotEpochs) {
+            if (!node.trimVersions(this.snapshotEpochs.navigableKeySet())) {
+                this.versionedNodes.add(node);
+            }
+        }
+    }
+
+    /**
+     * Run a modifying operation in its own transaction. If the storage handler
+     * supports concurrent transactions, operations on different nodes run in
+     * parallel. Otherwise, modifying operations are serialized, but still don't
+     * block readers of nodes they don't modify. If the operation fails, the
+     * transaction is rolled back and the modified nodes are restored.
+     *
+     * @param modification operation to run
+     * @param <T>          Type of the operation's result
+     * @return result of the operation
+     * @throws StorageException An exception is thrown if a problem occurs with
+     *                          persistent storage.
+     */
+    private <T> T modify(Modification<V, T> modification) throws StorageException {
+        boolean serialized = !this.useTransactions || !this.storageHandler.supportsConcurrentTransactions();
+
+        this.readWriteLock.readLock().lock();
+        this.snapshotGate.readLock().lock();
+        if (serialized)
+            this.writeLock.lock();
+
+        // Snapshots can't be taken until the operation is committed
+        NodeLatches<V> latches = new NodeLatches<>(this.snapshotsOpen ? this::preserveVersion : null);
+
+        try {
+            if (this.useTransactions)
+                this.storageHandler.beginTransaction();
+
+            T result = modification.apply(latches);
+
+            // Concurrent transactions may only store the root while no other operation can change it
+            if (serialized || latches.holds(this.rootLatch.writeLock()))
+                this.storageHandler.save(this);
+            if (this.useTransactions)
+                this.storageHandler.endTransaction();
+            latches.commit(this.epoch.incrementAndGet());
+
+            return result;
+        } catch (StorageException | RuntimeException ex) {
+            if (this.useTransactions) {
+                this.storageHandler.rollbackTransaction();
+                latches.restore();
+            }
+            throw ex;
+        } finally {
+            latches.releaseAll();
+            if (serialized)
+                this.writeLock.unlock();
+            this.snapshotGate.readLock().unlock();
+            this.readWriteLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Run a modifying operation in its own transaction while no other operation
+     * runs on the tree. The operation may latch nodes in any order, e.g. to
+     * apply a batch, since no other operation holds latches. The root pointer is
+     * latched exclusively, so the tree is saved once the operation is done.
      *
-     * @param key   Key to search
-     * @param value Value to replace with
-     * @return Previous value.
+     * @param modification operation to run
+     * @param <T>          Type of the operation's result
+     * @return result of the operation
      * @throws StorageException An exception is thrown if a problem occurs with
      *                          persistent storage.
      */
-    private V searchAndInsert(String key, V value) throws StorageException {
-        if (this.root == null)
+    private <T> T modifyExclusively(Modification<V, T> modification) throws StorageException {
+        this.readWriteLock.writeLock().lock();
+        try {
+            return this.modify(latches -> {
+                latches.lock(this.rootLatch.writeLock());
+                return modification.apply(latches);
+            });
+        } finally {
+            this.readWriteLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Insert an element. The leaf where the key belongs is first searched with
+     * shared latches on inner nodes. Only if the leaf is full, the tree is
+     * traversed again with exclusive latches, splitting full nodes on the way.
+     *
+     * @param key     key of element to insert
+     * @param value   value of element to insert
+     * @param latches latches of the current operation
+     * @return Previous value or null if it does not exist.
+     * @throws StorageException An exception is thrown if a problem occurs with
+     *                          persistent storage.
+     */
+    private V insert(String key, V value, NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> node = this.latchRoot(latches, true);
+        PersistentBTreeNode<V> leaf = node == null ? null : node.latchLeaf(key, latches);
+
+        if (leaf != null && (!leaf.isFull() || leaf.contains(key))) {
+            return leaf.insertNonFull(key, value, latches);
+        }
+
+        latches.releaseAll();
+        latches.lock(this.rootLatch.writeLock());
+
+        // If tree is empty
+        if (this.root == null) {
+            this.createRoot(key, value, latches);
             return null;
-        else
-            return this.root.searchAndInsert(key, value);
+        }
+
+        node = this.root;
+        latches.exclusive(node);
+
+        // If root is full, then tree grows in height
+        if (node.isFull())
+            return this.insertFull(key, value, latches);
+
+        // The root can't change anymore
+        latches.unlock(this.rootLatch.writeLock());
+        return node.insertNonFull(key, value, latches);
+    }
+
+    /**
+     * Remove an element. If the key is in a leaf that has enough elements, only
+     * the leaf is latched exclusively. Otherwise, the tree is traversed again with
+     * exclusive latches, filling nodes with too few elements on the way.
+     *
+     * @param key     key of the element to remove
+     * @param latches latches of the current operation
+     * @return value of the removed element, or null if there was no element
+     * with the key
+     * @throws StorageException An exception is thrown if a problem occurs with
+     *                          persistent storage.
+     */
+    private V remove(String key, NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> node = this.latchRoot(latches, true);
+        if (node == null)
+            return null;
+
+        PersistentBTreeNode<V> leaf = node.latchLeaf(key, latches);
+        if (leaf != null) {
+            if (!leaf.contains(key))
+                return null;
+
+            if (leaf.getElementCount() >= this.minimumDegree)
+                return leaf.remove(key, latches);
+        }
+
+        latches.releaseAll();
+        latches.lock(this.rootLatch.writeLock());
+
+        node = this.root;
+        if (node == null)
+            return null;
+
+        latches.exclusive(node);
+
+        // The root only changes if it loses its last element
+        if (node.getElementCount() > 1) {
+            latches.unlock(this.rootLatch.writeLock());
+            return node.remove(key, latches);
+        }
+
+        // Call the remove function for root
+        V result = node.remove(key, latches);
+
+        // If the root node has 0 keys, make its first child as the new root
+        // if it has a child, otherwise set root as NULL
+        if (node.getElementCount() == 0) {
+            this.replaceRoot(node.isLeaf() ? null : node.getChild(0), latches);
+        }
+
+        return result;
+    }
+
+    /**
+     * Insert an element, latching the nodes on its path exclusively. The root
+     * pointer must be latched exclusively.
+     *
+     * @param key     key of element to insert
+     * @param value   value of element to insert
+     * @param latches latches of the current operation
+     * @return Previous value or null if it does not exist.
+     * @throws StorageException An exception is thrown if a problem occurs with
+     *                          persistent storage.
+     */
+    private V insertExclusively(String key, V value, NodeLatches<V> latches) throws StorageException {
+        if (this.root == null) {
+            this.createRoot(key, value, latches);
+            return null;
+        }
+
+        PersistentBTreeNode<V> node = this.root;
+        latches.exclusive(node);
+
+        return node.isFull() ? this.insertFull(key, value, latches) : node.insertNonFull(key, value, latches);
+    }
+
+    /**
+     * Remove an element, latching the nodes on its path exclusively. The root
+     * pointer must be latched exclusively.
+     *
+     * @param key     key of the element to remove
+     * @param latches latches of the current operation
+     * @return value of the removed element, or null if there was no element
+     * with the key
+     * @throws StorageException An exception is thrown if a problem occurs with
+     *                          persistent storage.
+     */
+    private V removeExclusively(String key, NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> node = this.root;
+        if (node == null)
+            return null;
+
+        latches.exclusive(node);
+        V result = node.remove(key, latches);
+
+        if (node.getElementCount() == 0) {
+            this.replaceRoot(node.isLeaf() ? null : node.getChild(0), latches);
+        }
+
+        return result;
+    }
+
+    /**
+     * Latch the root node. The root pointer is latched while the root is
+     * latched, so the root can't be replaced in between.
+     *
+     * @param latches       latches of the current operation
+     * @param exclusiveLeaf true if the root should be latched exclusively if it
+     *                      is a leaf
+     * @return the latched root, or null if the tree is empty
+     */
+    private PersistentBTreeNode<V> latchRoot(NodeLatches<V> latches, boolean exclusiveLeaf) {
+        latches.lock(this.rootLatch.readLock());
+
+        PersistentBTreeNode<V> node = this.root;
+        if (node != null)
+            latches.latch(node, exclusiveLeaf && node.isLeaf());
+
+        latches.unlock(this.rootLatch.readLock());
+        return node;
+    }
+
+    /**
+     * Replace the root. The root pointer must be latched exclusively.
+     *
+     * @param newRoot new root
+     * @param latches latches of the current operation
+     */
+    private void replaceRoot(PersistentBTreeNode<V> newRoot, NodeLatches<V> latches) {
+        PersistentBTreeNode<V> previousRoot = this.root;
+        latches.addUndo(() -> this.root = previousRoot);
+        this.root = newRoot;
     }
 
     /**
      * Create a new root with one element.
      *
-     * @param key   key of the root element
-     * @param value value of the root element
+     * @param key     key of the root element
+     * @param value   value of the root element
+     * @param latches latches of the current operation
      * @throws StorageException An exception is thrown if a problem occurs with
      *                          persistent storage.
      */
-    private void createRoot(String key, V value) throws StorageException {
+    private void createRoot(String key, V value, NodeLatches<V> latches) throws StorageException {
         // Create new node
-        root = new PersistentBTreeNode<>(this.minimumDegree, true, new Pair<>(key, value), this.storageHandler);
+        this.replaceRoot(new PersistentBTreeNode<>(this.minimumDegree, true, new Pair<>(key, value),
+                this.storageHandler), latches);
     }
 
     /**
      * Insert key-value pair into full root.
      *
-     * @param key   key of element to insert
-     * @param value value of element to insert
+     * @param key     key of element to insert
+     * @param value   value of element to insert
+     * @param latches latches of the current operation
+     * @return Previous value or null if it does not exist.
      * @throws StorageException An exception is thrown if a problem occurs with
      *                          persistent storage.
      */
-    private void insertFull(String key, V value) throws StorageException {
+    private V insertFull(String key, V value, NodeLatches<V> latches) throws StorageException {
         // Allocate memory for new root
         PersistentBTreeNode<V> s = new PersistentBTreeNode<>(this.minimumDegree, false, this.storageHandler);
-        Chunk<V> chunk = s.getChunk();
+        latches.exclusive(s);
 
         // Make old root as child of new root
-        s.getChildren().set(0, root);
-
-        // Split the old root and move 1 key to the new root
-        s.splitChild(0, chunk);
-
-        s.setChunk(chunk);
-
-        // New root has two children now. Decide which of the
-        // two children is going to have new key
-        int i = chunk.get(0).key.compareTo(key) < 0 ? 1 : 0;
-
-        s.getChildren().get(i).insertNonFull(key, value);
+        s.setChild(0, this.root);
 
         // Change root
-        root = s;
+        this.replaceRoot(s, latches);
+
+        // The new root splits the old one before the element is inserted
+        return s.insertNonFull(key, value, latches);
     }
 
     /**
@@ -405,4 +992,32 @@ public class PersistentBTree<V> implements Serializable, Closeable {
         this.root = root;
     }
 
+    /**
+     * Result of compacting one path of the tree (see {@link #compactPath})
+     */
+    static final class CompactedPath {
+
+        final String nextKey; // null if the path was the last one
+        final int writtenNodes;
+
+        CompactedPath(String nextKey, int writtenNodes) {
+            this.nextKey = nextKey;
+            this.writtenNodes = writtenNodes;
+        }
+
+    }
+
+    /**
+     * Modifying operation on the tree
+     *
+     * @param <V> Type of values used in the BTree
+     * @param <T> Type of the operation's result
+     */
+    @FunctionalInterface
+    private interface Modification<V, T> {
+
+        T apply(NodeLatches<V> latches) throws StorageException;
+
+    }
+
 }
@@ -68,7 +68,7 @@ public class PersistentBTreeDisplay<V> {
                 // If this is not leaf, then before printing key[i],
                 // traverse the subtree rooted with child C[i].
                 if (!node.leaf) {
-                    this.traverse(node.children.get(i), result);
+                    this.traverse(node.getChildren().get(i), result);
                 }
 
                 Chunk<V> chunk;
@@ -89,7 +89,7 @@ public class PersistentBTreeDisplay<V> {
 
             // Print the subtree rooted with last child
             if (!node.leaf)
-                this.traverse(node.children.get(i), result);
+                this.traverse(node.getChildren().get(i), result);
         }
 
         // A function to traverse all nodes in a subtree rooted with this node
@@ -103,7 +103,7 @@ public class PersistentBTreeDisplay<V> {
                 // If this is not leaf, then before printing key[i],
                 // traverse the subtree rooted with child C[i].
                 if (!node.leaf) {
-                    this.traverseCondensed(node.children.get(i), result);
+                    this.traverseCondensed(node.getChildren().get(i), result);
                 }
 
                 Chunk<V> chunk;
@@ -124,7 +124,7 @@ public class PersistentBTreeDisplay<V> {
 
             // Print the subtree rooted with last child
             if (!node.leaf)
-                this.traverseCondensed(node.children.get(i), result);
+                this.traverseCondensed(node.getChildren().get(i), result);
         }
 
         void traverseSpecial(PersistentBTreeNode<V> node, StringBuilder result) {
@@ -160,7 +160,7 @@ public class PersistentBTreeDisplay<V> {
 
             result.append("Children: ");
 
-            for (PersistentBTreeNode<V> bTreeNode : node.children) {
+            for (PersistentBTreeNode<V> bTreeNode : node.getChildren()) {
 
                 if (bTreeNode == null) {
                     break;
@@ -171,7 +171,7 @@ public class PersistentBTreeDisplay<V> {
 
             result.append("\n");
 
-            for (PersistentBTreeNode<V> bTreeNode : node.children) {
+            for (PersistentBTreeNode<V> bTreeNode : node.getChildren()) {
 
                 if (bTreeNode == null) {
                     break;
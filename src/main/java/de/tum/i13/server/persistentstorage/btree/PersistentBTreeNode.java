@@ -6,23 +6,33 @@ import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
 import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkStorageHandler;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePageView;
 import de.tum.i13.shared.Preconditions;
 
-import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.NavigableSet;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
- * Node of a {@link PersistentBTree}
+ * Node of a {@link PersistentBTree}. Each node is persisted in its own page
+ * (see {@link NodePage}), which holds the node's chunk and the ids of its
+ * children. Children are loaded from storage the first time they are accessed.
+ * <p>
+ * Every node has a latch, which guards its metadata and chunk. Operations latch
+ * the nodes they access through {@link NodeLatches}. While {@link Snapshot}s
+ * are open, nodes keep their previous states as {@link NodeVersion}s, so
+ * snapshots read them without waiting for writers.
  */
-public class PersistentBTreeNode<V> implements Serializable {
+public class PersistentBTreeNode<V> {
 
     int minimumDegree; // Minimum degree (defines the range for number of keys), see PersistentBTree.
-    List<PersistentBTreeNode<V>> children; // List of children
+    List<Integer> childrenIds; // Ids of the children, null if there is no child at a position
+    List<PersistentBTreeNode<V>> children; // Children loaded in memory, null if not loaded (yet)
     int elementCount; // Current number of elements
     boolean leaf; // Is true when node is leaf. Otherwise false
 
@@ -30,6 +40,11 @@ public class PersistentBTreeNode<V> implements Serializable {
     ChunkStorageHandler<V> chunkStorageInterface; // Handle chunk storing
     PersistentBTreeStorageHandler<V> treeStorageInterface; // Used to generate chunk storage handler
 
+    final ReentrantReadWriteLock latch = new ReentrantReadWriteLock(); // Guards the node's metadata and chunk
+    int modCount; // Number of modifications, used to detect changes of latched nodes
+    volatile long epoch; // Epoch of the commit that produced the current state (see Snapshot)
+    volatile NodeVersion<V> versions; // Previous states kept for open snapshots, newest first
+
     /**
      * Creates a B-Tree node with the specified parameters. This also creates a new
      * persistent Chunk using the handler provided by the tree persistent storage
@@ -50,11 +65,12 @@ public class PersistentBTreeNode<V> implements Serializable {
 
         Preconditions.check(minimumDegree >= 2);
         this.minimumDegree = minimumDegree;
+        this.childrenIds = new ArrayList<>(Collections.nCopies((2 * minimumDegree), null));
         this.children = new ArrayList<>(Collections.nCopies((2 * minimumDegree), null));
         this.leaf = leaf;
 
         // Storage
-        this.id = this.hashCode();
+        this.id = treeStorageHandler.allocateNodeId();
         this.chunkStorageInterface = treeStorageHandler.createChunkStorageHandler(Integer.toString(this.id));
         this.treeStorageInterface = treeStorageHandler;
 
@@ -63,7 +79,7 @@ public class PersistentBTreeNode<V> implements Serializable {
                 : new ChunkImpl<>(minimumDegree, Arrays.asList(initialElement));
 
         this.elementCount = initialElement == null ? 0 : 1;
-        this.chunkStorageInterface.createChunk(newChunk);
+        this.chunkStorageInterface.createPage(new NodePage<>(leaf, this.childrenIds, newChunk));
     }
 
     /**
@@ -86,122 +102,322 @@ public class PersistentBTreeNode<V> implements Serializable {
     }
 
     /**
-     * Search a key in the subtree rooted with this node. Insert 'value' if key is
-     * found and 'insert' is true
+     * Creates a B-Tree node with the given elements and children. This also
+     * creates a new persistent Chunk using the handler provided by the tree
+     * persistent storage implementation. The children are not loaded until they
+     * are accessed.
      *
-     * @param key    key to search
-     * @param insert true if the parameter value is to be inserted if key is found
-     * @param value  value to insert if insert is true and key is found.
-     * @return The value associated with {@code key} or null if it is not present.
-     * @throws StorageException Is thrown when there is an error while
-     *                          reading/writing contained chunks
+     * @param minimumDegree      minimum degree of the tree (see PersistentBTree for
+     *                           details)
+     * @param elements           elements of the node, sorted by key
+     * @param childrenIds        ids of the node's children, empty for a leaf
+     * @param treeStorageHandler handler used to store the tree (used to generate
+     *                           the contained chunk storage handler)
+     * @throws StorageException Is thrown when there is an error while creating the
+     *                          contained chunk
      */
-    private V search(String key, boolean insert, V value) throws StorageException {
-        Chunk<V> chunk = this.getChunk();
+    PersistentBTreeNode(int minimumDegree, List<Pair<V>> elements, List<Integer> childrenIds,
+                        PersistentBTreeStorageHandler<V> treeStorageHandler) throws StorageException {
 
-        // Find the first key greater than or equal to key
-        int i = chunk.findIndexOfFirstGreaterOrEqualThen(key);
+        Preconditions.check(minimumDegree >= 2);
+        Preconditions.check(childrenIds.isEmpty() || childrenIds.size() == elements.size() + 1);
+        this.minimumDegree = minimumDegree;
+        this.childrenIds = new ArrayList<>(Collections.nCopies((2 * minimumDegree), null));
+        this.children = new ArrayList<>(Collections.nCopies((2 * minimumDegree), null));
+        this.leaf = childrenIds.isEmpty();
 
-        if (i < this.elementCount) {
-            Pair<V> pair = chunk.get(i);
-            // If the found key is equal to key, return this node
-            if (pair != null && pair.key.equals(key)) {
-                if (insert) {
-                    chunk.set(i, new Pair<>(key, value));
-                    this.setChunk(chunk);
-                }
+        for (int i = 0; i < childrenIds.size(); i++) {
+            this.childrenIds.set(i, childrenIds.get(i));
+        }
+
+        // Storage
+        this.id = treeStorageHandler.allocateNodeId();
+        this.chunkStorageInterface = treeStorageHandler.createChunkStorageHandler(Integer.toString(this.id));
+        this.treeStorageInterface = treeStorageHandler;
+
+        this.elementCount = elements.size();
+        this.chunkStorageInterface.createPage(new NodePage<>(leaf, this.childrenIds,
+                new ChunkImpl<>(minimumDegree, elements)));
+    }
+
+    /**
+     * Creates a B-Tree node from its stored page
+     *
+     * @param id                 id of the node
+     * @param page               stored page of the node
+     * @param chunkStorage       handler of the node's chunk
+     * @param treeStorageHandler handler used to store the tree
+     */
+    private PersistentBTreeNode(int id, NodePage<V> page, ChunkStorageHandler<V> chunkStorage,
+                                PersistentBTreeStorageHandler<V> treeStorageHandler) {
+        this.minimumDegree = page.getChildrenIds().size() / 2;
+        this.childrenIds = new ArrayList<>(page.getChildrenIds());
+        this.children = new ArrayList<>(Collections.nCopies(this.childrenIds.size(), null));
+        this.elementCount = page.getChunk().getElementCount();
+        this.leaf = page.isLeaf();
+
+        this.id = id;
+        this.chunkStorageInterface = chunkStorage;
+        this.treeStorageInterface = treeStorageHandler;
+    }
+
+    /**
+     * Load a node from storage. Its children are only loaded when they are
+     * accessed.
+     *
+     * @param id                 id of the node
+     * @param treeStorageHandler handler used to store the tree
+     * @param <V>                Type of values used in the BTree
+     * @return loaded node
+     * @throws StorageException Is thrown when the node's page can't be read
+     */
+    public static <V> PersistentBTreeNode<V> load(int id, PersistentBTreeStorageHandler<V> treeStorageHandler)
+            throws StorageException {
+        ChunkStorageHandler<V> chunkStorage = treeStorageHandler.createChunkStorageHandler(Integer.toString(id));
+        return new PersistentBTreeNode<>(id, chunkStorage.readPage(), chunkStorage, treeStorageHandler);
+    }
 
-                return pair.value;
+    /**
+     * Search a key in the subtree rooted with this node. The node must be latched
+     * by the caller. Its descendants are latched for reading one after the other,
+     * each one before the latch of its parent is released (latch coupling).
+     *
+     * @param key     key to search
+     * @param latches latches of the current operation
+     * @return The value associated with {@code key} or null if it is not present.
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          contained chunks
+     */
+    V search(String key, NodeLatches<V> latches) throws StorageException {
+        NodePageView<V> view = this.chunkStorageInterface.readView();
+        int i;
+
+        if (view != null) {
+            // Only the value of a matching key is decoded
+            i = view.findIndexOfFirstGreaterOrEqualThen(key);
+            if (i < view.getElementCount() && view.compareKey(key, i) == 0) {
+                return view.getValue(i);
             }
+        } else {
+            Chunk<V> chunk = this.getChunk();
+
+            // Find the first key greater than or equal to key
+            i = chunk.findIndexOfFirstGreaterOrEqualThen(key);
+            if (i < this.elementCount) {
+                Pair<V> pair = chunk.get(i);
+                if (pair != null && pair.key.equals(key)) {
+                    return pair.value;
+                }
+            }
+
+            // Remove chunk from memory
+            chunk.releaseStoredElements();
         }
 
         // If the key is not found here and this is a leaf node
         if (leaf)
             return null;
 
-        // Remove chunk from memory
+        // Go to the appropriate child
+        PersistentBTreeNode<V> child = this.getChild(i);
+        latches.shared(child);
+        latches.release(this);
+        return child.search(key, latches);
+    }
+
+    /**
+     * Find the leaf where {@code key} is or would be inserted. Inner nodes are
+     * latched for reading and the leaf for writing, using latch coupling. The node
+     * must be latched by the caller, exclusively if it is a leaf.
+     *
+     * @param key     key to search
+     * @param latches latches of the current operation
+     * @return the leaf, latched exclusively, or null if the key is in an inner
+     * node. In the latter case, no node of the subtree stays latched.
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          contained chunks
+     */
+    PersistentBTreeNode<V> latchLeaf(String key, NodeLatches<V> latches) throws StorageException {
+        if (leaf)
+            return this;
+
+        int i = this.locate(key);
+        if (i >= 0) {
+            latches.release(this);
+            return null;
+        }
+
+        PersistentBTreeNode<V> child = this.getChild(-i - 1);
+        latches.latch(child, child.leaf);
+        latches.release(this);
+        return child.latchLeaf(key, latches);
+    }
+
+    /**
+     * Check if the node itself contains an element with {@code key}
+     *
+     * @param key key to search
+     * @return true if the key is in this node
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          the contained chunk
+     */
+    boolean contains(String key) throws StorageException {
+        return this.locate(key) >= 0;
+    }
+
+    /**
+     * Find the position of a key in this node
+     *
+     * @param key key to search
+     * @return index of the key, if it is in the node. Otherwise,
+     * {@code (-(insertion point) - 1)}, where the insertion point is the index of
+     * the first greater key (like {@link java.util.Arrays#binarySearch}).
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          the contained chunk
+     */
+    private int locate(String key) throws StorageException {
+        NodePageView<V> view = this.chunkStorageInterface.readView();
+        if (view != null) {
+            int i = view.findIndexOfFirstGreaterOrEqualThen(key);
+            return i < view.getElementCount() && view.compareKey(key, i) == 0 ? i : -i - 1;
+        }
+
+        Chunk<V> chunk = this.getChunk();
+        int i = chunk.findIndexOfFirstGreaterOrEqualThen(key);
+        boolean found = i < this.elementCount && chunk.get(i).key.equals(key);
         chunk.releaseStoredElements();
 
-        // Go to the appropriate child
-        return children.get(i).search(key, insert, value);
+        return found ? i : -i - 1;
     }
 
     /**
-     * Searches for key-value pairs in the range [lowerBound-upperBound] (limits
-     * included)
+     * Searches for key-value pairs in the range [lowerBound-upperBound] in key
+     * order and adds them to {@code result}, until it holds {@code limit}
+     * elements. The lower bound is excluded if {@code inclusive} is false, which
+     * allows a search to continue after the last key it returned. The node must
+     * be latched by the caller, its descendants are latched for reading while
+     * they are visited.
      *
      * @param lowerBound lower bound for keys
-     * @param upperBound upper bounds for keys
-     * @return key-value pairs with keys in range [lowerBound-upperBound] in the
-     * subtree rooted in the current node
+     * @param inclusive  true if the lower bound is included in the range
+     * @param upperBound upper bounds for keys (included)
+     * @param limit      maximum number of elements in {@code result}
+     * @param result     list where the found key-value pairs are added
+     * @param latches    latches of the current operation
+     * @return false if the search stopped because {@code result} is full
      * @throws StorageException An exception is thrown if a problem occurs
      *                          with persistent storage.
      */
-    LinkedList<Pair<V>> searchRange(String lowerBound, String upperBound) throws StorageException {
-        LinkedList<Pair<V>> result = new LinkedList<>();
+    boolean searchRange(String lowerBound, boolean inclusive, String upperBound, int limit, List<Pair<V>> result,
+                        NodeLatches<V> latches) throws StorageException {
+        NodePageView<V> view = this.chunkStorageInterface.readView();
+        if (view != null) {
+            return this.searchRange(lowerBound, inclusive, upperBound, limit, result, view, latches);
+        }
+
         Chunk<V> chunk = this.getChunk();
 
-        int i = chunk.findIndexOfFirstGreaterOrEqualThen(lowerBound);
+        int i = inclusive ? chunk.findIndexOfFirstGreaterOrEqualThen(lowerBound)
+                : chunk.findIndexOfFirstGreaterThen(lowerBound);
         int j = chunk.findIndexOfFirstGreaterThen(upperBound);
 
-        for (; i < Math.min(this.elementCount, j); i++) {
-            Pair<V> pair = chunk.get(i);
+        try {
+            for (; i < Math.min(this.elementCount, j); i++) {
+                Pair<V> pair = chunk.get(i);
 
-            if (!this.leaf && !pair.key.equals(lowerBound)) {
-                result.addAll(this.children.get(i).searchRange(lowerBound, upperBound));
-            }
+                if (!this.leaf && !pair.key.equals(lowerBound)
+                        && !this.searchChildRange(i, lowerBound, inclusive, upperBound, limit, result, latches)) {
+                    return false;
+                }
 
-            result.addLast(pair);
+                result.add(pair);
+                if (result.size() >= limit) {
+                    return false;
+                }
+            }
+        } finally {
+            chunk.releaseStoredElements();
         }
 
-        chunk.releaseStoredElements();
-
-        // Print the subtree rooted with last child
-        if (!this.leaf && (i == this.elementCount || i == j))
-            result.addAll(this.children.get(i).searchRange(lowerBound, upperBound));
-
-        return result;
+        // Search the subtree rooted with last child
+        return this.leaf || this.searchChildRange(i, lowerBound, inclusive, upperBound, limit, result, latches);
     }
 
     /**
-     * Search a key in the subtree rooted with this node.
+     * Searches for key-value pairs in the range [lowerBound-upperBound], reading
+     * the node's elements from a view of its stored page (see
+     * {@link #searchRange(String, boolean, String, int, List, NodeLatches)})
      *
-     * @param key key to search
-     * @return The value associated with {@code key} or null if it is not present.
-     * @throws StorageException Is thrown when there is an error while
-     *                          reading/writing contained chunks
+     * @param lowerBound lower bound for keys
+     * @param inclusive  true if the lower bound is included in the range
+     * @param upperBound upper bounds for keys (included)
+     * @param limit      maximum number of elements in {@code result}
+     * @param result     list where the found key-value pairs are added
+     * @param view       view of the node's page
+     * @param latches    latches of the current operation
+     * @return false if the search stopped because {@code result} is full
+     * @throws StorageException An exception is thrown if a problem occurs
+     *                          with persistent storage.
      */
-    V search(String key) throws StorageException {
-        return this.search(key, false, null);
+    private boolean searchRange(String lowerBound, boolean inclusive, String upperBound, int limit,
+                                List<Pair<V>> result, NodePageView<V> view, NodeLatches<V> latches)
+            throws StorageException {
+        int count = view.getElementCount();
+
+        int i = inclusive ? view.findIndexOfFirstGreaterOrEqualThen(lowerBound)
+                : view.findIndexOfFirstGreaterThen(lowerBound);
+        int j = view.findIndexOfFirstGreaterThen(upperBound);
+
+        // Only elements in the range are decoded
+        for (; i < Math.min(count, j); i++) {
+            if (!this.leaf && view.compareKey(lowerBound, i) != 0
+                    && !this.searchChildRange(i, lowerBound, inclusive, upperBound, limit, result, latches)) {
+                return false;
+            }
+
+            result.add(view.get(i));
+            if (result.size() >= limit) {
+                return false;
+            }
+        }
+
+        // Search the subtree rooted with last child
+        return this.leaf || this.searchChildRange(i, lowerBound, inclusive, upperBound, limit, result, latches);
     }
 
-    /**
-     * Search a key in the subtree rooted with this node. If key is found change
-     * value to 'value'
-     *
-     * @param key   key to search
-     * @param value value to insert if found
-     * @return The value associated with {@code key} or null if it is not present.
-     * @throws StorageException Is thrown when there is an error while
-     *                          reading/writing contained chunks
-     */
-    V searchAndInsert(String key, V value) throws StorageException {
-        return this.search(key, true, value);
+    private boolean searchChildRange(int index, String lowerBound, boolean inclusive, String upperBound, int limit,
+                                     List<Pair<V>> result, NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> child = this.getChild(index);
+        latches.shared(child);
+
+        try {
+            return child.searchRange(lowerBound, inclusive, upperBound, limit, result, latches);
+        } finally {
+            latches.release(child);
+        }
     }
 
     /**
-     * Insert a new element into node. It is assumed that the node is not full
+     * Insert a new element into node, or update the element with the same key
+     * if there is one in the subtree. It is assumed that the node is not full
+     * and latched exclusively. Full nodes on the way down are split, and nodes
+     * that stay unmodified are released as soon as their child is latched.
      *
-     * @param key   key to insert
-     * @param value value to insert
+     * @param key     key to insert
+     * @param value   value to insert
+     * @param latches latches of the current operation
+     * @return previous value of the key, or null if it was not in the subtree
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    void insertNonFull(String key, V value) throws StorageException {
-        // Initialize index as index of rightmost element
-        int i = elementCount - 1;
-
+    V insertNonFull(String key, V value, NodeLatches<V> latches) throws StorageException {
         Chunk<V> chunk = this.getChunk();
+        int i = chunk.findIndexOfFirstGreaterOrEqualThen(key);
+
+        // The key might have been inserted by another operation since it was searched
+        if (i < this.elementCount && chunk.get(i).key.equals(key)) {
+            return this.replace(i, key, value, chunk);
+        }
 
         if (leaf) {
 
@@ -212,31 +428,56 @@ public class PersistentBTreeNode<V> implements Serializable {
 
             this.setChunk(chunk);
             this.setElementCount(chunk.getElementCount());
-        } else // If this node is not leaf
-        {
-            // Find the child which is going to have the new key
-            while (i >= 0 && chunk.get(i).key.compareTo(key) > 0)
-                i--;
+            return null;
+        }
 
-            PersistentBTreeNode<V> child = this.children.get(i + 1);
+        // Find the child which is going to have the new key
+        PersistentBTreeNode<V> child = this.getChild(i);
+        latches.exclusive(child);
+
+        // See if the found child is full
+        if (child.isFull()) {
+            // If the child is full, then split it
+            splitChild(i, chunk);
+
+            // After split, the middle key of children[i] goes up and
+            // children[i] is split into two. See which of the two
+            // is going to have the new key
+            int comparison = chunk.get(i).key.compareTo(key);
+            if (comparison == 0) {
+                return this.replace(i, key, value, chunk);
+            }
 
-            // See if the found child is full
-            if (child.isFull()) {
-                // If the child is full, then split it
-                splitChild(i + 1, chunk);
+            if (comparison < 0) {
+                child = this.getChild(++i);
+                latches.exclusive(child);
+            }
 
-                // After split, the middle key of children[i] goes up and
-                // children[i] is split into two. See which of the two
-                // is going to have the new key
+            this.setChunk(chunk);
+        }
 
-                if (chunk.get(i + 1).key.compareTo(key) < 0)
-                    i++;
+        chunk.releaseStoredElements();
+        latches.releaseIfUnmodified(this);
+        return child.insertNonFull(key, value, latches);
+    }
 
-                this.setChunk(chunk);
-            }
-            chunk.releaseStoredElements();
-            this.children.get(i + 1).insertNonFull(key, value);
-        }
+    /**
+     * Replace the value of an element of this node
+     *
+     * @param i     index of the element
+     * @param key   key of the element
+     * @param value new value
+     * @param chunk chunk of this node
+     * @return previous value
+     * @throws StorageException Is thrown when there is an error while writing
+     *                          the contained chunk
+     */
+    private V replace(int i, String key, V value, Chunk<V> chunk) throws StorageException {
+        V previousValue = chunk.get(i).value;
+        chunk.set(i, new Pair<>(key, value));
+        this.setChunk(chunk);
+
+        return previousValue;
     }
 
     /**
@@ -251,7 +492,7 @@ public class PersistentBTreeNode<V> implements Serializable {
     void splitChild(int i, Chunk<V> parentChunk) throws StorageException {
         // Create a new node which is going to store (minimumDegree-1) keys
         // of child
-        PersistentBTreeNode<V> child = this.children.get(i);
+        PersistentBTreeNode<V> child = this.getChild(i);
         PersistentBTreeNode<V> newNode = new PersistentBTreeNode<>(child.minimumDegree, child.leaf,
                 this.treeStorageInterface);
         newNode.setElementCount(this.minimumDegree - 1);
@@ -264,28 +505,29 @@ public class PersistentBTreeNode<V> implements Serializable {
             newNodeChunk.set(j, childChunk.remove(j + this.minimumDegree));
         }
 
-        newNode.setChunk(newNodeChunk);
-
-        newNodeChunk.releaseStoredElements();
-
         // Copy the last minimumDegree children of child to newNode
         if (!child.leaf) {
             for (int j = 0; j < this.minimumDegree; j++) {
-                newNode.children.set(j, child.children.get(j + this.minimumDegree));
-                child.children.set(j + this.minimumDegree, null);
+                newNode.copyChildFrom(j, child, j + this.minimumDegree);
+                child.setChild(j + this.minimumDegree, null);
             }
         }
 
+        // The children must be set before, they are stored in the same page
+        newNode.setChunk(newNodeChunk);
+
+        newNodeChunk.releaseStoredElements();
+
         // Reduce the number of keys in child
         child.setElementCount(this.minimumDegree - 1);
 
         // Since this node is going to have a new child,
         // create space of new child
         for (int j = this.elementCount; j >= i + 1; j--)
-            this.children.set(j + 1, this.children.get(j));
+            this.copyChildFrom(j + 1, this, j);
 
         // Link the new child to this node
-        this.children.set(i + 1, newNode);
+        this.setChild(i + 1, newNode);
 
         // A key of child will move to this node. Find the location of
         // new key and move all greater keys one space ahead
@@ -319,14 +561,18 @@ public class PersistentBTreeNode<V> implements Serializable {
     }
 
     /**
-     * Remove the key from the sub-tree rooted with this node
+     * Remove the key from the sub-tree rooted with this node. The node must be
+     * latched exclusively. Nodes that stay unmodified are released as soon as
+     * the child to continue with is latched.
      *
-     * @param key key to remove
-     * @return True if an element was removed, false otherwise
+     * @param key     key to remove
+     * @param latches latches of the current operation
+     * @return value of the removed element, or null if there was no element
+     * with the key
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    boolean remove(String key) throws StorageException {
+    V remove(String key, NodeLatches<V> latches) throws StorageException {
         int idx = findKey(key);
 
         Chunk<V> chunk = this.getChunk();
@@ -339,12 +585,12 @@ public class PersistentBTreeNode<V> implements Serializable {
             if (leaf)
                 return removeFromLeaf(idx);
             else
-                return removeFromNonLeaf(idx);
+                return removeFromNonLeaf(idx, latches);
         } else {
 
             // If this node is a leaf node, then the key is not present in tree
             if (leaf) {
-                return false;
+                return null;
             }
 
             // The key to be removed is present in the sub-tree rooted with this node
@@ -354,16 +600,18 @@ public class PersistentBTreeNode<V> implements Serializable {
 
             // If the child where the key is supposed to exist has less that t keys,
             // we fill that child
-            if (children.get(idx).getElementCount() < this.minimumDegree)
-                fill(idx);
+            PersistentBTreeNode<V> child = this.getChild(idx);
+            latches.exclusive(child);
+            if (child.getElementCount() < this.minimumDegree)
+                fill(idx, latches);
 
             // If the last child has been merged, it must have merged with the previous
             // child and so we recurse on the (idx-1)th child. Else, we recurse on the
             // (idx)th child which now has atleast t keys
-            if (flag && idx > this.elementCount)
-                return children.get(idx - 1).remove(key);
-            else
-                return children.get(idx).remove(key);
+            PersistentBTreeNode<V> next = flag && idx > this.elementCount ? this.getChild(idx - 1) : child;
+            latches.exclusive(next);
+            latches.releaseIfUnmodified(this);
+            return next.remove(key, latches);
         }
     }
 
@@ -371,13 +619,14 @@ public class PersistentBTreeNode<V> implements Serializable {
      * A function to remove the idx-th key from this node. Assumes that node is leaf
      *
      * @param idx index of key to remove
-     * @return True if an element was removed, false otherwise
+     * @return value of the removed element
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    private boolean removeFromLeaf(int idx) throws StorageException {
+    private V removeFromLeaf(int idx) throws StorageException {
 
         Chunk<V> chunk = this.getChunk();
+        V value = chunk.get(idx).value;
 
         // Move all the keys after the idx-th pos one place backward
         if (idx < this.elementCount - 1) {
@@ -390,19 +639,20 @@ public class PersistentBTreeNode<V> implements Serializable {
 
         // Reduce the count of keys
         this.decrementElementCount();
-        return true;
+        return value;
     }
 
     /**
      * A function to remove the idx-th key from this node. Assumes that node is non
      * leaf
      *
-     * @param idx index of key to remove
-     * @return True if an element was removed, false otherwise
+     * @param idx     index of key to remove
+     * @param latches latches of the current operation
+     * @return value of the removed element
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    private boolean removeFromNonLeaf(int idx) throws StorageException {
+    private V removeFromNonLeaf(int idx, NodeLatches<V> latches) throws StorageException {
 
         Chunk<V> chunk = this.getChunk();
 
@@ -413,10 +663,15 @@ public class PersistentBTreeNode<V> implements Serializable {
         // find the predecessor 'pred' of element in the subtree rooted at
         // children[idx]. Replace element by pred. Recursively delete pred
         // in children[idx]
-        if (this.getChildren().get(idx).getElementCount() >= this.minimumDegree) {
-            Pair<V> pred = getPred(idx);
+        PersistentBTreeNode<V> child = this.getChild(idx);
+        latches.exclusive(child);
+        PersistentBTreeNode<V> next = this.getChild(idx + 1);
+        latches.exclusive(next);
+
+        if (child.getElementCount() >= this.minimumDegree) {
+            Pair<V> pred = getPred(idx, latches);
             chunk.set(idx, pred);
-            this.getChildren().get(idx).remove(pred.key);
+            child.remove(pred.key, latches);
             this.setChunk(chunk);
         }
 
@@ -427,10 +682,10 @@ public class PersistentBTreeNode<V> implements Serializable {
         // the subtree rooted at children[idx+1]
         // Replace element by succ
         // Recursively delete succ in children[idx+1]
-        else if (this.getChildren().get(idx + 1).getElementCount() >= this.minimumDegree) {
-            Pair<V> succ = getSucc(idx);
+        else if (next.getElementCount() >= this.minimumDegree) {
+            Pair<V> succ = getSucc(idx, latches);
             chunk.set(idx, succ);
-            this.getChildren().get(idx + 1).remove(succ.key);
+            next.remove(succ.key, latches);
             this.setChunk(chunk);
         }
 
@@ -441,47 +696,57 @@ public class PersistentBTreeNode<V> implements Serializable {
         // Delete children[idx+1] and recursively delete element from children[idx]
         else {
             merge(idx);
-            return this.getChildren().get(idx).remove(element.key);
+            return child.remove(element.key, latches);
         }
 
-        return true;
+        return element.value;
     }
 
     /**
-     * Get predecessor of element with index 'idx'
+     * Get predecessor of element with index 'idx'. The nodes on the way are
+     * latched exclusively until the operation ends, so the predecessor can't
+     * change before it is removed.
      *
-     * @param idx index to of element
+     * @param idx     index to of element
+     * @param latches latches of the current operation
      * @return element preceding idx
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    private Pair<V> getPred(int idx) throws StorageException {
+    private Pair<V> getPred(int idx, NodeLatches<V> latches) throws StorageException {
         // Keep moving to the right most node until we reach a leaf
-        PersistentBTreeNode<V> cur = this.getChildren().get(idx);
+        PersistentBTreeNode<V> cur = this.getChild(idx);
 
-        while (!cur.isLeaf())
-            cur = cur.getChildren().get(cur.getElementCount());
+        while (!cur.isLeaf()) {
+            cur = cur.getChild(cur.getElementCount());
+            latches.exclusive(cur);
+        }
 
         // Return the last key of the leaf
         return cur.getChunk().get(cur.getElementCount() - 1);
     }
 
     /**
-     * Get successor of element with index 'idx'
+     * Get successor of element with index 'idx'. The nodes on the way are
+     * latched exclusively until the operation ends, so the successor can't
+     * change before it is removed.
      *
-     * @param idx index to of element
+     * @param idx     index to of element
+     * @param latches latches of the current operation
      * @return element proceding idx
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    private Pair<V> getSucc(int idx) throws StorageException {
+    private Pair<V> getSucc(int idx, NodeLatches<V> latches) throws StorageException {
 
         // Keep moving the left most node starting from children[idx+1] until we reach a
         // leaf
-        PersistentBTreeNode<V> cur = this.getChildren().get(idx + 1);
+        PersistentBTreeNode<V> cur = this.getChild(idx + 1);
 
-        while (!cur.isLeaf())
-            cur = cur.getChildren().get(0);
+        while (!cur.isLeaf()) {
+            cur = cur.getChild(0);
+            latches.exclusive(cur);
+        }
 
         // Return the first key of the leaf
         return cur.getChunk().get(0);
@@ -491,34 +756,70 @@ public class PersistentBTreeNode<V> implements Serializable {
      * Fill children[idx]. Assume that children[idx] has less than minimumDegree - 1
      * keys
      *
-     * @param idx index of child to fill
+     * @param idx     index of child to fill
+     * @param latches latches of the current operation
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
-    private void fill(int idx) throws StorageException {
+    private void fill(int idx, NodeLatches<V> latches) throws StorageException {
+        // Siblings can be latched safely, since this node is latched exclusively
+        PersistentBTreeNode<V> prev = idx != 0 ? this.getChild(idx - 1) : null;
+        PersistentBTreeNode<V> next = idx != this.getElementCount() ? this.getChild(idx + 1) : null;
+        if (prev != null)
+            latches.exclusive(prev);
+        if (next != null)
+            latches.exclusive(next);
 
         // If the previous child(children[idx-1]) has more than minimumDegree-1 keys,
         // borrow a key
         // from that child
-        if (idx != 0 && this.getChildren().get(idx - 1).getElementCount() >= this.minimumDegree)
+        if (prev != null && prev.getElementCount() >= this.minimumDegree)
             borrowFromPrev(idx);
 
             // If the next child(children[idx+1]) has more than minimumDegree-1 keys, borrow
             // a key
             // from that child
-        else if (idx != this.getElementCount()
-                && this.getChildren().get(idx + 1).getElementCount() >= this.minimumDegree)
+        else if (next != null && next.getElementCount() >= this.minimumDegree)
             borrowFromNext(idx);
 
             // Merge children[idx] with its sibling
             // If children[idx] is the last child, merge it with with its previous sibling
             // Otherwise merge it with its next sibling
         else {
-            if (idx != this.getElementCount())
+            if (next != null)
                 merge(idx);
             else
                 merge(idx - 1);
         }
+
+        if (prev != null)
+            latches.releaseIfUnmodified(prev);
+        if (next != null)
+            latches.releaseIfUnmodified(next);
+    }
+
+    /**
+     * Fill the last child until it has at least minimumDegree elements, by
+     * borrowing keys from its previous sibling or merging with it. The node must
+     * be latched exclusively and have at least one element. Used on the right
+     * edge of bulk loaded trees, where the last node of each level may have too
+     * few elements.
+     *
+     * @param latches latches of the current operation
+     * @return the last child once it is filled, latched exclusively
+     * @throws StorageException Is thrown when there is an error while
+     *                          reading/writing contained chunks
+     */
+    PersistentBTreeNode<V> fillLastChild(NodeLatches<V> latches) throws StorageException {
+        PersistentBTreeNode<V> child = this.getChild(this.elementCount);
+        latches.exclusive(child);
+
+        while (child.getElementCount() < this.minimumDegree && this.elementCount > 0) {
+            this.fill(this.elementCount, latches);
+            child = this.getChild(this.elementCount);
+        }
+
+        return child;
     }
 
     /**
@@ -530,8 +831,8 @@ public class PersistentBTreeNode<V> implements Serializable {
      */
     private void borrowFromPrev(int idx) throws StorageException {
 
-        PersistentBTreeNode<V> child = this.getChildren().get(idx);
-        PersistentBTreeNode<V> sibling = this.getChildren().get(idx - 1);
+        PersistentBTreeNode<V> child = this.getChild(idx);
+        PersistentBTreeNode<V> sibling = this.getChild(idx - 1);
 
         // The last key from children[idx-1] goes up to the parent and key[idx-1]
         // from parent is inserted as the first key in children[idx]. Thus, the loses
@@ -550,7 +851,7 @@ public class PersistentBTreeNode<V> implements Serializable {
         // If children[idx] is not a leaf, move all its child pointers one step ahead
         if (!child.isLeaf()) {
             for (int i = child.getElementCount(); i >= 0; --i)
-                child.getChildren().set(i + 1, child.getChildren().get(i));
+                child.copyChildFrom(i + 1, child, i);
         }
 
         // Setting child's first key equal to keys[idx-1] from the current node
@@ -558,8 +859,8 @@ public class PersistentBTreeNode<V> implements Serializable {
 
         // Moving sibling's last child as children[idx]'s first child
         if (!child.isLeaf()) {
-            child.getChildren().set(0, sibling.getChildren().get(sibling.elementCount));
-            sibling.getChildren().set(sibling.elementCount, null);
+            child.copyChildFrom(0, sibling, sibling.elementCount);
+            sibling.setChild(sibling.elementCount, null);
         }
 
         // Moving the key from the sibling to the parent
@@ -584,8 +885,8 @@ public class PersistentBTreeNode<V> implements Serializable {
      */
     private void borrowFromNext(int idx) throws StorageException {
 
-        PersistentBTreeNode<V> child = this.children.get(idx);
-        PersistentBTreeNode<V> sibling = this.children.get(idx + 1);
+        PersistentBTreeNode<V> child = this.getChild(idx);
+        PersistentBTreeNode<V> sibling = this.getChild(idx + 1);
 
         Chunk<V> chunk = this.getChunk();
         Chunk<V> childChunk = child.getChunk();
@@ -597,7 +898,7 @@ public class PersistentBTreeNode<V> implements Serializable {
         // Sibling's first child is inserted as the last child
         // into children[idx]
         if (!(child.isLeaf()))
-            child.getChildren().set(child.getElementCount() + 1, sibling.getChildren().get(0));
+            child.copyChildFrom(child.getElementCount() + 1, sibling, 0);
 
         // The first key from sibling is inserted into keys[idx]
         chunk.set(idx, siblingChunk.get(0));
@@ -608,8 +909,8 @@ public class PersistentBTreeNode<V> implements Serializable {
         // Moving the child pointers one step behind
         if (!sibling.leaf) {
             for (int i = 1; i <= sibling.elementCount; ++i) {
-                sibling.getChildren().set(i - 1, sibling.getChildren().get(i));
-                sibling.getChildren().set(i, null);
+                sibling.copyChildFrom(i - 1, sibling, i);
+                sibling.setChild(i, null);
             }
         }
 
@@ -625,35 +926,37 @@ public class PersistentBTreeNode<V> implements Serializable {
     }
 
     /**
-     * Merge children[idx] with children[idx+1]
+     * Merge children[idx] with children[idx+1]. Both children and the key
+     * separating them must fit into one node.
      *
      * @param idx index of child to merge
      * @throws StorageException Is thrown when there is an error while
      *                          reading/writing contained chunks
      */
     private void merge(int idx) throws StorageException {
-        PersistentBTreeNode<V> child = this.getChildren().get(idx);
-        PersistentBTreeNode<V> sibling = this.getChildren().get(idx + 1);
+        PersistentBTreeNode<V> child = this.getChild(idx);
+        PersistentBTreeNode<V> sibling = this.getChild(idx + 1);
 
+        int offset = child.getElementCount();
         Chunk<V> chunk = this.getChunk();
         Chunk<V> childChunk = child.getChunk();
         Chunk<V> siblingChunk = sibling.getChunk();
 
-        // Pulling a key from the current node and inserting it into (minimumDegree-1)th
-        // position of children[idx]
-        childChunk.set(this.minimumDegree - 1, chunk.get(idx));
+        // Pulling a key from the current node and inserting it after the keys of
+        // children[idx]
+        childChunk.set(offset, chunk.get(idx));
         chunk.set(idx, null);
 
         // Copying the keys from children[idx+1] to children[idx] at the end
         for (int i = 0; i < sibling.getElementCount(); ++i) {
-            childChunk.set(i + this.minimumDegree, siblingChunk.get(i));
+            childChunk.set(offset + 1 + i, siblingChunk.get(i));
             siblingChunk.set(i, null);
         }
 
         // Copying the child pointers from children[idx+1] to children[idx]
         if (!child.isLeaf()) {
             for (int i = 0; i <= sibling.getElementCount(); ++i) {
-                child.getChildren().set(i + this.minimumDegree, sibling.getChildren().get(i));
+                child.copyChildFrom(offset + 1 + i, sibling, i);
             }
         }
 
@@ -667,12 +970,12 @@ public class PersistentBTreeNode<V> implements Serializable {
         // Moving the child pointers after (idx+1) in the current node one
         // step before
         for (int i = idx + 2; i <= this.elementCount; ++i) {
-            this.getChildren().set(i - 1, this.getChildren().get(i));
-            this.getChildren().set(i, null);
+            this.copyChildFrom(i - 1, this, i);
+            this.setChild(i, null);
         }
 
         if (idx + 2 > this.elementCount) {
-            this.getChildren().set(this.elementCount, null);
+            this.setChild(this.elementCount, null);
         }
 
         // Updating the key count of child and the current node
@@ -686,6 +989,206 @@ public class PersistentBTreeNode<V> implements Serializable {
         sibling.setChunk(siblingChunk);
     }
 
+    /**
+     * Pack the child at {@code idx} and its next siblings into fewer nodes. The
+     * child is merged with its next sibling if both fit into one node.
+     * Otherwise, if the child and its next two siblings fit into two nodes, keys
+     * of the next sibling are moved into the child until the sibling can be
+     * merged with the node after it. Either way, this node loses one key, so
+     * nothing is done if it would have too few keys afterwards. The node must be
+     * latched exclusively.
+     *
+     * @param idx     index of the child to pack
+     * @param root    true if this node is the root, which may lose all keys
+     * @param latches latches of the current operation
+     * @return number of written nodes
+     * @throws StorageException Is thrown when there is an error while
+     *                          reading/writing contained chunks
+     */
+    int compactChildren(int idx, boolean root, NodeLatches<V> latches) throws StorageException {
+        if (idx >= this.elementCount || (!root && this.elementCount < this.minimumDegree))
+            return 0;
+
+        int capacity = 2 * this.minimumDegree - 1;
+        PersistentBTreeNode<V> child = this.getChild(idx);
+        PersistentBTreeNode<V> sibling = this.getChild(idx + 1);
+        latches.exclusive(child);
+        latches.exclusive(sibling);
+
+        int written = 0;
+        if (child.getElementCount() + sibling.getElementCount() + 1 <= capacity) {
+            this.merge(idx);
+            written = 3;
+        } else if (idx + 1 < this.elementCount) {
+            PersistentBTreeNode<V> next = this.getChild(idx + 2);
+            latches.exclusive(next);
+
+            // Keys the sibling must give away to fit into one node with the next one
+            int moved = sibling.getElementCount() + next.getElementCount() + 1 - capacity;
+            if (moved <= capacity - child.getElementCount() && moved < sibling.getElementCount()) {
+                for (int i = 0; i < moved; i++)
+                    this.borrowFromNext(idx);
+                this.merge(idx + 1);
+                written = moved > 0 ? 4 : 3;
+            }
+
+            latches.releaseIfUnmodified(next);
+        }
+
+        latches.releaseIfUnmodified(sibling);
+        latches.releaseIfUnmodified(child);
+        return written;
+    }
+
+    /**
+     * Find the child whose subtree holds the keys that directly follow
+     * {@code key}
+     *
+     * @param key key to follow, null to get the first child
+     * @return index of the child
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          the contained chunk
+     */
+    int findChildAfter(String key) throws StorageException {
+        if (key == null)
+            return 0;
+
+        int i = this.locate(key);
+        return i >= 0 ? i + 1 : -i - 1;
+    }
+
+    /**
+     * Get the key at a given position
+     *
+     * @param index position of the key
+     * @return key at the position
+     * @throws StorageException Is thrown when there is an error while reading
+     *                          the contained chunk
+     */
+    String getKey(int index) throws StorageException {
+        NodePageView<V> view = this.chunkStorageInterface.readView();
+        if (view != null)
+            return view.getKey(index);
+
+        Chunk<V> chunk = this.getChunk();
+        String key = chunk.get(index).key;
+        chunk.releaseStoredElements();
+        return key;
+    }
+
+    /**
+     * Read the state of the node at the epoch of a snapshot. The current state
+     * is read if it is old enough and no writer latched the node, otherwise
+     * the kept version of that epoch is read. Readers never wait for the latch.
+     *
+     * @param snapshotEpoch epoch of the snapshot
+     * @param lowerBound    lower bound of the keys to read, the children that
+     *                      can't hold keys in the range are not loaded. Null
+     *                      to load all children.
+     * @param upperBound    upper bound of the keys to read, null to load all
+     *                      children
+     * @return state of the node at the epoch
+     * @throws StorageException Is thrown when the node's chunk can't be read,
+     *                          or if the version of the epoch wasn't kept
+     */
+    NodeVersion<V> readVersion(long snapshotEpoch, String lowerBound, String upperBound) throws StorageException {
+        while (true) {
+            long current = this.epoch;
+            if (current <= snapshotEpoch && this.latch.readLock().tryLock()) {
+                try {
+                    if (this.epoch <= snapshotEpoch)
+                        return this.currentVersion(lowerBound, upperBound, null);
+                } finally {
+                    this.latch.readLock().unlock();
+                }
+            }
+
+            // Each version is valid until the epoch of the next newer one
+            long until = current;
+            for (NodeVersion<V> version = this.versions; version != null; version = version.previous) {
+                if (version.epoch <= snapshotEpoch) {
+                    if (version.epoch == current || snapshotEpoch < until)
+                        return version;
+                    break;
+                }
+                until = version.epoch;
+            }
+
+            if (current > snapshotEpoch)
+                throw new StorageException("Version %d of node %d was not kept", snapshotEpoch, this.id);
+
+            // A writer latched the node, but didn't keep its current state yet
+            Thread.onSpinWait();
+        }
+    }
+
+    /**
+     * Keep the current state of the node for open snapshots, before the node is
+     * modified. The node must be latched exclusively.
+     *
+     * @throws StorageException Is thrown when the node's chunk or children
+     *                          can't be read
+     */
+    synchronized void preserveVersion() throws StorageException {
+        if (this.versions == null || this.versions.epoch != this.epoch)
+            this.versions = this.currentVersion(null, null, this.versions);
+    }
+
+    /**
+     * Remove the versions that no open snapshot reads
+     *
+     * @param snapshotEpochs epochs of the open snapshots
+     * @return true if no version is left
+     */
+    synchronized boolean trimVersions(NavigableSet<Long> snapshotEpochs) {
+        // A version of the current state is read while writers modify the node
+        NodeVersion<V> newer = null;
+        long until = this.versions != null && this.versions.epoch < this.epoch ? this.epoch : Long.MAX_VALUE;
+
+        for (NodeVersion<V> version = this.versions; version != null; version = version.previous) {
+            Long reader = snapshotEpochs.ceiling(version.epoch);
+            if (reader != null && reader < until) {
+                newer = version;
+            } else if (newer == null) {
+                this.versions = version.previous;
+            } else {
+                newer.previous = version.previous;
+            }
+            until = version.epoch;
+        }
+
+        return this.versions == null;
+    }
+
+    private NodeVersion<V> currentVersion(String lowerBound, String upperBound, NodeVersion<V> previous)
+            throws StorageException {
+        List<Pair<V>> elements = new ArrayList<>(this.elementCount);
+        NodePageView<V> view = this.chunkStorageInterface.readView();
+        if (view != null) {
+            for (int i = 0; i < this.elementCount; i++)
+                elements.add(view.get(i));
+        } else {
+            Chunk<V> chunk = this.getChunk();
+            for (int i = 0; i < this.elementCount; i++)
+                elements.add(chunk.get(i));
+            chunk.releaseStoredElements();
+        }
+
+        List<PersistentBTreeNode<V>> children = this.leaf ? Collections.emptyList()
+                : new ArrayList<>(Collections.nCopies(this.elementCount + 1, null));
+        NodeVersion<V> version = new NodeVersion<>(this.epoch, this.leaf, elements, children, previous);
+
+        // Children are loaded through this node, so writers modify the same objects
+        if (!this.leaf) {
+            int from = lowerBound == null ? 0 : version.findIndexOfFirstGreaterOrEqualThen(lowerBound);
+            int to = upperBound == null ? this.elementCount : version.findIndexOfFirstGreaterThen(upperBound);
+            for (int i = from; i <= to; i++)
+                children.set(i, this.getChild(i));
+        }
+
+        return version;
+    }
+
     /**
      * Check if the node is a leaf node.
      *
@@ -711,8 +1214,8 @@ public class PersistentBTreeNode<V> implements Serializable {
      */
     int getChildrenCount() {
         int i = 0;
-        for (PersistentBTreeNode<V> persistentBTreeNode : children) {
-            if (persistentBTreeNode != null) {
+        for (Integer childId : this.childrenIds) {
+            if (childId != null) {
                 i++;
             }
         }
@@ -720,8 +1223,84 @@ public class PersistentBTreeNode<V> implements Serializable {
         return i;
     }
 
+    /**
+     * Get child at a given position, loading it from storage if necessary
+     *
+     * @param index position of the child
+     * @return child at {@code index}, or null if there is none
+     * @throws StorageException Is thrown when the child's page can't be read
+     */
+    synchronized PersistentBTreeNode<V> getChild(int index) throws StorageException {
+        PersistentBTreeNode<V> child = this.children.get(index);
+
+        if (child == null && this.childrenIds.get(index) != null) {
+            child = load(this.childrenIds.get(index), this.treeStorageInterface);
+            this.children.set(index, child);
+        }
+
+        return child;
+    }
+
+    /**
+     * Set child at a given position. The change is only persisted on the next
+     * {@link #setChunk(Chunk)}.
+     *
+     * @param index position of the child
+     * @param child new child, or null to remove the child
+     */
+    synchronized void setChild(int index, PersistentBTreeNode<V> child) {
+        this.childrenIds.set(index, child == null ? null : child.id);
+        this.children.set(index, child);
+        this.modCount++;
+    }
+
+    /**
+     * Set child at a given position to the child at a position of another node
+     * (or this node). The child is not loaded from storage if it isn't already.
+     * The change is only persisted on the next {@link #setChunk(Chunk)}.
+     *
+     * @param index       position of the child
+     * @param source      node containing the child
+     * @param sourceIndex position of the child in {@code source}
+     */
+    private synchronized void copyChildFrom(int index, PersistentBTreeNode<V> source, int sourceIndex) {
+        this.childrenIds.set(index, source.childrenIds.get(sourceIndex));
+        this.children.set(index, source.children.get(sourceIndex));
+        this.modCount++;
+    }
+
+    /**
+     * Get the children of the node. Children are loaded from storage when they
+     * are accessed through the returned list.
+     *
+     * @return read-only view of the node's children
+     */
     List<PersistentBTreeNode<V>> getChildren() {
-        return this.children;
+        return new AbstractList<>() {
+
+            @Override
+            public PersistentBTreeNode<V> get(int index) {
+                try {
+                    return getChild(index);
+                } catch (StorageException e) {
+                    throw new IllegalStateException("Could not load child of node " + id, e);
+                }
+            }
+
+            @Override
+            public int size() {
+                return childrenIds.size();
+            }
+        };
+    }
+
+    /**
+     * Get id of the node, which is also the id of its chunk
+     *
+     * @return id of the node
+     */
+    public int getId() {
+        return this.id;
     }
 
     int getElementCount() {
@@ -734,6 +1313,7 @@ public class PersistentBTreeNode<V> implements Serializable {
      * @return new element count
      */
     private int incrementElementCount() {
+        this.modCount++;
         this.elementCount++;
         return this.elementCount;
     }
@@ -744,6 +1324,7 @@ public class PersistentBTreeNode<V> implements Serializable {
      * @return new element count
      */
     private int decrementElementCount() {
+        this.modCount++;
         this.elementCount--;
         return this.elementCount;
     }
@@ -755,6 +1336,7 @@ public class PersistentBTreeNode<V> implements Serializable {
      * @return new element count (same as parameter)
      */
     private int setElementCount(int newElementCount) {
+        this.modCount++;
         this.elementCount = newElementCount;
         return this.elementCount;
     }
@@ -764,25 +1346,75 @@ public class PersistentBTreeNode<V> implements Serializable {
     }
 
     /**
-     * Stores given chunk in memory. The chunk is deleted if it has no elements.
+     * Stores given chunk, together with the node's current metadata, in memory.
+     * The chunk is deleted and the node's id is released if it has no elements.
      *
      * @param chunk Chunk to store
      * @throws StorageException Throws an exception if some error occured while
      *                          storing chunk in memory
      */
     void setChunk(Chunk<V> chunk) throws StorageException {
-        this.chunkStorageInterface.storeChunk(chunk);
+        this.modCount++;
+        this.chunkStorageInterface.storePage(new NodePage<>(this.leaf, this.childrenIds, chunk));
+
+        // An empty node is never filled again, its chunk was deleted
+        if (chunk.getElementCount() == 0) {
+            this.treeStorageInterface.releaseNodeId(this.id);
+        }
     }
 
-    public void setAndPropagateChangeListenerAndStorageHandler(ChangeListener listener,
-                                                               PersistentBTreeStorageHandler<V> sHandler) {
-        this.chunkStorageInterface.setListener(listener);
-        this.treeStorageInterface = sHandler;
-        for (PersistentBTreeNode<V> persistentBTreeNode : children) {
-            if (persistentBTreeNode != null) {
-                persistentBTreeNode.setAndPropagateChangeListenerAndStorageHandler(listener, sHandler);
-            }
+    /**
+     * Get the current metadata of the node
+     *
+     * @return copy of the node's metadata
+     */
+    synchronized State<V> getState() {
+        return new State<>(this.childrenIds, this.children, this.elementCount, this.modCount);
+    }
+
+    /**
+     * Restore the metadata of the node. The node's chunk is restored by the
+     * storage handler when the transaction is rolled back.
+     *
+     * @param state metadata to restore
+     */
+    synchronized void setState(State<V> state) {
+        this.childrenIds = new ArrayList<>(state.childrenIds);
+        this.children = new ArrayList<>(state.children);
+        this.elementCount = state.elementCount;
+        this.modCount++;
+    }
+
+    /**
+     * Metadata of a node at some point in time
+     *
+     * @param <V> Type of values used in the BTree
+     */
+    static final class State<V> {
+
+        private final List<Integer> childrenIds;
+        private final List<PersistentBTreeNode<V>> children;
+        private final int elementCount;
+        private final int modCount;
+
+        private State(List<Integer> childrenIds, List<PersistentBTreeNode<V>> children, int elementCount,
+                      int modCount) {
+            this.childrenIds = new ArrayList<>(childrenIds);
+            this.children = new ArrayList<>(children);
+            this.elementCount = elementCount;
+            this.modCount = modCount;
+        }
+
+        /**
+         * Check if a node was modified since this state was taken
+         *
+         * @param node node this state was taken from
+         * @return true if the node was modified
+         */
+        boolean isModified(PersistentBTreeNode<V> node) {
+            return node.modCount != this.modCount;
         }
+
     }
 
 }
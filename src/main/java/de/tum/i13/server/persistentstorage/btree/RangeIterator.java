@@ -0,0 +1,111 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the key-value pairs of a {@link PersistentBTree} or a
+ * {@link Snapshot} in a key range. Pairs are read in batches of at most the
+ * size of a node. Each batch is read by a separate search, which continues
+ * after the last key of the previous batch, so no latches are held while the
+ * caller consumes a batch.
+ *
+ * @param <V> Type of values used in the BTree
+ */
+class RangeIterator<V> implements Iterator<Pair<V>> {
+
+    private final BatchReader<V> reader;
+    private final String lowerBound;
+    private final String upperBound;
+    private final int batchSize;
+    private String lastKey; // key of the last returned pair, null before the first batch
+    private Iterator<Pair<V>> batch;
+    private boolean exhausted; // true if the current batch is the last one
+
+    /**
+     * Create an iterator over the range [lowerBound-upperBound] (limits
+     * included)
+     *
+     * @param reader     search reading the batches
+     * @param lowerBound lower bound for keys
+     * @param upperBound upper bound for keys
+     * @param batchSize  maximum number of pairs read at once
+     */
+    RangeIterator(BatchReader<V> reader, String lowerBound, String upperBound, int batchSize) {
+        this.reader = reader;
+        this.lowerBound = lowerBound;
+        this.upperBound = upperBound;
+        this.batchSize = batchSize;
+        this.batch = Collections.emptyIterator();
+        this.exhausted = false;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (!this.batch.hasNext() && !this.exhausted) {
+            this.readBatch();
+        }
+
+        return this.batch.hasNext();
+    }
+
+    @Override
+    public Pair<V> next() {
+        if (!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Pair<V> next = this.batch.next();
+        this.lastKey = next.key;
+        return next;
+    }
+
+    private void readBatch() {
+        List<Pair<V>> read;
+
+        try {
+            read = this.lastKey == null
+                    ? this.reader.read(this.lowerBound, true, this.upperBound, this.batchSize)
+                    : this.reader.read(this.lastKey, false, this.upperBound, this.batchSize);
+        } catch (StorageException | PersistentBTreeException e) {
+            throw new IllegalStateException("Could not read range of the tree", e);
+        }
+
+        // A search only stops early if the batch is full
+        this.exhausted = read.size() < this.batchSize;
+        this.batch = read.iterator();
+    }
+
+    /**
+     * Search reading a batch of a range
+     *
+     * @param <V> Type of values used in the BTree
+     */
+    @FunctionalInterface
+    interface BatchReader<V> {
+
+        /**
+         * Read at most {@code limit} key-value pairs in the range
+         * [lowerBound-upperBound], starting with the smallest key
+         *
+         * @param lowerBound lower bound for keys
+         * @param inclusive  true if the lower bound is included in the range
+         * @param upperBound upper bounds for keys (included)
+         * @param limit      maximum number of key-value pairs to return
+         * @return key-value pairs with the smallest keys in the range
+         * @throws StorageException         An exception is thrown if a problem
+         *                                  occurs with persistent storage.
+         * @throws PersistentBTreeException An exception is thrown if the tree
+         *                                  can't be read
+         */
+        List<Pair<V>> read(String lowerBound, boolean inclusive, String upperBound, int limit)
+                throws StorageException, PersistentBTreeException;
+
+    }
+
+}
@@ -0,0 +1,181 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.shared.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Consistent, read-only view of a {@link PersistentBTree} at the epoch it was
+ * taken at (see {@link PersistentBTree#snapshot()}). Reads of a snapshot don't
+ * latch nodes and don't take the tree's locks: nodes that were modified since
+ * the snapshot was taken, or that are latched by a writer, are read from the
+ * versions kept for the snapshot (see {@link NodeVersion}). Versions are kept
+ * until the snapshot is closed, so snapshots should be short-lived.
+ *
+ * @param <V> Type of values used in the BTree
+ */
+public class Snapshot<V> implements AutoCloseable {
+
+    private final PersistentBTree<V> tree;
+    private final PersistentBTreeNode<V> root; // null if the tree was empty
+    private final long epoch;
+    private final int batchSize;
+    private final AtomicBoolean closed;
+
+    Snapshot(PersistentBTree<V> tree, PersistentBTreeNode<V> root, long epoch) {
+        this.tree = tree;
+        this.root = root;
+        this.epoch = epoch;
+        this.batchSize = 2 * tree.getMininumDegree() - 1;
+        this.closed = new AtomicBoolean(false);
+    }
+
+    /**
+     * Get the epoch of the tree the snapshot reads
+     *
+     * @return epoch of the snapshot
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Search a key in the snapshot
+     *
+     * @param key key of the element to search
+     * @return The value associated with the key, or {@code null} if it does not
+     * exist.
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown if the snapshot is
+     *                                  closed
+     */
+    public V search(String key) throws StorageException, PersistentBTreeException {
+        Preconditions.notNull(key);
+        this.checkOpen();
+
+        PersistentBTreeNode<V> node = this.root;
+        while (node != null) {
+            NodeVersion<V> version = node.readVersion(this.epoch, key, key);
+
+            int i = version.findIndexOfFirstGreaterOrEqualThen(key);
+            if (i < version.elements.size() && version.elements.get(i).key.equals(key))
+                return version.elements.get(i).value;
+
+            node = version.leaf ? null : version.children.get(i);
+        }
+
+        return null;
+    }
+
+    /**
+     * Searches for key-value pairs in the range [lowerBound-upperBound] (limits
+     * included)
+     *
+     * @param lowerBound lower bound for keys
+     * @param upperBound upper bounds for keys
+     * @return key-value pairs with keys in range [lowerBound-upperBound]
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown if the snapshot is
+     *                                  closed
+     */
+    public List<Pair<V>> searchRange(String lowerBound, String upperBound) throws StorageException,
+            PersistentBTreeException {
+        return this.searchRange(lowerBound, true, upperBound, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get an iterator over the key-value pairs in the range
+     * [lowerBound-upperBound] (limits included), in key order. The range is
+     * read lazily, about one node at a time. Unlike iterators of the tree, the
+     * iterator sees no changes made after the snapshot was taken. The snapshot
+     * must stay open while iterating. If reading fails, the iterator throws an
+     * {@link IllegalStateException} with the cause of the failure.
+     *
+     * @param lowerBound lower bound for keys
+     * @param upperBound upper bounds for keys
+     * @return iterator over the key-value pairs with keys in range
+     * [lowerBound-upperBound]
+     */
+    public Iterator<Pair<V>> iterateRange(String lowerBound, String upperBound) {
+        Preconditions.check(lowerBound.compareTo(upperBound) <= 0);
+        return new RangeIterator<>(this::searchRange, lowerBound, upperBound, this.batchSize);
+    }
+
+    /**
+     * Searches for at most {@code limit} key-value pairs in the range
+     * [lowerBound-upperBound], starting with the smallest key
+     *
+     * @param lowerBound lower bound for keys
+     * @param inclusive  true if the lower bound is included in the range
+     * @param upperBound upper bounds for keys (included)
+     * @param limit      maximum number of key-value pairs to return
+     * @return key-value pairs with the smallest keys in the range
+     * @throws StorageException         An exception is thrown if a problem occurs
+     *                                  with persistent storage.
+     * @throws PersistentBTreeException An exception is thrown if the snapshot is
+     *                                  closed
+     */
+    List<Pair<V>> searchRange(String lowerBound, boolean inclusive, String upperBound, int limit)
+            throws StorageException, PersistentBTreeException {
+        Preconditions.check(lowerBound.compareTo(upperBound) <= 0);
+        this.checkOpen();
+
+        List<Pair<V>> result = new ArrayList<>();
+        if (this.root != null) {
+            this.searchRange(this.root, lowerBound, inclusive, upperBound, limit, result);
+        }
+        return result;
+    }
+
+    /**
+     * Close the snapshot, so the versions of nodes kept for it can be reclaimed
+     */
+    @Override
+    public void close() {
+        if (this.closed.compareAndSet(false, true)) {
+            this.tree.closeSnapshot(this.epoch);
+        }
+    }
+
+    // Same traversal as PersistentBTreeNode#searchRange, on the versions of the nodes
+    private boolean searchRange(PersistentBTreeNode<V> node, String lowerBound, boolean inclusive, String upperBound,
+                                int limit, List<Pair<V>> result) throws StorageException {
+        NodeVersion<V> version = node.readVersion(this.epoch, lowerBound, upperBound);
+
+        int i = inclusive ? version.findIndexOfFirstGreaterOrEqualThen(lowerBound)
+                : version.findIndexOfFirstGreaterThen(lowerBound);
+        int j = version.findIndexOfFirstGreaterThen(upperBound);
+
+        for (; i < j; i++) {
+            Pair<V> pair = version.elements.get(i);
+
+            if (!version.leaf && !pair.key.equals(lowerBound)
+                    && !this.searchRange(version.children.get(i), lowerBound, inclusive, upperBound, limit, result)) {
+                return false;
+            }
+
+            result.add(pair);
+            if (result.size() >= limit) {
+                return false;
+            }
+        }
+
+        // Search the subtree rooted with last child
+        return version.leaf
+                || this.searchRange(version.children.get(i), lowerBound, inclusive, upperBound, limit, result);
+    }
+
+    private void checkOpen() throws PersistentBTreeException {
+        if (this.closed.get()) {
+            throw new PersistentBTreeException("Could not read snapshot because it is closed");
+        }
+    }
+
+}
@@ -2,12 +2,15 @@ package de.tum.i13.server.persistentstorage.btree.chunk;
 
 import de.tum.i13.shared.Preconditions;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * An implementation of {@link Chunk} using ArrayList.
+ * An implementation of {@link Chunk} using an array. The elements of a chunk
+ * are kept sorted in the first {@link #getElementCount()} positions of the
+ * array, so searches use binary search. The number of elements is kept up to
+ * date on every change instead of being counted.
  *
  * @param <V> type to be used in values
  */
@@ -15,7 +18,9 @@ public class ChunkImpl<V> implements Chunk<V> {
 
     private static final long serialVersionUID = 6529685098267757681L;
     // data stored in this chunk
-    private List<Pair<V>> elements;
+    private Pair<V>[] elements;
+    // number of non-null positions in elements
+    private int elementCount;
 
     /**
      * Create a new Chunk with given minimum degree. Note that all nodes in a B-Tree
@@ -24,8 +29,10 @@ public class ChunkImpl<V> implements Chunk<V> {
      *
      * @param minimumDegree B-Tree minimum degree
      */
+    @SuppressWarnings("unchecked")
     public ChunkImpl(int minimumDegree) {
-        this.elements = new ArrayList<>(Collections.nCopies((2 * minimumDegree - 1), null));
+        this.elements = (Pair<V>[]) new Pair[2 * minimumDegree - 1];
+        this.elementCount = 0;
     }
 
     /**
@@ -33,8 +40,10 @@ public class ChunkImpl<V> implements Chunk<V> {
      *
      * @param chunk chunk to clone
      */
+    @SuppressWarnings("unchecked")
     public ChunkImpl(Chunk<V> chunk) {
-        this.elements = chunk.getElements();
+        this.elements = chunk.getElements().toArray((Pair<V>[]) new Pair[0]);
+        this.elementCount = chunk.getElementCount();
     }
 
     /**
@@ -46,9 +55,12 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @param newElements   List of initial elements
      */
     public ChunkImpl(int minimumDegree, List<Pair<V>> newElements) {
+        this(minimumDegree);
         Preconditions.check(newElements.size() <= 2 * minimumDegree - 1);
-        this.elements = new ArrayList<>(Collections.nCopies((2 * minimumDegree - 1), null));
-        Collections.copy(this.elements, newElements);
+
+        for (int i = 0; i < newElements.size(); i++) {
+            this.set(i, newElements.get(i));
+        }
     }
 
     /**
@@ -68,21 +80,42 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return index of first element with a key greater or equal than {@code key}
      */
     public int findIndexOfFirstGreaterOrEqualThen(String key) {
-        int i = 0;
-        int n = this.getElementCount();
-        while (i < n && key.compareTo(elements.get(i).key) > 0)
-            i++;
+        int low = 0;
+        int high = this.elementCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(this.elements[mid].key) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
 
-        return i;
+        return low;
     }
 
+    /**
+     * Finds index that contains the first element with a key greater than
+     * {@code key}
+     *
+     * @param key key to check
+     * @return index of first element with a key greater than {@code key}
+     */
     public int findIndexOfFirstGreaterThen(String key) {
-        int i = 0;
-        int n = this.getElementCount();
-        while (i < n && key.compareTo(elements.get(i).key) >= 0)
-            i++;
+        int low = 0;
+        int high = this.elementCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (key.compareTo(this.elements[mid].key) >= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
 
-        return i;
+        return low;
     }
 
     /**
@@ -92,7 +125,7 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return the element at the specified position in this chunk
      */
     public Pair<V> get(int index) {
-        return this.elements.get(index);
+        return this.elements[index];
     }
 
     /**
@@ -104,7 +137,16 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return the element previously at the specified position
      */
     public Pair<V> set(int index, Pair<V> element) {
-        return this.elements.set(index, element);
+        Pair<V> previous = this.elements[index];
+        this.elements[index] = element;
+
+        if (previous == null && element != null) {
+            this.elementCount++;
+        } else if (previous != null && element == null) {
+            this.elementCount--;
+        }
+
+        return previous;
     }
 
     /**
@@ -115,9 +157,7 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return the element previously at the specified position
      */
     public Pair<V> remove(int index) {
-        Pair<V> elem = this.elements.get(index);
-        this.elements.set(index, null);
-        return elem;
+        return this.set(index, null);
     }
 
     /**
@@ -126,12 +166,18 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @param startIndex index of first element to shift right
      */
     public void shiftRightOne(int startIndex) {
-        int keyCount = this.getElementCount();
+        int keyCount = this.elementCount;
+        if (startIndex >= keyCount) {
+            return;
+        }
 
-        for (int j = keyCount - 1; j >= startIndex; j--) {
-            this.elements.set(j + 1, this.elements.get(j));
-            this.elements.set(j, null);
+        // The position after the last element is overwritten
+        if (this.elements[keyCount] != null) {
+            this.elementCount--;
         }
+
+        System.arraycopy(this.elements, startIndex, this.elements, startIndex + 1, keyCount - startIndex);
+        this.elements[startIndex] = null;
     }
 
     /**
@@ -141,11 +187,14 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @param startIndex index of first element to shift left
      */
     public void shiftLeftOne(int startIndex) {
-        // Move all the keys after the idx-th pos one place backward
-        for (int i = startIndex + 1; i < this.elements.size(); ++i) {
-            this.elements.set(i - 1, this.elements.get(i));
-            this.elements.set(i, null);
+        if (this.elements[startIndex] != null) {
+            this.elementCount--;
         }
+
+        // Move all the keys after the idx-th pos one place backward
+        int last = this.elements.length - 1;
+        System.arraycopy(this.elements, startIndex + 1, this.elements, startIndex, last - startIndex);
+        this.elements[last] = null;
     }
 
     /**
@@ -156,20 +205,14 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return index the chunk position where a new element should be in.
      */
     public int shiftRightOneAfterFirstGreaterThan(String key) {
-        int keyCount = this.getElementCount();
-        int i = keyCount - 1;
+        int i = this.findIndexOfFirstGreaterThen(key);
+        this.shiftRightOne(i);
 
-        while (i >= 0 && elements.get(i).key.compareTo(key) > 0) {
-            elements.set(i + 1, elements.get(i));
-            elements.set(i, null);
-            i--;
+        if (i == 0) {
+            return i;
         }
 
-        if (i < 0) {
-            return i + 1;
-        }
-
-        return elements.get(i).key.compareTo(key) == 0 ? i : i + 1;
+        return this.elements[i - 1].key.compareTo(key) == 0 ? i - 1 : i;
     }
 
     /**
@@ -178,24 +221,17 @@ public class ChunkImpl<V> implements Chunk<V> {
      * @return Number of elements in chunk.
      */
     public int getElementCount() {
-        int i = 0;
-
-        for (Pair<V> pair : elements) {
-            if (pair != null) {
-                i += 1;
-            }
-        }
-
-        return i;
+        return this.elementCount;
     }
 
     /**
-     * Get elements list. Note that some positions might be {@code null}.
+     * Get elements list. Note that some positions might be {@code null}. The list
+     * can't be modified, changes must go through the chunk's methods.
      *
      * @return list of key-value elements
      */
     public List<Pair<V>> getElements() {
-        return this.elements;
+        return Collections.unmodifiableList(Arrays.asList(this.elements));
     }
 
 }
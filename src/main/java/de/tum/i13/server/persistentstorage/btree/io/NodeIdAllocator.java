@@ -0,0 +1,99 @@
+package de.tum.i13.server.persistentstorage.btree.io;
+
+import java.util.HashSet;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Allocates the ids of the nodes of a tree, which are also the ids of their
+ * pages. New ids are handed out in increasing order starting at
+ * {@link #FIRST_ID}, but ids of deleted nodes are reused first, so the ids of
+ * a tree stay dense. Only the next id is persisted (see {@link Superblock}):
+ * when a tree is opened, the ids below it that are not used by a stored node
+ * are released again, and stored nodes with larger ids (written after the
+ * superblock, or by a version that derived ids from hash codes) are skipped.
+ * This implementation is thread-safe.
+ */
+public class NodeIdAllocator {
+
+    /**
+     * Smallest id allocated for a node
+     */
+    public static final int FIRST_ID = 1;
+
+    private final NavigableSet<Integer> freeIds = new TreeSet<>(); // released ids below nextId
+    private final Set<Integer> reservedIds = new HashSet<>(); // ids of stored nodes at or above nextId
+    private int nextId; // smallest id that was never allocated
+
+    /**
+     * Create an allocator for a stored tree
+     *
+     * @param nextId    next id stored in the tree's superblock
+     * @param storedIds ids of all nodes stored by the tree
+     */
+    public NodeIdAllocator(int nextId, Iterable<Integer> storedIds) {
+        this.nextId = Math.max(nextId, FIRST_ID);
+
+        Set<Integer> usedIds = new HashSet<>();
+        for (int id : storedIds) {
+            if (id >= this.nextId) {
+                this.reservedIds.add(id);
+            } else {
+                usedIds.add(id);
+            }
+        }
+
+        for (int id = FIRST_ID; id < this.nextId; id++) {
+            if (!usedIds.contains(id)) {
+                this.freeIds.add(id);
+            }
+        }
+    }
+
+    /**
+     * Allocate an id that is not used by any node
+     *
+     * @return allocated id
+     * @throws StorageException An exception is thrown if all ids are in use
+     */
+    public synchronized int allocate() throws StorageException {
+        if (!this.freeIds.isEmpty()) {
+            return this.freeIds.pollFirst();
+        }
+
+        while (this.nextId < Integer.MAX_VALUE && this.reservedIds.remove(this.nextId)) {
+            this.nextId++;
+        }
+
+        if (this.nextId == Integer.MAX_VALUE) {
+            throw new StorageException("No node ids left to allocate");
+        }
+        return this.nextId++;
+    }
+
+    /**
+     * Release the id of a deleted node, so it can be allocated again
+     *
+     * @param id id of the deleted node
+     */
+    public synchronized void release(int id) {
+        if (id >= this.nextId) {
+            // Node written by a previous version
+            this.reservedIds.remove(id);
+        } else if (id >= FIRST_ID) {
+            this.freeIds.add(id);
+        }
+    }
+
+    /**
+     * Get the next id to store in the superblock. All ids that were allocated
+     * are smaller than it.
+     *
+     * @return next id
+     */
+    public synchronized int getNextId() {
+        return this.nextId;
+    }
+
+}
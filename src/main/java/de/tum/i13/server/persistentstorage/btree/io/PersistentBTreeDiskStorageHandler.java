@@ -1,77 +1,189 @@
 package de.tum.i13.server.persistentstorage.btree.io;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.tum.i13.server.persistentstorage.btree.PersistentBTree;
 import de.tum.i13.server.persistentstorage.btree.PersistentBTreeNode;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkBufferPool;
 import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkDiskStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
 import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkStorageHandler;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListenerImpl;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePageView;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.PageStore;
+import de.tum.i13.server.persistentstorage.btree.io.legacy.LegacyTreeMigration;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.CommitRecord;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.WriteAheadLog;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 
 import java.io.IOException;
-import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Implements {@link ChunkStorageHandler} by storing chunks of type
- * {@link PersistentBTree} on disk. This implementation supports transactions.
+ * {@link PersistentBTree} on disk. Every node is stored in its own page
+ * together with its metadata (see {@link NodePage}), named after the node's
+ * id (see {@link NodeIdAllocator}). The {@code root} file only holds a
+ * {@link Superblock} with the id of the root node, the next node id, the
+ * position in the log up to which the pages are checkpointed and the format
+ * flags of the tree. This
+ * implementation supports transactions.
+ * <p>
+ * Transactions are made durable by a {@link WriteAheadLog}. Pages written
+ * during a transaction are kept in memory until it commits, so a rollback only
+ * discards them. Every thread has its own transaction, so transactions of
+ * different threads can run concurrently. On commit, the after-images of the written pages and the new
+ * root are appended to the log as a single record, and only then are the pages
+ * handed to the buffer pool, which writes them back lazily.
+ * <p>
+ * Page files are never written or deleted before the log record that changed
+ * them is synced, otherwise a power loss could leave files newer than the
+ * durable log behind. The buffer pool syncs the log up to the record of a page
+ * before writing it back. Without a buffer pool, and for deleted pages, the
+ * changes are kept in memory until the group commit of the log has synced
+ * their record.
+ * <p>
+ * Checkpoints are fuzzy: the root, the next node id and the sequence number
+ * of the last log record are recorded and the log is rotated, all while
+ * commits are blocked. Afterwards, commits continue while the committed pages
+ * are written back and synced. The recorded state is then stored in the
+ * superblock and the sealed part of the log is dropped. Commits request a
+ * checkpoint in the background once the last one is too old or the log grew
+ * too large. When the handler is created, only the log records after the
+ * checkpointed one are replayed, so transactions committed before a crash are
+ * not lost and the time to open a tree does not depend on its size.
  */
-public class PersistentBTreeDiskStorageHandler<V>
-        implements PersistentBTreeStorageHandler<V>, Serializable {
+public class PersistentBTreeDiskStorageHandler<V> implements PersistentBTreeStorageHandler<V> {
 
-    private static final long serialVersionUID = 6523685098267757691L;
+    private static final Logger LOGGER = LogManager.getLogger(PersistentBTreeDiskStorageHandler.class);
 
-    private static final String DEFAULT_DIRECTORY = "bckp";
+    private static final String ROOT_FILE = "root";
+    private static final String LOG_FILE = "wal";
+    private static final String LEGACY_BACKUP_DIRECTORY = "bckp";
+
+    // Size of the log after which a checkpoint is taken
+    private static final long CHECKPOINT_LOG_SIZE = 16L * 1024 * 1024;
+
+    // Maximum time in milliseconds between checkpoints
+    private static final long CHECKPOINT_INTERVAL = 60_000;
+
+    /**
+     * Default number of chunks kept in memory by the buffer pool
+     */
+    public static final int DEFAULT_BUFFER_POOL_SIZE = 256;
+
+    /**
+     * Default maximum time in milliseconds between a commit and the sync of the
+     * write-ahead log
+     */
+    public static final long DEFAULT_WAL_SYNC_INTERVAL = 10;
 
     private final String storageFolder; // Tree and chunks storage folder
-    private final String backupFolder; // Tree and chunks storage folder
-    private final ChangeListener cListener;
+    private final ChunkBufferPool<V> bufferPool; // null if the buffer pool is disabled
+    private final long walSyncInterval; // maximum time between a commit and the sync of the log
+    private volatile WriteAheadLog log; // replaced when the handler is reopened
+    private final PageStore<V> pageStore;
+    private final ThreadLocal<Transaction> transactions; // changes of each thread since its last commit
+    private final Set<String> unsyncedChunks; // chunks written to their files since the last checkpoint
+    private final Map<String, PendingPage> pendingPages; // committed changes waiting for the sync of their record
+    private final Object pendingPagesLock = new Object(); // held while a pending change is applied to its file
+    private final Map<String, Long> pooledSequences; // record of the last commit of pooled pages, until synced
+    private final NodeIdAllocator idAllocator;
+    private volatile ExecutorService checkpointer; // replaced when the handler is reopened
+    private final AtomicBoolean checkpointScheduled; // true if a checkpoint was requested and didn't start yet
+    private volatile long lastCheckpoint; // time of the last checkpoint in milliseconds
+    private final Object checkpointLock = new Object(); // only one checkpoint runs at a time
+    private volatile Integer committedRootId; // root of the last committed transaction, null if the tree is empty
+    private volatile int formatFlags; // stored in the superblock
     private boolean transactionsEnabled;
-    private boolean transactionStarted; // True if a transaction has been started
+    private volatile int valueCompressionThreshold; // minimum size of the values compressed in written pages
 
     /**
      * Create a new storage handler which will store a tree in
      * {@code storageFolder}. Note, transactions are enabled by default
      *
-     * @param storageFolder Folder where the tree and it's chunks will be
-     *                      stored
-     * @param reset         True if the target folder should be cleared if it
-     *                      already exists.
-     * @param cListener     Change listener used for transactions
-     * @param backupFolder  Folder used to store chunk backups
+     * @param storageFolder   Folder where the tree and it's chunks will be
+     *                        stored
+     * @param reset           True if the target folder should be cleared if it
+     *                        already exists.
+     * @param bufferPoolSize  Maximum number of chunks kept in memory, 0 disables
+     *                        the buffer pool
+     * @param walSyncInterval Maximum time in milliseconds between a commit and
+     *                        the sync of the write-ahead log, 0 to sync on
+     *                        every commit
      * @throws StorageException An exception is thrown when an error with the
      *                          {@code storageFolder} occurs
      */
-    public PersistentBTreeDiskStorageHandler(String storageFolder, boolean reset, ChangeListener cListener,
-                                             String backupFolder) throws StorageException {
+    public PersistentBTreeDiskStorageHandler(String storageFolder, boolean reset, int bufferPoolSize,
+                                             long walSyncInterval) throws StorageException {
         this.storageFolder = storageFolder;
+        this.walSyncInterval = walSyncInterval;
         this.transactionsEnabled = true;
+        this.valueCompressionThreshold = ChunkSerializer.NO_COMPRESSION;
 
         if (reset) {
             StorageUtils.deleteFile(Paths.get(storageFolder));
         }
         StorageUtils.createDirectory(Paths.get(this.storageFolder));
-
-        this.backupFolder = backupFolder;
-        this.cListener = cListener;
-        this.transactionStarted = false;
+        LegacyTreeMigration.migrate(Paths.get(this.storageFolder), ROOT_FILE);
+
+        // Chunk backups of previous versions are not used for transactions anymore
+        StorageUtils.deleteFile(Paths.get(this.storageFolder, LEGACY_BACKUP_DIRECTORY));
+
+        this.transactions = ThreadLocal.withInitial(Transaction::new);
+        this.unsyncedChunks = ConcurrentHashMap.newKeySet();
+        this.pendingPages = new ConcurrentHashMap<>();
+        this.pooledSequences = new ConcurrentHashMap<>();
+        this.pageStore = new TransactionPageStore();
+        this.bufferPool = bufferPoolSize > 0 ? new ChunkBufferPool<>(bufferPoolSize, new DiskBackend()) : null;
+        this.log = new WriteAheadLog(Paths.get(this.storageFolder, LOG_FILE), this.walSyncInterval);
+
+        Path rootPath = Paths.get(this.storageFolder, ROOT_FILE);
+        Superblock superblock = rootPath.toFile().exists() ? StorageUtils.readSuperblock(rootPath)
+                : new Superblock(null);
+        this.committedRootId = superblock.getRootId();
+        this.formatFlags = superblock.getFlags();
+        this.recover(superblock.getCheckpointSequence());
+        this.log.setSyncListener(this::writePendingPagesQuietly);
+
+        // Pages of recovered transactions are in their files, so no stored id is missed
+        this.idAllocator = new NodeIdAllocator(superblock.getNextNodeId(), this.listStoredIds());
+
+        this.checkpointScheduled = new AtomicBoolean(false);
+        this.lastCheckpoint = System.currentTimeMillis();
+        this.checkpointer = createCheckpointer();
     }
 
     /**
      * Create a new storage handler which will store a tree in
      * {@code storageFolder}.
      *
-     * @param storageFolder Folder where the tree and it's chunks will be stored
-     * @param reset         True if the target folder should be cleared if it
-     *                      already exists.
-     * @param cListener     Change listener used for transactions
+     * @param storageFolder  Folder where the tree and it's chunks will be stored
+     * @param reset          True if the target folder should be cleared if it
+     *                       already exists.
+     * @param bufferPoolSize Maximum number of chunks kept in memory, 0 disables
+     *                       the buffer pool
      * @throws StorageException An exception is thrown when an error with the
      *                          {@code storageFolder} occurs
      */
-    public PersistentBTreeDiskStorageHandler(String storageFolder, boolean reset, ChangeListener cListener)
+    public PersistentBTreeDiskStorageHandler(String storageFolder, boolean reset, int bufferPoolSize)
             throws StorageException {
-        this(storageFolder, reset, cListener, DEFAULT_DIRECTORY);
+        this(storageFolder, reset, bufferPoolSize, DEFAULT_WAL_SYNC_INTERVAL);
     }
 
     /**
@@ -85,7 +197,7 @@ public class PersistentBTreeDiskStorageHandler<V>
      *                          {@code storageFolder} occurs
      */
     public PersistentBTreeDiskStorageHandler(String storageFolder, boolean reset) throws StorageException {
-        this(storageFolder, reset, new ChangeListenerImpl(storageFolder), DEFAULT_DIRECTORY);
+        this(storageFolder, reset, DEFAULT_BUFFER_POOL_SIZE);
     }
 
     /**
@@ -102,71 +214,109 @@ public class PersistentBTreeDiskStorageHandler<V>
 
     @Override
     public void save(PersistentBTree<V> tree) throws StorageException {
-        this.saveTreeToDisk(tree);
+        Transaction transaction = this.transactions.get();
+        PersistentBTreeNode<V> root = tree.getRoot();
+        transaction.rootId = root == null ? null : root.getId();
+        transaction.rootChanged = true;
+
+        // Outside of transactions, every save is committed on its own
+        if (!transaction.started || !this.transactionsEnabled) {
+            this.commit(transaction);
+        }
     }
 
-    private void saveTreeToDisk(PersistentBTree<V> tree) throws StorageException {
-        StorageUtils.writeObject(Paths.get(storageFolder, "root"), tree.getRoot());
+    @Override
+    public PersistentBTreeNode<V> load() throws StorageException {
+        return this.loadRoot();
     }
 
     @Override
-    public PersistentBTreeNode<V> load() throws StorageException {
+    public void delete() throws StorageException {
+        if (this.bufferPool != null) {
+            this.bufferPool.clear();
+        }
+        this.transactions.get().clear();
+        this.pendingPages.clear();
+        this.pooledSequences.clear();
+        this.formatFlags = 0;
+        this.stopCheckpointer();
 
-        if (!Paths.get(storageFolder, "root").toFile().exists()) {
-            return null;
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not close the write-ahead log");
         }
 
-        return StorageUtils.readObject(Paths.get(storageFolder, "root"));
+        StorageUtils.deleteFile(Paths.get(storageFolder));
+    }
+
+    /**
+     * Take a final checkpoint, so nothing has to be redone when the tree is
+     * loaded again, and stop the checkpointer and the write-ahead log
+     *
+     * @throws StorageException An exception is thrown if the checkpoint can't be
+     *                          taken or the log can't be closed
+     */
+    @Override
+    public void close() throws StorageException {
+        this.stopCheckpointer();
+        this.checkpoint();
+
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not close the write-ahead log");
+        }
     }
 
+    /**
+     * Open the write-ahead log again and restart the checkpointer after the
+     * handler was closed
+     *
+     * @throws StorageException An exception is thrown if the log can't be opened
+     */
     @Override
-    public void delete() throws StorageException {
-        StorageUtils.deleteFile(Paths.get(storageFolder));
+    public synchronized void reopen() throws StorageException {
+        this.log = new WriteAheadLog(Paths.get(this.storageFolder, LOG_FILE), this.walSyncInterval);
+        this.log.setSyncListener(this::writePendingPagesQuietly);
+        this.checkpointScheduled.set(false);
+        this.lastCheckpoint = System.currentTimeMillis();
+        this.checkpointer = createCheckpointer();
     }
 
     @Override
     public ChunkStorageHandler<V> createChunkStorageHandler(String chunkId) throws StorageException {
-        return new ChunkDiskStorageHandler<>(chunkId, storageFolder, cListener);
+        return new ChunkDiskStorageHandler<>(chunkId, this.pageStore);
+    }
+
+    @Override
+    public int allocateNodeId() throws StorageException {
+        int id = this.idAllocator.allocate();
+        this.transactions.get().allocatedIds.add(id);
+        return id;
+    }
+
+    @Override
+    public void releaseNodeId(int id) {
+        // Other transactions may still read the page until the deletion is committed
+        this.transactions.get().releasedIds.add(id);
     }
 
     @Override
     public PersistentBTreeNode<V> rollbackTransaction() throws StorageException {
 
-        if (!transactionStarted || !transactionsEnabled) {
+        Transaction transaction = this.transactions.get();
+        if (!transaction.started || !transactionsEnabled) {
             return null;
         }
 
-        // Replace changed chunks with previous versions
-        for (String chunkId : this.cListener.getChangedChunks()) {
-            Path src = Paths.get(this.storageFolder, this.backupFolder, chunkId);
-            Path dst = Paths.get(this.storageFolder, chunkId);
-            this.chunkTransfer(src, dst);
-        }
+        // Nothing reached the log or the files yet, so discarding the pages is enough
+        transaction.allocatedIds.forEach(this.idAllocator::release);
+        transaction.clear();
+        transaction.started = false;
 
-        // Delete newly created chunks
-        for (String chunkId : this.cListener.getCreatedChunks()) {
-            try {
-                Files.delete(Paths.get(this.storageFolder, chunkId));
-            } catch (IOException e) {
-                this.endTransaction();
-                throw new StorageException(e,
-                        "An error occured while deleting newly created chunk on rollback");
-            }
-        }
-
-        // Replace tree structure
-        this.chunkTransfer(Paths.get(this.storageFolder, this.backupFolder, "root"),
-                Paths.get(this.storageFolder, "root"));
-        this.endTransaction();
         // Read new root and return it
-
-        PersistentBTreeNode<V> newRoot = StorageUtils.readObject(Paths.get(this.storageFolder, "root"));
-
-        if (newRoot != null) {
-            newRoot.setAndPropagateChangeListenerAndStorageHandler(this.cListener, this);
-        }
-
-        return newRoot;
+        return this.loadRoot();
     }
 
     @Override
@@ -176,23 +326,60 @@ public class PersistentBTreeDiskStorageHandler<V>
             return;
         }
 
-        transactionStarted = true;
-
-        // Create backup directory
-        StorageUtils.createDirectory(Paths.get(this.storageFolder, this.backupFolder));
-        // Copy tree root
-        this.chunkTransfer(Paths.get(this.storageFolder, "root"),
-                Paths.get(this.storageFolder, this.backupFolder, "root"));
+        // Changes made outside of a transaction must not be undone by its rollback
+        Transaction transaction = this.transactions.get();
+        this.commit(transaction);
+        transaction.started = true;
     }
 
     @Override
     public void endTransaction() throws StorageException {
-        if (!transactionStarted || !transactionsEnabled) {
+        Transaction transaction = this.transactions.get();
+        if (!transaction.started || !transactionsEnabled) {
             return;
         }
 
-        transactionStarted = false;
-        this.cListener.reset();
+        transaction.started = false;
+        this.commit(transaction);
+    }
+
+    @Override
+    public void flushPages() throws StorageException {
+        // The root is only stored by the commit that ends the transaction
+        Transaction transaction = this.transactions.get();
+        if (!transaction.rootChanged) {
+            this.commit(transaction);
+        }
+    }
+
+    @Override
+    public void sync() throws StorageException {
+        this.log.sync();
+    }
+
+    @Override
+    public int getFormatFlags() {
+        return this.formatFlags;
+    }
+
+    @Override
+    public void setFormatFlags(int flags) throws StorageException {
+        this.log.sync();
+
+        // Checkpoints write the superblock as well, so they must not overwrite the flags with older ones
+        synchronized (this.checkpointLock) {
+            this.formatFlags = flags;
+            Path rootPath = Paths.get(this.storageFolder, ROOT_FILE);
+            Superblock superblock = rootPath.toFile().exists() ? StorageUtils.readSuperblock(rootPath)
+                    : new Superblock(null);
+            StorageUtils.writeSuperblock(rootPath, superblock.withFlags(flags));
+            StorageUtils.syncDirectory(Paths.get(this.storageFolder));
+        }
+    }
+
+    @Override
+    public void setValueCompressionThreshold(int threshold) {
+        this.valueCompressionThreshold = threshold;
     }
 
     @Override
@@ -205,13 +392,415 @@ public class PersistentBTreeDiskStorageHandler<V>
         this.transactionsEnabled = false;
     }
 
-    private void chunkTransfer(Path src, Path dst) throws StorageException {
+    @Override
+    public boolean supportsConcurrentTransactions() {
+        return this.transactionsEnabled;
+    }
+
+    /**
+     * Take a fuzzy checkpoint: write back and sync all pages committed so far,
+     * store the superblock and drop the checkpointed records from the
+     * write-ahead log. Commits are only blocked while the log is rotated, not
+     * while the pages are written. Pages of a running transaction are not
+     * affected.
+     *
+     * @throws StorageException An exception is thrown if the pages, the
+     *                          superblock or the log can't be written
+     */
+    public void checkpoint() throws StorageException {
+        synchronized (this.checkpointLock) {
+            this.lastCheckpoint = System.currentTimeMillis();
+            long sequence;
+            Integer rootId;
+            int nextNodeId;
+
+            synchronized (this) {
+                // Every commit is logged, so nothing changed since the last checkpoint
+                if (this.log.isEmpty()) {
+                    return;
+                }
+
+                sequence = this.log.getSequence();
+                rootId = this.committedRootId;
+                nextNodeId = this.idAllocator.getNextId();
+                this.log.rotate();
+            }
+
+            // Pages of later commits may be written as well, redoing their records is idempotent
+            if (this.bufferPool != null) {
+                this.bufferPool.flush();
+            }
+
+            // Written pages must not outlive the records of their transactions
+            this.log.sync();
+            this.writePendingPages();
+            this.pooledSequences.values().removeIf(this.log::isSynced);
+
+            try {
+                for (String chunkId : this.unsyncedChunks) {
+                    // Chunks written again after this point are synced by the next checkpoint
+                    this.unsyncedChunks.remove(chunkId);
+                    Path path = Paths.get(this.storageFolder, chunkId);
+                    if (Files.exists(path)) {
+                        StorageUtils.syncFile(path);
+                    }
+                }
+            } catch (IOException e) {
+                throw new StorageException(e, "I/O error while syncing chunks to disk");
+            }
+
+            StorageUtils.writeSuperblock(Paths.get(this.storageFolder, ROOT_FILE),
+                    new Superblock(rootId, nextNodeId, sequence, this.formatFlags));
+            StorageUtils.syncDirectory(Paths.get(this.storageFolder));
+            this.log.deleteSealed();
+        }
+    }
+
+    private void checkpointQuietly() {
+        this.checkpointScheduled.set(false);
+
+        try {
+            this.checkpoint();
+        } catch (StorageException e) {
+            LOGGER.error("Could not take a checkpoint", e);
+        }
+    }
+
+    private static ExecutorService createCheckpointer() {
+        return Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+                .setNameFormat("btree-checkpoint").setDaemon(true).build());
+    }
+
+    private void stopCheckpointer() {
+        // Interrupting a checkpoint would close the files it writes, so it is awaited instead
+        this.checkpointer.shutdown();
         try {
-            StorageUtils.copyAndReplaceFile(src, dst);
+            this.checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
+    /**
+     * Append the pages written by a transaction and its root, if it saved the
+     * tree, to the write-ahead log. Once the record is in the log, the pages are
+     * handed to the buffer pool. Changes to the files wait until the record is
+     * synced.
+     *
+     * @param transaction transaction to commit
+     * @throws StorageException An exception is thrown if the record can't be
+     *                          appended to the log or the pages can't be written
+     */
+    private synchronized void commit(Transaction transaction) throws StorageException {
+        if (transaction.pages.isEmpty()
+                && (!transaction.rootChanged || Objects.equals(transaction.rootId, this.committedRootId))) {
+            transaction.clear();
+            return;
+        }
+
+        // Serializing is done before the record is appended, so a failure leaves the log untouched
+        Map<String, byte[]> images = new LinkedHashMap<>();
+        for (Map.Entry<String, NodePage<V>> page : transaction.pages.entrySet()) {
+            images.put(page.getKey(), page.getValue() == null ? null : ChunkSerializer.serialize(page.getValue(),
+                    this.valueCompressionThreshold));
+        }
+
+        long sequence = this.log.append(transaction.rootChanged ? new CommitRecord(transaction.rootId, images)
+                : new CommitRecord(images));
+
+        for (Map.Entry<String, NodePage<V>> page : transaction.pages.entrySet()) {
+            String chunkId = page.getKey();
+
+            if (page.getValue() == null) {
+                if (this.bufferPool != null) {
+                    this.bufferPool.remove(chunkId);
+                    this.pooledSequences.remove(chunkId);
+                }
+                this.pendingPages.put(chunkId, new PendingPage(sequence, null));
+            } else if (this.bufferPool != null) {
+                synchronized (this.pendingPagesLock) {
+                    // A pending deletion of a reused id must not delete the page written back by the pool
+                    this.pendingPages.remove(chunkId);
+                }
+                this.pooledSequences.put(chunkId, sequence);
+                this.bufferPool.put(chunkId, page.getValue());
+            } else {
+                this.pendingPages.put(chunkId, new PendingPage(sequence, images.get(chunkId)));
+            }
+        }
+
+        // The record may have been synced by the append already
+        if (this.log.isSynced(sequence)) {
+            this.writePendingPages();
+        }
+
+        if (transaction.rootChanged) {
+            this.committedRootId = transaction.rootId;
+        }
+        transaction.releasedIds.forEach(this.idAllocator::release);
+        transaction.clear();
+
+        // Idle trees don't need checkpoints, so they are only requested by commits
+        boolean due = this.log.size() > CHECKPOINT_LOG_SIZE
+                || System.currentTimeMillis() - this.lastCheckpoint > CHECKPOINT_INTERVAL;
+        if (due && this.checkpointScheduled.compareAndSet(false, true)) {
+            this.checkpointer.execute(this::checkpointQuietly);
+        }
+    }
+
+    /**
+     * Apply the pending changes whose records are synced to the page files
+     *
+     * @throws StorageException An exception is thrown if a page can't be
+     *                          written or deleted
+     */
+    private void writePendingPages() throws StorageException {
+        for (Map.Entry<String, PendingPage> entry : this.pendingPages.entrySet()) {
+            PendingPage pending = entry.getValue();
+            if (!this.log.isSynced(pending.sequence)) {
+                continue;
+            }
+
+            synchronized (this.pendingPagesLock) {
+                // A later commit may have replaced the change, which is then applied instead
+                if (this.pendingPages.get(entry.getKey()) != pending) {
+                    continue;
+                }
+
+                if (pending.data == null) {
+                    this.deletePageFile(entry.getKey());
+                } else {
+                    this.writePageFile(entry.getKey(), pending.data);
+                }
+                this.pendingPages.remove(entry.getKey(), pending);
+            }
+        }
+    }
+
+    private void writePendingPagesQuietly() {
+        try {
+            this.writePendingPages();
+        } catch (StorageException e) {
+            LOGGER.error("Could not write committed pages", e);
+        }
+    }
+
+    /**
+     * Redo the transactions in the write-ahead log after the last checkpoint.
+     * Pages are written back lazily, so the files may miss any of the logged
+     * changes. The redone pages are synced and the records dropped by the next
+     * checkpoint.
+     *
+     * @param checkpointSequence sequence number of the last checkpointed record
+     * @throws StorageException An exception is thrown if the log can't be read or
+     *                          the pages can't be written
+     */
+    private void recover(long checkpointSequence) throws StorageException {
+        List<CommitRecord> records = this.log.readRecords(checkpointSequence);
+        if (records.isEmpty()) {
+            return;
+        }
+
+        for (CommitRecord record : records) {
+            for (Map.Entry<String, byte[]> page : record.getPages().entrySet()) {
+                if (page.getValue() == null) {
+                    this.deletePageFile(page.getKey());
+                } else {
+                    this.writePageFile(page.getKey(), page.getValue());
+                }
+            }
+
+            if (record.isRootChanged()) {
+                this.committedRootId = record.getRootId();
+            }
+        }
+
+        LOGGER.info("Recovered {} transactions from the write-ahead log", records.size());
+    }
+
+    /**
+     * Get the ids of all nodes whose pages are stored in their files
+     *
+     * @return ids of the stored nodes
+     * @throws StorageException An exception is thrown if the storage folder
+     *                          can't be listed
+     */
+    private List<Integer> listStoredIds() throws StorageException {
+        List<Integer> ids = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(Paths.get(this.storageFolder))) {
+            for (Path file : files) {
+                try {
+                    ids.add(Integer.parseInt(file.getFileName().toString()));
+                } catch (NumberFormatException e) {
+                    // Not a page file
+                }
+            }
         } catch (IOException e) {
-            throw new StorageException(e, "An error occured during chunk transfer");
+            throw new StorageException(e, "I/O error while listing chunks of %s", this.storageFolder);
+        }
+        return ids;
+    }
+
+    private void writePageFile(String chunkId, byte[] data) throws StorageException {
+        Path path = Paths.get(this.storageFolder, chunkId);
+        try {
+            Files.write(path, data);
+            this.unsyncedChunks.add(chunkId);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing chunk to disk %s", path);
+        }
+    }
+
+    private void deletePageFile(String chunkId) throws StorageException {
+        try {
+            // The page might have never been written back
+            Files.deleteIfExists(Paths.get(this.storageFolder, chunkId));
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while deleting chunk from disk");
+        }
+    }
+
+    /**
+     * Read the root node of the last committed transaction. Its descendants are
+     * loaded lazily when they are accessed.
+     *
+     * @return root node, {@code null} if the tree is empty
+     * @throws StorageException An exception is thrown if the root page can't be
+     *                          read
+     */
+    private PersistentBTreeNode<V> loadRoot() throws StorageException {
+        return this.committedRootId == null ? null : PersistentBTreeNode.load(this.committedRootId, this);
+    }
+
+    /**
+     * Committed change of a page file that waits for the sync of its record
+     */
+    private static class PendingPage {
+
+        private final long sequence; // sequence number of the record of the change
+        private final byte[] data; // serialized page, null if the page is deleted
+
+        private PendingPage(long sequence, byte[] data) {
+            this.sequence = sequence;
+            this.data = data;
         }
+
+    }
+
+    /**
+     * Changes of a thread since its last commit
+     */
+    private class Transaction {
+
+        private final Map<String, NodePage<V>> pages = new LinkedHashMap<>(); // written pages, null if deleted
+        private final List<Integer> allocatedIds = new ArrayList<>(); // ids of the created nodes
+        private final List<Integer> releasedIds = new ArrayList<>(); // ids of the deleted nodes
+        private boolean started; // True if a transaction has been started
+        private boolean rootChanged; // True if the tree was saved
+        private Integer rootId; // root of the saved tree
+
+        private void clear() {
+            this.pages.clear();
+            this.allocatedIds.clear();
+            this.releasedIds.clear();
+            this.rootChanged = false;
+            this.rootId = null;
+        }
+
+    }
+
+    /**
+     * Reads pages written by the current transaction or waiting for the sync of
+     * their record from memory and all other pages from the buffer pool or
+     * their files
+     */
+    private class TransactionPageStore implements PageStore<V> {
+
+        @Override
+        public NodePage<V> read(String chunkId) throws StorageException {
+            Map<String, NodePage<V>> transactionPages = transactions.get().pages;
+            if (transactionPages.containsKey(chunkId)) {
+                NodePage<V> page = transactionPages.get(chunkId);
+                if (page == null) {
+                    throw new StorageException("Chunk %s does not exist", chunkId);
+                }
+
+                return page.copy();
+            }
+
+            PendingPage pending = pendingPages.get(chunkId);
+            if (pending != null) {
+                if (pending.data == null) {
+                    throw new StorageException("Chunk %s does not exist", chunkId);
+                }
+
+                return ChunkSerializer.deserialize(pending.data);
+            }
+
+            if (bufferPool == null) {
+                return StorageUtils.readPage(Paths.get(storageFolder, chunkId));
+            }
+
+            // Callers modify the chunk they get, so they must not share the pooled instance
+            NodePage<V> pooled = bufferPool.pin(chunkId);
+            try {
+                return pooled.copy();
+            } finally {
+                bufferPool.unpin(chunkId, false);
+            }
+        }
+
+        @Override
+        public NodePageView<V> readView(String chunkId) throws StorageException {
+            // Decoding a whole page is as cheap as a view, unless compressed values that are not pooled have to be
+            // inflated
+            if (bufferPool != null || valueCompressionThreshold == ChunkSerializer.NO_COMPRESSION
+                    || transactions.get().pages.containsKey(chunkId) || pendingPages.containsKey(chunkId)) {
+                return null;
+            }
+
+            Path path = Paths.get(storageFolder, chunkId);
+            try {
+                return new NodePageView<>(ByteBuffer.wrap(Files.readAllBytes(path)));
+            } catch (IOException e) {
+                throw new StorageException(e, "I/O error while reading chunk from disk %s", path);
+            }
+        }
+
+        @Override
+        public void write(String chunkId, NodePage<V> page) {
+            transactions.get().pages.put(chunkId, page);
+        }
+
+        @Override
+        public void delete(String chunkId) {
+            transactions.get().pages.put(chunkId, null);
+        }
+
+    }
+
+    /**
+     * Loads and writes back chunks of the buffer pool from/to the storage folder
+     */
+    private class DiskBackend implements ChunkBufferPool.Backend<V> {
+
+        @Override
+        public NodePage<V> read(String chunkId) throws StorageException {
+            return StorageUtils.readPage(Paths.get(storageFolder, chunkId));
+        }
+
+        @Override
+        public void write(String chunkId, NodePage<V> page) throws StorageException {
+            // The page must not be written back before the record of its last commit is durable
+            Long sequence = pooledSequences.get(chunkId);
+            if (sequence != null) {
+                log.sync(sequence);
+            }
+
+            StorageUtils.writePage(Paths.get(storageFolder, chunkId), page, valueCompressionThreshold);
+            unsyncedChunks.add(chunkId);
+        }
+
     }
 
 }
@@ -0,0 +1,380 @@
+package de.tum.i13.server.persistentstorage.btree.io;
+
+import de.tum.i13.server.persistentstorage.btree.PersistentBTree;
+import de.tum.i13.server.persistentstorage.btree.PersistentBTreeNode;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkBufferPool;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePageView;
+import de.tum.i13.server.persistentstorage.btree.io.paged.ChunkPagedStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.paged.PageFile;
+import de.tum.i13.server.persistentstorage.btree.io.paged.PagedChangeListener;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Implements {@link PersistentBTreeStorageHandler} by storing all nodes of a
+ * {@link PersistentBTree} in fixed-size pages of a single file (see
+ * {@link PageFile}), instead of one file per node. The tree's
+ * {@link Superblock}, including the next id of its {@link NodeIdAllocator} and
+ * the format flags of the tree, is kept in the file header. Optionally, the file is read
+ * through memory mappings, in which case searches read nodes from views of
+ * the mapped pages (see {@link NodePageView}). This implementation supports
+ * transactions.
+ */
+public class PersistentBTreePagedStorageHandler<V> implements PersistentBTreeStorageHandler<V>, AutoCloseable {
+
+    private static final String DATA_FILE = "tree.pages";
+
+    private final String storageFolder;
+    private final PageFile pageFile;
+    private final PagedChangeListener cListener;
+    private final ChunkBufferPool<V> bufferPool; // null if the buffer pool is disabled
+    private final NodeIdAllocator idAllocator;
+    private final List<Integer> allocatedIds; // ids of the nodes created by the transaction
+    private final List<Integer> releasedIds; // ids of the nodes deleted by the transaction
+    private boolean transactionsEnabled;
+    private volatile int valueCompressionThreshold; // minimum size of the values compressed in written pages
+    private boolean transactionStarted; // True if a transaction has been started
+    private Superblock transactionSuperblock; // Superblock at the start of the transaction
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}. Note, transactions are enabled by default
+     *
+     * @param storageFolder  Folder where the tree's file will be stored
+     * @param reset          True if the target folder should be cleared if it
+     *                       already exists.
+     * @param bufferPoolSize Maximum number of chunks kept in memory, 0 disables
+     *                       the buffer pool
+     * @param pageSize       Size of the pages of the file in bytes, only used
+     *                       when the file is created
+     * @param memoryMapped   True if the file should be read through memory
+     *                       mappings
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder, boolean reset, int bufferPoolSize,
+                                              int pageSize, boolean memoryMapped) throws StorageException {
+        this.storageFolder = storageFolder;
+
+        if (reset) {
+            StorageUtils.deleteFile(Paths.get(storageFolder));
+        }
+        StorageUtils.createDirectory(Paths.get(this.storageFolder));
+
+        this.pageFile = new PageFile(Paths.get(storageFolder, DATA_FILE), pageSize, memoryMapped);
+        this.cListener = new PagedChangeListener(this.pageFile);
+        this.transactionsEnabled = true;
+        this.transactionStarted = false;
+        this.valueCompressionThreshold = ChunkSerializer.NO_COMPRESSION;
+        this.bufferPool = bufferPoolSize > 0 ? new ChunkBufferPool<>(bufferPoolSize, new PageFileBackend()) : null;
+        this.idAllocator = new NodeIdAllocator(this.pageFile.getSuperblock().getNextNodeId(),
+                this.pageFile.getChunkIds());
+        this.allocatedIds = new ArrayList<>();
+        this.releasedIds = new ArrayList<>();
+    }
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}. The file is read through its channel.
+     *
+     * @param storageFolder  Folder where the tree's file will be stored
+     * @param reset          True if the target folder should be cleared if it
+     *                       already exists.
+     * @param bufferPoolSize Maximum number of chunks kept in memory, 0 disables
+     *                       the buffer pool
+     * @param pageSize       Size of the pages of the file in bytes, only used
+     *                       when the file is created
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder, boolean reset, int bufferPoolSize,
+                                              int pageSize) throws StorageException {
+        this(storageFolder, reset, bufferPoolSize, pageSize, false);
+    }
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}, using the default page size.
+     *
+     * @param storageFolder  Folder where the tree's file will be stored
+     * @param reset          True if the target folder should be cleared if it
+     *                       already exists.
+     * @param bufferPoolSize Maximum number of chunks kept in memory, 0 disables
+     *                       the buffer pool
+     * @param memoryMapped   True if the file should be read through memory
+     *                       mappings
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder, boolean reset, int bufferPoolSize,
+                                              boolean memoryMapped) throws StorageException {
+        this(storageFolder, reset, bufferPoolSize, PageFile.DEFAULT_PAGE_SIZE, memoryMapped);
+    }
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}.
+     *
+     * @param storageFolder  Folder where the tree's file will be stored
+     * @param reset          True if the target folder should be cleared if it
+     *                       already exists.
+     * @param bufferPoolSize Maximum number of chunks kept in memory, 0 disables
+     *                       the buffer pool
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder, boolean reset, int bufferPoolSize)
+            throws StorageException {
+        this(storageFolder, reset, bufferPoolSize, false);
+    }
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}.
+     *
+     * @param storageFolder Folder where the tree's file will be stored
+     * @param reset         True if the target folder should be cleared if it
+     *                      already exists.
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder, boolean reset) throws StorageException {
+        this(storageFolder, reset, PersistentBTreeDiskStorageHandler.DEFAULT_BUFFER_POOL_SIZE);
+    }
+
+    /**
+     * Create a new storage handler which will store a tree in a single file in
+     * {@code storageFolder}.
+     *
+     * @param storageFolder Folder where the tree's file will be stored
+     * @throws StorageException An exception is thrown when an error with the
+     *                          {@code storageFolder} occurs
+     */
+    public PersistentBTreePagedStorageHandler(String storageFolder) throws StorageException {
+        this(storageFolder, false);
+    }
+
+    @Override
+    public void save(PersistentBTree<V> tree) throws StorageException {
+        // Pages must be in the file before the superblock that references them
+        if (this.bufferPool != null) {
+            this.bufferPool.flush();
+        }
+
+        PersistentBTreeNode<V> root = tree.getRoot();
+        Integer rootId = root == null ? null : root.getId();
+        int nextNodeId = this.idAllocator.getNextId();
+        Superblock superblock = this.pageFile.getSuperblock();
+
+        if (!Objects.equals(rootId, superblock.getRootId()) || nextNodeId != superblock.getNextNodeId()) {
+            this.pageFile.setSuperblock(new Superblock(rootId, nextNodeId, 0, superblock.getFlags()));
+        }
+    }
+
+    @Override
+    public PersistentBTreeNode<V> load() throws StorageException {
+        Integer rootId = this.pageFile.getSuperblock().getRootId();
+        return rootId == null ? null : PersistentBTreeNode.load(rootId, this);
+    }
+
+    @Override
+    public void delete() throws StorageException {
+        if (this.bufferPool != null) {
+            this.bufferPool.clear();
+        }
+
+        this.close();
+        StorageUtils.deleteFile(Paths.get(storageFolder));
+    }
+
+    @Override
+    public ChunkStorageHandler<V> createChunkStorageHandler(String chunkId) throws StorageException {
+        return new ChunkPagedStorageHandler<>(chunkId, this.pageFile, this.cListener, this.bufferPool,
+                this.valueCompressionThreshold);
+    }
+
+    @Override
+    public int allocateNodeId() throws StorageException {
+        int id = this.idAllocator.allocate();
+        if (transactionStarted && transactionsEnabled) {
+            this.allocatedIds.add(id);
+        }
+        return id;
+    }
+
+    @Override
+    public void releaseNodeId(int id) {
+        // A rollback restores the deleted chunk
+        if (transactionStarted && transactionsEnabled) {
+            this.releasedIds.add(id);
+        } else {
+            this.idAllocator.release(id);
+        }
+    }
+
+    @Override
+    public PersistentBTreeNode<V> rollbackTransaction() throws StorageException {
+
+        if (!transactionStarted || !transactionsEnabled) {
+            return null;
+        }
+
+        // Pooled versions of the changed chunks are no longer valid
+        if (this.bufferPool != null) {
+            this.bufferPool.invalidate(this.cListener.getChangedChunks());
+            this.bufferPool.invalidate(this.cListener.getCreatedChunks());
+        }
+
+        // Replace changed chunks with previous versions
+        for (String chunkId : this.cListener.getChangedChunks()) {
+            byte[] previous = this.cListener.getPreviousVersion(chunkId);
+
+            if (previous == null) {
+                this.pageFile.delete(Integer.parseInt(chunkId));
+            } else {
+                this.pageFile.write(Integer.parseInt(chunkId), previous);
+            }
+        }
+
+        // Delete newly created chunks
+        for (String chunkId : this.cListener.getCreatedChunks()) {
+            this.pageFile.delete(Integer.parseInt(chunkId));
+        }
+
+        // Replace superblock, the format flags are not part of the transaction
+        this.pageFile.setSuperblock(this.transactionSuperblock.withFlags(this.getFormatFlags()));
+        this.allocatedIds.forEach(this.idAllocator::release);
+        this.allocatedIds.clear();
+        this.releasedIds.clear();
+        this.endTransaction();
+
+        // Read new root and return it
+        return this.load();
+    }
+
+    @Override
+    public void beginTransaction() throws StorageException {
+
+        if (!transactionsEnabled) {
+            return;
+        }
+
+        transactionStarted = true;
+        transactionSuperblock = this.pageFile.getSuperblock();
+        // Changes made outside of a transaction must not be undone by its rollback
+        this.cListener.reset();
+        this.allocatedIds.clear();
+        this.releasedIds.clear();
+    }
+
+    @Override
+    public void endTransaction() throws StorageException {
+        if (!transactionStarted || !transactionsEnabled) {
+            return;
+        }
+
+        transactionStarted = false;
+        this.cListener.reset();
+        this.releasedIds.forEach(this.idAllocator::release);
+        this.allocatedIds.clear();
+        this.releasedIds.clear();
+    }
+
+    @Override
+    public void sync() throws StorageException {
+        if (this.bufferPool != null) {
+            this.bufferPool.flush();
+        }
+        this.pageFile.sync();
+    }
+
+    @Override
+    public int getFormatFlags() {
+        return this.pageFile.getSuperblock().getFlags();
+    }
+
+    @Override
+    public void setFormatFlags(int flags) throws StorageException {
+        this.sync();
+        this.pageFile.setSuperblock(this.pageFile.getSuperblock().withFlags(flags));
+        this.pageFile.sync();
+    }
+
+    @Override
+    public void setValueCompressionThreshold(int threshold) {
+        this.valueCompressionThreshold = threshold;
+    }
+
+    @Override
+    public void enableTransactions() {
+        this.transactionsEnabled = true;
+    }
+
+    @Override
+    public void disableTransactions() {
+        this.transactionsEnabled = false;
+    }
+
+    /**
+     * Get the file where the tree is stored
+     *
+     * @return file where the tree is stored
+     */
+    public PageFile getPageFile() {
+        return this.pageFile;
+    }
+
+    /**
+     * Write back the buffer pool and close the tree's file
+     *
+     * @throws StorageException An exception is thrown if the buffer pool can't be
+     *                          written back or the file can't be closed
+     */
+    @Override
+    public void close() throws StorageException {
+        if (this.bufferPool != null) {
+            this.bufferPool.flush();
+        }
+
+        try {
+            this.pageFile.close();
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not close the page file");
+        }
+    }
+
+    /**
+     * Open the tree's file again after it was closed
+     *
+     * @throws StorageException An exception is thrown if the file can't be opened
+     */
+    @Override
+    public void reopen() throws StorageException {
+        this.pageFile.reopen();
+    }
+
+    /**
+     * Loads and writes back chunks of the buffer pool from/to the page file
+     */
+    private class PageFileBackend implements ChunkBufferPool.Backend<V> {
+
+        @Override
+        public NodePage<V> read(String chunkId) throws StorageException {
+            return ChunkPagedStorageHandler.readPage(pageFile, chunkId);
+        }
+
+        @Override
+        public void write(String chunkId, NodePage<V> page) throws StorageException {
+            ChunkPagedStorageHandler.writePage(pageFile, chunkId, page, valueCompressionThreshold);
+        }
+
+    }
+
+}
@@ -2,6 +2,7 @@ package de.tum.i13.server.persistentstorage.btree.io;
 
 import de.tum.i13.server.persistentstorage.btree.PersistentBTree;
 import de.tum.i13.server.persistentstorage.btree.PersistentBTreeNode;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
 import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.transactions.TransactionController;
 
@@ -10,7 +11,7 @@ import de.tum.i13.server.persistentstorage.btree.io.transactions.TransactionCont
  * interface also provide factory methods for generating
  * {@link ChunkStorageHandler}s. Thus, an implementation of this interface
  * couples the Tree structure storage with the chunk storage. This interface
- * also supports transactions {@link de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener}.
+ * also supports transactions (see {@link TransactionController}).
  *
  * @param <V> Type of the values used in the BTree
  */
@@ -41,6 +42,23 @@ public interface PersistentBTreeStorageHandler<V> extends TransactionController<
      */
     ChunkStorageHandler<V> createChunkStorageHandler(String chunkId) throws StorageException;
 
+    /**
+     * Allocate the id of a new node, which is also the id of its chunk (see
+     * {@link NodeIdAllocator}).
+     *
+     * @return id that is not used by any other node of the tree
+     * @throws StorageException An exception is thrown when no id is left.
+     */
+    int allocateNodeId() throws StorageException;
+
+    /**
+     * Release the id of a node whose chunk was deleted. The id is only
+     * allocated again once the deletion is committed.
+     *
+     * @param id id of the deleted node
+     */
+    void releaseNodeId(int id);
+
     /**
      * Delete tree
      *
@@ -78,6 +96,95 @@ public interface PersistentBTreeStorageHandler<V> extends TransactionController<
      */
     PersistentBTreeNode<V> rollbackTransaction() throws StorageException;
 
+    /**
+     * Check if transactions of different threads may run at the same time. All
+     * transaction methods then apply to the calling thread's transaction.
+     * Concurrent transactions must not modify the same chunks, and only one of
+     * them may save the tree at a time. Otherwise, the tree serializes its
+     * modifying operations.
+     *
+     * @return true if concurrent transactions are supported
+     */
+    default boolean supportsConcurrentTransactions() {
+        return false;
+    }
+
+    /**
+     * Make the pages written so far durable, without ending the current
+     * transaction and without saving the tree. A later rollback of the
+     * transaction may not undo these pages, so this must only be used for pages
+     * that can't be reached from the saved tree yet, e.g. while a tree is bulk
+     * loaded (see {@link PersistentBTree#bulkLoad}). By default, pages stay
+     * with the transaction.
+     *
+     * @throws StorageException An exception is thrown if the pages can't be
+     *                          written
+     */
+    default void flushPages() throws StorageException {
+    }
+
+    /**
+     * Make all committed transactions durable, e.g. before files they replaced
+     * are deleted. By default, transactions are as durable as the handler makes
+     * them when they are committed.
+     *
+     * @throws StorageException An exception is thrown if the transactions can't
+     *                          be synced
+     */
+    default void sync() throws StorageException {
+    }
+
+    /**
+     * Make all committed transactions durable and release the resources of the
+     * handler, e.g. its open files and background threads, once the tree is
+     * closed. By default, there is nothing to release.
+     *
+     * @throws StorageException An exception is thrown if the transactions can't
+     *                          be synced or the resources can't be released
+     */
+    default void close() throws StorageException {
+    }
+
+    /**
+     * Acquire the resources released by {@link #close()} again, before the tree
+     * is reopened. By default, there is nothing to acquire.
+     *
+     * @throws StorageException An exception is thrown if the resources can't be
+     *                          acquired
+     */
+    default void reopen() throws StorageException {
+    }
+
+    /**
+     * Get the format flags stored in the {@link Superblock} of the tree
+     *
+     * @return format flags, 0 if no flag was set
+     */
+    int getFormatFlags();
+
+    /**
+     * Store format flags in the {@link Superblock} of the tree, e.g. after its
+     * elements were converted to a new format. The flags describe the
+     * committed transactions, so these are made durable before the flags.
+     *
+     * @param flags format flags to store
+     * @throws StorageException An exception is thrown if the transactions or
+     *                          the superblock can't be written
+     */
+    void setFormatFlags(int flags) throws StorageException;
+
+    /**
+     * Set the minimum size of the values that are compressed when pages are
+     * written (see {@link ChunkSerializer}). Pages that were already written
+     * keep their encoding until they are written again, so the threshold
+     * should be set before the tree is loaded.
+     *
+     * @param threshold minimum size in bytes of the compressed values,
+     *                  {@link ChunkSerializer#NO_COMPRESSION} to disable the
+     *                  compression
+     */
+    void setValueCompressionThreshold(int threshold);
+
     /**
      * Enable transactions
      */
@@ -1,5 +1,7 @@
 package de.tum.i13.server.persistentstorage.btree.io;
 
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 
@@ -10,10 +12,12 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.CopyOption;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 
 /**
  * This class contains several utilities for operations with the file system. It
@@ -114,6 +118,124 @@ public class StorageUtils {
         }
     }
 
+    /**
+     * Read a node page stored in the binary chunk format (see
+     * {@link ChunkSerializer}) from disk
+     *
+     * @param filePath path to the page in disk
+     * @param <V>      Type of the values in the chunk
+     * @return read page
+     * @throws StorageException an exception is thrown if either the file can't be
+     *                          read or it doesn't contain a valid page
+     */
+    public static <V> NodePage<V> readPage(Path filePath) throws StorageException {
+        try {
+            return ChunkSerializer.deserialize(Files.readAllBytes(filePath));
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading chunk from disk %s", filePath);
+        }
+    }
+
+    /**
+     * Write a node page to disk using the binary chunk format (see
+     * {@link ChunkSerializer})
+     *
+     * @param filePath path where the page will be stored
+     * @param page     page to store
+     * @param <V>      Type of the values in the chunk
+     * @throws StorageException an exception is thrown if an error occured while
+     *                          writing
+     */
+    public static <V> void writePage(Path filePath, NodePage<V> page) throws StorageException {
+        writePage(filePath, page, ChunkSerializer.NO_COMPRESSION);
+    }
+
+    /**
+     * Write a node page to disk using the binary chunk format (see
+     * {@link ChunkSerializer}), compressing its large values
+     *
+     * @param filePath             path where the page will be stored
+     * @param page                 page to store
+     * @param compressionThreshold minimum size in bytes of the values that are
+     *                             compressed
+     * @param <V>                  Type of the values in the chunk
+     * @throws StorageException an exception is thrown if an error occured while
+     *                          writing the page
+     */
+    public static <V> void writePage(Path filePath, NodePage<V> page, int compressionThreshold)
+            throws StorageException {
+        try {
+            Files.write(filePath, ChunkSerializer.serialize(page, compressionThreshold));
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing chunk to disk %s", filePath);
+        }
+    }
+
+    /**
+     * Read the superblock of a tree from disk
+     *
+     * @param filePath path to the superblock in disk
+     * @return read superblock
+     * @throws StorageException an exception is thrown if either the file can't be
+     *                          read or it doesn't contain a valid superblock
+     */
+    public static Superblock readSuperblock(Path filePath) throws StorageException {
+        try {
+            return Superblock.deserialize(Files.readAllBytes(filePath));
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading superblock from disk %s", filePath);
+        }
+    }
+
+    /**
+     * Write the superblock of a tree to disk. The superblock is written and
+     * synced to a temporary file first and then moved to {@code filePath}, so
+     * that a crash never leaves a partially written superblock behind.
+     *
+     * @param filePath   path where the superblock will be stored
+     * @param superblock superblock to store
+     * @throws StorageException an exception is thrown if an error occured while
+     *                          writing
+     */
+    public static void writeSuperblock(Path filePath, Superblock superblock) throws StorageException {
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try {
+            Files.write(tempPath, superblock.serialize());
+            syncFile(tempPath);
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing superblock to disk %s", filePath);
+        }
+    }
+
+    /**
+     * Force the contents of a file to the storage device
+     *
+     * @param filePath path to the file
+     * @throws IOException an exception is thrown if the file can't be opened or
+     *                     synced
+     */
+    public static void syncFile(Path filePath) throws IOException {
+        try (FileChannel channel = FileChannel.open(filePath, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Force the entries of a directory (e.g. created or deleted files) to the
+     * storage device. Not every platform supports this, in which case nothing
+     * happens.
+     *
+     * @param directory path to the directory
+     */
+    public static void syncDirectory(Path directory) {
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            LOGGER.debug("Could not sync directory {}", directory, e);
+        }
+    }
+
     /**
      * Delete file from disk
      *
@@ -0,0 +1,237 @@
+package de.tum.i13.server.persistentstorage.btree.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * Small fixed-size record that identifies the root of a persisted tree, the
+ * next id of its {@link NodeIdAllocator}, the sequence number of the last
+ * write-ahead log record whose changes are contained in the stored pages and
+ * the format flags of the stored elements. All other information about the
+ * tree is stored in the pages of its nodes. The format is laid out as follows
+ * (all integers are big-endian):
+ *
+ * <pre>
+ * int   magic ("CDBS")
+ * byte  format version
+ * byte  1 if the tree has a root, 0 if it is empty
+ * int   id of the root node
+ * int   next node id
+ * long  sequence number of the last checkpointed log record
+ * int   format flags
+ * int   CRC32 of all the preceding bytes
+ * </pre>
+ * <p>
+ * Superblocks of version 1 don't contain the next node id, it is read as
+ * {@link NodeIdAllocator#FIRST_ID}. Superblocks of versions 1 and 2 don't
+ * contain the checkpointed sequence number, it is read as 0. Superblocks of
+ * versions 1 to 3 don't contain format flags, they are read as 0.
+ */
+public class Superblock {
+
+    /**
+     * Magic number at the start of every superblock ("CDBS")
+     */
+    public static final int MAGIC = 0x43444253;
+
+    /**
+     * Current version of the superblock format
+     */
+    public static final byte VERSION = 4;
+
+    /**
+     * Size of an encoded superblock in bytes
+     */
+    public static final int LENGTH = 30;
+
+    /**
+     * Format flag of trees whose keys are all stored as bytes (see
+     * {@link de.tum.i13.server.persistentstorage.StorageKeys}) instead of
+     * hexadecimal hashes
+     */
+    public static final int BINARY_KEYS = 1;
+
+    private static final byte VERSION_WITHOUT_NEXT_ID = 1;
+    private static final int LENGTH_WITHOUT_NEXT_ID = 14;
+    private static final byte VERSION_WITHOUT_SEQUENCE = 2;
+    private static final int LENGTH_WITHOUT_SEQUENCE = 18;
+    private static final byte VERSION_WITHOUT_FLAGS = 3;
+    private static final int LENGTH_WITHOUT_FLAGS = 26;
+
+    private final Integer rootId; // null if the tree is empty
+    private final int nextNodeId;
+    private final long checkpointSequence;
+    private final int flags;
+
+    /**
+     * Create a new superblock
+     *
+     * @param rootId             id of the root node, {@code null} if the tree is
+     *                           empty
+     * @param nextNodeId         next id of the tree's {@link NodeIdAllocator}
+     * @param checkpointSequence sequence number of the last write-ahead log
+     *                           record contained in the stored pages
+     * @param flags              format flags of the stored elements, e.g.
+     *                           {@link #BINARY_KEYS}
+     */
+    public Superblock(Integer rootId, int nextNodeId, long checkpointSequence, int flags) {
+        this.rootId = rootId;
+        this.nextNodeId = nextNodeId;
+        this.checkpointSequence = checkpointSequence;
+        this.flags = flags;
+    }
+
+    /**
+     * Create a new superblock without format flags
+     *
+     * @param rootId             id of the root node, {@code null} if the tree is
+     *                           empty
+     * @param nextNodeId         next id of the tree's {@link NodeIdAllocator}
+     * @param checkpointSequence sequence number of the last write-ahead log
+     *                           record contained in the stored pages
+     */
+    public Superblock(Integer rootId, int nextNodeId, long checkpointSequence) {
+        this(rootId, nextNodeId, checkpointSequence, 0);
+    }
+
+    /**
+     * Create a new superblock of a tree that is not logged
+     *
+     * @param rootId     id of the root node, {@code null} if the tree is empty
+     * @param nextNodeId next id of the tree's {@link NodeIdAllocator}
+     */
+    public Superblock(Integer rootId, int nextNodeId) {
+        this(rootId, nextNodeId, 0);
+    }
+
+    /**
+     * Create a new superblock of a tree whose next node id is not known
+     *
+     * @param rootId id of the root node, {@code null} if the tree is empty
+     */
+    public Superblock(Integer rootId) {
+        this(rootId, NodeIdAllocator.FIRST_ID);
+    }
+
+    /**
+     * Get the id of the root node
+     *
+     * @return id of the root node, {@code null} if the tree is empty
+     */
+    public Integer getRootId() {
+        return this.rootId;
+    }
+
+    /**
+     * Get the next id of the tree's {@link NodeIdAllocator}
+     *
+     * @return next node id
+     */
+    public int getNextNodeId() {
+        return this.nextNodeId;
+    }
+
+    /**
+     * Get the sequence number of the last write-ahead log record whose changes
+     * are contained in the stored pages. Only later records must be redone.
+     *
+     * @return checkpointed sequence number, 0 if no record was checkpointed
+     */
+    public long getCheckpointSequence() {
+        return this.checkpointSequence;
+    }
+
+    /**
+     * Get the format flags of the stored elements, which are set by the
+     * storage on top of the tree
+     *
+     * @return format flags, 0 if no flag is set
+     */
+    public int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Create a copy of the superblock with other format flags
+     *
+     * @param flags format flags of the copy
+     * @return superblock with the same tree state and the given flags
+     */
+    public Superblock withFlags(int flags) {
+        return new Superblock(this.rootId, this.nextNodeId, this.checkpointSequence, flags);
+    }
+
+    /**
+     * Encode the superblock into its binary representation
+     *
+     * @return binary representation of the superblock
+     */
+    public byte[] serialize() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.put((byte) (this.rootId == null ? 0 : 1));
+        buffer.putInt(this.rootId == null ? 0 : this.rootId);
+        buffer.putInt(this.nextNodeId);
+        buffer.putLong(this.checkpointSequence);
+        buffer.putInt(this.flags);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Decode a superblock from its binary representation
+     *
+     * @param data binary representation of the superblock
+     * @return decoded superblock
+     * @throws StorageException an exception is thrown if the data is not a valid
+     *                          superblock or if its checksum does not match
+     */
+    public static Superblock deserialize(byte[] data) throws StorageException {
+        // Superblocks are read from fixed-size areas, so data may follow a shorter superblock of a previous version
+        if (data.length < LENGTH_WITHOUT_NEXT_ID) {
+            throw new StorageException("Superblock has an invalid length (%d bytes)", data.length);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte version = buffer.get(Integer.BYTES);
+        int length = version == VERSION_WITHOUT_NEXT_ID ? LENGTH_WITHOUT_NEXT_ID
+                : version == VERSION_WITHOUT_SEQUENCE ? LENGTH_WITHOUT_SEQUENCE
+                : version == VERSION_WITHOUT_FLAGS ? LENGTH_WITHOUT_FLAGS : LENGTH;
+        if (data.length < length) {
+            throw new StorageException("Superblock has an invalid length (%d bytes)", data.length);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length - Integer.BYTES);
+        if ((int) crc.getValue() != buffer.getInt(length - Integer.BYTES)) {
+            throw new StorageException("Superblock checksum does not match");
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new StorageException("Superblock does not start with the superblock magic number");
+            }
+
+            buffer.get();
+            if (version != VERSION && version != VERSION_WITHOUT_FLAGS && version != VERSION_WITHOUT_SEQUENCE
+                    && version != VERSION_WITHOUT_NEXT_ID) {
+                throw new StorageException("Unsupported superblock version %d", version);
+            }
+
+            boolean hasRoot = buffer.get() != 0;
+            int rootId = buffer.getInt();
+            int nextNodeId = version == VERSION_WITHOUT_NEXT_ID ? NodeIdAllocator.FIRST_ID : buffer.getInt();
+            long checkpointSequence = version == VERSION || version == VERSION_WITHOUT_FLAGS ? buffer.getLong() : 0;
+            int flags = version == VERSION ? buffer.getInt() : 0;
+            return new Superblock(hasRoot ? rootId : null, nextNodeId, checkpointSequence, flags);
+        } catch (BufferUnderflowException e) {
+            throw new StorageException(e, "Malformed superblock");
+        }
+    }
+
+}
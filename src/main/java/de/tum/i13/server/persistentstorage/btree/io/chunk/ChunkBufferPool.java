@@ -0,0 +1,385 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A size-bounded pool of in-memory chunks ({@link NodePage}s) keyed by chunk
+ * id. Chunks are loaded from a {@link Backend} on demand and stay resident until they are
+ * evicted using the CLOCK (second chance) algorithm. Modified chunks are only
+ * marked dirty and are written back to the backend when they are evicted or
+ * when the pool is flushed.
+ * <p>
+ * A chunk must be pinned while it is being used, pinned chunks are never
+ * evicted. Every {@link #pin(String)} must be matched by an
+ * {@link #unpin(String, boolean)}. If all chunks are pinned, a chunk that
+ * needs a frame waits until one is unpinned, so pins must be short and a
+ * thread must not pin a chunk while it holds another pin.
+ * <p>
+ * Chunks are read from the backend without locking the pool: a frame is
+ * reserved for the chunk while it loads, and other threads pinning the same
+ * chunk wait for the load instead of reading it again.
+ *
+ * @param <V> Type of the values used in the BTree
+ */
+public class ChunkBufferPool<V> {
+
+    private static final Logger LOGGER = LogManager.getLogger(ChunkBufferPool.class);
+
+    /**
+     * Storage used by a {@link ChunkBufferPool} to load and write back chunks
+     *
+     * @param <V> Type of the values used in the BTree
+     */
+    public interface Backend<V> {
+
+        /**
+         * Read a chunk from storage
+         *
+         * @param chunkId id of the chunk
+         * @return the stored chunk
+         * @throws StorageException An exception is thrown when the chunk can't be read
+         */
+        NodePage<V> read(String chunkId) throws StorageException;
+
+        /**
+         * Write a chunk to storage
+         *
+         * @param chunkId id of the chunk
+         * @param page    chunk to write
+         * @throws StorageException An exception is thrown when the chunk can't be
+         *                          written
+         */
+        void write(String chunkId, NodePage<V> page) throws StorageException;
+
+    }
+
+    private static class Frame<V> {
+
+        private String chunkId;
+        private NodePage<V> page;
+        private int pinCount;
+        private boolean referenced;
+        private boolean dirty;
+        private boolean loading; // true while the chunk is read from the backend
+
+    }
+
+    private final Backend<V> backend;
+    private final Frame<V>[] frames;
+    private final Map<String, Integer> frameIndex; // chunk id -> position in frames
+    private int clockHand;
+
+    /**
+     * Create a new buffer pool
+     *
+     * @param capacity maximum number of chunks held in memory, must be greater than
+     *                 0
+     * @param backend  storage used to load and write back chunks
+     */
+    @SuppressWarnings("unchecked")
+    public ChunkBufferPool(int capacity, Backend<V> backend) {
+        Preconditions.check(capacity > 0, "Buffer pool must have a capacity greater than 0");
+        this.backend = backend;
+        this.frames = new Frame[capacity];
+        this.frameIndex = new HashMap<>(capacity);
+        this.clockHand = 0;
+
+        for (int i = 0; i < capacity; i++) {
+            this.frames[i] = new Frame<>();
+        }
+    }
+
+    /**
+     * Pin a chunk, loading it from the backend if it is not resident. The returned
+     * chunk is the instance held by the pool, it must not be modified.
+     *
+     * @param chunkId id of the chunk
+     * @return the chunk with the given id
+     * @throws StorageException An exception is thrown when the chunk can't be
+     *                          loaded or the thread is interrupted while it
+     *                          waits for a frame
+     */
+    public NodePage<V> pin(String chunkId) throws StorageException {
+        Frame<V> frame;
+
+        synchronized (this) {
+            while (true) {
+                frame = this.getFrame(chunkId);
+
+                if (frame != null && !frame.loading) {
+                    frame.pinCount++;
+                    frame.referenced = true;
+                    return frame.page;
+                }
+
+                if (frame == null) {
+                    frame = this.allocateFrame(chunkId);
+                    if (frame != null) {
+                        // The reserved frame is pinned, so it is not evicted while the chunk loads
+                        frame.loading = true;
+                        frame.pinCount = 1;
+                        frame.referenced = true;
+                        break;
+                    }
+                }
+
+                this.awaitChange(chunkId);
+            }
+        }
+
+        NodePage<V> page;
+        try {
+            page = this.backend.read(chunkId);
+        } catch (StorageException | RuntimeException e) {
+            synchronized (this) {
+                this.release(frame);
+            }
+            throw e;
+        }
+
+        synchronized (this) {
+            frame.page = page;
+            frame.loading = false;
+            this.notifyAll();
+            return page;
+        }
+    }
+
+    /**
+     * Unpin a chunk previously pinned with {@link #pin(String)}
+     *
+     * @param chunkId id of the chunk
+     * @param dirty   true if the chunk was modified while pinned
+     */
+    public synchronized void unpin(String chunkId, boolean dirty) {
+        Frame<V> frame = this.getFrame(chunkId);
+        Preconditions.check(frame != null && frame.pinCount > 0, "Chunk is not pinned");
+
+        frame.pinCount--;
+        frame.dirty |= dirty;
+        if (frame.pinCount == 0) {
+            this.notifyAll();
+        }
+    }
+
+    /**
+     * Replace the contents of a chunk in the pool. The chunk is marked dirty and
+     * will be written back to the backend later.
+     *
+     * @param chunkId id of the chunk
+     * @param page    new contents of the chunk
+     * @throws StorageException An exception is thrown when the thread is
+     *                          interrupted while it waits for a frame
+     */
+    public synchronized void put(String chunkId, NodePage<V> page) throws StorageException {
+        Frame<V> frame = this.getFrame(chunkId);
+
+        // A load in progress would overwrite the new contents
+        while (frame == null || frame.loading) {
+            if (frame == null) {
+                frame = this.allocateFrame(chunkId);
+                if (frame != null) {
+                    break;
+                }
+            }
+
+            this.awaitChange(chunkId);
+            frame = this.getFrame(chunkId);
+        }
+
+        frame.page = page;
+        frame.referenced = true;
+        frame.dirty = true;
+    }
+
+    /**
+     * Drop a chunk from the pool without writing it back
+     *
+     * @param chunkId id of the chunk
+     */
+    public synchronized void remove(String chunkId) {
+        Frame<V> frame = this.awaitLoaded(chunkId);
+
+        if (frame != null) {
+            this.release(frame);
+        }
+    }
+
+    /**
+     * Drop several chunks from the pool without writing them back. Used when the
+     * stored versions are replaced (e.g. on transaction rollback).
+     *
+     * @param chunkIds ids of the chunks
+     */
+    public synchronized void invalidate(Collection<String> chunkIds) {
+        for (String chunkId : chunkIds) {
+            this.remove(chunkId);
+        }
+    }
+
+    /**
+     * Drop all chunks from the pool without writing them back
+     */
+    public synchronized void clear() {
+        for (Frame<V> frame : this.frames) {
+            if (frame.chunkId != null && this.awaitLoaded(frame.chunkId) == frame) {
+                this.release(frame);
+            }
+        }
+    }
+
+    /**
+     * Write back all chunks that are dirty when this method is called. The pool
+     * is only locked while a single chunk is written, so it can be used while it
+     * is flushed. Chunks changed during the flush may or may not be written.
+     *
+     * @throws StorageException An exception is thrown when a chunk can't be written
+     */
+    public void flush() throws StorageException {
+        for (Frame<V> frame : this.frames) {
+            this.flush(frame);
+        }
+    }
+
+    /**
+     * Check if a chunk is resident in the pool and was changed since it was last
+     * written back
+     *
+     * @param chunkId id of the chunk
+     * @return true if the pooled version of the chunk is newer than the stored
+     * one
+     */
+    public synchronized boolean isDirty(String chunkId) {
+        Frame<V> frame = this.getFrame(chunkId);
+        return frame != null && frame.dirty;
+    }
+
+    /**
+     * Get number of chunks currently resident in the pool
+     *
+     * @return number of resident chunks
+     */
+    public synchronized int size() {
+        return this.frameIndex.size();
+    }
+
+    private synchronized void flush(Frame<V> frame) throws StorageException {
+        if (frame.chunkId != null && frame.dirty) {
+            this.backend.write(frame.chunkId, frame.page);
+            frame.dirty = false;
+        }
+    }
+
+    private Frame<V> getFrame(String chunkId) {
+        Integer index = this.frameIndex.get(chunkId);
+        return index == null ? null : this.frames[index];
+    }
+
+    /**
+     * Wait until a frame is unpinned or released, or a chunk finished loading
+     *
+     * @param chunkId id of the chunk waiting
+     * @throws StorageException An exception is thrown if the thread is
+     *                          interrupted
+     */
+    private void awaitChange(String chunkId) throws StorageException {
+        try {
+            this.wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e, "Interrupted while waiting for a frame for chunk %s", chunkId);
+        }
+    }
+
+    /**
+     * Wait until a chunk is not loading anymore. Loads are short, so the wait
+     * is not interrupted.
+     *
+     * @param chunkId id of the chunk
+     * @return frame of the chunk, {@code null} if it is not resident
+     */
+    private Frame<V> awaitLoaded(String chunkId) {
+        boolean interrupted = false;
+        Frame<V> frame = this.getFrame(chunkId);
+
+        while (frame != null && frame.loading) {
+            try {
+                this.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+            frame = this.getFrame(chunkId);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        return frame;
+    }
+
+    /**
+     * Find a free frame for the chunk, evicting a resident chunk using the CLOCK
+     * algorithm if necessary. Unpinned chunks get a second chance if they were
+     * referenced since the hand last passed them.
+     *
+     * @return the frame assigned to the chunk, {@code null} if all chunks are
+     * pinned
+     */
+    private Frame<V> allocateFrame(String chunkId) throws StorageException {
+        // Two full sweeps are enough to clear all reference bits and find a victim
+        for (int i = 0; i < 2 * this.frames.length; i++) {
+            int index = this.clockHand;
+            Frame<V> frame = this.frames[index];
+            this.clockHand = (this.clockHand + 1) % this.frames.length;
+
+            if (frame.chunkId == null) {
+                return this.assign(frame, index, chunkId);
+            }
+
+            if (frame.pinCount > 0) {
+                continue;
+            }
+
+            if (frame.referenced) {
+                frame.referenced = false;
+                continue;
+            }
+
+            if (frame.dirty) {
+                LOGGER.trace("Writing back evicted chunk {}", frame.chunkId);
+                this.backend.write(frame.chunkId, frame.page);
+            }
+
+            this.release(frame);
+            return this.assign(frame, index, chunkId);
+        }
+
+        LOGGER.debug("Waiting for a free frame for chunk {}, all chunks are pinned", chunkId);
+        return null;
+    }
+
+    private Frame<V> assign(Frame<V> frame, int index, String chunkId) {
+        frame.chunkId = chunkId;
+        this.frameIndex.put(chunkId, index);
+        return frame;
+    }
+
+    private void release(Frame<V> frame) {
+        this.frameIndex.remove(frame.chunkId);
+        frame.chunkId = null;
+        frame.page = null;
+        frame.pinCount = 0;
+        frame.referenced = false;
+        frame.dirty = false;
+        frame.loading = false;
+        this.notifyAll();
+    }
+
+}
@@ -2,79 +2,58 @@ package de.tum.i13.server.persistentstorage.btree.io.chunk;
 
 import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
-import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
-import java.io.IOException;
-import java.io.Serializable;
-import java.nio.file.Files;
-import java.nio.file.Paths;
 
 /**
  * Implements {@link ChunkStorageHandler} by storing chunks of type
- * {@link Chunk} on disk.
+ * {@link Chunk} on disk, one file per chunk. Chunks are written together with
+ * the metadata of their node in the binary format described in
+ * {@link ChunkSerializer}. Reads and writes go through a {@link PageStore},
+ * which decides when pages are written to their files.
  */
-public class ChunkDiskStorageHandler<V> implements ChunkStorageHandler<V>, Serializable {
-
-    private static final Logger LOGGER = LogManager.getLogger(ChunkDiskStorageHandler.class);
-
-    private static final long serialVersionUID = 6529685098267757691L;
+public class ChunkDiskStorageHandler<V> implements ChunkStorageHandler<V> {
 
     private final String chunkId; // Chunk ID
-    private final String storageFolder; // Storage folder
-
-    private ChangeListener cListener;
+    private final PageStore<V> pageStore;
 
     /**
-     * Create new storage handler. This handler interfaces with a chunk at
-     * {@code filePath}
+     * Create new storage handler for the chunk with the given id
      *
-     * @param storageFolder path to the folder where chunks are storage
-     * @param chunkId       ID of the current chunk
-     * @param transHandler  transactionHandler
+     * @param chunkId   ID of the current chunk
+     * @param pageStore store through which the chunk's page is read and written
      */
-    public ChunkDiskStorageHandler(String chunkId, String storageFolder, ChangeListener transHandler) {
+    public ChunkDiskStorageHandler(String chunkId, PageStore<V> pageStore) {
         this.chunkId = chunkId;
-        this.cListener = transHandler;
-        this.storageFolder = storageFolder;
+        this.pageStore = pageStore;
     }
 
     @Override
     public Chunk<V> readChunk() throws StorageException {
-        return StorageUtils.readObject(Paths.get(storageFolder, chunkId));
+        return this.readPage().getChunk();
     }
 
     @Override
-    public void storeChunk(Chunk<V> chunk) throws StorageException {
-        this.cListener.notifyChunkChange(chunkId);
-        if (chunk.getElementCount() == 0) {
-            this.deleteChunk();
-            return;
-        }
-
-        StorageUtils.writeObject(Paths.get(storageFolder, chunkId), chunk);
+    public NodePage<V> readPage() throws StorageException {
+        return this.pageStore.read(chunkId);
     }
 
     @Override
-    public void createChunk(Chunk<V> chunk) throws StorageException {
-        this.cListener.notifyChunkCreation(chunkId);
-        StorageUtils.writeObject(Paths.get(storageFolder, chunkId), chunk);
+    public NodePageView<V> readView() throws StorageException {
+        return this.pageStore.readView(chunkId);
     }
 
-    private void deleteChunk() throws StorageException {
-        try {
-            Files.delete(Paths.get(storageFolder, chunkId));
-            LOGGER.debug("Deleted chunk ({}) from disk.", Paths.get(storageFolder, chunkId));
-        } catch (IOException e) {
-            throw new StorageException(e, "I/O error while deleting chunk from disk");
+    @Override
+    public void storePage(NodePage<V> page) throws StorageException {
+        if (page.getChunk().getElementCount() == 0) {
+            this.pageStore.delete(chunkId);
+            return;
         }
+
+        this.pageStore.write(chunkId, page.copy());
     }
 
     @Override
-    public void setListener(ChangeListener listener) {
-        this.cListener = listener;
+    public void createPage(NodePage<V> page) throws StorageException {
+        this.pageStore.write(chunkId, page.copy());
     }
 
 }
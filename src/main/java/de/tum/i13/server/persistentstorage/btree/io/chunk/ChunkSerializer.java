@@ -0,0 +1,555 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.ChunkImpl;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes and decodes {@link NodePage}s using a compact, versioned binary
+ * format. The format is laid out as follows (all integers are big-endian):
+ *
+ * <pre>
+ * int   magic ("CDBC")
+ * byte  format version
+ * byte  1 if the node is a leaf, 0 otherwise
+ * int   number of children positions (2 * minimumDegree)
+ * ids   each position is either a single 0 byte (no child) or a 1 byte
+ *       followed by the int id of the child
+ * int   number of slots in the chunk (2 * minimumDegree - 1)
+ * slots each slot is either a single 0 byte (empty) or a 1 byte followed by
+ *       a key and a tagged value
+ * int   CRC32 of all the preceding bytes
+ * </pre>
+ * <p>
+ * Keys whose characters are all in {@code [0, 255]}, like the hash keys of
+ * {@link de.tum.i13.server.persistentstorage.StorageKeys}, are written as
+ * their length followed by one ISO-8859-1 byte per character. Other keys are
+ * written as the bitwise complement of their UTF-8 length followed by their
+ * UTF-8 bytes, so the sign of the length tells the encodings apart.
+ * <p>
+ * Values are tagged with their type. {@link String}s and {@link Pair}s are
+ * written as length-prefixed UTF-8, other {@link Serializable} values fall back
+ * to Java serialization. If a compression threshold is given, strings of at
+ * least that many UTF-8 bytes are compressed with DEFLATE, unless that doesn't
+ * make them smaller. Compressed strings are prefixed with their uncompressed
+ * length, so they can be inflated without growing buffers.
+ * <p>
+ * Version 1 of the format only contained the chunk (no leaf flag and children
+ * ids). Such chunks, as well as chunks written with Java serialization, can
+ * still be read using {@link #deserializeChunk(byte[])}. Versions 2 and 3
+ * have the current layout but write all keys as length-prefixed UTF-8, and
+ * version 2 has no compressed strings.
+ */
+public class ChunkSerializer {
+
+    /**
+     * Magic number at the start of every binary chunk ("CDBC")
+     */
+    public static final int MAGIC = 0x43444243;
+
+    /**
+     * Current version of the binary chunk format
+     */
+    public static final byte VERSION = 4;
+
+    /**
+     * Compression threshold that disables the compression of values
+     */
+    public static final int NO_COMPRESSION = 0;
+
+    // Version that only contained the chunk slots
+    private static final byte CHUNK_ONLY_VERSION = 1;
+
+    // Version that had the current layout but no compressed strings
+    private static final byte UNCOMPRESSED_VERSION = 2;
+
+    // Version that had the current layout but wrote all keys as UTF-8
+    private static final byte UTF8_KEYS_VERSION = 3;
+
+    // First two bytes of a Java serialization stream (ObjectStreamConstants.STREAM_MAGIC)
+    private static final short JAVA_SERIALIZATION_MAGIC = (short) 0xACED;
+
+    // Magic, version, slot count and checksum
+    private static final int MINIMUM_LENGTH = 13;
+
+    static final byte EMPTY_SLOT = 0;
+    private static final byte FULL_SLOT = 1;
+
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_PAIR = 2;
+    private static final byte TAG_SERIALIZED = 3;
+    private static final byte TAG_DEFLATED_STRING = 4;
+
+    private ChunkSerializer() {
+    }
+
+    /**
+     * Encode a node page into its binary representation without compressing
+     * its values
+     *
+     * @param page page to encode
+     * @param <V>  type of the values in the chunk
+     * @return binary representation of the page
+     * @throws StorageException an exception is thrown if a value can't be encoded
+     */
+    public static <V> byte[] serialize(NodePage<V> page) throws StorageException {
+        return serialize(page, NO_COMPRESSION);
+    }
+
+    /**
+     * Encode a node page into its binary representation
+     *
+     * @param page                 page to encode
+     * @param compressionThreshold minimum size in bytes of the strings that are
+     *                             compressed, {@link #NO_COMPRESSION} to store
+     *                             all values uncompressed
+     * @param <V>                  type of the values in the chunk
+     * @return binary representation of the page
+     * @throws StorageException an exception is thrown if a value can't be encoded
+     */
+    public static <V> byte[] serialize(NodePage<V> page, int compressionThreshold) throws StorageException {
+        List<Pair<V>> elements = page.getChunk().getElements();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeBoolean(page.isLeaf());
+            out.writeInt(page.getChildrenIds().size());
+
+            for (Integer childId : page.getChildrenIds()) {
+                if (childId == null) {
+                    out.writeByte(EMPTY_SLOT);
+                    continue;
+                }
+
+                out.writeByte(FULL_SLOT);
+                out.writeInt(childId);
+            }
+
+            out.writeInt(elements.size());
+
+            for (Pair<V> element : elements) {
+                if (element == null) {
+                    out.writeByte(EMPTY_SLOT);
+                    continue;
+                }
+
+                out.writeByte(FULL_SLOT);
+                writeKey(out, element.key);
+                writeValue(out, element.value, compressionThreshold);
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not encode chunk");
+        }
+
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decode a node page from its binary representation
+     *
+     * @param data binary representation of the page
+     * @param <V>  type of the values in the chunk
+     * @return decoded page
+     * @throws StorageException an exception is thrown if the data is not a valid
+     *                          binary page or if its checksum does not match
+     */
+    public static <V> NodePage<V> deserialize(byte[] data) throws StorageException {
+        return deserialize(ByteBuffer.wrap(data));
+    }
+
+    /**
+     * Decode a node page from its binary representation. The page is read from
+     * the buffer's position to its limit, the buffer itself is not modified.
+     *
+     * @param data binary representation of the page
+     * @param <V>  type of the values in the chunk
+     * @return decoded page
+     * @throws StorageException an exception is thrown if the data is not a valid
+     *                          binary page or if its checksum does not match
+     */
+    public static <V> NodePage<V> deserialize(ByteBuffer data) throws StorageException {
+        ByteBuffer buffer = openPage(data);
+        byte version = getVersion(buffer);
+
+        try {
+            boolean leaf = buffer.get() != 0;
+            int childrenCount = buffer.getInt();
+            List<Integer> childrenIds = new ArrayList<>(childrenCount);
+
+            for (int i = 0; i < childrenCount; i++) {
+                childrenIds.add(buffer.get() == EMPTY_SLOT ? null : buffer.getInt());
+            }
+
+            return new NodePage<>(leaf, childrenIds, readChunk(buffer, version));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StorageException(e, "Malformed chunk data");
+        }
+    }
+
+    /**
+     * Check if the given data was written by Java serialization, i.e. it is a
+     * chunk stored in the legacy format.
+     *
+     * @param data data to check
+     * @return true if the data is a Java serialization stream
+     */
+    public static boolean isLegacyFormat(byte[] data) {
+        return data.length >= 2 && ByteBuffer.wrap(data).getShort() == JAVA_SERIALIZATION_MAGIC;
+    }
+
+    /**
+     * Decode only the chunk of stored data. Besides the current format, this
+     * supports chunks stored by previous versions, either with Java
+     * serialization or with version 1 of the binary format.
+     *
+     * @param data stored chunk
+     * @param <V>  type of the values in the chunk
+     * @return decoded chunk
+     * @throws StorageException an exception is thrown if the data can't be read
+     */
+    public static <V> Chunk<V> deserializeChunk(byte[] data) throws StorageException {
+        if (!isLegacyFormat(data)) {
+            ByteBuffer buffer = openBuffer(ByteBuffer.wrap(data), true);
+
+            try {
+                byte version = buffer.get();
+                if (isPageVersion(version)) {
+                    return ChunkSerializer.<V>deserialize(data).getChunk();
+                }
+
+                if (version != CHUNK_ONLY_VERSION) {
+                    throw new StorageException("Unsupported chunk format version %d", version);
+                }
+
+                return readChunk(buffer, version);
+            } catch (BufferUnderflowException | IllegalArgumentException e) {
+                throw new StorageException(e, "Malformed chunk data");
+            }
+        }
+
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(data))) {
+            @SuppressWarnings("unchecked")
+            Chunk<V> chunk = (Chunk<V>) in.readObject();
+            return chunk;
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new StorageException(e, "Could not read legacy chunk");
+        }
+    }
+
+    /**
+     * Verify the checksum, magic number and version of a binary page and return
+     * a buffer positioned at the leaf flag
+     */
+    static ByteBuffer openPage(ByteBuffer data) throws StorageException {
+        return openPage(data, true);
+    }
+
+    /**
+     * Verify the magic number and version of a binary page and, if requested,
+     * its checksum, and return a buffer positioned at the leaf flag
+     */
+    static ByteBuffer openPage(ByteBuffer data, boolean verifyChecksum) throws StorageException {
+        ByteBuffer buffer = openBuffer(data, verifyChecksum);
+
+        // The minimum length guarantees that the version can be read
+        byte version = buffer.get();
+        if (!isPageVersion(version)) {
+            throw new StorageException("Unsupported chunk format version %d", version);
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Get the format version of a page opened with
+     * {@link #openPage(ByteBuffer, boolean)}
+     */
+    static byte getVersion(ByteBuffer page) {
+        return page.get(Integer.BYTES);
+    }
+
+    // Versions with the current layout of a page
+    private static boolean isPageVersion(byte version) {
+        return version == VERSION || version == UTF8_KEYS_VERSION || version == UNCOMPRESSED_VERSION;
+    }
+
+    /**
+     * Check if the keys of a page of a format version may be written as
+     * ISO-8859-1
+     */
+    static boolean hasLatin1Keys(byte version) {
+        return version == VERSION;
+    }
+
+    /**
+     * Verify the checksum of binary data, e.g. once when a stored page is first
+     * read, so that later views of it can skip the check
+     *
+     * @param data binary representation of the page, read from its position to
+     *             its limit, the buffer itself is not modified
+     * @throws StorageException an exception is thrown if the data is too short
+     *                          or its checksum does not match
+     */
+    public static void verifyChecksum(ByteBuffer data) throws StorageException {
+        int length = data.remaining();
+        if (length < MINIMUM_LENGTH) {
+            throw new StorageException("Chunk data is too short (%d bytes)", length);
+        }
+
+        ByteBuffer buffer = data.slice();
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().limit(length - Integer.BYTES));
+        if ((int) crc.getValue() != buffer.getInt(length - Integer.BYTES)) {
+            throw new StorageException("Chunk checksum does not match");
+        }
+    }
+
+    /**
+     * Verify the magic number and, if requested, the checksum of binary data
+     * and return a buffer positioned at the format version. The returned
+     * buffer is a slice of the data, so its positions start at 0.
+     */
+    private static ByteBuffer openBuffer(ByteBuffer data, boolean verifyChecksum) throws StorageException {
+        int length = data.remaining();
+        if (length < MINIMUM_LENGTH) {
+            throw new StorageException("Chunk data is too short (%d bytes)", length);
+        }
+
+        if (verifyChecksum) {
+            verifyChecksum(data);
+        }
+
+        ByteBuffer buffer = data.slice();
+        if (buffer.getInt() != MAGIC) {
+            throw new StorageException("Chunk data does not start with the chunk magic number");
+        }
+
+        return buffer;
+    }
+
+    private static <V> Chunk<V> readChunk(ByteBuffer buffer, byte version) throws StorageException {
+        int slotCount = buffer.getInt();
+        List<Pair<V>> elements = new ArrayList<>(slotCount);
+
+        for (int i = 0; i < slotCount; i++) {
+            if (buffer.get() == EMPTY_SLOT) {
+                elements.add(null);
+                continue;
+            }
+
+            String key = readKey(buffer, version);
+            V value = readValue(buffer);
+            elements.add(new Pair<>(key, value));
+        }
+
+        return new ChunkImpl<>((slotCount + 1) / 2, elements);
+    }
+
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeKey(DataOutputStream out, String key) throws IOException {
+        if (key.chars().allMatch(c -> c <= 0xFF)) {
+            out.writeInt(key.length());
+            out.write(key.getBytes(StandardCharsets.ISO_8859_1));
+        } else {
+            byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(~bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read a key of a page of the given format version
+     */
+    static String readKey(ByteBuffer buffer, byte version) {
+        int length = buffer.getInt();
+        boolean latin1 = hasLatin1Keys(version) && length >= 0;
+        byte[] bytes = new byte[length < 0 ? ~length : length];
+        buffer.get(bytes);
+        return new String(bytes, latin1 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Move the buffer's position past a key of a page of any format version
+     */
+    static void skipKey(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + (length < 0 ? ~length : length));
+    }
+
+    private static void writeValue(DataOutputStream out, Object value, int compressionThreshold)
+            throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof String) {
+            writeStringValue(out, (String) value, compressionThreshold);
+        } else if (value instanceof Pair) {
+            Pair<?> pair = (Pair<?>) value;
+            out.writeByte(TAG_PAIR);
+            writeString(out, pair.key);
+            writeValue(out, pair.value, compressionThreshold);
+        } else {
+            ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+            try (ObjectOutputStream objectOut = new ObjectOutputStream(serialized)) {
+                objectOut.writeObject(value);
+            }
+            out.writeByte(TAG_SERIALIZED);
+            out.writeInt(serialized.size());
+            serialized.writeTo(out);
+        }
+    }
+
+    private static void writeStringValue(DataOutputStream out, String string, int compressionThreshold)
+            throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+
+        if (compressionThreshold > NO_COMPRESSION && bytes.length >= compressionThreshold) {
+            byte[] compressed = deflate(bytes);
+            if (compressed.length < bytes.length) {
+                out.writeByte(TAG_DEFLATED_STRING);
+                out.writeInt(bytes.length);
+                out.writeInt(compressed.length);
+                out.write(compressed);
+                return;
+            }
+        }
+
+        out.writeByte(TAG_STRING);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 2);
+            byte[] buffer = new byte[4096];
+            while (!deflater.finished()) {
+                compressed.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return compressed.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static String readDeflatedString(ByteBuffer buffer) throws StorageException {
+        byte[] bytes = new byte[buffer.getInt()];
+        byte[] compressed = new byte[buffer.getInt()];
+        buffer.get(compressed);
+
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            if (inflater.inflate(bytes) != bytes.length || !inflater.finished()) {
+                throw new StorageException("Compressed chunk value does not have its stored length");
+            }
+        } catch (DataFormatException e) {
+            throw new StorageException(e, "Could not inflate compressed chunk value");
+        } finally {
+            inflater.end();
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> V readValue(ByteBuffer buffer) throws StorageException {
+        byte tag = buffer.get();
+
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return (V) readString(buffer);
+            case TAG_DEFLATED_STRING:
+                return (V) readDeflatedString(buffer);
+            case TAG_PAIR:
+                String key = readString(buffer);
+                return (V) new Pair<>(key, readValue(buffer));
+            case TAG_SERIALIZED:
+                byte[] bytes = new byte[buffer.getInt()];
+                buffer.get(bytes);
+                try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                    return (V) in.readObject();
+                } catch (IOException | ClassNotFoundException e) {
+                    throw new StorageException(e, "Could not read serialized chunk value");
+                }
+            default:
+                throw new StorageException("Unknown chunk value tag %d", tag);
+        }
+    }
+
+    /**
+     * Move the buffer's position past a tagged value without decoding it
+     */
+    static void skipValue(ByteBuffer buffer) throws StorageException {
+        byte tag = buffer.get();
+
+        switch (tag) {
+            case TAG_NULL:
+                return;
+            case TAG_STRING:
+            case TAG_SERIALIZED:
+                skipBytes(buffer);
+                return;
+            case TAG_DEFLATED_STRING:
+                buffer.getInt();
+                skipBytes(buffer);
+                return;
+            case TAG_PAIR:
+                skipBytes(buffer);
+                skipValue(buffer);
+                return;
+            default:
+                throw new StorageException("Unknown chunk value tag %d", tag);
+        }
+    }
+
+    /**
+     * Move the buffer's position past a length-prefixed byte sequence
+     */
+    static void skipBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        buffer.position(buffer.position() + length);
+    }
+
+}
@@ -2,10 +2,10 @@ package de.tum.i13.server.persistentstorage.btree.io.chunk;
 
 import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
 
 /**
- * Handles storage of {@link Chunk}s.
+ * Handles storage of {@link Chunk}s. Chunks are stored together with the
+ * metadata of the node they belong to (see {@link NodePage}).
  *
  * @param <V> Type of the values used in the BTree.
  */
@@ -21,24 +21,45 @@ public interface ChunkStorageHandler<V> {
     Chunk<V> readChunk() throws StorageException;
 
     /**
-     * Store the chunk. If the chunk is empty, the chunk is deleted instead.
+     * Read the stored chunk together with the metadata of its node.
      *
-     * @param chunk chunk to store
+     * @return The stored page
      * @throws StorageException An exception is thrown when the handler wansn't able
-     *                          to store or delete the chunk
+     *                          to read the chunk
      */
-    void storeChunk(Chunk<V> chunk) throws StorageException;
+    NodePage<V> readPage() throws StorageException;
 
     /**
-     * Store the chunk. This method differs from {@link #storeChunk(Chunk)
-     * storeChunk} by storing the chunk even if it's empty.
+     * Read a view of the stored chunk that decodes elements only when they are
+     * accessed (see {@link NodePageView}). The view is only valid until the chunk
+     * is stored again.
      *
-     * @param chunk chunk to create
+     * @return view of the stored page, or {@code null} if the handler can't
+     * provide a view that is cheaper than {@link #readPage()}
+     * @throws StorageException An exception is thrown when the handler wansn't able
+     *                          to read the chunk
+     */
+    default NodePageView<V> readView() throws StorageException {
+        return null;
+    }
+
+    /**
+     * Store the page. If the page's chunk is empty, the page is deleted instead.
+     *
+     * @param page page to store
      * @throws StorageException An exception is thrown when the handler wansn't able
      *                          to store or delete the chunk
      */
-    void createChunk(Chunk<V> chunk) throws StorageException;
+    void storePage(NodePage<V> page) throws StorageException;
 
-    void setListener(ChangeListener listener);
+    /**
+     * Store the page. This method differs from {@link #storePage(NodePage)
+     * storePage} by storing the page even if its chunk is empty.
+     *
+     * @param page page to create
+     * @throws StorageException An exception is thrown when the handler wansn't able
+     *                          to store or delete the chunk
+     */
+    void createPage(NodePage<V> page) throws StorageException;
 
 }
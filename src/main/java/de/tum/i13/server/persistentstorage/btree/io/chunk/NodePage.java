@@ -0,0 +1,60 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.ChunkImpl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persistent representation of a B-Tree node: the node's {@link Chunk}
+ * together with the metadata needed to rebuild the node (leaf flag and
+ * children ids). The element count of the node is the number of elements in
+ * the chunk. Every node is stored in its own page, so that changing a node
+ * only requires writing that node's page.
+ *
+ * @param <V> Type of the values used in the BTree
+ */
+public class NodePage<V> {
+
+    private final boolean leaf;
+    private final List<Integer> childrenIds; // null if there is no child at a position
+    private final Chunk<V> chunk;
+
+    /**
+     * Create a new page
+     *
+     * @param leaf        true if the node is a leaf node
+     * @param childrenIds ids of the node's children, {@code null} for positions
+     *                    without a child
+     * @param chunk       chunk of the node
+     */
+    public NodePage(boolean leaf, List<Integer> childrenIds, Chunk<V> chunk) {
+        this.leaf = leaf;
+        this.childrenIds = Collections.unmodifiableList(new ArrayList<>(childrenIds));
+        this.chunk = chunk;
+    }
+
+    /**
+     * Create a copy of the page that doesn't share its chunk with this page
+     *
+     * @return copy of the page
+     */
+    public NodePage<V> copy() {
+        return new NodePage<>(this.leaf, this.childrenIds, new ChunkImpl<>(this.chunk));
+    }
+
+    public boolean isLeaf() {
+        return this.leaf;
+    }
+
+    public List<Integer> getChildrenIds() {
+        return this.childrenIds;
+    }
+
+    public Chunk<V> getChunk() {
+        return this.chunk;
+    }
+
+}
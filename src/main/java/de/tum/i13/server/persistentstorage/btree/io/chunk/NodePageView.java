@@ -0,0 +1,266 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only view of the chunk of a {@link NodePage} in its binary format (see
+ * {@link ChunkSerializer}). Keys are compared directly in the encoded data and
+ * only the elements that are actually accessed are decoded, which avoids
+ * building a {@link Chunk} for nodes that are only searched. The view keeps a
+ * reference to the given buffer, so the buffer must not change while the view
+ * is in use.
+ *
+ * @param <V> type of the values in the chunk
+ */
+public class NodePageView<V> {
+
+    private final ByteBuffer buffer;
+    private final byte version; // format version of the page
+    private final boolean leaf;
+    private final int[] keyOffsets; // position of the length of each element's key
+    private final int elementCount;
+
+    /**
+     * Create a view of an encoded page
+     *
+     * @param data binary representation of the page, read from its position to
+     *             its limit
+     * @throws StorageException an exception is thrown if the data is not a valid
+     *                          binary page or if its checksum does not match
+     */
+    public NodePageView(ByteBuffer data) throws StorageException {
+        this(data, true);
+    }
+
+    /**
+     * Create a view of an encoded page whose checksum may already have been
+     * verified (see {@link ChunkSerializer#verifyChecksum(ByteBuffer)}), so
+     * that pages visited many times are not checksummed on every visit
+     *
+     * @param data           binary representation of the page, read from its
+     *                       position to its limit
+     * @param verifyChecksum true if the checksum of the page must be verified
+     * @throws StorageException an exception is thrown if the data is not a valid
+     *                          binary page or if its checksum is verified and
+     *                          does not match
+     */
+    public NodePageView(ByteBuffer data, boolean verifyChecksum) throws StorageException {
+        this.buffer = ChunkSerializer.openPage(data, verifyChecksum);
+        this.version = ChunkSerializer.getVersion(this.buffer);
+
+        try {
+            this.leaf = this.buffer.get() != 0;
+
+            int childrenCount = this.buffer.getInt();
+            for (int i = 0; i < childrenCount; i++) {
+                if (this.buffer.get() != ChunkSerializer.EMPTY_SLOT) {
+                    this.buffer.getInt();
+                }
+            }
+
+            int slotCount = this.buffer.getInt();
+            int count = 0;
+            this.keyOffsets = new int[slotCount];
+
+            for (int i = 0; i < slotCount; i++) {
+                if (this.buffer.get() == ChunkSerializer.EMPTY_SLOT) {
+                    continue;
+                }
+
+                this.keyOffsets[count++] = this.buffer.position();
+                ChunkSerializer.skipKey(this.buffer);
+                ChunkSerializer.skipValue(this.buffer);
+            }
+
+            this.elementCount = count;
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StorageException(e, "Malformed chunk data");
+        }
+    }
+
+    /**
+     * Check if the page belongs to a leaf node
+     *
+     * @return true if the node is a leaf
+     */
+    public boolean isLeaf() {
+        return this.leaf;
+    }
+
+    /**
+     * Get number of elements in the chunk
+     *
+     * @return number of elements
+     */
+    public int getElementCount() {
+        return this.elementCount;
+    }
+
+    /**
+     * Finds index that contains the first element with a key greater or equal than
+     * {@code key}
+     *
+     * @param key key to check
+     * @return index of first element with a key greater or equal than {@code key}
+     */
+    public int findIndexOfFirstGreaterOrEqualThen(String key) {
+        int low = 0;
+        int high = this.elementCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.compareKey(key, mid) > 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Finds index that contains the first element with a key greater than
+     * {@code key}
+     *
+     * @param key key to check
+     * @return index of first element with a key greater than {@code key}
+     */
+    public int findIndexOfFirstGreaterThen(String key) {
+        int low = 0;
+        int high = this.elementCount;
+
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (this.compareKey(key, mid) >= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * Compare a key with the key of an element, without decoding the latter. The
+     * result has the same sign as {@code key.compareTo(get(index).key)}.
+     *
+     * @param key   key to compare
+     * @param index index of the element
+     * @return a negative integer, zero, or a positive integer as {@code key} is
+     * less than, equal to, or greater than the element's key
+     */
+    public int compareKey(String key, int index) {
+        int position = this.keyOffsets[index];
+        int length = this.buffer.getInt(position);
+        position += Integer.BYTES;
+
+        if (length >= 0 && ChunkSerializer.hasLatin1Keys(this.version)) {
+            // Every byte is a character, so the key is compared without decoding
+            int common = Math.min(key.length(), length);
+            for (int k = 0; k < common; k++) {
+                int difference = key.charAt(k) - (this.buffer.get(position + k) & 0xFF);
+                if (difference != 0) {
+                    return difference;
+                }
+            }
+            return key.length() - length;
+        }
+
+        int end = position + (length < 0 ? ~length : length);
+        int k = 0;
+
+        // Decode UTF-8 into UTF-16 code units, since that is what String.compareTo compares
+        while (position < end) {
+            int first = this.buffer.get(position) & 0xFF;
+            int codePoint;
+
+            if (first < 0x80) {
+                codePoint = first;
+                position += 1;
+            } else if (first < 0xE0) {
+                codePoint = (first & 0x1F) << 6 | this.continuation(position + 1);
+                position += 2;
+            } else if (first < 0xF0) {
+                codePoint = (first & 0x0F) << 12 | this.continuation(position + 1) << 6
+                        | this.continuation(position + 2);
+                position += 3;
+            } else {
+                codePoint = (first & 0x07) << 18 | this.continuation(position + 1) << 12
+                        | this.continuation(position + 2) << 6 | this.continuation(position + 3);
+                position += 4;
+            }
+
+            if (Character.isBmpCodePoint(codePoint)) {
+                if (k == key.length()) {
+                    return -1;
+                }
+
+                int difference = key.charAt(k++) - codePoint;
+                if (difference != 0) {
+                    return difference;
+                }
+            } else {
+                for (char unit : Character.toChars(codePoint)) {
+                    if (k == key.length()) {
+                        return -1;
+                    }
+
+                    int difference = key.charAt(k++) - unit;
+                    if (difference != 0) {
+                        return difference;
+                    }
+                }
+            }
+        }
+
+        return key.length() - k;
+    }
+
+    /**
+     * Get the key of an element
+     *
+     * @param index index of the element
+     * @return decoded key
+     */
+    public String getKey(int index) {
+        return ChunkSerializer.readKey(this.buffer.duplicate().position(this.keyOffsets[index]), this.version);
+    }
+
+    /**
+     * Get the value of an element
+     *
+     * @param index index of the element
+     * @return decoded value
+     * @throws StorageException an exception is thrown if the value can't be
+     *                          decoded
+     */
+    public V getValue(int index) throws StorageException {
+        ByteBuffer value = this.buffer.duplicate().position(this.keyOffsets[index]);
+        ChunkSerializer.skipKey(value);
+        return ChunkSerializer.readValue(value);
+    }
+
+    /**
+     * Get an element
+     *
+     * @param index index of the element
+     * @return decoded element
+     * @throws StorageException an exception is thrown if the value can't be
+     *                          decoded
+     */
+    public Pair<V> get(int index) throws StorageException {
+        return new Pair<>(this.getKey(index), this.getValue(index));
+    }
+
+    private int continuation(int position) {
+        return this.buffer.get(position) & 0x3F;
+    }
+
+}
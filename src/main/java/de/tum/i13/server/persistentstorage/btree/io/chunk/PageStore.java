@@ -0,0 +1,58 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+
+/**
+ * Stores the {@link NodePage}s of a tree by chunk id. Implementations decide
+ * when and how pages reach persistent storage (e.g. through a
+ * {@link ChunkBufferPool} or a transaction log).
+ *
+ * @param <V> Type of the values used in the BTree.
+ */
+public interface PageStore<V> {
+
+    /**
+     * Read a page. The returned page is not shared, so callers may modify its
+     * chunk.
+     *
+     * @param chunkId id of the page's chunk
+     * @return read page
+     * @throws StorageException An exception is thrown if the page doesn't exist or
+     *                          can't be read
+     */
+    NodePage<V> read(String chunkId) throws StorageException;
+
+    /**
+     * Read a view of a page that decodes elements only when they are accessed
+     *
+     * @param chunkId id of the page's chunk
+     * @return view of the page, or {@code null} if the store can't provide a
+     * view that is cheaper than {@link #read(String)}
+     * @throws StorageException An exception is thrown if the page doesn't exist or
+     *                          can't be read
+     */
+    default NodePageView<V> readView(String chunkId) throws StorageException {
+        return null;
+    }
+
+    /**
+     * Write a page, replacing the previous version if it exists. The store takes
+     * ownership of the given page.
+     *
+     * @param chunkId id of the page's chunk
+     * @param page    page to write
+     * @throws StorageException An exception is thrown if the page can't be
+     *                          written
+     */
+    void write(String chunkId, NodePage<V> page) throws StorageException;
+
+    /**
+     * Delete a page
+     *
+     * @param chunkId id of the page's chunk
+     * @throws StorageException An exception is thrown if the page can't be
+     *                          deleted
+     */
+    void delete(String chunkId) throws StorageException;
+
+}
@@ -0,0 +1,124 @@
+package de.tum.i13.server.persistentstorage.btree.io.legacy;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.server.persistentstorage.btree.io.Superblock;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Migrates trees stored by previous versions. These versions wrote the whole
+ * node structure with Java serialization to the tree's {@code root} file, and
+ * the chunks either with Java serialization or with version 1 of the binary
+ * chunk format. The migration rewrites every chunk as a {@link NodePage} and
+ * replaces the structure file with a {@link Superblock}.
+ */
+public class LegacyTreeMigration {
+
+    private static final Logger LOGGER = LogManager.getLogger(LegacyTreeMigration.class);
+
+    private static final String NODE_CLASS = "de.tum.i13.server.persistentstorage.btree.PersistentBTreeNode";
+
+    private LegacyTreeMigration() {
+    }
+
+    /**
+     * Migrate the tree stored in {@code storageFolder} if it was stored by a
+     * previous version. Trees in the current format are left untouched.
+     *
+     * @param storageFolder folder where the tree is stored
+     * @param rootFileName  name of the structure file in the storage folder
+     * @return true if the tree was migrated, false otherwise
+     * @throws StorageException an exception is thrown if the tree can't be read or
+     *                          written
+     */
+    public static boolean migrate(Path storageFolder, String rootFileName) throws StorageException {
+        Path rootPath = storageFolder.resolve(rootFileName);
+        if (!Files.exists(rootPath)) {
+            return false;
+        }
+
+        byte[] data = readFile(rootPath);
+        if (!ChunkSerializer.isLegacyFormat(data)) {
+            return false;
+        }
+
+        PersistentBTreeNode root = readStructure(data);
+        int migrated = root == null ? 0 : migrateNode(storageFolder, root);
+
+        // The superblock is written last, so an interrupted migration is simply run again
+        StorageUtils.writeSuperblock(rootPath, new Superblock(root == null ? null : root.id));
+        LOGGER.info("Migrated tree with {} nodes in {} to the paged format", migrated, storageFolder);
+        return true;
+    }
+
+    private static int migrateNode(Path storageFolder, PersistentBTreeNode node) throws StorageException {
+        Path chunkPath = storageFolder.resolve(Integer.toString(node.id));
+        Chunk<Object> chunk = ChunkSerializer.deserializeChunk(readFile(chunkPath));
+
+        int migrated = 1;
+        List<Integer> childrenIds = new ArrayList<>(2 * node.minimumDegree);
+        for (PersistentBTreeNode child : node.children) {
+            if (child == null) {
+                childrenIds.add(null);
+                continue;
+            }
+
+            childrenIds.add(child.id);
+            migrated += migrateNode(storageFolder, child);
+        }
+
+        StorageUtils.writePage(chunkPath, new NodePage<>(node.leaf, childrenIds, chunk));
+        return migrated;
+    }
+
+    private static PersistentBTreeNode readStructure(byte[] data) throws StorageException {
+        try (ObjectInputStream in = new LegacyObjectInputStream(new ByteArrayInputStream(data))) {
+            return (PersistentBTreeNode) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            throw new StorageException(e, "Could not read legacy tree structure");
+        }
+    }
+
+    private static byte[] readFile(Path path) throws StorageException {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading %s", path);
+        }
+    }
+
+    /**
+     * Reads serialized nodes into the legacy node class
+     */
+    private static class LegacyObjectInputStream extends ObjectInputStream {
+
+        LegacyObjectInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (NODE_CLASS.equals(desc.getName())) {
+                return PersistentBTreeNode.class;
+            }
+
+            return super.resolveClass(desc);
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package de.tum.i13.server.persistentstorage.btree.io.legacy;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * Shape of {@link de.tum.i13.server.persistentstorage.btree.PersistentBTreeNode}
+ * as it was written with Java serialization by previous versions. Only used to
+ * read old tree structure files (see {@link LegacyTreeMigration}). The class
+ * has the same simple name and serial version as the original, which is
+ * required for Java serialization to accept it in place of the original.
+ */
+class PersistentBTreeNode implements Serializable {
+
+    private static final long serialVersionUID = 4618723476129821750L;
+
+    int minimumDegree;
+    List<PersistentBTreeNode> children;
+    int elementCount;
+    boolean leaf;
+    int id;
+
+}
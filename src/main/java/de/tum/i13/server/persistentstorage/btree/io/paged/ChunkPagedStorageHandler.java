@@ -0,0 +1,160 @@
+package de.tum.i13.server.persistentstorage.btree.io.paged;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkBufferPool;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePage;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.NodePageView;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Implements {@link ChunkStorageHandler} by storing chunks in a
+ * {@link PageFile}. Chunks are written together with the metadata of their
+ * node in the binary format described in {@link ChunkSerializer}. If a
+ * {@link ChunkBufferPool} is given, reads and writes go through the pool and
+ * chunks are only written to the file when the pool writes them back. If the
+ * file is memory-mapped, views of chunks that were written back are read
+ * directly from the mapping, bypassing the pool.
+ */
+public class ChunkPagedStorageHandler<V> implements ChunkStorageHandler<V> {
+
+    private final String chunkId;
+    private final PageFile pageFile;
+    private final ChunkBufferPool<V> bufferPool; // null if chunks are read from the file directly
+    private final ChangeListener cListener;
+    private final int compressionThreshold;
+
+    /**
+     * Create new storage handler for the chunk with the given id
+     *
+     * @param chunkId              ID of the current chunk
+     * @param pageFile             file where the chunk is stored
+     * @param cListener            listener notified of chunk changes
+     * @param bufferPool           pool used to cache chunks in memory, or
+     *                             {@code null} to always access the file
+     * @param compressionThreshold minimum size in bytes of the values that are
+     *                             compressed when the chunk is written to the
+     *                             file
+     */
+    public ChunkPagedStorageHandler(String chunkId, PageFile pageFile, ChangeListener cListener,
+                                    ChunkBufferPool<V> bufferPool, int compressionThreshold) {
+        this.chunkId = chunkId;
+        this.pageFile = pageFile;
+        this.cListener = cListener;
+        this.bufferPool = bufferPool;
+        this.compressionThreshold = compressionThreshold;
+    }
+
+    @Override
+    public Chunk<V> readChunk() throws StorageException {
+        return this.readPage().getChunk();
+    }
+
+    @Override
+    public NodePage<V> readPage() throws StorageException {
+        if (this.bufferPool == null) {
+            return readPage(this.pageFile, this.chunkId);
+        }
+
+        // Callers modify the chunk they get, so they must not share the pooled instance
+        NodePage<V> pooled = this.bufferPool.pin(chunkId);
+        try {
+            return pooled.copy();
+        } finally {
+            this.bufferPool.unpin(chunkId, false);
+        }
+    }
+
+    @Override
+    public NodePageView<V> readView() throws StorageException {
+        // Without a mapping, decoding the whole page is as cheap as building a view, unless compressed values
+        // that are not pooled have to be inflated
+        boolean cheaper = this.pageFile.isMemoryMapped()
+                || (this.bufferPool == null && this.compressionThreshold != ChunkSerializer.NO_COMPRESSION);
+        if (!cheaper || (this.bufferPool != null && this.bufferPool.isDirty(chunkId))) {
+            return null;
+        }
+
+        // The checksum covers the whole page, so it is only verified once per version of the chunk
+        ByteBuffer data = this.pageFile.readView(Integer.parseInt(chunkId), ChunkSerializer::verifyChecksum);
+        if (data == null) {
+            throw new StorageException("Chunk %s does not exist", chunkId);
+        }
+
+        return new NodePageView<>(data, false);
+    }
+
+    @Override
+    public void storePage(NodePage<V> page) throws StorageException {
+        this.cListener.notifyChunkChange(chunkId);
+        if (page.getChunk().getElementCount() == 0) {
+            this.deleteChunk();
+            return;
+        }
+
+        this.writePage(page);
+    }
+
+    @Override
+    public void createPage(NodePage<V> page) throws StorageException {
+        this.cListener.notifyChunkCreation(chunkId);
+        this.writePage(page);
+    }
+
+    private void writePage(NodePage<V> page) throws StorageException {
+        if (this.bufferPool == null) {
+            writePage(this.pageFile, this.chunkId, page, this.compressionThreshold);
+        } else {
+            this.bufferPool.put(chunkId, page.copy());
+        }
+    }
+
+    private void deleteChunk() throws StorageException {
+        if (this.bufferPool != null) {
+            this.bufferPool.remove(chunkId);
+        }
+
+        this.pageFile.delete(Integer.parseInt(chunkId));
+    }
+
+    /**
+     * Read a node page from a page file
+     *
+     * @param pageFile file where the page is stored
+     * @param chunkId  id of the page's chunk
+     * @param <V>      Type of the values in the chunk
+     * @return read page
+     * @throws StorageException An exception is thrown if the page doesn't exist or
+     *                          can't be read
+     */
+    public static <V> NodePage<V> readPage(PageFile pageFile, String chunkId) throws StorageException {
+        byte[] data = pageFile.read(Integer.parseInt(chunkId));
+        if (data == null) {
+            throw new StorageException("Chunk %s does not exist", chunkId);
+        }
+
+        return ChunkSerializer.deserialize(data);
+    }
+
+    /**
+     * Write a node page to a page file, compressing its large values
+     *
+     * @param pageFile             file where the page is stored
+     * @param chunkId              id of the page's chunk
+     * @param page                 page to write
+     * @param compressionThreshold minimum size in bytes of the values that are
+     *                             compressed
+     * @param <V>                  Type of the values in the chunk
+     * @throws StorageException An exception is thrown if the page can't be
+     *                          written
+     */
+    public static <V> void writePage(PageFile pageFile, String chunkId, NodePage<V> page, int compressionThreshold)
+            throws StorageException {
+        pageFile.write(Integer.parseInt(chunkId), ChunkSerializer.serialize(page, compressionThreshold));
+    }
+
+}
@@ -0,0 +1,704 @@
+package de.tum.i13.server.persistentstorage.btree.io.paged;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.Superblock;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Stores variable-sized chunks, identified by an int id, in fixed-size pages
+ * of a single file. The file is accessed through a {@link FileChannel}.
+ * <p>
+ * Page 0 is the file header, it holds the page size, the head of the free-page
+ * list and the tree's {@link Superblock}. Every other page starts with a small
+ * header:
+ *
+ * <pre>
+ * byte  page type (free, chunk head or chunk overflow)
+ * int   chunk id
+ * long  sequence number of the write (only used in chunk heads)
+ * int   next page of the chunk or of the free-page list, -1 if none
+ * int   number of payload bytes in this page
+ * </pre>
+ * <p>
+ * A chunk that doesn't fit in a single page continues in a chain of overflow
+ * pages. Chunks are never overwritten in place: a new version is written to
+ * free pages and the pages of the previous version are freed afterwards. The
+ * location of the chunks is kept in memory and rebuilt when the file is opened
+ * by scanning the page headers. If a crash left two versions of a chunk, the
+ * one with the highest sequence number is used. Pages not used by any chunk
+ * are collected in the free-page list when the file is opened.
+ * <p>
+ * Optionally, pages can be read through memory-mapped segments of the file
+ * (see {@link FileChannel#map}) instead of copying them into heap buffers.
+ * Writes still go through the channel and are visible in the mapping, since
+ * both share the operating system's page cache. Views can be checked by a
+ * {@link Verifier} once per version of a chunk, so readers that visit a chunk
+ * many times don't check it every time.
+ */
+public class PageFile implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(PageFile.class);
+
+    /**
+     * Default size of a page in bytes
+     */
+    public static final int DEFAULT_PAGE_SIZE = 4096;
+
+    /**
+     * Magic number at the start of the file header ("CDBP")
+     */
+    public static final int MAGIC = 0x43444250;
+
+    /**
+     * Current version of the file format
+     */
+    public static final byte VERSION = 1;
+
+    private static final int NO_PAGE = -1;
+
+    private static final byte FREE_PAGE = 0;
+    private static final byte HEAD_PAGE = 1;
+    private static final byte OVERFLOW_PAGE = 2;
+
+    private static final int NEXT_PAGE_OFFSET = 1 + Integer.BYTES + Long.BYTES;
+    private static final int PAYLOAD_LENGTH_OFFSET = NEXT_PAGE_OFFSET + Integer.BYTES;
+    private static final int PAGE_HEADER_SIZE = PAYLOAD_LENGTH_OFFSET + Integer.BYTES;
+    private static final int SUPERBLOCK_OFFSET = 32;
+
+    // Maximum size of a memory-mapped segment of the file
+    private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final Path filePath;
+    private FileChannel channel;
+    private final int pageSize;
+    private final boolean memoryMapped;
+    private final List<MappedByteBuffer> segments; // mapped segments of the file, null if not mapped (yet)
+    private final Map<Integer, Integer> chunkPages; // chunk id -> first page of the chunk
+    private final Set<Integer> verifiedChunks; // chunks whose current version passed a verifier
+    private int pageCount; // including the file header
+    private int freeListHead;
+    private long sequence;
+    private Superblock superblock;
+
+    /**
+     * Open a page file, creating it if it does not exist
+     *
+     * @param filePath     path of the file
+     * @param pageSize     size of a page in bytes, only used when the file is
+     *                     created
+     * @param memoryMapped true if pages should be read through memory-mapped
+     *                     segments of the file
+     * @throws StorageException An exception is thrown if the file can't be opened
+     *                          or is not a valid page file
+     */
+    public PageFile(Path filePath, int pageSize, boolean memoryMapped) throws StorageException {
+        Preconditions.check(pageSize > PAGE_HEADER_SIZE && pageSize >= SUPERBLOCK_OFFSET + Superblock.LENGTH,
+                "Page size is too small");
+
+        this.filePath = filePath;
+        try {
+            this.channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not open page file %s", filePath);
+        }
+
+        this.chunkPages = new HashMap<>();
+        this.verifiedChunks = new HashSet<>();
+        this.memoryMapped = memoryMapped;
+        this.segments = new ArrayList<>();
+
+        try {
+            if (this.channel.size() == 0) {
+                this.pageSize = pageSize;
+                this.pageCount = 1;
+                this.freeListHead = NO_PAGE;
+                this.sequence = 0;
+                this.superblock = new Superblock(null);
+                this.writeFileHeader();
+            } else {
+                this.pageSize = this.readFileHeader();
+                this.pageCount = (int) (this.channel.size() / this.pageSize);
+                this.recover();
+            }
+        } catch (IOException e) {
+            this.closeQuietly();
+            throw new StorageException(e, "I/O error while opening page file %s", filePath);
+        } catch (StorageException e) {
+            this.closeQuietly();
+            throw e;
+        }
+    }
+
+    /**
+     * Open a page file, creating it if it does not exist. Pages are read through
+     * the file channel.
+     *
+     * @param filePath path of the file
+     * @param pageSize size of a page in bytes, only used when the file is
+     *                 created
+     * @throws StorageException An exception is thrown if the file can't be opened
+     *                          or is not a valid page file
+     */
+    public PageFile(Path filePath, int pageSize) throws StorageException {
+        this(filePath, pageSize, false);
+    }
+
+    /**
+     * Open a page file with the default page size, creating it if it does not
+     * exist
+     *
+     * @param filePath path of the file
+     * @throws StorageException An exception is thrown if the file can't be opened
+     *                          or is not a valid page file
+     */
+    public PageFile(Path filePath) throws StorageException {
+        this(filePath, DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * Read a chunk
+     *
+     * @param chunkId id of the chunk
+     * @return stored bytes of the chunk, or {@code null} if there is no chunk with
+     * that id
+     * @throws StorageException An exception is thrown if the chunk can't be read
+     */
+    public synchronized byte[] read(int chunkId) throws StorageException {
+        ByteBuffer data = this.readBuffer(chunkId);
+        if (data == null) {
+            return null;
+        }
+
+        if (data.hasArray() && data.arrayOffset() == 0 && data.remaining() == data.array().length) {
+            return data.array();
+        }
+
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Read a chunk without copying it if possible. If the file is memory-mapped
+     * and the chunk fits in a single page, the returned buffer is a view of the
+     * mapped page. Such a view must not be used after the chunk is written again
+     * or deleted, since its page may be reused.
+     *
+     * @param chunkId id of the chunk
+     * @return read-only buffer with the stored bytes of the chunk, or
+     * {@code null} if there is no chunk with that id
+     * @throws StorageException An exception is thrown if the chunk can't be read
+     */
+    public synchronized ByteBuffer readView(int chunkId) throws StorageException {
+        ByteBuffer data = this.readBuffer(chunkId);
+        return data == null ? null : data.asReadOnlyBuffer();
+    }
+
+    /**
+     * Read a chunk without copying it if possible (see {@link #readView(int)}),
+     * and check it with the given verifier if its current version wasn't
+     * checked before. Writing or deleting the chunk starts a new version.
+     *
+     * @param chunkId  id of the chunk
+     * @param verifier check of the stored bytes, e.g. of their checksum
+     * @return read-only buffer with the stored bytes of the chunk, or
+     * {@code null} if there is no chunk with that id
+     * @throws StorageException An exception is thrown if the chunk can't be read
+     *                          or the verifier rejects it
+     */
+    public synchronized ByteBuffer readView(int chunkId, Verifier verifier) throws StorageException {
+        ByteBuffer data = this.readView(chunkId);
+        if (data != null && !this.verifiedChunks.contains(chunkId)) {
+            verifier.verify(data.duplicate());
+            this.verifiedChunks.add(chunkId);
+        }
+        return data;
+    }
+
+    /**
+     * Write a chunk, replacing the previous version if it exists
+     *
+     * @param chunkId id of the chunk
+     * @param data    bytes of the chunk
+     * @throws StorageException An exception is thrown if the chunk can't be
+     *                          written
+     */
+    public synchronized void write(int chunkId, byte[] data) throws StorageException {
+        int payloadSize = this.pageSize - PAGE_HEADER_SIZE;
+        int pagesNeeded = Math.max(1, (data.length + payloadSize - 1) / payloadSize);
+
+        try {
+            int freeListHead = this.freeListHead;
+            int[] pages = new int[pagesNeeded];
+            for (int i = 0; i < pagesNeeded; i++) {
+                pages[i] = this.allocatePage();
+            }
+
+            // Overflow pages are written first, so that the head never references missing pages
+            for (int i = pagesNeeded - 1; i >= 0; i--) {
+                int from = i * payloadSize;
+                int length = Math.min(payloadSize, data.length - from);
+                ByteBuffer page = ByteBuffer.allocate(this.pageSize);
+                page.put(i == 0 ? HEAD_PAGE : OVERFLOW_PAGE);
+                page.putInt(chunkId);
+                page.putLong(i == 0 ? ++this.sequence : 0);
+                page.putInt(i == pagesNeeded - 1 ? NO_PAGE : pages[i + 1]);
+                page.putInt(length);
+                page.put(data, from, length);
+                this.writeFully(page.rewind(), this.offset(pages[i]));
+            }
+
+            this.verifiedChunks.remove(chunkId);
+            Integer previous = this.chunkPages.put(chunkId, pages[0]);
+            if (previous != null) {
+                this.freeChain(previous);
+            } else if (freeListHead != this.freeListHead) {
+                this.writeFileHeader();
+            }
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing chunk %d", chunkId);
+        }
+    }
+
+    /**
+     * Delete a chunk, its pages are added to the free-page list
+     *
+     * @param chunkId id of the chunk
+     * @throws StorageException An exception is thrown if the pages of the chunk
+     *                          can't be freed
+     */
+    public synchronized void delete(int chunkId) throws StorageException {
+        this.verifiedChunks.remove(chunkId);
+        Integer page = this.chunkPages.remove(chunkId);
+        if (page == null) {
+            return;
+        }
+
+        try {
+            this.freeChain(page);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while deleting chunk %d", chunkId);
+        }
+    }
+
+    /**
+     * Check if a chunk is stored in the file
+     *
+     * @param chunkId id of the chunk
+     * @return true if the chunk exists
+     */
+    public synchronized boolean contains(int chunkId) {
+        return this.chunkPages.containsKey(chunkId);
+    }
+
+    /**
+     * Get the ids of all chunks stored in the file
+     *
+     * @return copy of the ids of the stored chunks
+     */
+    public synchronized Set<Integer> getChunkIds() {
+        return new HashSet<>(this.chunkPages.keySet());
+    }
+
+    /**
+     * Get the superblock stored in the file header
+     *
+     * @return stored superblock
+     */
+    public synchronized Superblock getSuperblock() {
+        return this.superblock;
+    }
+
+    /**
+     * Replace the superblock stored in the file header
+     *
+     * @param superblock new superblock
+     * @throws StorageException An exception is thrown if the file header can't be
+     *                          written
+     */
+    public synchronized void setSuperblock(Superblock superblock) throws StorageException {
+        this.superblock = superblock;
+
+        try {
+            this.writeFileHeader();
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing the page file header");
+        }
+    }
+
+    /**
+     * Force all written pages to the storage device
+     *
+     * @throws StorageException An exception is thrown if the file can't be synced
+     */
+    public synchronized void sync() throws StorageException {
+        try {
+            this.channel.force(false);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while syncing the page file");
+        }
+    }
+
+    /**
+     * Check if pages are read through memory-mapped segments of the file
+     *
+     * @return true if the file is memory-mapped
+     */
+    public boolean isMemoryMapped() {
+        return this.memoryMapped;
+    }
+
+    /**
+     * Get the size of the pages of the file
+     *
+     * @return page size in bytes
+     */
+    public int getPageSize() {
+        return this.pageSize;
+    }
+
+    /**
+     * Get number of pages in the file, including the file header
+     *
+     * @return number of pages
+     */
+    public synchronized int getPageCount() {
+        return this.pageCount;
+    }
+
+    /**
+     * Get number of pages in the free-page list
+     *
+     * @return number of free pages
+     * @throws StorageException An exception is thrown if the free-page list can't
+     *                          be read
+     */
+    public synchronized int getFreePageCount() throws StorageException {
+        int count = 0;
+
+        try {
+            for (int page = this.freeListHead; page != NO_PAGE; page = this.readNextPage(page)) {
+                count++;
+            }
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading the free-page list");
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.channel.isOpen()) {
+            this.channel.force(true);
+            this.channel.close();
+        }
+
+        // Mappings can't be released explicitly, they are unmapped once collected
+        this.segments.clear();
+    }
+
+    /**
+     * Open the file again after it was closed. The file must not have been
+     * changed in the meantime, since its pages are not read again.
+     *
+     * @throws StorageException An exception is thrown if the file can't be opened
+     */
+    public synchronized void reopen() throws StorageException {
+        if (this.channel.isOpen()) {
+            return;
+        }
+
+        try {
+            this.channel = FileChannel.open(this.filePath, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not open page file %s", this.filePath);
+        }
+        this.verifiedChunks.clear();
+    }
+
+    /**
+     * Read the payload of all pages of a chunk
+     */
+    private ByteBuffer readBuffer(int chunkId) throws StorageException {
+        Integer page = this.chunkPages.get(chunkId);
+        if (page == null) {
+            return null;
+        }
+
+        try {
+            ByteBuffer header = this.readPageHeader(page);
+            int next = header.getInt(NEXT_PAGE_OFFSET);
+
+            // Most chunks fit in a single page and need no assembly
+            if (next == NO_PAGE) {
+                return this.readPayload(page, header.getInt(PAYLOAD_LENGTH_OFFSET));
+            }
+
+            List<ByteBuffer> payloads = new ArrayList<>();
+            int length = 0;
+
+            while (true) {
+                ByteBuffer payload = this.readPayload(page, header.getInt(PAYLOAD_LENGTH_OFFSET));
+                payloads.add(payload);
+                length += payload.remaining();
+
+                if (next == NO_PAGE) {
+                    break;
+                }
+
+                page = next;
+                header = this.readPageHeader(page);
+                next = header.getInt(NEXT_PAGE_OFFSET);
+            }
+
+            ByteBuffer data = ByteBuffer.allocate(length);
+            for (ByteBuffer payload : payloads) {
+                data.put(payload);
+            }
+
+            return data.flip();
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading chunk %d", chunkId);
+        }
+    }
+
+    private ByteBuffer readPayload(int page, int length) throws IOException {
+        if (this.memoryMapped) {
+            return this.mappedPage(page).slice(PAGE_HEADER_SIZE, length);
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        this.readFully(payload, this.offset(page) + PAGE_HEADER_SIZE);
+        return payload.flip();
+    }
+
+    /**
+     * Get a page from the mapped segment that contains it. Segments are mapped
+     * lazily and mapped again if the file grew past their end.
+     */
+    private ByteBuffer mappedPage(int page) throws IOException {
+        int pagesPerSegment = Math.max(1, SEGMENT_SIZE / this.pageSize);
+        int segment = page / pagesPerSegment;
+        long segmentStart = (long) segment * pagesPerSegment * this.pageSize;
+        long pageEnd = this.offset(page) + this.pageSize;
+
+        while (this.segments.size() <= segment) {
+            this.segments.add(null);
+        }
+
+        MappedByteBuffer mapped = this.segments.get(segment);
+        if (mapped == null || segmentStart + mapped.capacity() < pageEnd) {
+            long length = Math.min((long) pagesPerSegment * this.pageSize, this.channel.size() - segmentStart);
+            mapped = this.channel.map(FileChannel.MapMode.READ_ONLY, segmentStart, length);
+            this.segments.set(segment, mapped);
+        }
+
+        return mapped.slice((int) (this.offset(page) - segmentStart), this.pageSize);
+    }
+
+    /**
+     * Take a page from the free-page list or append a new page to the file. The
+     * file header is not updated, if a crash happens before it is, the free-page
+     * list is rebuilt on open anyway.
+     */
+    private int allocatePage() throws IOException {
+        if (this.freeListHead == NO_PAGE) {
+            return this.pageCount++;
+        }
+
+        int page = this.freeListHead;
+        this.freeListHead = this.readNextPage(page);
+        return page;
+    }
+
+    /**
+     * Add all pages of a chunk to the free-page list. The chain is already linked
+     * through the pages' next pointers, so only its head and tail are rewritten.
+     */
+    private void freeChain(int firstPage) throws IOException {
+        int lastPage = firstPage;
+        for (int next = this.readNextPage(lastPage); next != NO_PAGE; next = this.readNextPage(lastPage)) {
+            lastPage = next;
+        }
+
+        this.writeNextPage(lastPage, this.freeListHead);
+        this.writePageType(firstPage, FREE_PAGE);
+        this.freeListHead = firstPage;
+        this.writeFileHeader();
+    }
+
+    /**
+     * Rebuild the location of the chunks and the free-page list from the page
+     * headers
+     */
+    private void recover() throws IOException {
+        Map<Integer, Long> sequences = new HashMap<>();
+
+        for (int page = 1; page < this.pageCount; page++) {
+            ByteBuffer header = this.readPageHeader(page);
+            if (header.get(0) != HEAD_PAGE) {
+                continue;
+            }
+
+            int chunkId = header.getInt(1);
+            long pageSequence = header.getLong(1 + Integer.BYTES);
+            this.sequence = Math.max(this.sequence, pageSequence);
+
+            Long current = sequences.get(chunkId);
+            if (current == null || current < pageSequence) {
+                sequences.put(chunkId, pageSequence);
+                this.chunkPages.put(chunkId, page);
+            }
+        }
+
+        BitSet used = new BitSet(this.pageCount);
+        used.set(0);
+        for (int page : this.chunkPages.values()) {
+            for (; page != NO_PAGE; page = this.readNextPage(page)) {
+                used.set(page);
+            }
+        }
+
+        // Link all unused pages, this also reclaims pages that were lost by a crash
+        int previousFreeHead = this.freeListHead;
+        this.freeListHead = NO_PAGE;
+        int freePages = 0;
+        for (int page = this.pageCount - 1; page > 0; page--) {
+            if (!used.get(page)) {
+                this.writePageType(page, FREE_PAGE);
+                this.writeNextPage(page, this.freeListHead);
+                this.freeListHead = page;
+                freePages++;
+            }
+        }
+
+        if (previousFreeHead != this.freeListHead) {
+            this.writeFileHeader();
+        }
+
+        LOGGER.debug("Opened page file with {} chunks, {} pages and {} free pages", this.chunkPages.size(),
+                this.pageCount, freePages);
+    }
+
+    private int readFileHeader() throws IOException, StorageException {
+        ByteBuffer header = ByteBuffer.allocate(SUPERBLOCK_OFFSET + Superblock.LENGTH);
+        this.readFully(header, 0);
+
+        if (header.getInt(0) != MAGIC) {
+            throw new StorageException("File is not a page file");
+        }
+
+        if (header.get(4) != VERSION) {
+            throw new StorageException("Unsupported page file version %d", header.get(4));
+        }
+
+        this.freeListHead = header.getInt(9);
+
+        byte[] superblockData = new byte[Superblock.LENGTH];
+        header.get(SUPERBLOCK_OFFSET, superblockData);
+        this.superblock = Superblock.deserialize(superblockData);
+
+        return header.getInt(5);
+    }
+
+    private void writeFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(this.pageSize);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putInt(this.pageSize);
+        header.putInt(this.freeListHead);
+        header.put(SUPERBLOCK_OFFSET, this.superblock.serialize());
+        this.writeFully(header.rewind(), 0);
+    }
+
+    private ByteBuffer readPageHeader(int page) throws IOException {
+        if (this.memoryMapped) {
+            return this.mappedPage(page).slice(0, PAGE_HEADER_SIZE);
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(PAGE_HEADER_SIZE);
+        this.readFully(header, this.offset(page));
+        return header;
+    }
+
+    private int readNextPage(int page) throws IOException {
+        ByteBuffer next = ByteBuffer.allocate(Integer.BYTES);
+        this.readFully(next, this.offset(page) + NEXT_PAGE_OFFSET);
+        return next.getInt(0);
+    }
+
+    private void writeNextPage(int page, int next) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        buffer.putInt(next);
+        this.writeFully(buffer.flip(), this.offset(page) + NEXT_PAGE_OFFSET);
+    }
+
+    private void writePageType(int page, byte type) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1);
+        buffer.put(type);
+        this.writeFully(buffer.flip(), this.offset(page));
+    }
+
+    private long offset(int page) {
+        return (long) page * this.pageSize;
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = this.channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of page file");
+            }
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            this.channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    /**
+     * Check of the stored bytes of a chunk
+     */
+    @FunctionalInterface
+    public interface Verifier {
+
+        /**
+         * Check the stored bytes of a chunk
+         *
+         * @param data stored bytes of the chunk, from its position to its limit
+         * @throws StorageException An exception is thrown if the bytes are invalid
+         */
+        void verify(ByteBuffer data) throws StorageException;
+
+    }
+
+    private void closeQuietly() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close page file", e);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.tum.i13.server.persistentstorage.btree.io.paged;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A {@link ChangeListener} for chunks stored in a {@link PageFile}. Instead of
+ * copying files, the stored bytes of a chunk are kept in memory the first time
+ * the chunk changes during a transaction.
+ */
+public class PagedChangeListener implements ChangeListener {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient PageFile pageFile;
+    private Set<String> changedChunks = new HashSet<>(); // chunks that changed since the beginning of the
+    // transaction
+    private Set<String> createdChunks = new HashSet<>(); // chunks created since the beggining of the transaction
+    private Map<String, byte[]> previousVersions = new HashMap<>(); // stored bytes of changed chunks, null if
+    // the chunk wasn't stored
+
+    /**
+     * Create a new change listener
+     *
+     * @param pageFile file where the chunks are stored
+     */
+    public PagedChangeListener(PageFile pageFile) {
+        this.pageFile = pageFile;
+    }
+
+    @Override
+    public void notifyChunkChange(String chunkId) throws StorageException {
+        if (!createdChunks.contains(chunkId) && changedChunks.add(chunkId)) {
+            this.previousVersions.put(chunkId, this.pageFile.read(Integer.parseInt(chunkId)));
+        }
+    }
+
+    @Override
+    public void notifyChunkCreation(String chunkId) {
+        createdChunks.add(chunkId);
+    }
+
+    @Override
+    public Set<String> getChangedChunks() {
+        return this.changedChunks;
+    }
+
+    @Override
+    public Set<String> getCreatedChunks() {
+        return this.createdChunks;
+    }
+
+    /**
+     * Get the stored bytes of a chunk before it changed for the first time in
+     * the current transaction
+     *
+     * @param chunkId id of the chunk
+     * @return stored bytes of the chunk, {@code null} if the chunk wasn't stored
+     */
+    public byte[] getPreviousVersion(String chunkId) {
+        return this.previousVersions.get(chunkId);
+    }
+
+    @Override
+    public void reset() {
+        changedChunks = new HashSet<>();
+        createdChunks = new HashSet<>();
+        previousVersions = new HashMap<>();
+    }
+
+}
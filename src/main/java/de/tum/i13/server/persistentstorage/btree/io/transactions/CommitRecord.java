@@ -0,0 +1,75 @@
+package de.tum.i13.server.persistentstorage.btree.io.transactions;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Changes made by a committed transaction, as stored in a
+ * {@link WriteAheadLog}. A record holds the after-image of every page the
+ * transaction wrote and, if the transaction saved the tree, the id of the
+ * tree's root once the transaction finished.
+ */
+public class CommitRecord {
+
+    private final boolean rootChanged; // true if the transaction saved the tree
+    private final Integer rootId; // null if the tree is empty
+    private final Map<String, byte[]> pages; // chunk id -> stored page, null if the page was deleted
+
+    /**
+     * Create a new commit record
+     *
+     * @param rootId id of the root node after the transaction, {@code null} if
+     *               the tree is empty
+     * @param pages  stored bytes of the written pages by chunk id, {@code null}
+     *               for deleted pages
+     */
+    public CommitRecord(Integer rootId, Map<String, byte[]> pages) {
+        this.rootChanged = true;
+        this.rootId = rootId;
+        this.pages = Collections.unmodifiableMap(new LinkedHashMap<>(pages));
+    }
+
+    /**
+     * Create a new commit record of a transaction that did not save the tree
+     *
+     * @param pages stored bytes of the written pages by chunk id, {@code null}
+     *              for deleted pages
+     */
+    public CommitRecord(Map<String, byte[]> pages) {
+        this.rootChanged = false;
+        this.rootId = null;
+        this.pages = Collections.unmodifiableMap(new LinkedHashMap<>(pages));
+    }
+
+    /**
+     * Check if the transaction saved the tree, i.e. if the record holds a root
+     *
+     * @return true if the record holds a root
+     */
+    public boolean isRootChanged() {
+        return this.rootChanged;
+    }
+
+    /**
+     * Get the id of the root node after the transaction. Only meaningful if
+     * {@link #isRootChanged()}.
+     *
+     * @return id of the root node, {@code null} if the tree is empty
+     */
+    public Integer getRootId() {
+        return this.rootId;
+    }
+
+    /**
+     * Get the pages written by the transaction, in the order they were first
+     * written
+     *
+     * @return stored bytes of the written pages by chunk id, {@code null} for
+     * deleted pages
+     */
+    public Map<String, byte[]> getPages() {
+        return this.pages;
+    }
+
+}
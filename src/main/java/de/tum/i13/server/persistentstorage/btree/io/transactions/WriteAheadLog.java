@@ -0,0 +1,666 @@
+package de.tum.i13.server.persistentstorage.btree.io.transactions;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only redo log of committed transactions (see {@link CommitRecord}).
+ * Every commit is a single sequential append of one record, so a transaction
+ * is durable once its record is on disk, independently of when the changed
+ * pages are written back to their files. The file is laid out as follows (all
+ * integers are big-endian):
+ *
+ * <pre>
+ * int   magic ("CDBW")
+ * byte  format version
+ * long  sequence number of the last record before the file (not in version 1)
+ * then, for every record:
+ * int   length of the record body
+ * int   CRC32 of the record body
+ * body  long sequence number, byte root state (0 empty tree, 1 root id
+ *       follows, 2 root unchanged), int root id, int number of pages, and for each page a length-prefixed UTF-8 chunk
+ *       id followed by the length-prefixed page (length -1 if deleted)
+ * </pre>
+ * <p>
+ * Records are group-committed: with a sync interval of 0, the log is synced to
+ * the storage device on every commit. Otherwise, commits only write to the
+ * file and a background thread syncs the log at the given interval, so a
+ * power loss may lose the transactions committed within the last interval. A
+ * crash of the process alone never loses committed transactions. Changes of a
+ * record must not reach other files before the record is synced, which can be
+ * checked with {@link #isSynced(long)} or enforced with {@link #sync(long)}.
+ * <p>
+ * A record that was only partially written when a crash happened fails its
+ * checksum. It and everything after it is dropped when the log is opened.
+ * <p>
+ * For fuzzy checkpoints, the log can be rotated: the current file is sealed
+ * (renamed to {@code <file>.sealed}) and appends continue in a new file, so
+ * the sealed records can be dropped once they are checkpointed while new
+ * transactions keep committing.
+ */
+public class WriteAheadLog implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(WriteAheadLog.class);
+
+    /**
+     * Magic number at the start of the log ("CDBW")
+     */
+    public static final int MAGIC = 0x43444257;
+
+    /**
+     * Current version of the log format
+     */
+    public static final byte VERSION = 2;
+
+    private static final byte VERSION_WITHOUT_SEQUENCE = 1;
+    private static final int HEADER_SIZE = Integer.BYTES + 1 + Long.BYTES;
+    private static final int HEADER_SIZE_WITHOUT_SEQUENCE = Integer.BYTES + 1;
+    private static final int RECORD_HEADER_SIZE = 2 * Integer.BYTES;
+    private static final int DELETED_PAGE = -1;
+    private static final byte EMPTY_TREE = 0;
+    private static final byte ROOT = 1;
+    private static final byte ROOT_UNCHANGED = 2;
+
+    private final Path filePath;
+    private final Path sealedPath;
+    private final long syncInterval;
+    private final ScheduledExecutorService syncer; // null if every commit is synced
+    private final AtomicBoolean unsynced;
+    private final AtomicLong syncedSequence; // sequence number of the last record on the storage device
+    private volatile Runnable syncListener; // null if nobody is notified of syncs
+    private volatile FileChannel channel; // replaced when the log is rotated
+    private int headerSize;
+    private long size;
+    private long sequence;
+    private boolean sealed; // true if the sealed file exists
+
+    /**
+     * Open a write-ahead log, creating it if it does not exist
+     *
+     * @param filePath     path of the log file
+     * @param syncInterval maximum time in milliseconds between a commit and the
+     *                     sync of the log, 0 to sync on every commit
+     * @throws StorageException An exception is thrown if the log can't be opened
+     *                          or is not a valid log
+     */
+    public WriteAheadLog(Path filePath, long syncInterval) throws StorageException {
+        Preconditions.check(syncInterval >= 0, "Sync interval must not be negative");
+        this.filePath = filePath;
+        this.sealedPath = filePath.resolveSibling(filePath.getFileName() + ".sealed");
+
+        try {
+            // The sealed file only precedes the current file if a checkpoint didn't finish
+            if (Files.exists(this.sealedPath)) {
+                try (FileChannel sealedChannel = FileChannel.open(this.sealedPath, StandardOpenOption.READ,
+                        StandardOpenOption.WRITE)) {
+                    this.recover(sealedChannel);
+                }
+                this.sealed = true;
+            }
+
+            this.channel = FileChannel.open(filePath, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not open write-ahead log %s", filePath);
+        }
+
+        this.syncInterval = syncInterval;
+        this.unsynced = new AtomicBoolean(false);
+
+        try {
+            if (this.channel.size() == 0) {
+                this.writeHeader(this.channel);
+            } else {
+                this.recover(this.channel);
+                // Records written before a crash of the process may still be in the cache of the OS only
+                this.channel.force(false);
+            }
+        } catch (IOException e) {
+            this.closeQuietly();
+            throw new StorageException(e, "I/O error while opening write-ahead log %s", filePath);
+        } catch (StorageException e) {
+            this.closeQuietly();
+            throw e;
+        }
+        this.syncedSequence = new AtomicLong(this.sequence);
+
+        if (syncInterval > 0) {
+            this.syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "wal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            this.syncer.scheduleWithFixedDelay(this::syncQuietly, syncInterval, syncInterval, TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+
+    /**
+     * Append the record of a committed transaction. Depending on the sync
+     * interval, the record is synced to the storage device before this method
+     * returns or by the next group commit.
+     *
+     * @param record record to append
+     * @return sequence number of the appended record
+     * @throws StorageException An exception is thrown if the record can't be
+     *                          written
+     */
+    public synchronized long append(CommitRecord record) throws StorageException {
+        byte[] body = this.encode(++this.sequence, record);
+
+        CRC32 crc = new CRC32();
+        crc.update(body);
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + body.length);
+        buffer.putInt(body.length);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(body);
+
+        try {
+            this.writeFully(this.channel, buffer.flip(), this.size);
+            this.size += buffer.limit();
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while appending to the write-ahead log");
+        }
+
+        if (this.syncInterval == 0) {
+            this.sync();
+        } else {
+            this.unsynced.set(true);
+        }
+        return this.sequence;
+    }
+
+    /**
+     * Read all records in the log, in the order they were committed
+     *
+     * @return records in the log
+     * @throws StorageException An exception is thrown if the log can't be read
+     */
+    public List<CommitRecord> readRecords() throws StorageException {
+        return this.readRecords(0);
+    }
+
+    /**
+     * Read the records in the log that were appended after a given record, in
+     * the order they were committed
+     *
+     * @param afterSequence sequence number of the last record to skip (see
+     *                      {@link #getSequence()})
+     * @return records in the log after the given record
+     * @throws StorageException An exception is thrown if the log can't be read
+     */
+    public synchronized List<CommitRecord> readRecords(long afterSequence) throws StorageException {
+        List<CommitRecord> records = new ArrayList<>();
+
+        try {
+            if (this.sealed) {
+                try (FileChannel sealedChannel = FileChannel.open(this.sealedPath, StandardOpenOption.READ)) {
+                    this.readRecords(sealedChannel, this.readHeader(sealedChannel), sealedChannel.size(),
+                            afterSequence, records);
+                }
+            }
+            this.readRecords(this.channel, this.headerSize, this.size, afterSequence, records);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading the write-ahead log");
+        }
+
+        return records;
+    }
+
+    /**
+     * Drop all records from the log. This must only be done once the changes of
+     * all records are durably stored elsewhere.
+     *
+     * @throws StorageException An exception is thrown if the log can't be
+     *                          truncated
+     */
+    public synchronized void truncate() throws StorageException {
+        this.deleteSealed();
+
+        try {
+            this.writeHeader(this.channel);
+            this.unsynced.set(false);
+            this.syncedSequence.accumulateAndGet(this.sequence, Math::max);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while truncating the write-ahead log");
+        }
+    }
+
+    /**
+     * Seal the records appended so far and continue in a new file. The sealed
+     * records are still read by {@link #readRecords(long)} until they are
+     * dropped by {@link #deleteSealed()}. Only one set of records can be
+     * sealed at a time.
+     *
+     * @return true if the log was rotated, false if sealed records still exist
+     * @throws StorageException An exception is thrown if the log can't be rotated
+     */
+    public synchronized boolean rotate() throws StorageException {
+        if (this.sealed) {
+            return false;
+        }
+
+        try {
+            FileChannel previous = this.channel;
+            previous.force(false);
+            this.syncedSequence.accumulateAndGet(this.sequence, Math::max);
+            Files.move(this.filePath, this.sealedPath, StandardCopyOption.ATOMIC_MOVE);
+            this.sealed = true;
+
+            FileChannel next = FileChannel.open(this.filePath, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+            this.writeHeader(next);
+            this.channel = next;
+            this.unsynced.set(false);
+            StorageUtils.syncDirectory(this.filePath.getParent());
+            previous.close();
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while rotating the write-ahead log");
+        }
+        return true;
+    }
+
+    /**
+     * Drop the records sealed by {@link #rotate()}. This must only be done once
+     * the changes of the sealed records are durably stored elsewhere.
+     *
+     * @throws StorageException An exception is thrown if the sealed records
+     *                          can't be deleted
+     */
+    public synchronized void deleteSealed() throws StorageException {
+        if (!this.sealed) {
+            return;
+        }
+
+        try {
+            Files.deleteIfExists(this.sealedPath);
+            StorageUtils.syncDirectory(this.filePath.getParent());
+            this.sealed = false;
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while deleting the sealed write-ahead log");
+        }
+    }
+
+    /**
+     * Get the sequence number of the last appended record. Sequence numbers
+     * keep increasing when the log is truncated or rotated.
+     *
+     * @return sequence number of the last record, 0 if no record was ever
+     * appended
+     */
+    public synchronized long getSequence() {
+        return this.sequence;
+    }
+
+    /**
+     * Check if a record is on the storage device
+     *
+     * @param recordSequence sequence number of the record (see
+     *                       {@link #append(CommitRecord)})
+     * @return true if the record and all records before it are synced
+     */
+    public boolean isSynced(long recordSequence) {
+        return this.syncedSequence.get() >= recordSequence;
+    }
+
+    /**
+     * Force all appended records to the storage device
+     *
+     * @throws StorageException An exception is thrown if the log can't be synced
+     */
+    public void sync() throws StorageException {
+        // Not synchronized, so that appends can continue while the device syncs
+        this.unsynced.set(false);
+
+        // Records up to this one are written to the current file or synced when their file was sealed
+        long appendedSequence = this.getSequence();
+        FileChannel current = this.channel;
+        try {
+            current.force(false);
+        } catch (ClosedChannelException e) {
+            // Records of a sealed file are synced when it is sealed
+            if (current != this.channel) {
+                this.sync();
+                return;
+            }
+            this.unsynced.set(true);
+            throw new StorageException(e, "I/O error while syncing the write-ahead log");
+        } catch (IOException e) {
+            this.unsynced.set(true);
+            throw new StorageException(e, "I/O error while syncing the write-ahead log");
+        }
+
+        this.syncedSequence.accumulateAndGet(appendedSequence, Math::max);
+        Runnable listener = this.syncListener;
+        if (listener != null) {
+            listener.run();
+        }
+    }
+
+    /**
+     * Force the records up to a given one to the storage device, unless a group
+     * commit already did
+     *
+     * @param recordSequence sequence number of the record (see
+     *                       {@link #append(CommitRecord)})
+     * @throws StorageException An exception is thrown if the log can't be synced
+     */
+    public void sync(long recordSequence) throws StorageException {
+        if (!this.isSynced(recordSequence)) {
+            this.sync();
+        }
+    }
+
+    /**
+     * Set a listener that is run after every sync of the log, e.g. to write
+     * changes that had to wait for their records
+     *
+     * @param listener listener to run, {@code null} to remove it
+     */
+    public void setSyncListener(Runnable listener) {
+        this.syncListener = listener;
+    }
+
+    /**
+     * Get the size of the log, without sealed records
+     *
+     * @return size of the log file in bytes
+     */
+    public synchronized long size() {
+        return this.size;
+    }
+
+    /**
+     * Check if the log holds any records
+     *
+     * @return true if no record was appended since the log was last truncated
+     * and no sealed records exist
+     */
+    public synchronized boolean isEmpty() {
+        return this.size == this.headerSize && !this.sealed;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.syncer != null) {
+            // Interrupting a sync would close the channel, so the running sync is awaited instead
+            this.syncer.shutdown();
+            try {
+                this.syncer.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        if (this.channel.isOpen()) {
+            this.channel.force(false);
+            this.channel.close();
+        }
+    }
+
+    /**
+     * Check the header of a log file and find the end of its last complete
+     * record. Anything after it was left by a crash during an append and is
+     * removed. The sequence number continues after the last record.
+     *
+     * @param fileChannel channel of the log file
+     */
+    private void recover(FileChannel fileChannel) throws IOException, StorageException {
+        int fileHeaderSize = this.readHeader(fileChannel);
+        long fileSize = fileChannel.size();
+        long position = fileHeaderSize;
+        int records = 0;
+
+        while (position < fileSize) {
+            ByteBuffer body = this.readRecordBody(fileChannel, position);
+            if (body == null) {
+                break;
+            }
+
+            this.sequence = body.getLong(0);
+            position += RECORD_HEADER_SIZE + body.limit();
+            records++;
+        }
+
+        if (position < fileSize) {
+            LOGGER.warn("Dropping {} bytes of incomplete records from the write-ahead log", fileSize - position);
+            fileChannel.truncate(position);
+            fileChannel.force(false);
+        }
+
+        this.headerSize = fileHeaderSize;
+        this.size = position;
+        LOGGER.debug("Opened write-ahead log with {} records", records);
+    }
+
+    /**
+     * Check the header of a log file. The sequence number continues after the
+     * one stored in the header.
+     *
+     * @param fileChannel channel of the log file
+     * @return size of the header
+     */
+    private int readHeader(FileChannel fileChannel) throws IOException, StorageException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        if (fileChannel.size() < HEADER_SIZE_WITHOUT_SEQUENCE) {
+            throw new StorageException("File is not a write-ahead log");
+        }
+        header.limit((int) Math.min(HEADER_SIZE, fileChannel.size()));
+        this.readFully(fileChannel, header, 0);
+
+        if (header.getInt(0) != MAGIC) {
+            throw new StorageException("File is not a write-ahead log");
+        }
+
+        byte version = header.get(4);
+        if (version == VERSION_WITHOUT_SEQUENCE) {
+            return HEADER_SIZE_WITHOUT_SEQUENCE;
+        }
+        if (version != VERSION) {
+            throw new StorageException("Unsupported write-ahead log version %d", version);
+        }
+        if (header.position() < HEADER_SIZE) {
+            throw new StorageException("Write-ahead log header is incomplete");
+        }
+
+        this.sequence = Math.max(this.sequence, header.getLong(5));
+        return HEADER_SIZE;
+    }
+
+    /**
+     * Drop the contents of a log file and write a header, which stores the
+     * current sequence number
+     *
+     * @param fileChannel channel of the log file
+     */
+    private void writeHeader(FileChannel fileChannel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC);
+        header.put(VERSION);
+        header.putLong(this.sequence);
+        this.writeFully(fileChannel, header.flip(), 0);
+        fileChannel.truncate(HEADER_SIZE);
+        fileChannel.force(false);
+
+        this.headerSize = HEADER_SIZE;
+        this.size = HEADER_SIZE;
+    }
+
+    /**
+     * Decode the records of a log file that follow a given record
+     */
+    private void readRecords(FileChannel fileChannel, long start, long end, long afterSequence,
+                             List<CommitRecord> records) throws IOException, StorageException {
+        long position = start;
+        while (position < end) {
+            ByteBuffer body = this.readRecordBody(fileChannel, position);
+            if (body == null) {
+                throw new StorageException("Corrupted record in the write-ahead log at %d", position);
+            }
+
+            if (body.getLong(0) > afterSequence) {
+                records.add(this.decode(body));
+            }
+            position += RECORD_HEADER_SIZE + body.limit();
+        }
+    }
+
+    /**
+     * Read the body of the record at the given position
+     *
+     * @return the record body, or {@code null} if the record is incomplete or its
+     * checksum does not match
+     */
+    private ByteBuffer readRecordBody(FileChannel fileChannel, long position) throws IOException {
+        long available = fileChannel.size() - position;
+        if (available < RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        this.readFully(fileChannel, header, position);
+        int length = header.getInt(0);
+
+        if (length < 0 || length > available - RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        ByteBuffer body = ByteBuffer.allocate(length);
+        this.readFully(fileChannel, body, position + RECORD_HEADER_SIZE);
+
+        CRC32 crc = new CRC32();
+        crc.update(body.array());
+        return (int) crc.getValue() == header.getInt(Integer.BYTES) ? body.flip() : null;
+    }
+
+    private byte[] encode(long recordSequence, CommitRecord record) throws StorageException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(recordSequence);
+            if (!record.isRootChanged()) {
+                out.writeByte(ROOT_UNCHANGED);
+            } else {
+                out.writeByte(record.getRootId() == null ? EMPTY_TREE : ROOT);
+            }
+            out.writeInt(record.getRootId() == null ? 0 : record.getRootId());
+            out.writeInt(record.getPages().size());
+
+            for (Map.Entry<String, byte[]> page : record.getPages().entrySet()) {
+                byte[] chunkId = page.getKey().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(chunkId.length);
+                out.write(chunkId);
+
+                if (page.getValue() == null) {
+                    out.writeInt(DELETED_PAGE);
+                } else {
+                    out.writeInt(page.getValue().length);
+                    out.write(page.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not encode commit record");
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private CommitRecord decode(ByteBuffer body) throws StorageException {
+        try {
+            body.getLong();
+            byte rootState = body.get();
+            int rootId = body.getInt();
+            int pageCount = body.getInt();
+            Map<String, byte[]> pages = new LinkedHashMap<>();
+
+            for (int i = 0; i < pageCount; i++) {
+                byte[] chunkId = new byte[body.getInt()];
+                body.get(chunkId);
+
+                int length = body.getInt();
+                byte[] page = null;
+                if (length != DELETED_PAGE) {
+                    page = new byte[length];
+                    body.get(page);
+                }
+
+                pages.put(new String(chunkId, StandardCharsets.UTF_8), page);
+            }
+
+            if (rootState == ROOT_UNCHANGED) {
+                return new CommitRecord(pages);
+            }
+
+            return new CommitRecord(rootState == ROOT ? rootId : null, pages);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new StorageException(e, "Malformed commit record");
+        }
+    }
+
+    private void syncQuietly() {
+        if (!this.unsynced.get() || !this.channel.isOpen()) {
+            return;
+        }
+
+        try {
+            this.sync();
+        } catch (StorageException e) {
+            LOGGER.error("Could not sync the write-ahead log", e);
+        }
+    }
+
+    private void readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                throw new IOException("Unexpected end of write-ahead log");
+            }
+        }
+    }
+
+    private void writeFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Could not close write-ahead log", e);
+        }
+    }
+
+}
@@ -0,0 +1,462 @@
+package de.tum.i13.server.persistentstorage.btree.io.vlog;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of large values, so that the nodes of a tree only hold
+ * {@link ValuePointer}s to them and stay small. The log is split into segment
+ * files of roughly equal size. New records are appended to the last segment,
+ * all others are sealed. A record is laid out as follows (all integers are
+ * big-endian):
+ *
+ * <pre>
+ * int   length of the key
+ * bytes UTF-8 key
+ * int   length of the value
+ * bytes UTF-8 value
+ * int   CRC32 of all the preceding bytes of the record
+ * </pre>
+ * <p>
+ * Records are synced before {@link #append(String, String)} returns, so a tree
+ * never references a record that could be lost. A record that was only
+ * partially written when a crash happened is removed when the log is opened.
+ * <p>
+ * Records become garbage once the tree no longer references them. The log
+ * doesn't know the tree, so garbage has to be reported with
+ * {@link #markGarbage(ValuePointer)}. Segments are reclaimed by copying their
+ * live records to the end of the log and deleting them with
+ * {@link #deleteSegment(int)}. Garbage is only counted in memory, records
+ * replaced before the log was opened are not counted.
+ */
+public class ValueLog implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(ValueLog.class);
+
+    /**
+     * Default size in bytes after which a segment is sealed
+     */
+    public static final long DEFAULT_SEGMENT_SIZE = 64L * 1024 * 1024;
+
+    private static final Pattern SEGMENT_NAME = Pattern.compile("segment-(\\d+)\\.vlog");
+    private static final int RECORD_OVERHEAD = 3 * Integer.BYTES;
+
+    private final Path folder;
+    private final long segmentSize;
+    private final ConcurrentSkipListMap<Integer, FileChannel> segments; // the last segment receives new records
+    private final Map<Integer, AtomicLong> garbage; // bytes of garbage records per segment
+    private volatile int activeId;
+    private long activeSize;
+
+    /**
+     * Open the value log stored in a folder, creating it if it doesn't exist
+     *
+     * @param folder      folder where the segments are stored
+     * @param segmentSize size in bytes after which a segment is sealed
+     * @throws StorageException An exception is thrown if the segments can't be
+     *                          opened
+     */
+    public ValueLog(Path folder, long segmentSize) throws StorageException {
+        Preconditions.check(segmentSize > 0, "Segment size must be positive");
+        this.folder = folder;
+        this.segmentSize = segmentSize;
+        this.segments = new ConcurrentSkipListMap<>();
+        this.garbage = new ConcurrentHashMap<>();
+
+        StorageUtils.createDirectory(folder);
+
+        try {
+            for (Path file : this.listFiles()) {
+                Matcher name = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (name.matches()) {
+                    this.segments.put(Integer.parseInt(name.group(1)), FileChannel.open(file,
+                            StandardOpenOption.READ, StandardOpenOption.WRITE));
+                }
+            }
+
+            if (this.segments.isEmpty()) {
+                this.openSegment(1);
+            } else {
+                this.activeId = this.segments.lastKey();
+                this.activeSize = this.recover(this.segments.get(this.activeId));
+            }
+        } catch (IOException e) {
+            this.close();
+            throw new StorageException(e, "I/O error while opening value log %s", folder);
+        }
+
+        LOGGER.debug("Opened value log with {} segments", this.segments.size());
+    }
+
+    /**
+     * Append a record and sync it to the storage device
+     *
+     * @param key   key of the value, used to find the value's entry in the tree
+     *              when its segment is reclaimed
+     * @param value value to append
+     * @return pointer to the appended record
+     * @throws StorageException An exception is thrown if the record can't be
+     *                          written
+     */
+    public synchronized ValuePointer append(String key, String value) throws StorageException {
+        ByteBuffer record = encodeRecord(key, value);
+        long checksum = Integer.toUnsignedLong(record.getInt(record.limit() - Integer.BYTES));
+
+        try {
+            if (this.activeSize > 0 && this.activeSize + record.limit() > this.segmentSize) {
+                this.segments.get(this.activeId).force(false);
+                this.openSegment(this.activeId + 1);
+            }
+
+            FileChannel channel = this.segments.get(this.activeId);
+            long offset = this.activeSize;
+            while (record.hasRemaining()) {
+                channel.write(record, offset + record.position());
+            }
+            channel.force(false);
+
+            this.activeSize += record.limit();
+            return new ValuePointer(this.activeId, offset, record.limit(), checksum);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while appending to value log %s", this.folder);
+        }
+    }
+
+    /**
+     * Check if a record holds a key and value, by comparing the length and
+     * checksum of the record they would be appended as with those of the
+     * pointer. The record itself is not read, so different values are only
+     * taken for the same if their checksums collide.
+     *
+     * @param pointer pointer to the record, with a checksum
+     * @param key     key of the value
+     * @param value   value to check
+     * @return true if the record holds the value
+     */
+    public static boolean isRecordOf(ValuePointer pointer, String key, String value) {
+        Preconditions.check(pointer.getChecksum() != ValuePointer.NO_CHECKSUM, "Pointer must have a checksum");
+
+        ByteBuffer record = encodeRecord(key, value);
+        return record.limit() == pointer.getLength()
+                && Integer.toUnsignedLong(record.getInt(record.limit() - Integer.BYTES)) == pointer.getChecksum();
+    }
+
+    private static ByteBuffer encodeRecord(String key, String value) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer record = ByteBuffer.allocate(RECORD_OVERHEAD + keyBytes.length + valueBytes.length);
+        record.putInt(keyBytes.length).put(keyBytes).putInt(valueBytes.length).put(valueBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), 0, record.position());
+        record.putInt((int) crc.getValue()).flip();
+        return record;
+    }
+
+    /**
+     * Read the value of a record
+     *
+     * @param pointer pointer to the record
+     * @return value of the record, or {@code null} if its segment was deleted
+     * @throws StorageException An exception is thrown if the record can't be
+     *                          read or is corrupted
+     */
+    public String read(ValuePointer pointer) throws StorageException {
+        Pair<String> record = this.readRecord(pointer);
+        return record == null ? null : record.value;
+    }
+
+    /**
+     * Read a record
+     *
+     * @param pointer pointer to the record
+     * @return key and value of the record, or {@code null} if its segment was
+     * deleted
+     * @throws StorageException An exception is thrown if the record can't be
+     *                          read or is corrupted
+     */
+    public Pair<String> readRecord(ValuePointer pointer) throws StorageException {
+        FileChannel channel = this.segments.get(pointer.getSegmentId());
+        if (channel == null) {
+            return null;
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(pointer.getLength());
+        try {
+            while (record.hasRemaining()) {
+                if (channel.read(record, pointer.getOffset() + record.position()) < 0) {
+                    throw new StorageException("Value log record %s is beyond the end of its segment", pointer);
+                }
+            }
+        } catch (ClosedChannelException e) {
+            // The segment was deleted while it was read
+            return null;
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading value log record %s", pointer);
+        }
+
+        Pair<String> decoded = decode(record.flip());
+        if (decoded == null) {
+            throw new StorageException("Value log record %s is corrupted", pointer);
+        }
+        return decoded;
+    }
+
+    /**
+     * List the records of a sealed segment. Only the keys of the records are
+     * read, their values can be read with {@link #read(ValuePointer)}.
+     *
+     * @param segmentId id of the segment
+     * @return keys of the records with pointers to them, in the order they were
+     * appended
+     * @throws StorageException An exception is thrown if the segment can't be
+     *                          read
+     */
+    public List<Pair<ValuePointer>> listRecords(int segmentId) throws StorageException {
+        FileChannel channel = this.segments.get(segmentId);
+        Preconditions.check(channel != null && segmentId != this.activeId, "Segment must be sealed");
+
+        List<Pair<ValuePointer>> records = new ArrayList<>();
+        try {
+            long size = channel.size();
+            long position = 0;
+            while (position < size) {
+                ByteBuffer keyLength = this.readFully(channel, position, Integer.BYTES);
+                ByteBuffer key = this.readFully(channel, position + Integer.BYTES, keyLength.getInt(0));
+                long valuePosition = position + Integer.BYTES + key.limit();
+                int valueLength = this.readFully(channel, valuePosition, Integer.BYTES).getInt(0);
+                int length = RECORD_OVERHEAD + key.limit() + valueLength;
+                int checksum = this.readFully(channel, position + length - Integer.BYTES, Integer.BYTES).getInt(0);
+
+                records.add(new Pair<>(StandardCharsets.UTF_8.decode(key).toString(),
+                        new ValuePointer(segmentId, position, length, Integer.toUnsignedLong(checksum))));
+                position += length;
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            throw new StorageException(e, "I/O error while listing records of value log segment %d", segmentId);
+        }
+
+        return records;
+    }
+
+    /**
+     * Report that a record is no longer referenced
+     *
+     * @param pointer pointer to the record
+     */
+    public void markGarbage(ValuePointer pointer) {
+        this.garbage.computeIfAbsent(pointer.getSegmentId(), id -> new AtomicLong()).addAndGet(pointer.getLength());
+    }
+
+    /**
+     * Get the sealed segments in which at least a given share of the bytes is
+     * garbage
+     *
+     * @param minGarbageRatio minimum share of garbage, between 0 and 1
+     * @return ids of the segments, oldest first
+     */
+    public List<Integer> getCollectableSegments(double minGarbageRatio) {
+        List<Integer> collectable = new ArrayList<>();
+        for (Map.Entry<Integer, FileChannel> segment : this.segments.headMap(this.activeId).entrySet()) {
+            AtomicLong garbageBytes = this.garbage.get(segment.getKey());
+            long size;
+            try {
+                size = segment.getValue().size();
+            } catch (IOException e) {
+                LOGGER.warn("Could not get size of value log segment {}", segment.getKey(), e);
+                continue;
+            }
+
+            if (size == 0 || (garbageBytes != null && garbageBytes.get() >= minGarbageRatio * size)) {
+                collectable.add(segment.getKey());
+            }
+        }
+        return collectable;
+    }
+
+    /**
+     * Delete a sealed segment. Readers of its records get {@code null} from
+     * then on, so they have to find the records' new location.
+     *
+     * @param segmentId id of the segment
+     * @throws StorageException An exception is thrown if the segment can't be
+     *                          deleted
+     */
+    public void deleteSegment(int segmentId) throws StorageException {
+        Preconditions.check(segmentId != this.activeId, "The active segment can't be deleted");
+
+        FileChannel channel = this.segments.remove(segmentId);
+        this.garbage.remove(segmentId);
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close value log segment {}", segmentId, e);
+        }
+        StorageUtils.deleteFile(this.segmentPath(segmentId));
+        LOGGER.info("Deleted value log segment {}", segmentId);
+    }
+
+    /**
+     * Get the folder where the segments are stored
+     *
+     * @return folder of the log
+     */
+    public Path getFolder() {
+        return this.folder;
+    }
+
+    /**
+     * Get the size after which a segment is sealed
+     *
+     * @return segment size in bytes
+     */
+    public long getSegmentSize() {
+        return this.segmentSize;
+    }
+
+    /**
+     * Get the number of segments, including the active one
+     *
+     * @return number of segments
+     */
+    public int getSegmentCount() {
+        return this.segments.size();
+    }
+
+    @Override
+    public synchronized void close() {
+        for (Map.Entry<Integer, FileChannel> segment : this.segments.entrySet()) {
+            try {
+                segment.getValue().close();
+            } catch (IOException e) {
+                LOGGER.warn("Could not close value log segment {}", segment.getKey(), e);
+            }
+        }
+        this.segments.clear();
+    }
+
+    private void openSegment(int segmentId) throws IOException {
+        this.segments.put(segmentId, FileChannel.open(this.segmentPath(segmentId), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+        this.activeId = segmentId;
+        this.activeSize = 0;
+        StorageUtils.syncDirectory(this.folder);
+    }
+
+    /**
+     * Find the end of the last complete record of the active segment. Anything
+     * after it was left by a crash during an append and is removed.
+     *
+     * @return length of the valid part of the segment
+     */
+    private long recover(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = 0;
+
+        while (position < size) {
+            long remaining = size - position;
+            if (remaining < RECORD_OVERHEAD) {
+                break;
+            }
+
+            int keyLength = this.readFully(channel, position, Integer.BYTES).getInt(0);
+            if (keyLength < 0 || keyLength > remaining - RECORD_OVERHEAD) {
+                break;
+            }
+            int valueLength = this.readFully(channel, position + Integer.BYTES + keyLength, Integer.BYTES).getInt(0);
+            if (valueLength < 0 || valueLength > remaining - RECORD_OVERHEAD - keyLength) {
+                break;
+            }
+
+            int length = RECORD_OVERHEAD + keyLength + valueLength;
+            if (decode(this.readFully(channel, position, length)) == null) {
+                break;
+            }
+            position += length;
+        }
+
+        if (position < size) {
+            LOGGER.warn("Dropping {} bytes of incomplete records from the value log", size - position);
+            channel.truncate(position);
+            channel.force(false);
+        }
+        return position;
+    }
+
+    /**
+     * Decode a record
+     *
+     * @return key and value of the record, or {@code null} if the record is
+     * incomplete or its checksum does not match
+     */
+    private static Pair<String> decode(ByteBuffer record) {
+        try {
+            int checksumPosition = record.limit() - Integer.BYTES;
+            CRC32 crc = new CRC32();
+            crc.update(record.duplicate().limit(checksumPosition));
+            if ((int) crc.getValue() != record.getInt(checksumPosition)) {
+                return null;
+            }
+
+            byte[] key = new byte[record.getInt()];
+            record.get(key);
+            byte[] value = new byte[record.getInt()];
+            record.get(value);
+            return new Pair<>(new String(key, StandardCharsets.UTF_8), new String(value, StandardCharsets.UTF_8));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                | NegativeArraySizeException e) {
+            return null;
+        }
+    }
+
+    private ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of value log segment");
+            }
+        }
+        return buffer.flip();
+    }
+
+    private List<Path> listFiles() throws IOException {
+        try (Stream<Path> files = Files.list(this.folder)) {
+            return files.collect(Collectors.toList());
+        }
+    }
+
+    private Path segmentPath(int segmentId) {
+        return this.folder.resolve("segment-" + segmentId + ".vlog");
+    }
+
+}
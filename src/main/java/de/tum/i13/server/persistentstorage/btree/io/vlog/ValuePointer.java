@@ -0,0 +1,180 @@
+package de.tum.i13.server.persistentstorage.btree.io.vlog;
+
+import java.util.Objects;
+
+/**
+ * Location of a record in a {@link ValueLog}. Trees store pointers in place of
+ * their values, encoded as strings with {@link #encode()}. Encoded pointers
+ * start with a marker character, stored values that start with the marker
+ * themselves are escaped by {@link #escape(String)}, so every stored string is
+ * either a pointer or an escaped value.
+ * <p>
+ * Pointers also carry the checksum of their record, so two records can be
+ * told apart without reading them. Pointers stored before the checksum was
+ * added have none.
+ */
+public final class ValuePointer {
+
+    private static final char MARKER = '\u0000';
+    private static final String SEPARATOR = ":";
+
+    /**
+     * Checksum of pointers that were stored without one
+     */
+    public static final long NO_CHECKSUM = -1;
+
+    private final int segmentId;
+    private final long offset;
+    private final int length;
+    private final long checksum;
+
+    /**
+     * Create a pointer to a record
+     *
+     * @param segmentId id of the segment containing the record
+     * @param offset    position of the record in the segment
+     * @param length    length of the record in bytes
+     * @param checksum  unsigned CRC32 of the record (see {@link ValueLog}), or
+     *                  {@link #NO_CHECKSUM}
+     */
+    public ValuePointer(int segmentId, long offset, int length, long checksum) {
+        this.segmentId = segmentId;
+        this.offset = offset;
+        this.length = length;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Get the id of the segment containing the record
+     *
+     * @return segment id
+     */
+    public int getSegmentId() {
+        return segmentId;
+    }
+
+    /**
+     * Get the position of the record in its segment
+     *
+     * @return offset in bytes
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    /**
+     * Get the length of the record
+     *
+     * @return length in bytes
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Get the checksum of the record
+     *
+     * @return unsigned CRC32 of the record, or {@link #NO_CHECKSUM} if the
+     * pointer was stored without one
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    /**
+     * Check if two pointers point to the same record, regardless of whether
+     * they carry its checksum
+     *
+     * @param other other pointer
+     * @return true if both pointers have the same location
+     */
+    public boolean isSameRecord(ValuePointer other) {
+        return this.segmentId == other.segmentId && this.offset == other.offset && this.length == other.length;
+    }
+
+    /**
+     * Encode the pointer to be stored in place of a value
+     *
+     * @return encoded pointer
+     */
+    public String encode() {
+        String location = String.join(SEPARATOR, Integer.toString(this.segmentId), Long.toString(this.offset),
+                Integer.toString(this.length));
+        return MARKER + (this.checksum == NO_CHECKSUM ? location : location + SEPARATOR + this.checksum);
+    }
+
+    /**
+     * Check if a stored string is an encoded pointer
+     *
+     * @param stored stored string
+     * @return true if the string is a pointer, false if it is an escaped value
+     */
+    public static boolean isPointer(String stored) {
+        return stored.length() > 1 && stored.charAt(0) == MARKER && stored.charAt(1) != MARKER;
+    }
+
+    /**
+     * Decode a pointer stored in place of a value
+     *
+     * @param stored encoded pointer
+     * @return decoded pointer
+     * @throws IllegalArgumentException if the string is not an encoded pointer
+     */
+    public static ValuePointer decode(String stored) {
+        if (!isPointer(stored)) {
+            throw new IllegalArgumentException("Not a value pointer");
+        }
+
+        String[] parts = stored.substring(1).split(SEPARATOR);
+        if (parts.length != 3 && parts.length != 4) {
+            throw new IllegalArgumentException("Malformed value pointer");
+        }
+        return new ValuePointer(Integer.parseInt(parts[0]), Long.parseLong(parts[1]), Integer.parseInt(parts[2]),
+                parts.length == 4 ? Long.parseLong(parts[3]) : NO_CHECKSUM);
+    }
+
+    /**
+     * Escape a value that is stored in place, so it can't be mistaken for a
+     * pointer
+     *
+     * @param value value to store
+     * @return stored string
+     */
+    public static String escape(String value) {
+        return !value.isEmpty() && value.charAt(0) == MARKER ? MARKER + value : value;
+    }
+
+    /**
+     * Reverse {@link #escape(String)}
+     *
+     * @param stored stored string that is not a pointer
+     * @return stored value
+     */
+    public static String unescape(String stored) {
+        return !stored.isEmpty() && stored.charAt(0) == MARKER ? stored.substring(1) : stored;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        }
+        if (!(obj instanceof ValuePointer)) {
+            return false;
+        }
+
+        ValuePointer other = (ValuePointer) obj;
+        return this.isSameRecord(other) && this.checksum == other.checksum;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(this.segmentId, this.offset, this.length, this.checksum);
+    }
+
+    @Override
+    public String toString() {
+        return this.segmentId + SEPARATOR + this.offset + SEPARATOR + this.length + SEPARATOR + this.checksum;
+    }
+
+}
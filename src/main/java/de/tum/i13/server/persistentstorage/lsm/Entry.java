@@ -0,0 +1,173 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Key of an {@link LSMTree} together with its latest value. Deleting a key
+ * writes an entry without value (a tombstone), which shadows the older values
+ * of the key until compaction drops them.
+ * <p>
+ * Entries are encoded as a length-prefixed UTF-8 key followed by the value.
+ * The value is a single 0 byte for tombstones, or a 1 byte followed by the
+ * length-prefixed UTF-8 original key and value of the {@link Pair}.
+ */
+class Entry {
+
+    private static final byte TOMBSTONE = 0;
+    private static final byte VALUE = 1;
+
+    /**
+     * Key of the entry
+     */
+    final String key;
+
+    /**
+     * Value of the entry, {@code null} if the key was deleted
+     */
+    final Pair<String> value;
+
+    /**
+     * Create a new entry
+     *
+     * @param key   key of the entry
+     * @param value value of the entry, {@code null} for a tombstone
+     */
+    Entry(String key, Pair<String> value) {
+        this.key = key;
+        this.value = value;
+    }
+
+    /**
+     * Check if the entry deletes its key
+     *
+     * @return true if the entry is a tombstone
+     */
+    boolean isTombstone() {
+        return this.value == null;
+    }
+
+    /**
+     * Approximate number of bytes the entry occupies in memory and on disk
+     *
+     * @return size of the entry in bytes
+     */
+    int size() {
+        int size = 5 + this.key.length();
+        if (this.value != null) {
+            size += 8 + this.value.key.length() + this.value.value.length();
+        }
+        return size;
+    }
+
+    /**
+     * Write the entry in its binary format
+     *
+     * @param out output to write to
+     * @throws IOException an exception is thrown if the output can't be written
+     */
+    void writeTo(DataOutput out) throws IOException {
+        writeString(out, this.key);
+        writeValue(out, this.value);
+    }
+
+    /**
+     * Read an entry in its binary format
+     *
+     * @param buffer buffer positioned at the start of the entry
+     * @return read entry
+     * @throws StorageException an exception is thrown if the buffer doesn't
+     *                          contain a valid entry
+     */
+    static Entry readFrom(ByteBuffer buffer) throws StorageException {
+        try {
+            return new Entry(readString(buffer), readValue(buffer));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StorageException(e, "Malformed LSM entry");
+        }
+    }
+
+    /**
+     * Encode the value of an entry on its own, as done for log records
+     *
+     * @param value value to encode, {@code null} for a tombstone
+     * @return encoded value
+     */
+    static byte[] encodeValue(Pair<String> value) {
+        if (value == null) {
+            return new byte[]{TOMBSTONE};
+        }
+
+        byte[] key = value.key.getBytes(StandardCharsets.UTF_8);
+        byte[] data = value.value.getBytes(StandardCharsets.UTF_8);
+        return ByteBuffer.allocate(9 + key.length + data.length)
+                .put(VALUE)
+                .putInt(key.length).put(key)
+                .putInt(data.length).put(data)
+                .array();
+    }
+
+    /**
+     * Decode a value encoded with {@link #encodeValue(Pair)}
+     *
+     * @param data encoded value
+     * @return decoded value, {@code null} for a tombstone
+     * @throws StorageException an exception is thrown if the data isn't a valid
+     *                          value
+     */
+    static Pair<String> decodeValue(byte[] data) throws StorageException {
+        try {
+            return readValue(ByteBuffer.wrap(data));
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new StorageException(e, "Malformed LSM value");
+        }
+    }
+
+    private static void writeValue(DataOutput out, Pair<String> value) throws IOException {
+        if (value == null) {
+            out.writeByte(TOMBSTONE);
+            return;
+        }
+
+        out.writeByte(VALUE);
+        writeString(out, value.key);
+        writeString(out, value.value);
+    }
+
+    private static Pair<String> readValue(ByteBuffer buffer) {
+        byte tag = buffer.get();
+        if (tag == TOMBSTONE) {
+            return null;
+        }
+        if (tag != VALUE) {
+            throw new IllegalArgumentException("Unknown value tag " + tag);
+        }
+
+        String key = readString(buffer);
+        return new Pair<>(key, readString(buffer));
+    }
+
+    private static void writeString(DataOutput out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Invalid string length " + length);
+        }
+
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,191 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.server.kv.KVMessageImpl;
+import de.tum.i13.server.persistentstorage.StorageKeys;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.shared.Preconditions;
+import de.tum.i13.shared.hashing.HashingAlgorithm;
+import de.tum.i13.shared.persistentstorage.CloseableIterator;
+import de.tum.i13.shared.persistentstorage.GetException;
+import de.tum.i13.shared.persistentstorage.PersistentStorage;
+import de.tum.i13.shared.persistentstorage.PutException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Uses a log-structured merge tree ({@link LSMTree}) to provide a
+ * {@link PersistentStorage}. Keys are hashed and encoded with
+ * {@link StorageKeys} like in
+ * {@link de.tum.i13.server.persistentstorage.btree.BTreePersistentStorage}, so
+ * both engines store the same ranges of the ring in the same order. Trees
+ * written with padded hexadecimal keys are converted when they are opened.
+ */
+public class LSMPersistentStorage implements PersistentStorage, AutoCloseable {
+
+    private static final Logger LOGGER = LogManager.getLogger(LSMPersistentStorage.class);
+
+    private static final int RANGE_BATCH_SIZE = 256; // values read at once when iterating over a range
+
+    // Format flag of trees whose keys are all stored as bytes
+    private static final int BINARY_KEYS = 1;
+
+    // Key of the entry that marked converted trees in previous versions, the format flag replaces it
+    private static final String LEGACY_BINARY_KEYS_MARKER = "";
+
+    private final LSMTree tree;
+
+    private final HashingAlgorithm hashAlg;
+
+    /**
+     * Open the LSM tree stored in a folder, creating it if it doesn't exist
+     *
+     * @param folder           folder where the tree is stored
+     * @param reset            true if the stored tree should be deleted
+     * @param memTableSize     maximum size of the memtable in bytes
+     * @param walSyncInterval  maximum time in milliseconds between a write and
+     *                         the sync of the log, 0 to sync on every write
+     * @param hashingAlgorithm algorithm used to hash the keys
+     * @throws StorageException An exception is thrown when the stored tree can't
+     *                          be read
+     */
+    public LSMPersistentStorage(Path folder, boolean reset, long memTableSize, long walSyncInterval,
+                                HashingAlgorithm hashingAlgorithm) throws StorageException {
+        this.tree = new LSMTree(folder, reset, memTableSize, walSyncInterval);
+        this.hashAlg = hashingAlgorithm;
+        this.convertHexKeys();
+    }
+
+    private void convertHexKeys() throws StorageException {
+        // The flag is set before the marker is removed, so an interrupted replacement is finished here
+        if (this.tree.get(LEGACY_BINARY_KEYS_MARKER) != null) {
+            this.tree.setFormatFlags(this.tree.getFormatFlags() | BINARY_KEYS);
+            this.tree.put(LEGACY_BINARY_KEYS_MARKER, null);
+            return;
+        }
+        if ((this.tree.getFormatFlags() & BINARY_KEYS) != 0) {
+            return;
+        }
+
+        int hashSizeBits = this.hashAlg.getHashSizeBits();
+        List<Pair<String>> values = new ArrayList<>();
+        try {
+            this.tree.iterateRange(StorageKeys.lowest(hashSizeBits), StorageKeys.highest(hashSizeBits),
+                    RANGE_BATCH_SIZE).forEachRemaining(values::add);
+        } catch (IllegalStateException e) {
+            throw new StorageException(e, "Could not read the keys to convert");
+        }
+
+        int converted = 0;
+        for (Pair<String> value : values) {
+            String hexKey = HashingAlgorithm.padLeftZeros(this.hashAlg.hash(value.key).toString(16),
+                    hashSizeBits / 4);
+            if (this.tree.get(hexKey) != null) {
+                // Inserting first makes the conversion safe to repeat if it is interrupted
+                this.tree.put(this.normalizeKey(value.key), value);
+                this.tree.put(hexKey, null);
+                converted++;
+            }
+        }
+
+        // Only flagged trees skip the conversion, so an interrupted conversion is finished on the next start
+        this.tree.setFormatFlags(this.tree.getFormatFlags() | BINARY_KEYS);
+        if (converted > 0) {
+            LOGGER.info("Converted {} hexadecimal keys to binary keys", converted);
+        }
+    }
+
+    private String normalizeKey(String key) {
+        return StorageKeys.fromBytes(this.hashAlg.hashBytes(key));
+    }
+
+    private String normalizeBound(String hexBound) {
+        return StorageKeys.fromHex(hexBound, this.hashAlg.getHashSizeBits());
+    }
+
+    @Override
+    public KVMessage get(String key) throws GetException {
+        Preconditions.notNull(key, "Key cannot be null");
+        LOGGER.info("Trying to get value of key {}", key);
+
+        try {
+            Pair<String> keyValue = this.tree.get(this.normalizeKey(key));
+
+            if (keyValue == null) {
+                LOGGER.info("No value with key {}", key);
+                return new KVMessageImpl(key, KVMessage.StatusType.GET_ERROR);
+            }
+            LOGGER.info("Found value {} with key {}", keyValue.value, key);
+            return new KVMessageImpl(keyValue.key, keyValue.value, KVMessage.StatusType.GET_SUCCESS);
+        } catch (Exception e) {
+            throw new GetException("An error occured while fetching key %s from storage.", key);
+        }
+    }
+
+    @Override
+    public KVMessage put(String key, String value) throws PutException {
+        Preconditions.notNull(key, "Key cannot be null");
+
+        try {
+            if (value == null) {
+                LOGGER.info("Trying to delete key {}", key);
+                boolean deleted = this.tree.put(this.normalizeKey(key), null) != null;
+                LOGGER.info("Deleted key {}", key);
+
+                return deleted ? new KVMessageImpl(key, KVMessage.StatusType.DELETE_SUCCESS)
+                        : new KVMessageImpl(key, KVMessage.StatusType.DELETE_ERROR);
+            }
+
+            LOGGER.info("Trying to put key {} with value {}", key, value);
+            Pair<String> previousValue = this.tree.put(this.normalizeKey(key), new Pair<>(key, value));
+
+            if (previousValue != null && !value.equals(previousValue.value)) {
+                LOGGER.info("Updated key {} with value {}", key, value);
+                return new KVMessageImpl(key, KVMessage.StatusType.PUT_UPDATE);
+            }
+
+            LOGGER.info("Put key {} with value {}", key, value);
+            return new KVMessageImpl(key, KVMessage.StatusType.PUT_SUCCESS);
+        } catch (Exception e) {
+            throw new PutException("An error occured while %s key %s from storage.",
+                    value == null ? "deleting" : "putting", key);
+        }
+    }
+
+    @Override
+    public List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException {
+        try {
+            return this.tree.getRange(this.normalizeBound(lowerBound), this.normalizeBound(upperBound));
+        } catch (Exception e) {
+            throw new GetException(e, "An error occurred while fetching elements in range %s-%s from storage.",
+                    lowerBound, upperBound);
+        }
+    }
+
+    @Override
+    public CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound) {
+        // The iterator reads batches from the current tree, so it holds nothing between them
+        return CloseableIterator.of(this.tree.iterateRange(this.normalizeBound(lowerBound),
+                this.normalizeBound(upperBound), RANGE_BATCH_SIZE));
+    }
+
+    /**
+     * Closes the tree. Writes that were not flushed to a table are recovered
+     * from the log when the storage is opened again.
+     */
+    @Override
+    public void close() {
+        try {
+            this.tree.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close LSM tree", e);
+        }
+    }
+
+}
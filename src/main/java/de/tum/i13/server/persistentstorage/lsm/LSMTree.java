@@ -0,0 +1,843 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.CommitRecord;
+import de.tum.i13.server.persistentstorage.btree.io.transactions.WriteAheadLog;
+import de.tum.i13.shared.Preconditions;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.UnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Log-structured merge tree
+ * (https://en.wikipedia.org/wiki/Log-structured_merge-tree) mapping keys to
+ * {@link Pair}s. Writes are appended to a {@link WriteAheadLog} and buffered
+ * in a {@link MemTable}. Once the memtable reaches its maximum size, it is
+ * replaced by a new one with a new log, and a background thread flushes it to
+ * an immutable {@link SSTable} in level 0.
+ * <p>
+ * Tables are compacted level by level: once level 0 holds
+ * {@value #L0_COMPACTION_TRIGGER} tables, they are merged with the overlapping
+ * tables of level 1. Tables of the other levels don't overlap, and a level
+ * {@code i > 0} is compacted once its tables are larger than
+ * {@value #LEVEL_BASE_SIZE} bytes times {@value #LEVEL_SIZE_MULTIPLIER}
+ * to the power of {@code i - 1}, by merging one of its tables with the
+ * overlapping tables of the next level. Deleted keys are kept as tombstones
+ * until they are compacted into the last non-empty level.
+ * <p>
+ * The tables of every level and the oldest log that was not flushed are
+ * recorded in a {@link Manifest}. When the tree is opened, logs that were not
+ * flushed are replayed and written to a table.
+ * <p>
+ * Writes are serialized, reads run concurrently with writes and with the
+ * background thread and see the latest completed write.
+ */
+public class LSMTree implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getLogger(LSMTree.class);
+
+    /**
+     * Default maximum size of the memtable in bytes
+     */
+    public static final long DEFAULT_MEMTABLE_SIZE = 4L * 1024 * 1024;
+
+    /**
+     * Number of level 0 tables that triggers a compaction into level 1
+     */
+    static final int L0_COMPACTION_TRIGGER = 4;
+
+    /**
+     * Maximum size of level 1 in bytes
+     */
+    static final long LEVEL_BASE_SIZE = 10L * 1024 * 1024;
+
+    /**
+     * Factor by which the maximum size grows from one level to the next
+     */
+    static final int LEVEL_SIZE_MULTIPLIER = 10;
+
+    /**
+     * Size in bytes at which compaction starts a new output table
+     */
+    static final long TARGET_TABLE_SIZE = 2L * 1024 * 1024;
+
+    private static final int LEVEL_COUNT = 7;
+    private static final int MAX_IMMUTABLE_MEMTABLES = 2; // writers wait if more memtables are not flushed yet
+    private static final String MANIFEST_NAME = "MANIFEST";
+    private static final Pattern LOG_NAME = Pattern.compile("wal-(\\d+)\\.log");
+    private static final Pattern TABLE_NAME = Pattern.compile("table-(\\d+)\\.sst");
+
+    private final Path folder;
+    private final long memTableSize;
+    private final long syncInterval;
+    private final ReadWriteLock versionLock; // held while reading tables, so they aren't deleted in between
+    private final ExecutorService background;
+    private final String[] compactPointers; // largest key compacted last, per level
+    private final Object flushed; // notified when the background thread finished its work
+    private volatile Version current;
+    private volatile boolean closed;
+    private volatile StorageException backgroundError;
+    private WriteAheadLog log; // log of the current memtable
+    private long nextTableId;
+    private volatile int formatFlags; // stored in the manifest
+
+    /**
+     * Open an LSM tree stored in a folder, creating it if it doesn't exist
+     *
+     * @param folder       folder where the tree is stored
+     * @param reset        true if the stored tree should be deleted
+     * @param memTableSize maximum size of the memtable in bytes
+     * @param syncInterval maximum time in milliseconds between a write and the
+     *                     sync of the log, 0 to sync on every write (see
+     *                     {@link WriteAheadLog})
+     * @throws StorageException an exception is thrown if the stored tree can't
+     *                          be read or recovered
+     */
+    public LSMTree(Path folder, boolean reset, long memTableSize, long syncInterval) throws StorageException {
+        Preconditions.check(memTableSize > 0, "Memtable size must be positive");
+
+        this.folder = folder;
+        this.memTableSize = memTableSize;
+        this.syncInterval = syncInterval;
+        this.versionLock = new ReentrantReadWriteLock();
+        this.compactPointers = new String[LEVEL_COUNT];
+        this.flushed = new Object();
+
+        if (reset) {
+            StorageUtils.deleteFile(folder);
+        }
+        StorageUtils.createDirectory(folder);
+
+        Manifest manifest = Manifest.read(this.manifestPath());
+        if (manifest == null) {
+            manifest = new Manifest(1, 1, 0, new ArrayList<>());
+        }
+        this.nextTableId = manifest.getNextTableId();
+        this.formatFlags = manifest.getFlags();
+
+        List<List<SSTable>> levels = this.openTables(manifest);
+        this.deleteObsoleteFiles(manifest.getLogNumber(), levels);
+        long logNumber = this.recover(manifest.getLogNumber(), levels);
+
+        this.current = new Version(new MemTable(logNumber), Collections.emptyList(), levels);
+        this.log = new WriteAheadLog(this.logPath(logNumber), syncInterval);
+        this.background = Executors.newSingleThreadExecutor(
+                new ThreadFactoryBuilder().setNameFormat("lsm-compaction").setDaemon(true).build());
+        this.background.execute(this::backgroundWork);
+    }
+
+    /**
+     * Get the value of a key
+     *
+     * @param key key to look for
+     * @return value of the key, {@code null} if the key doesn't exist
+     * @throws StorageException an exception is thrown if the tree is closed or
+     *                          a table can't be read
+     */
+    public Pair<String> get(String key) throws StorageException {
+        Preconditions.notNull(key, "Key cannot be null");
+
+        this.versionLock.readLock().lock();
+        try {
+            this.checkOpen();
+            Entry entry = this.find(this.current, key);
+            return entry == null ? null : entry.value;
+        } finally {
+            this.versionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Set the value of a key. The write is durable once the log is synced.
+     *
+     * @param key   key to write
+     * @param value new value of the key, {@code null} to delete the key
+     * @return previous value of the key, {@code null} if the key didn't exist
+     * @throws StorageException an exception is thrown if the tree is closed or
+     *                          the write can't be logged
+     */
+    public synchronized Pair<String> put(String key, Pair<String> value) throws StorageException {
+        Preconditions.notNull(key, "Key cannot be null");
+        this.checkOpen();
+
+        // The previous value is needed to report updates, and it spares tombstones of missing keys
+        Pair<String> previous = this.get(key);
+        if (value == null && previous == null) {
+            return null;
+        }
+
+        this.log.append(new CommitRecord(Collections.singletonMap(key, Entry.encodeValue(value))));
+        MemTable memTable = this.current.memTable;
+        memTable.put(new Entry(key, value));
+
+        if (memTable.size() >= this.memTableSize) {
+            this.rotate();
+        }
+
+        return previous;
+    }
+
+    /**
+     * Get the values of all keys in a range, in ascending key order
+     *
+     * @param lowerBound smallest key of the range (inclusive)
+     * @param upperBound largest key of the range (inclusive)
+     * @return values in the range
+     * @throws StorageException an exception is thrown if the tree is closed or
+     *                          a table can't be read
+     */
+    public List<Pair<String>> getRange(String lowerBound, String upperBound) throws StorageException {
+        return this.scan(lowerBound, true, upperBound, Integer.MAX_VALUE).stream()
+                .map(entry -> entry.value)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Iterate over the values of all keys in a range, in ascending key order.
+     * Values are read in batches, so the iterator reflects writes made while
+     * iterating and holds no lock between calls. Errors while reading are
+     * thrown as {@link IllegalStateException}s.
+     *
+     * @param lowerBound smallest key of the range (inclusive)
+     * @param upperBound largest key of the range (inclusive)
+     * @param batchSize  number of values read at once
+     * @return iterator over the values in the range
+     */
+    public Iterator<Pair<String>> iterateRange(String lowerBound, String upperBound, int batchSize) {
+        Preconditions.check(batchSize > 0, "Batch size must be positive");
+        return new RangeIterator(lowerBound, upperBound, batchSize);
+    }
+
+    /**
+     * Flush the memtable to a table and wait until the background thread has
+     * no work left, i.e. until no level needs to be compacted
+     *
+     * @throws StorageException an exception is thrown if the tree is closed or
+     *                          the flush or a compaction failed
+     */
+    public synchronized void flush() throws StorageException {
+        this.checkOpen();
+        if (!this.current.memTable.isEmpty()) {
+            this.rotate();
+        }
+
+        try {
+            this.background.submit(() -> {
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException(e, "Interrupted while waiting for the flush");
+        } catch (ExecutionException e) {
+            throw new StorageException(e, "Could not wait for the flush");
+        }
+
+        this.checkOpen();
+    }
+
+    /**
+     * Get the format flags stored in the manifest
+     *
+     * @return format flags, 0 if no flag was set
+     */
+    public int getFormatFlags() {
+        return this.formatFlags;
+    }
+
+    /**
+     * Store format flags in the manifest, e.g. after the entries were
+     * converted to a new format. The memtable is flushed first, so the flags
+     * never describe writes that are only in a log.
+     *
+     * @param flags format flags to store
+     * @throws StorageException an exception is thrown if the tree is closed or
+     *                          the flush or the manifest can't be written
+     */
+    public synchronized void setFormatFlags(int flags) throws StorageException {
+        // Writes wait for the monitor, so the background thread stays idle after the flush
+        this.flush();
+        this.formatFlags = flags;
+
+        Version version = this.current;
+        this.writeManifest(version.memTable.getLogNumber(), version.levels);
+    }
+
+    /**
+     * Get the number of tables in every level
+     *
+     * @return number of tables by level
+     */
+    public List<Integer> getTableCounts() {
+        return this.current.levels.stream().map(List::size).collect(Collectors.toList());
+    }
+
+    /**
+     * Close the tree. Background work is stopped, writes that were not flushed
+     * are recovered from the log when the tree is opened again.
+     *
+     * @throws IOException an exception is thrown if the log or a table can't be
+     *                     closed
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (this.closed) {
+            return;
+        }
+
+        this.closed = true;
+        this.background.shutdown();
+        try {
+            this.background.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        this.versionLock.writeLock().lock();
+        try {
+            this.log.close();
+            for (List<SSTable> level : this.current.levels) {
+                for (SSTable table : level) {
+                    table.close();
+                }
+            }
+        } finally {
+            this.versionLock.writeLock().unlock();
+        }
+    }
+
+    private void checkOpen() throws StorageException {
+        if (this.closed) {
+            throw new StorageException("LSM tree is closed");
+        }
+
+        StorageException error = this.backgroundError;
+        if (error != null) {
+            throw new StorageException(error, "LSM tree is read-only after a failed flush or compaction");
+        }
+    }
+
+    private Entry find(Version version, String key) throws StorageException {
+        Entry entry = version.memTable.get(key);
+        for (int i = 0; entry == null && i < version.immutables.size(); i++) {
+            entry = version.immutables.get(i).get(key);
+        }
+
+        // Level 0 tables overlap, newer tables come first
+        for (int i = 0; entry == null && i < version.levels.get(0).size(); i++) {
+            entry = version.levels.get(0).get(i).get(key);
+        }
+
+        for (int level = 1; entry == null && level < version.levels.size(); level++) {
+            SSTable table = findTable(version.levels.get(level), key);
+            if (table != null) {
+                entry = table.get(key);
+            }
+        }
+
+        return entry;
+    }
+
+    // Table of a level (> 0) whose range contains the key, null if there is none
+    private static SSTable findTable(List<SSTable> tables, String key) {
+        int index = firstTableNotBefore(tables, key);
+        if (index == tables.size() || tables.get(index).getFirstKey().compareTo(key) > 0) {
+            return null;
+        }
+
+        return tables.get(index);
+    }
+
+    // Index of the first table of a level (> 0) whose last key isn't smaller than the key
+    private static int firstTableNotBefore(List<SSTable> tables, String key) {
+        int low = 0;
+        int high = tables.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (tables.get(middle).getLastKey().compareTo(key) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // Entries that aren't deleted, starting from a key, up to a given number
+    private List<Entry> scan(String lowerBound, boolean inclusive, String upperBound, int limit)
+            throws StorageException {
+        List<Entry> result = new ArrayList<>();
+
+        this.versionLock.readLock().lock();
+        try {
+            this.checkOpen();
+            Version version = this.current;
+
+            List<Iterator<Entry>> sources = new ArrayList<>();
+            sources.add(version.memTable.iterator(lowerBound, inclusive));
+            for (MemTable memTable : version.immutables) {
+                sources.add(memTable.iterator(lowerBound, inclusive));
+            }
+            for (SSTable table : version.levels.get(0)) {
+                sources.add(table.iterator(lowerBound, inclusive));
+            }
+            for (int level = 1; level < version.levels.size(); level++) {
+                List<SSTable> tables = version.levels.get(level);
+                List<SSTable> remaining = tables.subList(firstTableNotBefore(tables, lowerBound), tables.size());
+                sources.add(Iterators.concat(
+                        Iterators.transform(remaining.iterator(), table -> table.iterator(lowerBound, inclusive))));
+            }
+
+            Iterator<Entry> entries = new MergingIterator(sources);
+            while (result.size() < limit && entries.hasNext()) {
+                Entry entry = entries.next();
+                if (entry.key.compareTo(upperBound) > 0) {
+                    break;
+                }
+                if (!entry.isTombstone()) {
+                    result.add(entry);
+                }
+            }
+        } catch (IllegalStateException e) {
+            throw new StorageException(e, "Could not read range %s-%s", lowerBound, upperBound);
+        } finally {
+            this.versionLock.readLock().unlock();
+        }
+
+        return result;
+    }
+
+    // Replace the full memtable by a new one with a new log and schedule its flush
+    private void rotate() throws StorageException {
+        MemTable full = this.current.memTable;
+        long logNumber = full.getLogNumber() + 1;
+
+        WriteAheadLog nextLog = new WriteAheadLog(this.logPath(logNumber), this.syncInterval);
+        try {
+            this.log.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close log {}", full.getLogNumber(), e);
+        }
+        this.log = nextLog;
+
+        this.install(version -> {
+            List<MemTable> immutables = new ArrayList<>();
+            immutables.add(full);
+            immutables.addAll(version.immutables);
+            return new Version(new MemTable(logNumber), immutables, version.levels);
+        });
+        this.background.execute(this::backgroundWork);
+
+        // Writers must not outpace the flushes
+        synchronized (this.flushed) {
+            while (this.current.immutables.size() > MAX_IMMUTABLE_MEMTABLES && this.backgroundError == null) {
+                try {
+                    this.flushed.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new StorageException(e, "Interrupted while waiting for a memtable flush");
+                }
+            }
+        }
+    }
+
+    private void backgroundWork() {
+        try {
+            this.flushMemTables();
+            this.compact();
+        } catch (StorageException | RuntimeException e) {
+            LOGGER.error("Background work of LSM tree {} failed", this.folder, e);
+            this.backgroundError = e instanceof StorageException ? (StorageException) e
+                    : new StorageException(e, "Background work failed");
+        }
+
+        synchronized (this.flushed) {
+            this.flushed.notifyAll();
+        }
+    }
+
+    private void flushMemTables() throws StorageException {
+        while (!this.closed && !this.current.immutables.isEmpty()) {
+            List<MemTable> immutables = this.current.immutables;
+            MemTable oldest = immutables.get(immutables.size() - 1);
+
+            SSTable table = this.writeTable(oldest.iterator());
+            List<List<SSTable>> levels = copyLevels(this.current.levels);
+            levels.get(0).add(0, table);
+            this.writeManifest(oldest.getLogNumber() + 1, levels);
+
+            this.install(version -> new Version(version.memTable,
+                    version.immutables.subList(0, version.immutables.size() - 1), levels));
+            StorageUtils.deleteFile(this.logPath(oldest.getLogNumber()));
+
+            LOGGER.debug("Flushed memtable of log {} to table {}", oldest.getLogNumber(), table.getId());
+        }
+    }
+
+    private void compact() throws StorageException {
+        Compaction compaction;
+        while (!this.closed && (compaction = this.pickCompaction(this.current.levels)) != null) {
+            this.runCompaction(compaction);
+        }
+    }
+
+    private Compaction pickCompaction(List<List<SSTable>> levels) {
+        if (levels.get(0).size() >= L0_COMPACTION_TRIGGER) {
+            List<SSTable> inputs = levels.get(0);
+            String firstKey = inputs.stream().map(SSTable::getFirstKey).min(Comparator.naturalOrder()).orElseThrow();
+            String lastKey = inputs.stream().map(SSTable::getLastKey).max(Comparator.naturalOrder()).orElseThrow();
+            return new Compaction(0, inputs, overlapping(levels.get(1), firstKey, lastKey));
+        }
+
+        long maxSize = LEVEL_BASE_SIZE;
+        for (int level = 1; level < LEVEL_COUNT - 1; level++, maxSize *= LEVEL_SIZE_MULTIPLIER) {
+            List<SSTable> tables = levels.get(level);
+            if (tables.stream().mapToLong(SSTable::getSize).sum() <= maxSize) {
+                continue;
+            }
+
+            // Tables are picked round-robin, so every key range is compacted eventually
+            String pointer = this.compactPointers[level];
+            SSTable input = tables.stream()
+                    .filter(table -> pointer == null || table.getFirstKey().compareTo(pointer) > 0)
+                    .findFirst()
+                    .orElse(tables.get(0));
+            return new Compaction(level, List.of(input),
+                    overlapping(levels.get(level + 1), input.getFirstKey(), input.getLastKey()));
+        }
+
+        return null;
+    }
+
+    private void runCompaction(Compaction compaction) throws StorageException {
+        int outputLevel = compaction.level + 1;
+        List<List<SSTable>> levels = this.current.levels;
+
+        List<Iterator<Entry>> sources = new ArrayList<>();
+        for (SSTable input : compaction.inputs) {
+            sources.add(input.iterator());
+        }
+        sources.add(Iterators.concat(Iterators.transform(compaction.overlapping.iterator(), SSTable::iterator)));
+
+        // Tombstones only need to shadow entries of deeper levels
+        boolean dropTombstones = levels.subList(outputLevel + 1, levels.size()).stream().allMatch(List::isEmpty);
+
+        List<SSTable> outputs = new ArrayList<>();
+        SSTable.Writer writer = null;
+        try {
+            Iterator<Entry> entries = new MergingIterator(sources);
+            while (entries.hasNext()) {
+                Entry entry = entries.next();
+                if (dropTombstones && entry.isTombstone()) {
+                    continue;
+                }
+
+                if (writer == null) {
+                    writer = this.newTableWriter();
+                }
+                writer.add(entry);
+
+                if (writer.size() >= TARGET_TABLE_SIZE) {
+                    outputs.add(writer.finish());
+                    writer = null;
+                }
+            }
+
+            if (writer != null) {
+                outputs.add(writer.finish());
+                writer = null;
+            }
+        } catch (IllegalStateException e) {
+            throw new StorageException(e, "Could not compact level %d", compaction.level);
+        } finally {
+            closeQuietly(writer);
+        }
+
+        List<List<SSTable>> next = copyLevels(levels);
+        next.get(compaction.level).removeAll(compaction.inputs);
+        next.get(outputLevel).removeAll(compaction.overlapping);
+        next.get(outputLevel).addAll(outputs);
+        next.get(outputLevel).sort(Comparator.comparing(SSTable::getFirstKey));
+        this.compactPointers[compaction.level] = compaction.inputs.get(compaction.inputs.size() - 1).getLastKey();
+
+        Version version = this.current;
+        long logNumber = version.immutables.isEmpty() ? version.memTable.getLogNumber()
+                : version.immutables.get(version.immutables.size() - 1).getLogNumber();
+        this.writeManifest(logNumber, next);
+        this.install(v -> new Version(v.memTable, v.immutables, next));
+
+        // Readers of the old tables finished before the new version was installed
+        for (SSTable table : Iterables.concat(compaction.inputs, compaction.overlapping)) {
+            closeQuietly(table);
+            StorageUtils.deleteFile(table.getFilePath());
+        }
+
+        LOGGER.debug("Compacted {} tables of level {} and {} tables of level {} into {} tables",
+                compaction.inputs.size(), compaction.level, compaction.overlapping.size(), outputLevel,
+                outputs.size());
+    }
+
+    private static List<SSTable> overlapping(List<SSTable> tables, String firstKey, String lastKey) {
+        return tables.stream().filter(table -> table.overlaps(firstKey, lastKey)).collect(Collectors.toList());
+    }
+
+    private SSTable writeTable(Iterator<Entry> entries) throws StorageException {
+        try (SSTable.Writer writer = this.newTableWriter()) {
+            while (entries.hasNext()) {
+                writer.add(entries.next());
+            }
+            return writer.finish();
+        } catch (IOException e) {
+            throw new StorageException(e, "Could not clean up table");
+        }
+    }
+
+    private SSTable.Writer newTableWriter() throws StorageException {
+        long id = this.nextTableId++;
+        return new SSTable.Writer(id, this.tablePath(id));
+    }
+
+    private void writeManifest(long logNumber, List<List<SSTable>> levels) throws StorageException {
+        List<List<Long>> ids = levels.stream()
+                .map(level -> level.stream().map(SSTable::getId).collect(Collectors.toList()))
+                .collect(Collectors.toList());
+        new Manifest(logNumber, this.nextTableId, this.formatFlags, ids).write(this.manifestPath());
+    }
+
+    private void install(UnaryOperator<Version> change) {
+        this.versionLock.writeLock().lock();
+        try {
+            this.current = change.apply(this.current);
+        } finally {
+            this.versionLock.writeLock().unlock();
+        }
+    }
+
+    private List<List<SSTable>> openTables(Manifest manifest) throws StorageException {
+        List<List<SSTable>> levels = new ArrayList<>();
+        for (int level = 0; level < LEVEL_COUNT; level++) {
+            List<SSTable> tables = new ArrayList<>();
+            List<List<Long>> ids = manifest.getLevels();
+            for (long id : level < ids.size() ? ids.get(level) : Collections.<Long>emptyList()) {
+                tables.add(SSTable.open(id, this.tablePath(id)));
+            }
+
+            if (level == 0) {
+                tables.sort(Comparator.comparingLong(SSTable::getId).reversed());
+            } else {
+                tables.sort(Comparator.comparing(SSTable::getFirstKey));
+            }
+            levels.add(tables);
+        }
+        return levels;
+    }
+
+    // Delete logs that were flushed and files left behind by interrupted flushes and compactions
+    private void deleteObsoleteFiles(long logNumber, List<List<SSTable>> levels) throws StorageException {
+        List<Path> live = levels.stream().flatMap(List::stream).map(SSTable::getFilePath)
+                .collect(Collectors.toList());
+
+        for (Path file : this.listFiles()) {
+            String name = file.getFileName().toString();
+            Matcher log = LOG_NAME.matcher(name);
+            boolean obsolete = (log.matches() && Long.parseLong(log.group(1)) < logNumber)
+                    || (TABLE_NAME.matcher(name).matches() && !live.contains(file))
+                    || name.endsWith(".tmp");
+
+            if (obsolete) {
+                StorageUtils.deleteFile(file);
+            }
+        }
+    }
+
+    // Replay the logs that were not flushed into a level 0 table, returns the number of the next log
+    private long recover(long logNumber, List<List<SSTable>> levels) throws StorageException {
+        List<Long> logNumbers = new ArrayList<>();
+        for (Path file : this.listFiles()) {
+            Matcher log = LOG_NAME.matcher(file.getFileName().toString());
+            if (log.matches()) {
+                logNumbers.add(Long.parseLong(log.group(1)));
+            }
+        }
+        Collections.sort(logNumbers);
+
+        if (logNumbers.isEmpty()) {
+            return logNumber;
+        }
+
+        MemTable recovered = new MemTable(logNumber);
+        for (long number : logNumbers) {
+            try (WriteAheadLog replayed = new WriteAheadLog(this.logPath(number), 0)) {
+                for (CommitRecord record : replayed.readRecords()) {
+                    for (Map.Entry<String, byte[]> write : record.getPages().entrySet()) {
+                        recovered.put(new Entry(write.getKey(), Entry.decodeValue(write.getValue())));
+                    }
+                }
+            } catch (IOException e) {
+                throw new StorageException(e, "Could not close log %d", number);
+            }
+        }
+
+        long nextLogNumber = logNumbers.get(logNumbers.size() - 1) + 1;
+        if (!recovered.isEmpty()) {
+            levels.get(0).add(0, this.writeTable(recovered.iterator()));
+        }
+        this.writeManifest(nextLogNumber, levels);
+
+        for (long number : logNumbers) {
+            StorageUtils.deleteFile(this.logPath(number));
+        }
+
+        LOGGER.info("Recovered {} entries from {} logs", recovered.getEntryCount(), logNumbers.size());
+        return nextLogNumber;
+    }
+
+    private List<Path> listFiles() throws StorageException {
+        try (Stream<Path> files = Files.list(this.folder)) {
+            return files.collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while listing %s", this.folder);
+        }
+    }
+
+    private Path manifestPath() {
+        return this.folder.resolve(MANIFEST_NAME);
+    }
+
+    private Path logPath(long logNumber) {
+        return this.folder.resolve("wal-" + logNumber + ".log");
+    }
+
+    private Path tablePath(long tableId) {
+        return this.folder.resolve("table-" + tableId + ".sst");
+    }
+
+    private static List<List<SSTable>> copyLevels(List<List<SSTable>> levels) {
+        return levels.stream().map(ArrayList::new).collect(Collectors.toList());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            LOGGER.warn("Could not close {}", closeable, e);
+        }
+    }
+
+    /**
+     * Immutable state of the tree. A new version is installed whenever the
+     * memtable is replaced or tables are added or removed.
+     */
+    private static class Version {
+
+        private final MemTable memTable;
+        private final List<MemTable> immutables; // full memtables that are being flushed, newest first
+        private final List<List<SSTable>> levels; // level 0 newest first, other levels in key order
+
+        private Version(MemTable memTable, List<MemTable> immutables, List<List<SSTable>> levels) {
+            this.memTable = memTable;
+            this.immutables = immutables;
+            this.levels = levels;
+        }
+
+    }
+
+    /**
+     * Tables of a level that are merged into the next level
+     */
+    private static class Compaction {
+
+        private final int level;
+        private final List<SSTable> inputs; // newest first
+        private final List<SSTable> overlapping; // overlapping tables of the next level
+
+        private Compaction(int level, List<SSTable> inputs, List<SSTable> overlapping) {
+            this.level = level;
+            this.inputs = inputs;
+            this.overlapping = overlapping;
+        }
+
+    }
+
+    /**
+     * Iterates over a range by reading it in batches, each batch starting
+     * after the last key of the previous one
+     */
+    private class RangeIterator implements Iterator<Pair<String>> {
+
+        private final String upperBound;
+        private final int batchSize;
+        private String lastKey;
+        private boolean inclusive;
+        private Iterator<Entry> batch;
+        private boolean exhausted;
+
+        private RangeIterator(String lowerBound, String upperBound, int batchSize) {
+            this.lastKey = lowerBound;
+            this.inclusive = true;
+            this.upperBound = upperBound;
+            this.batchSize = batchSize;
+            this.batch = Collections.emptyIterator();
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!this.batch.hasNext() && !this.exhausted) {
+                List<Entry> entries;
+                try {
+                    entries = LSMTree.this.scan(this.lastKey, this.inclusive, this.upperBound, this.batchSize);
+                } catch (StorageException e) {
+                    throw new IllegalStateException(e);
+                }
+
+                this.exhausted = entries.size() < this.batchSize;
+                this.batch = entries.iterator();
+            }
+
+            return this.batch.hasNext();
+        }
+
+        @Override
+        public Pair<String> next() {
+            if (!this.hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            Entry entry = this.batch.next();
+            this.lastKey = entry.key;
+            this.inclusive = false;
+            return entry.value;
+        }
+
+    }
+
+}
@@ -0,0 +1,188 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persistent state of an {@link LSMTree}: the tables of every level, the
+ * oldest log that still holds writes that were not flushed to a table, the
+ * next free table id and the format flags of the stored entries. The manifest is a small text file that is rewritten as a
+ * whole, through a temporary file, whenever tables are added or removed:
+ *
+ * <pre>
+ * CDBM 1
+ * log &lt;number of the oldest live log&gt;
+ * next &lt;next table id&gt;
+ * flags &lt;format flags&gt;
+ * table &lt;level&gt; &lt;table id&gt;
+ * ...
+ * </pre>
+ * <p>
+ * Manifests without a {@code flags} line are read with no flag set.
+ */
+class Manifest {
+
+    private static final String HEADER = "CDBM 1";
+
+    private final long logNumber;
+    private final long nextTableId;
+    private final int flags;
+    private final List<List<Long>> levels; // table ids of every level
+
+    /**
+     * Create a new manifest
+     *
+     * @param logNumber   number of the oldest log that wasn't flushed
+     * @param nextTableId next free table id
+     * @param flags       format flags of the stored entries
+     * @param levels      ids of the tables of every level
+     */
+    Manifest(long logNumber, long nextTableId, int flags, List<List<Long>> levels) {
+        this.logNumber = logNumber;
+        this.nextTableId = nextTableId;
+        this.flags = flags;
+        this.levels = levels;
+    }
+
+    /**
+     * Get the number of the oldest log that wasn't flushed to a table. Logs
+     * with a smaller number are obsolete.
+     *
+     * @return log number
+     */
+    long getLogNumber() {
+        return this.logNumber;
+    }
+
+    /**
+     * Get the next free table id
+     *
+     * @return table id
+     */
+    long getNextTableId() {
+        return this.nextTableId;
+    }
+
+    /**
+     * Get the format flags of the stored entries
+     *
+     * @return format flags, 0 if no flag is set
+     */
+    int getFlags() {
+        return this.flags;
+    }
+
+    /**
+     * Get the ids of the tables of every level
+     *
+     * @return table ids by level
+     */
+    List<List<Long>> getLevels() {
+        return Collections.unmodifiableList(this.levels);
+    }
+
+    /**
+     * Read a manifest from disk
+     *
+     * @param filePath path to the manifest
+     * @return read manifest, or {@code null} if the file doesn't exist
+     * @throws StorageException an exception is thrown if the file can't be read
+     *                          or isn't a valid manifest
+     */
+    static Manifest read(Path filePath) throws StorageException {
+        if (!Files.exists(filePath)) {
+            return null;
+        }
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(filePath, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading manifest %s", filePath);
+        }
+
+        if (lines.isEmpty() || !HEADER.equals(lines.get(0))) {
+            throw new StorageException("Manifest %s has an invalid header", filePath);
+        }
+
+        long logNumber = -1;
+        long nextTableId = -1;
+        int flags = 0;
+        List<List<Long>> levels = new ArrayList<>();
+
+        try {
+            for (String line : lines.subList(1, lines.size())) {
+                String[] fields = line.split(" ");
+                switch (fields[0]) {
+                    case "log":
+                        logNumber = Long.parseLong(fields[1]);
+                        break;
+                    case "next":
+                        nextTableId = Long.parseLong(fields[1]);
+                        break;
+                    case "flags":
+                        flags = Integer.parseInt(fields[1]);
+                        break;
+                    case "table":
+                        int level = Integer.parseInt(fields[1]);
+                        while (levels.size() <= level) {
+                            levels.add(new ArrayList<>());
+                        }
+                        levels.get(level).add(Long.parseLong(fields[2]));
+                        break;
+                    default:
+                        throw new StorageException("Manifest %s has an unknown line '%s'", filePath, line);
+                }
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new StorageException(e, "Manifest %s is malformed", filePath);
+        }
+
+        if (logNumber < 0 || nextTableId < 0) {
+            throw new StorageException("Manifest %s is incomplete", filePath);
+        }
+
+        return new Manifest(logNumber, nextTableId, flags, levels);
+    }
+
+    /**
+     * Write the manifest to disk. The manifest is written and synced to a
+     * temporary file first and then moved to {@code filePath}, so that a crash
+     * never leaves a partially written manifest behind.
+     *
+     * @param filePath path where the manifest will be stored
+     * @throws StorageException an exception is thrown if the manifest can't be
+     *                          written
+     */
+    void write(Path filePath) throws StorageException {
+        StringBuilder builder = new StringBuilder(HEADER).append('\n');
+        builder.append("log ").append(this.logNumber).append('\n');
+        builder.append("next ").append(this.nextTableId).append('\n');
+        builder.append("flags ").append(this.flags).append('\n');
+        for (int level = 0; level < this.levels.size(); level++) {
+            for (long tableId : this.levels.get(level)) {
+                builder.append("table ").append(level).append(' ').append(tableId).append('\n');
+            }
+        }
+
+        Path tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+        try {
+            Files.write(tempPath, builder.toString().getBytes(StandardCharsets.UTF_8));
+            StorageUtils.syncFile(tempPath);
+            Files.move(tempPath, filePath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            StorageUtils.syncDirectory(filePath.getParent());
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while writing manifest %s", filePath);
+        }
+    }
+
+}
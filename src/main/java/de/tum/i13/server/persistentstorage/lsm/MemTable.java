@@ -0,0 +1,108 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorted in-memory buffer of the most recent writes to an {@link LSMTree}.
+ * Every memtable belongs to one log file, which holds the same writes and is
+ * replayed if the memtable is lost before it was flushed to an
+ * {@link SSTable}. Reads may run concurrently with the single writer.
+ */
+class MemTable {
+
+    private final long logNumber;
+    private final ConcurrentNavigableMap<String, Entry> entries;
+    private final AtomicLong size; // approximate size of the entries in bytes
+
+    /**
+     * Create a new empty memtable
+     *
+     * @param logNumber number of the log file holding the memtable's writes
+     */
+    MemTable(long logNumber) {
+        this.logNumber = logNumber;
+        this.entries = new ConcurrentSkipListMap<>();
+        this.size = new AtomicLong();
+    }
+
+    /**
+     * Get the number of the log file holding the memtable's writes
+     *
+     * @return log number
+     */
+    long getLogNumber() {
+        return this.logNumber;
+    }
+
+    /**
+     * Add an entry, replacing the entry of its key if there is one
+     *
+     * @param entry entry to add
+     */
+    void put(Entry entry) {
+        Entry previous = this.entries.put(entry.key, entry);
+        this.size.addAndGet(entry.size() - (previous == null ? 0 : previous.size()));
+    }
+
+    /**
+     * Get the entry of a key
+     *
+     * @param key key to look for
+     * @return entry of the key, possibly a tombstone, or {@code null} if the
+     * memtable doesn't contain the key
+     */
+    Entry get(String key) {
+        return this.entries.get(key);
+    }
+
+    /**
+     * Iterate over the entries in ascending key order
+     *
+     * @param fromKey   key to start from
+     * @param inclusive true if the entry of {@code fromKey} is included
+     * @return iterator over the entries, including tombstones
+     */
+    Iterator<Entry> iterator(String fromKey, boolean inclusive) {
+        return this.entries.tailMap(fromKey, inclusive).values().iterator();
+    }
+
+    /**
+     * Iterate over all entries in ascending key order
+     *
+     * @return iterator over the entries, including tombstones
+     */
+    Iterator<Entry> iterator() {
+        return this.entries.values().iterator();
+    }
+
+    /**
+     * Get the approximate size of the memtable's entries
+     *
+     * @return size in bytes
+     */
+    long size() {
+        return this.size.get();
+    }
+
+    /**
+     * Get the number of entries in the memtable
+     *
+     * @return number of entries
+     */
+    int getEntryCount() {
+        return this.entries.size();
+    }
+
+    /**
+     * Check if the memtable has no entries
+     *
+     * @return true if the memtable is empty
+     */
+    boolean isEmpty() {
+        return this.entries.isEmpty();
+    }
+
+}
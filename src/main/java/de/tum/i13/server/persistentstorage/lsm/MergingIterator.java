@@ -0,0 +1,90 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+/**
+ * Merges sorted iterators of entries into a single sorted iterator. If several
+ * sources contain the same key, only the entry of the first source is
+ * returned, so sources must be given from the newest to the oldest.
+ */
+class MergingIterator implements Iterator<Entry> {
+
+    private final PriorityQueue<Source> heads;
+
+    /**
+     * Create a new merging iterator
+     *
+     * @param sources iterators in ascending key order, from the newest to the
+     *                oldest
+     */
+    MergingIterator(List<Iterator<Entry>> sources) {
+        this.heads = new PriorityQueue<>(Math.max(1, sources.size()),
+                Comparator.comparing((Source source) -> source.head.key).thenComparingInt(source -> source.age));
+
+        for (int i = 0; i < sources.size(); i++) {
+            Source source = new Source(sources.get(i), i);
+            if (source.advance()) {
+                this.heads.add(source);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !this.heads.isEmpty();
+    }
+
+    @Override
+    public Entry next() {
+        Source newest = this.heads.poll();
+        if (newest == null) {
+            throw new NoSuchElementException();
+        }
+
+        Entry entry = newest.head;
+        this.requeue(newest);
+
+        // Older entries of the same key are shadowed
+        while (!this.heads.isEmpty() && this.heads.peek().head.key.equals(entry.key)) {
+            this.requeue(this.heads.poll());
+        }
+
+        return entry;
+    }
+
+    private void requeue(Source source) {
+        if (source.advance()) {
+            this.heads.add(source);
+        }
+    }
+
+    /**
+     * Iterator together with its current entry
+     */
+    private static class Source {
+
+        private final Iterator<Entry> iterator;
+        private final int age; // position of the source, lower is newer
+        private Entry head;
+
+        private Source(Iterator<Entry> iterator, int age) {
+            this.iterator = iterator;
+            this.age = age;
+        }
+
+        private boolean advance() {
+            if (!this.iterator.hasNext()) {
+                return false;
+            }
+
+            this.head = this.iterator.next();
+            return true;
+        }
+
+    }
+
+}
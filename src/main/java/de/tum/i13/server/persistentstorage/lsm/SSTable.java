@@ -0,0 +1,512 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import com.google.common.hash.BloomFilter;
+import com.google.common.hash.Funnels;
+import com.google.common.io.CountingOutputStream;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.shared.Preconditions;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Immutable file of entries sorted by key, as written by an {@link LSMTree}
+ * when a memtable is flushed or tables are compacted. The file is laid out as
+ * follows (all integers are big-endian):
+ *
+ * <pre>
+ * data   entries in ascending key order (see {@link Entry})
+ * index  int number of blocks, then for every block of
+ *        {@value #BLOCK_ENTRIES} entries the length-prefixed UTF-8 key and
+ *        the long offset of its first entry
+ * bloom  bloom filter of all keys in the table
+ * meta   length-prefixed UTF-8 key of the last entry
+ * footer long index offset, long bloom filter offset, long meta offset,
+ *        long number of entries, int magic ("CDBS"), byte format version
+ * </pre>
+ * <p>
+ * The index and the bloom filter are kept in memory while the table is open.
+ * A lookup is answered by the bloom filter or reads a single block from the
+ * file.
+ */
+class SSTable implements Closeable {
+
+    /**
+     * Magic number at the end of every table ("CDBS")
+     */
+    static final int MAGIC = 0x43444253;
+
+    /**
+     * Current version of the table format
+     */
+    static final byte VERSION = 1;
+
+    /**
+     * Number of entries per indexed block
+     */
+    static final int BLOCK_ENTRIES = 16;
+
+    private static final int FOOTER_LENGTH = 37;
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+
+    private final long id;
+    private final Path filePath;
+    private final FileChannel channel;
+    private final long fileSize;
+    private final long entryCount;
+    private final List<String> blockKeys; // first key of every block
+    private final long[] blockOffsets; // offset of every block, followed by the end of the data
+    private final BloomFilter<CharSequence> bloomFilter;
+    private final String lastKey;
+
+    private SSTable(long id, Path filePath) throws StorageException {
+        this.id = id;
+        this.filePath = filePath;
+
+        try {
+            this.channel = FileChannel.open(filePath, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while opening table %s", filePath);
+        }
+
+        try {
+            this.fileSize = this.channel.size();
+            if (this.fileSize < FOOTER_LENGTH) {
+                throw new StorageException("Table %s is too short", filePath);
+            }
+
+            ByteBuffer footer = this.read(this.fileSize - FOOTER_LENGTH, FOOTER_LENGTH);
+            long indexOffset = footer.getLong();
+            long bloomOffset = footer.getLong();
+            long metaOffset = footer.getLong();
+            this.entryCount = footer.getLong();
+
+            if (footer.getInt() != MAGIC || footer.get() != VERSION || indexOffset > bloomOffset
+                    || bloomOffset > metaOffset || metaOffset > this.fileSize - FOOTER_LENGTH) {
+                throw new StorageException("Table %s has an invalid footer", filePath);
+            }
+
+            ByteBuffer index = this.read(indexOffset, (int) (bloomOffset - indexOffset));
+            int blockCount = index.getInt();
+            this.blockKeys = new ArrayList<>(blockCount);
+            this.blockOffsets = new long[blockCount + 1];
+            for (int i = 0; i < blockCount; i++) {
+                this.blockKeys.add(readString(index));
+                this.blockOffsets[i] = index.getLong();
+            }
+            this.blockOffsets[blockCount] = indexOffset;
+
+            ByteBuffer bloom = this.read(bloomOffset, (int) (metaOffset - bloomOffset));
+            this.bloomFilter = BloomFilter.readFrom(new ByteArrayInputStream(bloom.array()),
+                    Funnels.stringFunnel(StandardCharsets.UTF_8));
+
+            ByteBuffer meta = this.read(metaOffset, (int) (this.fileSize - FOOTER_LENGTH - metaOffset));
+            this.lastKey = blockCount == 0 ? null : readString(meta);
+        } catch (IOException | RuntimeException | StorageException e) {
+            this.closeQuietly();
+            if (e instanceof StorageException) {
+                throw (StorageException) e;
+            }
+            throw new StorageException(e, "Could not read table %s", filePath);
+        }
+    }
+
+    /**
+     * Open an existing table
+     *
+     * @param id       id of the table
+     * @param filePath path to the table's file
+     * @return opened table
+     * @throws StorageException an exception is thrown if the file can't be read
+     *                          or isn't a valid table
+     */
+    static SSTable open(long id, Path filePath) throws StorageException {
+        return new SSTable(id, filePath);
+    }
+
+    /**
+     * Get the id of the table, which is unique within its tree and increases
+     * with the time the table was written
+     *
+     * @return id of the table
+     */
+    long getId() {
+        return this.id;
+    }
+
+    /**
+     * Get the path to the table's file
+     *
+     * @return path to the file
+     */
+    Path getFilePath() {
+        return this.filePath;
+    }
+
+    /**
+     * Get the size of the table's file
+     *
+     * @return size in bytes
+     */
+    long getSize() {
+        return this.fileSize;
+    }
+
+    /**
+     * Get the number of entries in the table
+     *
+     * @return number of entries, including tombstones
+     */
+    long getEntryCount() {
+        return this.entryCount;
+    }
+
+    /**
+     * Get the smallest key of the table
+     *
+     * @return smallest key, {@code null} if the table is empty
+     */
+    String getFirstKey() {
+        return this.blockKeys.isEmpty() ? null : this.blockKeys.get(0);
+    }
+
+    /**
+     * Get the largest key of the table
+     *
+     * @return largest key, {@code null} if the table is empty
+     */
+    String getLastKey() {
+        return this.lastKey;
+    }
+
+    /**
+     * Check if the key range of the table overlaps with a range of keys
+     *
+     * @param firstKey smallest key of the range (inclusive)
+     * @param lastKey  largest key of the range (inclusive)
+     * @return true if the ranges overlap
+     */
+    boolean overlaps(String firstKey, String lastKey) {
+        return !this.blockKeys.isEmpty() && this.getFirstKey().compareTo(lastKey) <= 0
+                && this.lastKey.compareTo(firstKey) >= 0;
+    }
+
+    /**
+     * Get the entry of a key
+     *
+     * @param key key to look for
+     * @return entry of the key, possibly a tombstone, or {@code null} if the
+     * table doesn't contain the key
+     * @throws StorageException an exception is thrown if the table can't be read
+     */
+    Entry get(String key) throws StorageException {
+        if (!this.overlaps(key, key) || !this.bloomFilter.mightContain(key)) {
+            return null;
+        }
+
+        ByteBuffer block = this.readBlock(this.findBlock(key));
+        while (block.hasRemaining()) {
+            Entry entry = Entry.readFrom(block);
+            int comparison = entry.key.compareTo(key);
+            if (comparison == 0) {
+                return entry;
+            }
+            if (comparison > 0) {
+                break;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Iterate over the entries in ascending key order. Entries are read block
+     * by block while iterating, I/O errors are thrown as
+     * {@link IllegalStateException}s.
+     *
+     * @param fromKey   key to start from
+     * @param inclusive true if the entry of {@code fromKey} is included
+     * @return iterator over the entries, including tombstones
+     */
+    Iterator<Entry> iterator(String fromKey, boolean inclusive) {
+        return new TableIterator(Math.max(0, this.findBlock(fromKey)), fromKey, inclusive);
+    }
+
+    /**
+     * Iterate over all entries in ascending key order
+     *
+     * @return iterator over the entries, including tombstones
+     */
+    Iterator<Entry> iterator() {
+        return new TableIterator(0, null, true);
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    // Index of the last block whose first key is not greater than the key, -1 if there is none
+    private int findBlock(String key) {
+        int index = Collections.binarySearch(this.blockKeys, key);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    private ByteBuffer readBlock(int block) throws StorageException {
+        long offset = this.blockOffsets[block];
+        try {
+            return this.read(offset, (int) (this.blockOffsets[block + 1] - offset));
+        } catch (IOException e) {
+            throw new StorageException(e, "I/O error while reading block %d of table %s", block, this.filePath);
+        }
+    }
+
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (this.channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of table " + this.filePath);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private void closeQuietly() {
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            // Purposefully empty, the original error is more relevant
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Iterates over the entries of the table, reading one block at a time
+     */
+    private class TableIterator implements Iterator<Entry> {
+
+        private int nextBlock;
+        private ByteBuffer block;
+        private Entry next;
+
+        private TableIterator(int firstBlock, String fromKey, boolean inclusive) {
+            this.nextBlock = firstBlock;
+            this.advance();
+
+            while (fromKey != null && this.next != null) {
+                int comparison = this.next.key.compareTo(fromKey);
+                if (comparison > 0 || (inclusive && comparison == 0)) {
+                    break;
+                }
+                this.advance();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return this.next != null;
+        }
+
+        @Override
+        public Entry next() {
+            if (this.next == null) {
+                throw new NoSuchElementException();
+            }
+
+            Entry entry = this.next;
+            this.advance();
+            return entry;
+        }
+
+        private void advance() {
+            try {
+                while (this.block == null || !this.block.hasRemaining()) {
+                    if (this.nextBlock >= SSTable.this.blockKeys.size()) {
+                        this.next = null;
+                        return;
+                    }
+                    this.block = SSTable.this.readBlock(this.nextBlock++);
+                }
+
+                this.next = Entry.readFrom(this.block);
+            } catch (StorageException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+    }
+
+    /**
+     * Writes a new table from entries given in ascending key order. The table
+     * is written to a temporary file, which is only moved to its final path
+     * once it is complete and synced.
+     */
+    static class Writer implements Closeable {
+
+        private final long id;
+        private final Path filePath;
+        private final Path tempPath;
+        private final CountingOutputStream counter;
+        private final DataOutputStream out;
+        private final List<String> keys; // keys of the table, added to the bloom filter once the count is known
+        private final List<String> blockKeys;
+        private final List<Long> blockOffsets;
+        private boolean finished;
+
+        /**
+         * Start writing a new table
+         *
+         * @param id       id of the new table
+         * @param filePath path of the new table's file
+         * @throws StorageException an exception is thrown if the file can't be
+         *                          created
+         */
+        Writer(long id, Path filePath) throws StorageException {
+            this.id = id;
+            this.filePath = filePath;
+            this.tempPath = filePath.resolveSibling(filePath.getFileName() + ".tmp");
+            this.keys = new ArrayList<>();
+            this.blockKeys = new ArrayList<>();
+            this.blockOffsets = new ArrayList<>();
+
+            try {
+                this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(this.tempPath)));
+            } catch (IOException e) {
+                throw new StorageException(e, "I/O error while creating table %s", this.tempPath);
+            }
+            this.out = new DataOutputStream(this.counter);
+        }
+
+        /**
+         * Append an entry. Its key must be greater than the keys of all entries
+         * appended before.
+         *
+         * @param entry entry to append
+         * @throws StorageException an exception is thrown if the entry can't be
+         *                          written
+         */
+        void add(Entry entry) throws StorageException {
+            Preconditions.check(this.keys.isEmpty() || this.keys.get(this.keys.size() - 1).compareTo(entry.key) < 0,
+                    "Entries must be added in strictly ascending key order");
+
+            if (this.keys.size() % BLOCK_ENTRIES == 0) {
+                this.blockKeys.add(entry.key);
+                this.blockOffsets.add(this.counter.getCount());
+            }
+            this.keys.add(entry.key);
+
+            try {
+                entry.writeTo(this.out);
+            } catch (IOException e) {
+                throw new StorageException(e, "I/O error while writing table %s", this.tempPath);
+            }
+        }
+
+        /**
+         * Get the number of bytes of entries written so far
+         *
+         * @return size in bytes
+         */
+        long size() {
+            return this.counter.getCount();
+        }
+
+        /**
+         * Get the number of entries written so far
+         *
+         * @return number of entries
+         */
+        int getEntryCount() {
+            return this.keys.size();
+        }
+
+        /**
+         * Write the index, bloom filter and footer, sync the table and open it
+         *
+         * @return the written table
+         * @throws StorageException an exception is thrown if the table can't be
+         *                          written
+         */
+        SSTable finish() throws StorageException {
+            try {
+                long indexOffset = this.counter.getCount();
+                this.out.writeInt(this.blockKeys.size());
+                for (int i = 0; i < this.blockKeys.size(); i++) {
+                    writeString(this.out, this.blockKeys.get(i));
+                    this.out.writeLong(this.blockOffsets.get(i));
+                }
+
+                long bloomOffset = this.counter.getCount();
+                BloomFilter<CharSequence> bloomFilter = BloomFilter.create(
+                        Funnels.stringFunnel(StandardCharsets.UTF_8), Math.max(1, this.keys.size()),
+                        BLOOM_FALSE_POSITIVE_RATE);
+                this.keys.forEach(bloomFilter::put);
+                bloomFilter.writeTo(this.out);
+
+                long metaOffset = this.counter.getCount();
+                if (!this.keys.isEmpty()) {
+                    writeString(this.out, this.keys.get(this.keys.size() - 1));
+                }
+
+                this.out.writeLong(indexOffset);
+                this.out.writeLong(bloomOffset);
+                this.out.writeLong(metaOffset);
+                this.out.writeLong(this.keys.size());
+                this.out.writeInt(MAGIC);
+                this.out.writeByte(VERSION);
+                this.out.close();
+                this.finished = true;
+
+                StorageUtils.syncFile(this.tempPath);
+                Files.move(this.tempPath, this.filePath);
+            } catch (IOException e) {
+                throw new StorageException(e, "I/O error while writing table %s", this.tempPath);
+            }
+
+            return SSTable.open(this.id, this.filePath);
+        }
+
+        /**
+         * Abort the table if it wasn't finished, deleting its temporary file
+         *
+         * @throws IOException an exception is thrown if the file can't be
+         *                     deleted
+         */
+        @Override
+        public void close() throws IOException {
+            if (!this.finished) {
+                this.out.close();
+                Files.deleteIfExists(this.tempPath);
+            }
+        }
+
+        private static void writeString(DataOutputStream out, String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+    }
+
+}
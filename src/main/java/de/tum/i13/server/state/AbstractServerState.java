@@ -1,5 +1,6 @@
 package de.tum.i13.server.state;
 
+import com.google.common.collect.Iterables;
 import de.tum.i13.shared.persistentstorage.PersistentStorage;
 import de.tum.i13.shared.persistentstorage.PutException;
 import org.apache.logging.log4j.LogManager;
@@ -77,20 +78,25 @@ public abstract class AbstractServerState implements ServerState {
     }
 
     /**
-     * Execute queued up deletes in given {@link PersistentStorage}
+     * Execute queued up deletes in given {@link PersistentStorage}, in batches
+     * of at most {@link PersistentStorage#DELETE_BATCH_SIZE} keys. The keys of
+     * failed batches stay queued.
      *
      * @param storage {@link PersistentStorage} where deletes are to be executed
      */
     public void executeStoredDeletes(PersistentStorage storage) {
-        for (String key : nodesToDelete) {
+        LOGGER.info("Trying to delete {} items.", nodesToDelete.size());
+        List<String> failedDeletes = new LinkedList<>();
+
+        for (List<String> batch : Iterables.partition(nodesToDelete, PersistentStorage.DELETE_BATCH_SIZE)) {
             try {
-                LOGGER.info("Trying to delete item with key {}.", key);
-                storage.put(key, null);
+                storage.deleteAll(batch);
             } catch (PutException e) {
-                LOGGER.error("Could not delete item with key {} after keyrange change.", key);
+                LOGGER.error("Could not delete {} items after keyrange change.", batch.size(), e);
+                failedDeletes.addAll(batch);
             }
         }
-        nodesToDelete = new LinkedList<>();
+        nodesToDelete = failedDeletes;
     }
 
     /**
@@ -2,16 +2,22 @@ package de.tum.i13.server.threadperconnection;
 
 import de.tum.i13.server.Config;
 import de.tum.i13.server.cache.CachedPersistentStorage;
-import de.tum.i13.server.cache.CachingStrategy;
+import de.tum.i13.server.cache.StripedCache;
+import de.tum.i13.server.cache.Weigher;
 import de.tum.i13.server.kvchord.Chord;
 import de.tum.i13.server.kvchord.ChordException;
 import de.tum.i13.server.kvchord.KVChordListener;
 import de.tum.i13.server.kvchord.commandprocessing.KVCommandProcessor;
 import de.tum.i13.server.kvchord.commandprocessing.handlers.ShutdownHandler;
+import de.tum.i13.server.persistentstorage.StorageEngine;
 import de.tum.i13.server.persistentstorage.btree.BTreePersistentStorage;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreePagedStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.vlog.ValueLog;
+import de.tum.i13.server.persistentstorage.lsm.LSMPersistentStorage;
 import de.tum.i13.server.state.ChordServerState;
 import de.tum.i13.shared.CommandProcessor;
 import de.tum.i13.shared.Constants;
@@ -51,8 +57,7 @@ public class MainChord {
         try {
             // Setup storage
             final HashingAlgorithm hashingAlgorithm = new MD5HashAlgorithm();
-            final PersistentStorage storage = setUpStorage(cfg.dataDir, cfg.minimumDegree, cfg.cachingStrategy,
-                    cfg.cacheSize, hashingAlgorithm);
+            final CachedPersistentStorage storage = setUpStorage(cfg, hashingAlgorithm);
 
             // TODO: if listenAddress is default (localhost, it won't correspond to the
             // correct metadata)
@@ -78,9 +83,13 @@ public class MainChord {
             final Thread listeningThread = new Thread(withExceptionsLogged(new RequestListener(cfg.listenAddress,
                     cfg.port, commandProcessor)));
 
-            // Setup shutdown procedure (handoff)
-            Runtime.getRuntime().addShutdownHook(new Thread(withExceptionsLogged(new ShutdownHandler(listeningThread,
-                    chord, state, storage, chordListener))));
+            // Setup shutdown procedure (handoff), the storage is closed once the handoff finished
+            final ShutdownHandler shutdownHandler = new ShutdownHandler(listeningThread, chord, state, storage,
+                    chordListener);
+            Runtime.getRuntime().addShutdownHook(new Thread(withExceptionsLogged(() -> {
+                shutdownHandler.run();
+                storage.close();
+            })));
 
             listeningThread.start();
             Thread.sleep(600);
@@ -96,25 +105,52 @@ public class MainChord {
     }
 
     /**
-     * Method that sets the persistent storage directory, caching strategy and cache
-     * size.
+     * Method that sets up the persistent storage and the cache in front of it, as
+     * configured in the server {@link Config}.
      *
-     * @param dataDir
-     * @param cachingStrategy
-     * @param cacheSize
-     * @return
+     * @param cfg     server configuration
+     * @param hashAlg hashing algorithm used to normalize the keys
+     * @return the configured storage
+     * @throws StorageException An exception is thrown when the storage can't be
+     *                          created
      */
-    private static CachedPersistentStorage setUpStorage(Path dataDir, int minimumDegree,
-                                                        CachingStrategy cachingStrategy, int cacheSize,
-                                                        HashingAlgorithm hashAlg)
+    private static CachedPersistentStorage setUpStorage(Config cfg, HashingAlgorithm hashAlg)
             throws StorageException {
-        LOGGER.info("Setting up persistent storage at {}", dataDir);
-        PersistentBTreeDiskStorageHandler<Pair<String>> handler = new PersistentBTreeDiskStorageHandler<>(
-                dataDir.toString(),
-                false);
+        LOGGER.info("Setting up {} persistent storage at {}", cfg.storageEngine, cfg.dataDir);
+        if (cfg.storageEngine == StorageEngine.LSM) {
+            LSMPersistentStorage storage = new LSMPersistentStorage(cfg.dataDir, false, cfg.memTableSize * 1024,
+                    cfg.walSyncInterval, hashAlg);
+            return cacheStorage(storage, cfg);
+        }
+
+        PersistentBTreeStorageHandler<Pair<String>> handler = cfg.pagedStorage
+                ? new PersistentBTreePagedStorageHandler<>(cfg.dataDir.toString(), false, cfg.bufferPoolSize,
+                        cfg.memoryMapped)
+                : new PersistentBTreeDiskStorageHandler<>(cfg.dataDir.toString(), false, cfg.bufferPoolSize,
+                        cfg.walSyncInterval);
+        handler.setValueCompressionThreshold(cfg.valueCompressionThreshold);
+
+        Path valueLogFolder = cfg.dataDir.resolve(BTreePersistentStorage.VALUE_LOG_FOLDER);
+        ValueLog valueLog = cfg.valueLogThreshold > 0 ? new ValueLog(valueLogFolder, ValueLog.DEFAULT_SEGMENT_SIZE)
+                : null;
+        BTreePersistentStorage storage = new BTreePersistentStorage(cfg.minimumDegree, handler, hashAlg,
+                cfg.dataDir.resolve(BTreePersistentStorage.KEY_FILTER_FILE), valueLog, cfg.valueLogThreshold);
+        return cacheStorage(storage, cfg);
+    }
 
-        BTreePersistentStorage storage = new BTreePersistentStorage(minimumDegree, handler, hashAlg);
-        return new CachedPersistentStorage(storage, cachingStrategy, cacheSize);
+    private static CachedPersistentStorage cacheStorage(PersistentStorage storage, Config cfg) {
+        if (cfg.offHeapCache && cfg.cacheMemory > 0) {
+            LOGGER.info("Keeping the cache of {} KiB off the heap", cfg.cacheMemory);
+            return new CachedPersistentStorage(storage, StripedCache.offHeap(cfg.cacheMemory * 1024));
+        } else if (cfg.offHeapCache) {
+            LOGGER.warn("Keeping the cache on the heap, since the off-heap cache requires -cacheMemory");
+        }
+
+        if (cfg.cacheMemory > 0) {
+            LOGGER.info("Bounding the {} cache by {} KiB", cfg.cachingStrategy, cfg.cacheMemory);
+            return new CachedPersistentStorage(storage, cfg.cachingStrategy, cfg.cacheMemory * 1024, Weigher.BYTES);
+        }
+        return new CachedPersistentStorage(storage, cfg.cachingStrategy, cfg.cacheSize);
     }
 
 }
@@ -51,6 +51,24 @@ public interface HashingAlgorithm {
         return new BigInteger(hexString, 16);
     }
 
+    /**
+     * Converts a hash value into its big-endian binary representation of a
+     * fixed size.
+     *
+     * @param hash     the hash value to convert, must not be negative
+     * @param sizeBits the size of the hash in bits, a multiple of 8
+     * @return the {@code sizeBits / 8} bytes of the hash
+     */
+    static byte[] convertHashToBytes(BigInteger hash, int sizeBits) {
+        final byte[] bytes = new byte[sizeBits / 8];
+        final byte[] value = hash.toByteArray();
+
+        // toByteArray has a leading sign byte if the highest bit is set
+        final int length = Math.min(value.length, bytes.length);
+        System.arraycopy(value, value.length - length, bytes, bytes.length - length, length);
+        return bytes;
+    }
+
     /**
      * Pad given string with zeros on the left up to a given final string length
      *
@@ -82,6 +100,20 @@ public interface HashingAlgorithm {
      */
     BigInteger hash(String string);
 
+    /**
+     * Returns the hash of the supplied {@link String} in its big-endian binary
+     * representation of {@link #getHashSizeBits()} bits.
+     * <p>
+     * The default implementation converts the result of {@link #hash(String)}.
+     *
+     * @param string the {@link String} to hash
+     * @return the bytes of the hash of the supplied {@link String}
+     * @see #convertHashToBytes(BigInteger, int)
+     */
+    default byte[] hashBytes(String string) {
+        return convertHashToBytes(hash(string), getHashSizeBits());
+    }
+
     /**
      * Returns the hash of the supplied {@link NetworkLocation}.
      * <p>
@@ -45,6 +45,13 @@ public class MD5HashAlgorithm implements HashingAlgorithm {
         return new BigInteger(1, hashCode.asBytes());
     }
 
+    @Override
+    public byte[] hashBytes(String string) {
+        LOGGER.trace("Hashing the string '{}'", string);
+
+        return hashFunction.hashString(string, Constants.TELNET_ENCODING).asBytes();
+    }
+
     @Override
     public BigInteger getMax() {
         return max;
@@ -0,0 +1,103 @@
+package de.tum.i13.shared.persistentstorage;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An {@link Iterator} that holds resources until it is closed, e.g. the
+ * snapshot a range of a storage is read from. Iterators should be closed as
+ * soon as they are not needed anymore, even if they are not exhausted.
+ *
+ * @param <T> Type of the iterated elements
+ */
+public interface CloseableIterator<T> extends Iterator<T>, AutoCloseable {
+
+    /**
+     * Release the resources of the iterator. Closing an iterator more than
+     * once has no effect.
+     */
+    @Override
+    void close();
+
+    /**
+     * Wrap an iterator that holds no resources
+     *
+     * @param iterator iterator to wrap
+     * @param <T>      Type of the iterated elements
+     * @return iterator whose {@link #close()} does nothing
+     */
+    static <T> CloseableIterator<T> of(Iterator<T> iterator) {
+        return of(iterator, () -> {
+        });
+    }
+
+    /**
+     * Wrap an iterator whose resources are released by a given action
+     *
+     * @param iterator iterator to wrap
+     * @param closer   action releasing the resources of the iterator, must be
+     *                 safe to run more than once
+     * @param <T>      Type of the iterated elements
+     * @return iterator that runs the action when it is closed
+     */
+    static <T> CloseableIterator<T> of(Iterator<T> iterator, Runnable closer) {
+        return new CloseableIterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {
+                closer.run();
+            }
+
+        };
+    }
+
+    /**
+     * Iterate over the elements of one iterator after the other
+     *
+     * @param first  iterator whose elements are returned first
+     * @param second iterator whose elements are returned afterwards
+     * @param <T>    Type of the iterated elements
+     * @return iterator that closes both iterators when it is closed
+     */
+    static <T> CloseableIterator<T> concat(CloseableIterator<T> first, CloseableIterator<T> second) {
+        return new CloseableIterator<>() {
+
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public T next() {
+                if (first.hasNext()) {
+                    return first.next();
+                }
+                if (second.hasNext()) {
+                    return second.next();
+                }
+                throw new NoSuchElementException();
+            }
+
+            @Override
+            public void close() {
+                try {
+                    first.close();
+                } finally {
+                    second.close();
+                }
+            }
+
+        };
+    }
+
+}
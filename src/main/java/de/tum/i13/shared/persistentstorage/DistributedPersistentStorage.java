@@ -88,6 +88,11 @@ public abstract class DistributedPersistentStorage implements NetworkPersistentS
         return persistentStorage.getRange(lowerBound, upperBound);
     }
 
+    @Override
+    public CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound) throws GetException {
+        return persistentStorage.iterateRange(lowerBound, upperBound);
+    }
+
     private KVMessage processResponseResiliently(String key, RequestType requestType,
                                                  Callable<KVMessage> serverCallable,
                                                  KVMessage responseMessage) throws CommunicationClientException {
@@ -3,7 +3,9 @@ package de.tum.i13.shared.persistentstorage;
 import de.tum.i13.server.kv.KVMessage;
 import de.tum.i13.server.kv.KVStore;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.shared.Preconditions;
 
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -12,6 +14,13 @@ import java.util.List;
  */
 public interface PersistentStorage extends KVStore {
 
+    /**
+     * Maximum number of keys in a batch of {@link #deleteAll(List)} when many
+     * keys are deleted, e.g. after a handoff. Storages that apply a batch at
+     * once block other writes while they do, so larger deletes are split.
+     */
+    int DELETE_BATCH_SIZE = 256;
+
     /**
      * @param key {@inheritDoc} must not be null
      * @throws GetException if the retrieval of the key fails
@@ -26,6 +35,42 @@ public interface PersistentStorage extends KVStore {
     @Override
     KVMessage put(String key, String value) throws PutException;
 
+    /**
+     * Put a batch of key-value pairs. Storages that can apply a batch at once
+     * amortize the cost of making writes durable across the batch. By default,
+     * the pairs are put one by one with {@link #put(String, String)}.
+     *
+     * @param elements key-value pairs to put, values must not be null
+     * @return responses to the puts, in the order of the given pairs
+     * @throws PutException if the putting of the batch fails. Storages that
+     *                      apply a batch at once put none of the pairs then.
+     */
+    default List<KVMessage> putAll(List<Pair<String>> elements) throws PutException {
+        List<KVMessage> responses = new ArrayList<>(elements.size());
+        for (Pair<String> element : elements) {
+            Preconditions.notNull(element.value, "Value cannot be null");
+            responses.add(this.put(element.key, element.value));
+        }
+        return responses;
+    }
+
+    /**
+     * Delete a batch of keys, like {@link #putAll(List)}. By default, the keys
+     * are deleted one by one with {@link #put(String, String)}.
+     *
+     * @param keys keys to delete
+     * @return responses to the deletes, in the order of the given keys
+     * @throws PutException if the deleting of the batch fails. Storages that
+     *                      apply a batch at once delete none of the keys then.
+     */
+    default List<KVMessage> deleteAll(List<String> keys) throws PutException {
+        List<KVMessage> responses = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            responses.add(this.put(key, null));
+        }
+        return responses;
+    }
+
     /**
      * Get elements of storage that contain keys in range [lowerBound-upperBound]
      * (limits included).
@@ -38,4 +83,23 @@ public interface PersistentStorage extends KVStore {
      */
     List<Pair<String>> getRange(String lowerBound, String upperBound) throws GetException;
 
+    /**
+     * Get an iterator over the elements of storage that contain keys in range
+     * [lowerBound-upperBound] (limits included), in key order. Storages that can
+     * read a range lazily don't hold the whole range in memory, but may hold
+     * other resources until the iterator is closed. Errors that occur while
+     * iterating are thrown as {@link IllegalStateException}s. By default, the
+     * iterator is backed by {@link #getRange(String, String)}.
+     *
+     * @param lowerBound lower bound of keys
+     * @param upperBound upper bound of keys
+     * @return iterator over the elements with keys in interval
+     * [lowerBound-upperBound]
+     * @throws GetException an exception is thrown if the iteration can't be
+     *                      started
+     */
+    default CloseableIterator<Pair<String>> iterateRange(String lowerBound, String upperBound) throws GetException {
+        return CloseableIterator.of(this.getRange(lowerBound, upperBound).iterator());
+    }
+
 }
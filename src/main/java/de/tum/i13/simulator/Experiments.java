@@ -1,5 +1,6 @@
 package de.tum.i13.simulator;
 
+import de.tum.i13.server.cache.CachingStrategy;
 import de.tum.i13.simulator.experiments.Experiment;
 import de.tum.i13.simulator.experiments.ExperimentConfiguration;
 import de.tum.i13.simulator.experiments.ExperimentConfiguration.Builder;
@@ -151,6 +152,25 @@ public class Experiments {
         Experiments.optionalChordHardShutdownExperiment(experimentBuilder, useChord);
     }
 
+    static void cachingStrategyExperiment(CachingStrategy cachingStrategy) {
+        Builder experimentBuilder = experimentConfiguration()
+                .initialDelay(10)
+                .startingServerCount(3)
+                .startingClientCount(0)
+                .finalServerCount(3)
+                .finalClientCount(20)
+                .afterAdditionalClientsDelay(120)
+                .afterAdditionalServersDelay(120)
+                .clientStartDelay(5)
+                .serverCacheSize(500)
+                .bTreeNodeSize(200)
+                .serverCachingStrategy(cachingStrategy)
+                .replicationFactor(2)
+                .statsName(String.format("cache_%s", cachingStrategy.name().toLowerCase()));
+
+        Experiments.optionalChordHardShutdownExperiment(experimentBuilder, false);
+    }
+
     private static void optionalChordHardShutdownExperiment(Builder experimentBuilder, boolean useChord) {
         final var experimentConfiguration = experimentBuilder.useChord(useChord)
                 .build();
@@ -168,6 +188,7 @@ public class Experiments {
         // replicationExperiment(true, 2);
         // replicationExperiment(false, 0);
         // replicationExperiment(false, 1);
+        // for (CachingStrategy cachingStrategy : CachingStrategy.values()) cachingStrategyExperiment(cachingStrategy);
         replicationExperiment(false, 2);
     }
 
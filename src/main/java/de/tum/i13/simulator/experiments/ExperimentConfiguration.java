@@ -1,6 +1,7 @@
 package de.tum.i13.simulator.experiments;
 
 import de.tum.i13.server.cache.CachingStrategy;
+import de.tum.i13.server.persistentstorage.StorageEngine;
 
 import static de.tum.i13.server.cache.CachingStrategy.LFU;
 
@@ -14,6 +15,7 @@ public class ExperimentConfiguration {
     public static final int DEFAULT_CLIENT_START_DELAY = 20;
     public static final int DEFAULT_SERVER_CACHE_SIZE = 500;
     public static final int DEFAULT_BTREE_NODE_SIZE = 100;
+    public static final StorageEngine DEFAULT_STORAGE_ENGINE = StorageEngine.BTREE;
     public static final CachingStrategy DEFAULT_SERVER_CACHE_STRATEGY = LFU;
     public static final String DEFAULT_STATS_NAME = "LFU";
     public static final int DEFAULT_INITIAL_DELAY = 60;
@@ -28,6 +30,7 @@ public class ExperimentConfiguration {
     private final int clientStartDelay;
     private final int serverCacheSize;
     private final int bTreeNodeSize;
+    private final StorageEngine storageEngine;
     private final CachingStrategy serverCachingStrategy;
     private final String statsName;
     private final int afterAdditionalClientsDelay;
@@ -45,6 +48,7 @@ public class ExperimentConfiguration {
         clientStartDelay = builder.clientStartDelay;
         serverCacheSize = builder.serverCacheSize;
         bTreeNodeSize = builder.bTreeNodeSize;
+        storageEngine = builder.storageEngine;
         serverCachingStrategy = builder.serverCachingStrategy;
         statsName = builder.statsName;
         afterAdditionalClientsDelay = builder.afterAdditionalClientsDelay;
@@ -102,6 +106,10 @@ public class ExperimentConfiguration {
         return bTreeNodeSize;
     }
 
+    public StorageEngine getStorageEngine() {
+        return storageEngine;
+    }
+
     public CachingStrategy getServerCachingStrategy() {
         return serverCachingStrategy;
     }
@@ -128,6 +136,7 @@ public class ExperimentConfiguration {
         private int clientStartDelay;
         private int serverCacheSize;
         private int bTreeNodeSize;
+        private StorageEngine storageEngine;
         private CachingStrategy serverCachingStrategy;
         private String statsName;
         private int afterAdditionalClientsDelay;
@@ -145,6 +154,7 @@ public class ExperimentConfiguration {
             clientStartDelay = DEFAULT_CLIENT_START_DELAY;
             serverCacheSize = DEFAULT_SERVER_CACHE_SIZE;
             bTreeNodeSize = DEFAULT_BTREE_NODE_SIZE;
+            storageEngine = DEFAULT_STORAGE_ENGINE;
             serverCachingStrategy = DEFAULT_SERVER_CACHE_STRATEGY;
             statsName = DEFAULT_STATS_NAME;
             initialDelay = DEFAULT_INITIAL_DELAY;
@@ -192,6 +202,11 @@ public class ExperimentConfiguration {
             return this;
         }
 
+        public Builder storageEngine(StorageEngine storageEngine) {
+            this.storageEngine = storageEngine;
+            return this;
+        }
+
         public Builder serverCachingStrategy(CachingStrategy serverCachingStrategy) {
             this.serverCachingStrategy = serverCachingStrategy;
             return this;
@@ -2,6 +2,7 @@ package de.tum.i13.simulator.server;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import de.tum.i13.server.cache.CachingStrategy;
+import de.tum.i13.server.persistentstorage.StorageEngine;
 import de.tum.i13.server.threadperconnection.Main;
 import de.tum.i13.server.threadperconnection.MainChord;
 import de.tum.i13.simulator.experiments.ExperimentConfiguration;
@@ -35,6 +36,7 @@ public class ServerManager {
     int cacheSize;
     CachingStrategy cacheStrategy;
     int bTreeNodeSize;
+    StorageEngine storageEngine;
     int replicationFactor;
     boolean useChord;
 
@@ -44,13 +46,14 @@ public class ServerManager {
                 experimentConfiguration.getServerCacheSize(),
                 experimentConfiguration.getServerCachingStrategy(),
                 experimentConfiguration.getbTreeNodeSize(),
+                experimentConfiguration.getStorageEngine(),
                 experimentConfiguration.useChord(),
                 experimentConfiguration.getReplicationFactor()
         );
     }
 
-    public ServerManager(int count, int cacheSize, CachingStrategy cacheStrategy, int bTreeNodeSize, boolean useChord
-            , int replicationFactor) {
+    public ServerManager(int count, int cacheSize, CachingStrategy cacheStrategy, int bTreeNodeSize,
+                         StorageEngine storageEngine, boolean useChord, int replicationFactor) {
 
         this.servers = new LinkedList<>();
         this.addresses = new LinkedList<>();
@@ -58,6 +61,7 @@ public class ServerManager {
         this.cacheSize = cacheSize;
         this.cacheStrategy = cacheStrategy;
         this.bTreeNodeSize = bTreeNodeSize;
+        this.storageEngine = storageEngine;
         this.useChord = useChord;
         this.replicationFactor = replicationFactor;
 
@@ -86,6 +90,7 @@ public class ServerManager {
         Stream.of(
                         "-ll", "ALL",
                         "-t", bTreeNodeSize,
+                        "-e", storageEngine,
                         "-p", port,
                         "-s", cacheStrategy,
                         "-c", cacheSize,
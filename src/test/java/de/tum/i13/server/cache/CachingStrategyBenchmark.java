@@ -0,0 +1,59 @@
+package de.tum.i13.server.cache;
+
+import de.tum.i13.server.kv.KVMessage;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.Random;
+
+/**
+ * Compares the hit ratios of all {@link CachingStrategy}s on a trace of skewed
+ * gets, which is interrupted by scans of keys that are read only once, like the
+ * keys of a handoff or a replication. Missed keys are put into the cache, like
+ * {@link CachedPersistentStorage} does. Run with
+ * {@code java CachingStrategyBenchmark [cacheSize] [operations]}.
+ */
+public class CachingStrategyBenchmark {
+
+    private static final int KEY_SPACE_FACTOR = 20; // keys per cache entry
+    private static final int SCAN_INTERVAL = 10; // scans per cache fill of gets
+    private static final double SKEW = 3; // higher values concentrate the gets on fewer keys
+
+    public static void main(String[] args) {
+        int cacheSize = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int operations = args.length > 1 ? Integer.parseInt(args[1]) : 1_000_000;
+        Configurator.setRootLevel(Level.WARN);
+
+        System.out.printf("%10s %16s %16s%n", "strategy", "hit ratio", "time (ns/op)");
+        for (CachingStrategy strategy : CachingStrategy.values()) {
+            Cache cache = new StripedCache(strategy, cacheSize);
+            Random random = new Random(42);
+            long hits = 0;
+            long gets = 0;
+            int scanned = 0;
+
+            long start = System.nanoTime();
+            for (int i = 0; i < operations; i++) {
+                // Scans read a cache size worth of keys that are not read otherwise
+                if (i % (cacheSize * SCAN_INTERVAL) < cacheSize) {
+                    String key = "scan" + scanned++;
+                    cache.get(key);
+                    cache.put(key, key);
+                    continue;
+                }
+
+                String key = "key" + (int) (cacheSize * KEY_SPACE_FACTOR * Math.pow(random.nextDouble(), SKEW));
+                gets++;
+                if (cache.get(key).getStatus() == KVMessage.StatusType.GET_SUCCESS) {
+                    hits++;
+                } else {
+                    cache.put(key, key);
+                }
+            }
+            double latency = (double) (System.nanoTime() - start) / operations;
+
+            System.out.printf("%10s %16.3f %16.1f%n", strategy, (double) hits / gets, latency);
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.tum.i13.server.cache;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.util.Random;
+
+/**
+ * Measures the latency of gets, puts and deletes of an {@link LFUCache} at
+ * cache sizes of 500, 50k and 5M entries. Keys are drawn from a key space of
+ * twice the cache size with a skewed distribution, so the cache keeps evicting
+ * and reordering keys. The largest size needs a heap of about 4 GiB. Run with
+ * {@code java LFUCacheBenchmark [operations]}.
+ */
+public class LFUCacheBenchmark {
+
+    private static final int[] SIZES = {500, 50_000, 5_000_000};
+
+    public static void main(String[] args) {
+        int operations = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Configurator.setRootLevel(Level.WARN);
+
+        System.out.printf("%10s %14s %14s %14s%n", "size", "get (ns/op)", "put (ns/op)", "delete (ns/op)");
+        for (int size : SIZES) {
+            String[] keys = new String[2 * size];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = "key" + i;
+            }
+
+            LFUCache cache = new LFUCache(size);
+            for (int i = 0; i < size; i++) {
+                cache.put(keys[i], keys[i]);
+            }
+
+            // Warm up before measuring
+            run(cache, keys, operations / 10, new Random(1));
+            double[] latencies = run(cache, keys, operations, new Random(42));
+            System.out.printf("%10d %14.1f %14.1f %14.1f%n", size, latencies[0], latencies[1], latencies[2]);
+        }
+    }
+
+    // Runs 70% gets, 25% puts and 5% deletes, returns the average latency of each in nanoseconds
+    private static double[] run(LFUCache cache, String[] keys, int operations, Random random) {
+        long[] time = new long[3];
+        long[] count = new long[3];
+
+        for (int i = 0; i < operations; i++) {
+            String key = keys[skewedIndex(random, keys.length)];
+            int type = random.nextInt(100);
+
+            long start = System.nanoTime();
+            if (type < 70) {
+                cache.get(key);
+                time[0] += System.nanoTime() - start;
+                count[0]++;
+            } else if (type < 95) {
+                cache.put(key, key);
+                time[1] += System.nanoTime() - start;
+                count[1]++;
+            } else {
+                cache.put(key, null);
+                time[2] += System.nanoTime() - start;
+                count[2]++;
+            }
+        }
+
+        return new double[]{(double) time[0] / count[0], (double) time[1] / count[1], (double) time[2] / count[2]};
+    }
+
+    // Index biased towards small values, so some keys are accessed far more often than others
+    private static int skewedIndex(Random random, int bound) {
+        double uniform = random.nextDouble();
+        return (int) (bound * uniform * uniform);
+    }
+
+}
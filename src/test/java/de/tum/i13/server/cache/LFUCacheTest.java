@@ -50,4 +50,22 @@ class LFUCacheTest extends CacheTest {
                 );
     }
 
-}
\ No newline at end of file
+    @Test
+    void evictsNewestKeyOfLowestFrequency() {
+        final Cache cache = new LFUCache(3);
+
+        cache.put("key0", "value0");
+        cache.put("key1", "value1");
+        cache.get("key1");
+        cache.put("key2", "value2");
+        cache.put("key1", null);
+        cache.put("key3", "value3");
+        cache.put("key4", "value4");
+
+        assertThat(cache.get("key3").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+        assertThat(cache.get("key0").getValue()).isEqualTo("value0");
+        assertThat(cache.get("key2").getValue()).isEqualTo("value2");
+        assertThat(cache.get("key4").getValue()).isEqualTo("value4");
+    }
+
+}
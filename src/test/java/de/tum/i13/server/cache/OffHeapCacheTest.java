@@ -0,0 +1,84 @@
+package de.tum.i13.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import de.tum.i13.server.kv.KVMessage;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class OffHeapCacheTest extends CacheTest {
+
+    // Header, "keyN" and "valueN"
+    private static final int RECORD_BYTES = OffHeapCache.RECORD_HEADER_BYTES + 4 + 6;
+
+    @Override
+    Cache getCache(int size) {
+        return new OffHeapCache((long) size * RECORD_BYTES);
+    }
+
+    @Test
+    void displacesKeysFIFO() {
+        final Cache cache = getCache(3);
+
+        for (int i = 0; i < 3; i++) {
+            cache.put("key" + i, "value" + i);
+        }
+
+        cache.get("key0");
+        cache.put("key3", "value3");
+
+        assertThat(cache.get("key0").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+        assertThat(cache.get("key1").getValue()).isEqualTo("value1");
+        assertThat(cache.get("key3").getValue()).isEqualTo("value3");
+    }
+
+    @Test
+    void keepsValuesAcrossWrapArounds() {
+        final Cache cache = new OffHeapCache(10_000);
+
+        for (int i = 0; i < 10_000; i++) {
+            assertThat(cache.put("key" + i, "välue".repeat(i % 20)).getStatus())
+                    .isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        }
+
+        final long cached = IntStream.range(0, 10_000)
+                .mapToObj(i -> cache.get("key" + i))
+                .filter(message -> message.getStatus() == KVMessage.StatusType.GET_SUCCESS)
+                .peek(message -> assertThat(message.getValue())
+                        .isEqualTo("välue".repeat(Integer.parseInt(message.getKey().substring(3)) % 20)))
+                .count();
+        assertThat(cached).isPositive();
+        assertThat(cache.get("key9999").getStatus()).isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+    }
+
+    @Test
+    void updatesAndDeletesKeys() {
+        final Cache cache = getCache(3);
+
+        assertThat(cache.put("key0", "value0").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(cache.put("key1", "value1").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(cache.put("key0", "value2").getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+        assertThat(cache.put("key1", null).getStatus()).isEqualTo(KVMessage.StatusType.DELETE_SUCCESS);
+
+        // The records of the updated and deleted key are dropped instead of a current key
+        assertThat(cache.put("key2", "value2").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(cache.put("key3", "value3").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+
+        assertThat(cache.get("key0").getValue()).isEqualTo("value2");
+        assertThat(cache.get("key1").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+        assertThat(cache.get("key2").getValue()).isEqualTo("value2");
+        assertThat(cache.get("key3").getValue()).isEqualTo("value3");
+    }
+
+    @Test
+    void doesNotCacheValuesLargerThanCapacity() {
+        final Cache cache = getCache(3);
+
+        assertThat(cache.put("key0", "value0").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(cache.put("key0", "v".repeat(100)).getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+        assertThat(cache.get("key0").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+    }
+
+}
@@ -0,0 +1,140 @@
+package de.tum.i13.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import de.tum.i13.server.kv.KVMessage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StripedCacheTest extends CacheTest {
+
+    @Override
+    Cache getCache(int size) {
+        return new StripedCache(CachingStrategy.LRU, size);
+    }
+
+    @Test
+    void splitsLargeCachesIntoSegments() {
+        assertThat(new StripedCache(CachingStrategy.LFU, 3).getSegmentCount()).isEqualTo(1);
+        assertThat(new StripedCache(CachingStrategy.LFU, 1000).getSegmentCount()).isEqualTo(8);
+        assertThat(new StripedCache(CachingStrategy.LFU, 1_000_000).getSegmentCount())
+                .isEqualTo(StripedCache.MAX_SEGMENTS);
+    }
+
+    @Test
+    void splitsOffHeapCachesIntoSegments() {
+        assertThat(StripedCache.offHeap(1 << 20).getSegmentCount()).isEqualTo(1);
+        assertThat(StripedCache.offHeap(4 * OffHeapCache.MIN_SEGMENT_CAPACITY).getSegmentCount()).isEqualTo(4);
+
+        final Cache cache = StripedCache.offHeap(1 << 20);
+        assertThat(cache.getCachingStrategy()).isEqualTo(CachingStrategy.FIFO);
+        assertThat(cache.put("key", "value").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(cache.get("key").getValue()).isEqualTo("value");
+    }
+
+    @Test
+    void keepsAtMostSizeEntries() {
+        for (CachingStrategy strategy : CachingStrategy.values()) {
+            final Cache cache = new StripedCache(strategy, 100, 4);
+            assertThat(cache.getCachingStrategy()).isEqualTo(strategy);
+
+            for (int i = 0; i < 1000; i++) {
+                cache.put("key" + i, "value" + i);
+            }
+
+            final long cached = IntStream.range(0, 1000)
+                    .mapToObj(i -> cache.get("key" + i))
+                    .filter(message -> message.getStatus() == KVMessage.StatusType.GET_SUCCESS)
+                    .count();
+            assertThat(cached).isPositive().isLessThanOrEqualTo(100);
+        }
+    }
+
+    @Test
+    void keepsAtMostCapacityBytes() {
+        for (CachingStrategy strategy : CachingStrategy.values()) {
+            final long capacity = 10_000;
+            final Cache cache = new StripedCache(strategy, capacity, Weigher.BYTES);
+
+            for (int i = 0; i < 1000; i++) {
+                cache.put("key" + i, "value".repeat(i % 10));
+            }
+
+            final long cachedBytes = IntStream.range(0, 1000)
+                    .mapToObj(i -> cache.get("key" + i))
+                    .filter(message -> message.getStatus() == KVMessage.StatusType.GET_SUCCESS)
+                    .mapToLong(message -> Weigher.BYTES.weigh(message.getKey(), message.getValue()))
+                    .sum();
+            assertThat(cachedBytes).isPositive().isLessThanOrEqualTo(capacity);
+        }
+    }
+
+    @Test
+    void doesNotCacheEntriesHeavierThanCapacity() {
+        for (CachingStrategy strategy : CachingStrategy.values()) {
+            final Cache cache = new StripedCache(strategy, 1000, Weigher.BYTES);
+
+            assertThat(cache.put("key", "value").getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+            assertThat(cache.put("key", "v".repeat(1000)).getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+            assertThat(cache.get("key").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+            assertThat(cache.put("key", "v".repeat(1000)).getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        }
+    }
+
+    @Test
+    void evictsSeveralEntriesForOneHeavyEntry() {
+        for (CachingStrategy strategy : CachingStrategy.values()) {
+            final Cache cache = new StripedCache(strategy, 2000, Weigher.BYTES);
+
+            for (int i = 0; i < 5; i++) {
+                cache.put("key" + i, "value" + i);
+                cache.get("key" + i);
+            }
+            // Misses count towards the frequency of TINY_LFU, so the heavy entry is admitted
+            for (int i = 0; i < 3; i++) {
+                cache.get("heavy");
+            }
+            cache.put("heavy", "v".repeat(800));
+
+            assertThat(cache.get("heavy").getStatus()).as(strategy.toString())
+                    .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+
+            final long cached = IntStream.range(0, 5)
+                    .mapToObj(i -> cache.get("key" + i))
+                    .filter(message -> message.getStatus() == KVMessage.StatusType.GET_SUCCESS)
+                    .count();
+            assertThat(cached).as(strategy.toString()).isLessThan(5);
+        }
+    }
+
+    @Test
+    void handlesConcurrentAccess() throws Exception {
+        final Cache cache = new StripedCache(CachingStrategy.LFU, 1 << 16);
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < 8; t++) {
+            final int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < 500; i++) {
+                    final String key = thread + "-" + i;
+                    assertThat(cache.put(key, key).getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+                    assertThat(cache.get(key).getValue()).isEqualTo(key);
+                }
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+    }
+
+}
@@ -0,0 +1,57 @@
+package de.tum.i13.server.cache;
+
+import org.junit.jupiter.api.Test;
+
+import de.tum.i13.server.kv.KVMessage;
+
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TinyLFUCacheTest extends CacheTest {
+
+    @Override
+    Cache getCache(int size) {
+        return new TinyLFUCache(size);
+    }
+
+    @Test
+    void keepsFrequentKeysDuringScan() {
+        final Cache cache = new TinyLFUCache(100);
+
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                if (cache.get("hot" + i).getStatus() == KVMessage.StatusType.GET_ERROR) {
+                    cache.put("hot" + i, "value" + i);
+                }
+            }
+        }
+
+        // The hot keys stay in use while the scan runs
+        for (int i = 0; i < 10_000; i++) {
+            cache.put("scan" + i, "value" + i);
+            assertThat(cache.get("hot" + i % 50).getStatus()).isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        }
+
+        final long cachedHotKeys = IntStream.range(0, 50)
+                .mapToObj(i -> cache.get("hot" + i))
+                .filter(message -> message.getStatus() == KVMessage.StatusType.GET_SUCCESS)
+                .count();
+        assertThat(cachedHotKeys).isEqualTo(50);
+    }
+
+    @Test
+    void estimatesFrequencies() {
+        final FrequencySketch sketch = new FrequencySketch(512);
+
+        for (int i = 0; i < 10; i++) {
+            sketch.increment("frequent");
+        }
+        sketch.increment("rare");
+
+        assertThat(sketch.frequency("frequent")).isEqualTo(10);
+        assertThat(sketch.frequency("rare")).isGreaterThanOrEqualTo(1).isLessThan(10);
+        assertThat(sketch.frequency("absent")).isLessThan(10);
+    }
+
+}
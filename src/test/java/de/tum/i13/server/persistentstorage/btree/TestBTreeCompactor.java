@@ -0,0 +1,111 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestBTreeCompactor {
+
+    private PersistentBTree<String> tree;
+    private PersistentBTreeDiskStorageHandler<String> handler;
+
+    @BeforeEach
+    void createTree(@TempDir Path folder) throws StorageException {
+        handler = new PersistentBTreeDiskStorageHandler<>(folder.toString(), true);
+        tree = new PersistentBTree<>(3, handler);
+    }
+
+    @AfterEach
+    void closeTree() throws StorageException {
+        // Committed pages are written in the background until the handler is closed
+        tree.close();
+        handler.close();
+    }
+
+    @Test
+    void packsSparseNodes() throws StorageException, PersistentBTreeException {
+        List<String> keys = insertKeys(2000);
+        List<String> removed = keys.subList(0, 1400);
+        for (String key : removed) {
+            tree.remove(key);
+        }
+        FillStatistics sparse = tree.getFillStatistics();
+
+        try (BTreeCompactor<String> compactor = new BTreeCompactor<>(tree, 1_000_000)) {
+            assertThat(compactor.compact()).isPositive();
+        }
+
+        FillStatistics packed = tree.getFillStatistics();
+        assertThat(packed.getElements()).isEqualTo(sparse.getElements()).isEqualTo(600);
+        assertThat(packed.getNodes()).isLessThan(sparse.getNodes());
+        assertThat(packed.getFillFactor()).isGreaterThan(sparse.getFillFactor());
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+
+        for (String key : keys.subList(1400, 2000)) {
+            assertThat(tree.search(key)).isEqualTo("value" + key);
+        }
+        for (String key : removed.subList(0, 100)) {
+            assertThat(tree.search(key)).isNull();
+        }
+    }
+
+    @Test
+    void compactsInBackground() throws StorageException, PersistentBTreeException {
+        List<String> keys = insertKeys(500);
+        for (String key : keys.subList(0, 400)) {
+            tree.remove(key);
+        }
+        long sparseNodes = tree.getFillStatistics().getNodes();
+
+        BTreeCompactor<String> compactor = new BTreeCompactor<>(tree, 1_000_000);
+        compactor.schedule();
+        compactor.close();
+
+        assertThat(tree.getFillStatistics().getNodes()).isLessThan(sparseNodes);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+    }
+
+    @Test
+    void countsNodesAndElements() throws StorageException, PersistentBTreeException {
+        assertThat(tree.getFillStatistics().getNodes()).isZero();
+        assertThat(tree.getFillStatistics().getHeight()).isZero();
+
+        for (int i = 0; i < 5; i++) {
+            tree.insert("key" + i, "value");
+        }
+        FillStatistics statistics = tree.getFillStatistics();
+        assertThat(statistics.getNodes()).isEqualTo(1);
+        assertThat(statistics.getFillFactor()).isEqualTo(1.0);
+
+        insertKeys(300);
+        statistics = tree.getFillStatistics();
+        assertThat(statistics.getElements()).isEqualTo(305);
+        assertThat(statistics.getHeight()).isGreaterThan(1);
+        assertThat(statistics.getLeaves()).isLessThan(statistics.getNodes());
+    }
+
+    private List<String> insertKeys(int count) throws StorageException, PersistentBTreeException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            keys.add(String.format("%05d", i));
+        }
+        Collections.shuffle(keys, new Random(42));
+
+        for (String key : keys) {
+            tree.insert(key, "value" + key);
+        }
+        return keys;
+    }
+
+}
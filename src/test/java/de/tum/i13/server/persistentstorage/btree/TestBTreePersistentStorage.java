@@ -1,11 +1,15 @@
 package de.tum.i13.server.persistentstorage.btree;
 
 import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.server.persistentstorage.StorageKeys;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.Superblock;
+import de.tum.i13.server.persistentstorage.btree.io.vlog.ValueLog;
 import de.tum.i13.shared.hashing.HashingAlgorithm;
 import de.tum.i13.shared.hashing.MD5HashAlgorithm;
+import de.tum.i13.shared.persistentstorage.CloseableIterator;
 import de.tum.i13.shared.persistentstorage.GetException;
 import de.tum.i13.shared.persistentstorage.PutException;
 
@@ -16,7 +20,16 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
 
 public class TestBTreePersistentStorage {
     private BTreePersistentStorage storage;
@@ -84,4 +97,322 @@ public class TestBTreePersistentStorage {
         assertThat(storage.get("key6")).extracting(KVMessage::getKey, KVMessage::getValue, KVMessage::getStatus)
                 .containsExactly("key6", null, KVMessage.StatusType.GET_ERROR);
     }
+
+    @Test
+    void putsAndDeletesBatches() throws PutException, GetException {
+        storage.put("key1", "old");
+        storage.put("key2", "value2");
+
+        assertThat(storage.putAll(List.of(new Pair<>("key0", "value0"), new Pair<>("key1", "value1"),
+                new Pair<>("key2", "value2"))))
+                .extracting(KVMessage::getKey, KVMessage::getStatus)
+                .containsExactly(tuple("key0", KVMessage.StatusType.PUT_SUCCESS),
+                        tuple("key1", KVMessage.StatusType.PUT_UPDATE),
+                        tuple("key2", KVMessage.StatusType.PUT_SUCCESS));
+        for (int i = 0; i < 3; i++) {
+            assertThat(storage.get("key" + i).getValue()).isEqualTo("value" + i);
+        }
+
+        assertThat(storage.deleteAll(List.of("key2", "key3", "key0")))
+                .extracting(KVMessage::getKey, KVMessage::getStatus)
+                .containsExactly(tuple("key2", KVMessage.StatusType.DELETE_SUCCESS),
+                        tuple("key3", KVMessage.StatusType.DELETE_ERROR),
+                        tuple("key0", KVMessage.StatusType.DELETE_SUCCESS));
+        assertThat(storage.get("key0").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+        assertThat(storage.get("key1").getValue()).isEqualTo("value1");
+        assertThat(storage.get("key2").getStatus()).isEqualTo(KVMessage.StatusType.GET_ERROR);
+    }
+
+    @Test
+    void rebuildsKeyFilterFromStoredTree() throws PutException, GetException, StorageException {
+        for (int i = 0; i < 50; i++) {
+            storage.put("key" + i, "value" + i);
+        }
+
+        // No filter was saved, so the new storage has to build it from the tree
+        BTreePersistentStorage reopened = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm());
+        for (int i = 0; i < 50; i++) {
+            assertThat(reopened.get("key" + i)).extracting(KVMessage::getValue, KVMessage::getStatus)
+                    .containsExactly("value" + i, KVMessage.StatusType.GET_SUCCESS);
+        }
+        assertThat(reopened.get("missing")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_ERROR);
+    }
+
+    @Test
+    void keepsWritesWhileKeyFilterIsRebuilt() throws PutException, GetException, StorageException {
+        for (int i = 0; i < 200; i++) {
+            storage.put("key" + i, "value" + i);
+        }
+
+        // The filter is built in the background, whether or not it is complete when the storage is closed
+        Path filterPath = Paths.get("database", BTreePersistentStorage.KEY_FILTER_FILE);
+        BTreePersistentStorage rebuilding = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(),
+                filterPath);
+        rebuilding.put("new", "value");
+        assertThat(rebuilding.get("key0")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        rebuilding.close();
+
+        handler = new PersistentBTreeDiskStorageHandler<>("database", false);
+        BTreePersistentStorage reopened = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), filterPath);
+        for (int i = 0; i < 200; i++) {
+            assertThat(reopened.get("key" + i)).extracting(KVMessage::getStatus)
+                    .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        }
+        assertThat(reopened.get("new")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        reopened.close();
+    }
+
+    @Test
+    void readsCompressedValuesWithoutBufferPool() throws PutException, GetException, StorageException {
+        storage.close();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true, 0);
+        handler.setValueCompressionThreshold(256);
+        storage = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm());
+
+        for (int i = 0; i < 30; i++) {
+            storage.put("key" + i, ("body of message " + i + "\n").repeat(100));
+        }
+        storage.put("key3", "short");
+        storage.put("key4", null);
+
+        for (int i = 0; i < 30; i++) {
+            String expected = i == 3 ? "short" : (i == 4 ? null : ("body of message " + i + "\n").repeat(100));
+            assertThat(storage.get("key" + i)).extracting(KVMessage::getValue).isEqualTo(expected);
+        }
+        assertThat(storage.getRange("0", "f".repeat(32))).hasSize(29);
+    }
+
+    @Test
+    void storesLargeValuesInValueLog() throws PutException, GetException, StorageException {
+        Path valueLogFolder = Paths.get("database", BTreePersistentStorage.VALUE_LOG_FOLDER);
+        ValueLog valueLog = new ValueLog(valueLogFolder, 4096);
+        storage = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), null, valueLog, 100);
+
+        for (int i = 0; i < 40; i++) {
+            storage.put("key" + i, ("large value " + i).repeat(20));
+        }
+        storage.put("small", "value");
+        storage.put("marker", "\u0000looks like a pointer");
+        int segmentCount = valueLog.getSegmentCount();
+        assertThat(segmentCount).isGreaterThan(2);
+
+        // Replacing and deleting most values makes the first segments garbage
+        for (int i = 0; i < 30; i++) {
+            storage.put("key" + i, i % 2 == 0 ? null : "small " + i);
+        }
+
+        // The collection in the background may have collected some segments already
+        storage.collectGarbage(0.1);
+        assertThat(valueLog.getSegmentCount()).isLessThan(segmentCount);
+
+        for (int i = 0; i < 40; i++) {
+            String expected = i >= 30 ? ("large value " + i).repeat(20) : (i % 2 == 0 ? null : "small " + i);
+            assertThat(storage.get("key" + i)).extracting(KVMessage::getValue).isEqualTo(expected);
+        }
+        assertThat(storage.get("marker")).extracting(KVMessage::getValue).isEqualTo("\u0000looks like a pointer");
+        assertThat(storage.getRange("0", "f".repeat(32))).hasSize(27)
+                .contains(new Pair<>("key35", ("large value 35").repeat(20)));
+
+        storage.close();
+        storage.reopen();
+        assertThat(storage.get("key39")).extracting(KVMessage::getValue).isEqualTo(("large value 39").repeat(20));
+    }
+
+    @Test
+    void rangeIteratorsReadValuesOfTheirSnapshotDespiteCollection()
+            throws PutException, GetException, StorageException {
+        ValueLog valueLog = new ValueLog(Paths.get("database", BTreePersistentStorage.VALUE_LOG_FOLDER), 4096);
+        storage = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), null, valueLog, 100);
+        for (int i = 0; i < 40; i++) {
+            storage.put("key" + i, ("large value " + i).repeat(20));
+        }
+        int segmentCount = valueLog.getSegmentCount();
+
+        List<Pair<String>> iterated = new ArrayList<>();
+        try (CloseableIterator<Pair<String>> iterator = storage.iterateRange("0", "f".repeat(32))) {
+            // Moving the values to new segments must not change what the snapshot reads
+            for (int i = 0; i < 40; i++) {
+                storage.put("key" + i, i % 2 == 0 ? null : ("new value " + i).repeat(20));
+            }
+            storage.collectGarbage(0.1);
+            assertThat(valueLog.getSegmentCount()).isGreaterThanOrEqualTo(segmentCount);
+
+            iterator.forEachRemaining(iterated::add);
+        }
+
+        assertThat(iterated).hasSize(40).contains(new Pair<>("key0", ("large value 0").repeat(20)));
+        storage.collectGarbage(0.1);
+        assertThat(valueLog.getSegmentCount()).isLessThan(segmentCount);
+        assertThat(storage.getRange("0", "f".repeat(32))).hasSize(20)
+                .contains(new Pair<>("key1", ("new value 1").repeat(20)));
+        storage.close();
+    }
+
+    @Test
+    void reportsUpdatesOfValuesInValueLog() throws PutException, StorageException {
+        ValueLog valueLog = new ValueLog(Paths.get("database", BTreePersistentStorage.VALUE_LOG_FOLDER), 4096);
+        storage = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), null, valueLog, 100);
+        String large = "large value".repeat(20);
+
+        assertThat(storage.put("key", large).getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(storage.put("key", large).getStatus()).isEqualTo(KVMessage.StatusType.PUT_SUCCESS);
+        assertThat(storage.put("key", large + "!").getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+        assertThat(storage.put("key", "small").getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+        assertThat(storage.put("key", large).getStatus()).isEqualTo(KVMessage.StatusType.PUT_UPDATE);
+        assertThat(storage.putAll(List.of(new Pair<>("key", large), new Pair<>("other", large))))
+                .extracting(KVMessage::getStatus)
+                .containsExactly(KVMessage.StatusType.PUT_SUCCESS, KVMessage.StatusType.PUT_SUCCESS);
+        storage.close();
+    }
+
+    @Test
+    void savesKeyFilterOnCloseAndConsumesItOnLoad() throws PutException, GetException, StorageException {
+        // A new tree's filter is complete from the start, so it is saved even before a background build could end
+        storage.close();
+        handler.delete();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+        Path filterPath = Paths.get("database", BTreePersistentStorage.KEY_FILTER_FILE);
+        storage = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), filterPath);
+        storage.put("key", "value");
+        storage.close();
+        assertThat(filterPath).exists();
+
+        storage.reopen();
+        assertThat(filterPath).doesNotExist();
+        storage.put("other", "value");
+        storage.close();
+
+        // Closing the storage closed its handler as well
+        handler = new PersistentBTreeDiskStorageHandler<>("database", false);
+        BTreePersistentStorage reopened = new BTreePersistentStorage(3, handler, new MD5HashAlgorithm(), filterPath);
+        assertThat(filterPath).doesNotExist();
+        assertThat(reopened.get("key")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        assertThat(reopened.get("other")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_SUCCESS);
+        assertThat(reopened.get("missing")).extracting(KVMessage::getStatus)
+                .isEqualTo(KVMessage.StatusType.GET_ERROR);
+    }
+
+    @Test
+    void keyFilterGrowsWithoutFalseNegatives() {
+        KeyFilter filter = new KeyFilter(16);
+        for (int i = 0; i < 1000; i++) {
+            filter.put("key" + i);
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(filter.mightContain("key" + i)).isTrue();
+        }
+        long falsePositives = IntStream.range(0, 1000).filter(i -> filter.mightContain("missing" + i)).count();
+        assertThat(falsePositives).isLessThan(100);
+    }
+
+    @Test
+    void getsRangesOfHexadecimalHashes() throws PutException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        List<String> keys = IntStream.range(0, 40).mapToObj(i -> "key" + i).collect(Collectors.toList());
+        for (String key : keys) {
+            storage.put(key, "value");
+        }
+
+        List<BigInteger> hashes = keys.stream().map(hashAlg::hash).sorted().collect(Collectors.toList());
+        BigInteger lower = hashes.get(10);
+        BigInteger upper = hashes.get(29);
+
+        List<String> expected = keys.stream()
+                .filter(key -> hashAlg.hash(key).compareTo(lower) >= 0 && hashAlg.hash(key).compareTo(upper) <= 0)
+                .collect(Collectors.toList());
+        assertThat(storage.getRange(lower.toString(16), HashingAlgorithm.padLeftZeros(upper.toString(16), 32)))
+                .extracting(pair -> pair.key)
+                .containsExactlyInAnyOrderElementsOf(expected)
+                .hasSize(20);
+    }
+
+    @Test
+    void convertsHexadecimalKeysOfExistingTrees() throws StorageException, PersistentBTreeException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        // The storage created before each test flagged the handler, trees of previous versions have no flags
+        storage.close();
+        handler.delete();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+        PersistentBTree<Pair<String>> legacyTree = new PersistentBTree<>(3, handler);
+        for (int i = 0; i < 30; i++) {
+            String hexKey = HashingAlgorithm.padLeftZeros(hashAlg.hash("key" + i).toString(16), 32);
+            legacyTree.insert(hexKey, new Pair<>("key" + i, "value" + i));
+        }
+
+        BTreePersistentStorage converted = new BTreePersistentStorage(3, handler, hashAlg);
+        for (int i = 0; i < 30; i++) {
+            assertThat(converted.get("key" + i)).extracting(KVMessage::getValue, KVMessage::getStatus)
+                    .containsExactly("value" + i, KVMessage.StatusType.GET_SUCCESS);
+        }
+
+        PersistentBTree<Pair<String>> reloaded = new PersistentBTree<>(3, handler.load(), handler);
+        assertThat(reloaded.searchRange(StorageKeys.lowest(128), StorageKeys.highest(128)))
+                .hasSize(30)
+                .noneMatch(element -> StorageKeys.isHexKey(element.key, 128));
+    }
+
+    @Test
+    void storesKeyFormatInSuperblockInsteadOfTree() throws StorageException, PersistentBTreeException, PutException {
+        storage.put("key", "value");
+        storage.put("other", "value");
+        storage.close();
+
+        handler = new PersistentBTreeDiskStorageHandler<>("database", false);
+        assertThat(handler.getFormatFlags()).isEqualTo(Superblock.BINARY_KEYS);
+        PersistentBTree<Pair<String>> reloaded = new PersistentBTree<>(3, handler.load(), handler);
+        assertThat(reloaded.searchRange("", StorageKeys.highest(128))).hasSize(2);
+    }
+
+    @Test
+    void replacesKeyFormatMarkerOfExistingTrees()
+            throws StorageException, PersistentBTreeException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        // The storage created before each test flagged the handler, trees of previous versions have no flags
+        storage.close();
+        handler.delete();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+        PersistentBTree<Pair<String>> legacyTree = new PersistentBTree<>(3, handler);
+        legacyTree.insert(StorageKeys.fromBytes(hashAlg.hashBytes("key")), new Pair<>("key", "value"));
+        legacyTree.insert("", new Pair<>("", ""));
+
+        BTreePersistentStorage converted = new BTreePersistentStorage(3, handler, hashAlg);
+        assertThat(converted.get("key")).extracting(KVMessage::getValue).isEqualTo("value");
+        assertThat(handler.getFormatFlags()).isEqualTo(Superblock.BINARY_KEYS);
+
+        PersistentBTree<Pair<String>> reloaded = new PersistentBTree<>(3, handler.load(), handler);
+        assertThat(reloaded.searchRange("", StorageKeys.highest(128))).extracting(element -> element.value.key)
+                .containsExactly("key");
+    }
+
+    @Test
+    void convertsHexadecimalKeysDespiteSavedKeyFilter()
+            throws StorageException, PersistentBTreeException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        Path filterPath = Paths.get("database", BTreePersistentStorage.KEY_FILTER_FILE);
+        // The storage created before each test flagged the handler, trees of previous versions have no flags
+        storage.close();
+        handler.delete();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+        PersistentBTree<Pair<String>> legacyTree = new PersistentBTree<>(3, handler);
+        KeyFilter legacyFilter = new KeyFilter(KeyFilter.DEFAULT_EXPECTED_KEYS);
+        for (int i = 0; i < 30; i++) {
+            String hexKey = HashingAlgorithm.padLeftZeros(hashAlg.hash("key" + i).toString(16), 32);
+            legacyTree.insert(hexKey, new Pair<>("key" + i, "value" + i));
+            legacyFilter.put(hexKey);
+        }
+        legacyFilter.save(filterPath);
+
+        // The saved filter only knows the hexadecimal keys, so it must not be used
+        BTreePersistentStorage converted = new BTreePersistentStorage(3, handler, hashAlg, filterPath);
+        for (int i = 0; i < 30; i++) {
+            assertThat(converted.get("key" + i)).extracting(KVMessage::getValue, KVMessage::getStatus)
+                    .containsExactly("value" + i, KVMessage.StatusType.GET_SUCCESS);
+        }
+    }
 }
@@ -7,22 +7,35 @@ import org.junit.jupiter.api.Test;
 import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 
 import java.io.File;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 class TestPersistentBTree {
 
     private PersistentBTree<String> tree;
+    private PersistentBTreeDiskStorageHandler<String> handler;
 
     @BeforeEach
     public void createTree() throws StorageException {
-        tree = new PersistentBTree<>(3, new PersistentBTreeDiskStorageHandler<>("database", true));
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+        tree = new PersistentBTree<>(3, handler);
     }
 
     @AfterEach
@@ -137,7 +150,7 @@ class TestPersistentBTree {
         tree.insert("F", "Value");
         tree.insert("G", "Value");
         assertThat(TreeValidator.validTree(tree)).isTrue();
-        assertThat(tree.remove("K")).isFalse();
+        assertThat(tree.remove("K")).isNull();
         assertThat(TreeValidator.validTree(tree)).isTrue();
     }
 
@@ -180,7 +193,7 @@ class TestPersistentBTree {
 
             for (char c : string.toCharArray()) {
                 assertThat(tree.search(c + "")).isEqualTo(c + "");
-                assertThat(tree.remove(c + "")).isTrue();
+                assertThat(tree.remove(c + "")).isEqualTo(c + "");
                 boolean valid = TreeValidator.validTree(tree);
                 assertThat(valid).isTrue();
                 assertThat(tree.search(c + "")).isNull();
@@ -204,7 +217,7 @@ class TestPersistentBTree {
         }
 
         tree = null;
-        PersistentBTreeDiskStorageHandler<String> handler = new PersistentBTreeDiskStorageHandler<>("database");
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
         tree = new PersistentBTree<>(3, handler.load(), handler);
 
         assertThat(TreeValidator.validTree(tree)).isTrue();
@@ -214,7 +227,69 @@ class TestPersistentBTree {
         }
     }
 
-    private int countInFolder(String folder) {
+    @Test
+    void replaysLogTailAfterCheckpoint() throws StorageException, PersistentBTreeException {
+        for (char c = 'a'; c <= 'm'; c++) {
+            tree.insert(c + "", c + "");
+        }
+        handler.checkpoint();
+        for (char c = 'n'; c <= 'z'; c++) {
+            tree.insert(c + "", c + "");
+        }
+        tree.remove("a");
+
+        // Simulate a crash, only the changes after the checkpoint are in the log
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        assertThat(tree.search("a")).isNull();
+        for (char c = 'b'; c <= 'z'; c++) {
+            assertThat(tree.search(c + "")).isEqualTo(c + "");
+        }
+    }
+
+    @Test
+    void closeLeavesNothingToReplay() throws StorageException, PersistentBTreeException {
+        for (char c = 'a'; c <= 'm'; c++) {
+            tree.insert(c + "", c + "");
+        }
+        handler.close();
+        handler.reopen();
+        for (char c = 'n'; c <= 'z'; c++) {
+            tree.insert(c + "", c + "");
+        }
+        handler.close();
+
+        // All changes are checkpointed, so the tree is complete without its log
+        StorageUtils.deleteFile(Paths.get("database", "wal"));
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        for (char c = 'a'; c <= 'z'; c++) {
+            assertThat(tree.search(c + "")).isEqualTo(c + "");
+        }
+    }
+
+    @Test
+    void writesPageFilesOnlyAfterTheirRecordIsSynced() throws StorageException, PersistentBTreeException {
+        handler.delete();
+        handler = new PersistentBTreeDiskStorageHandler<>("database", true, 0, 60_000);
+        tree = new PersistentBTree<>(3, handler);
+
+        tree.insert("a", "a");
+        assertThat(new File("database").list()).containsOnly("wal");
+        assertThat(tree.search("a")).isEqualTo("a");
+
+        handler.sync();
+        assertThat(new File("database").list()).hasSize(2);
+        assertThat(tree.search("a")).isEqualTo("a");
+    }
+
+    private int countInFolder(String folder) throws StorageException {
+        // Pages are only written back to their files on checkpoints
+        handler.checkpoint();
         return new File(folder).list().length;
     }
 
@@ -264,7 +339,7 @@ class TestPersistentBTree {
         assertThat(this.countInFolder("database")).isEqualTo(2);
 
         tree = null;
-        PersistentBTreeDiskStorageHandler<String> handler = new PersistentBTreeDiskStorageHandler<>("database");
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
         tree = new PersistentBTree<>(3, handler.load(), handler);
 
         assertThat(TreeValidator.validTree(tree)).isTrue();
@@ -365,4 +440,264 @@ class TestPersistentBTree {
         result = tree.searchRange("A", "A");
         assertThat(result).isEmpty();
     }
+
+    @Test
+    void iteratesRangeInBatches() throws StorageException, PersistentBTreeException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            keys.add(String.format("key%03d", i));
+        }
+        List<String> shuffled = new ArrayList<>(keys);
+        Collections.shuffle(shuffled);
+        for (String key : shuffled) {
+            tree.insert(key, key);
+        }
+
+        List<String> iterated = new ArrayList<>();
+        tree.iterateRange("key050", "key249").forEachRemaining(elem -> iterated.add(elem.key));
+        assertThat(iterated).containsExactlyElementsOf(keys.subList(50, 250));
+
+        List<String> all = new ArrayList<>();
+        tree.iterateRange("a", "z").forEachRemaining(elem -> all.add(elem.key));
+        assertThat(all).containsExactlyElementsOf(keys);
+
+        assertThat(tree.iterateRange("x", "z").hasNext()).isFalse();
+    }
+
+    @Test
+    void iteratesRangeWhileTreeChanges() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 100; i++) {
+            tree.insert(String.format("key%03d", i), "value");
+        }
+
+        Iterator<Pair<String>> iterator = tree.iterateRange("key000", "key099");
+        List<String> iterated = new ArrayList<>();
+        iterated.add(iterator.next().key);
+
+        // Keys that were not returned yet are seen, removed keys are not
+        tree.remove("key098");
+        tree.insert("key0505", "value");
+        iterator.forEachRemaining(elem -> iterated.add(elem.key));
+
+        assertThat(iterated).hasSize(100).contains("key0505").doesNotContain("key098").isSorted();
+    }
+
+    @Test
+    void bulkLoadsSortedElements() throws StorageException, PersistentBTreeException {
+        for (int minimumDegree : new int[]{2, 3, 5}) {
+            for (double fillFactor : new double[]{0.5, 0.8, 1.0}) {
+                for (int size = 0; size <= 120; size += 7) {
+                    tree.delete();
+                    handler = new PersistentBTreeDiskStorageHandler<>("database", true);
+                    tree = new PersistentBTree<>(minimumDegree, handler);
+
+                    List<Pair<String>> elements = new ArrayList<>();
+                    for (int i = 0; i < size; i++) {
+                        elements.add(new Pair<>(String.format("key%04d", i), "value" + i));
+                    }
+                    tree.bulkLoad(elements.iterator(), fillFactor);
+
+                    assertThat(TreeValidator.validTree(tree)).isTrue();
+                    if (size > 0) {
+                        assertBalanced(tree.root, minimumDegree, true);
+                    }
+                    assertThat(tree.searchRange("key", "kez")).extracting(elem -> elem.key)
+                            .containsExactlyElementsOf(elements.stream().map(elem -> elem.key)
+                                    .collect(Collectors.toList()));
+                }
+            }
+        }
+
+        // The loaded tree is durable and can be modified as usual
+        handler.checkpoint();
+        tree = new PersistentBTree<>(5, handler.load(), handler);
+        tree.insert("key0050a", "new");
+        tree.remove("key0007");
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        assertThat(tree.search("key0050a")).isEqualTo("new");
+        assertThat(tree.search("key0007")).isNull();
+        assertThat(tree.search("key0118")).isEqualTo("value118");
+    }
+
+    @Test
+    void bulkLoadRequiresEmptyTreeAndSortedElements() throws StorageException, PersistentBTreeException {
+        List<Pair<String>> unsorted = List.of(new Pair<>("b", "1"), new Pair<>("a", "2"));
+        assertThatThrownBy(() -> tree.bulkLoad(unsorted.iterator(), 1.0))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThat(tree.searchRange("a", "z")).isEmpty();
+
+        tree.insert("a", "1");
+        assertThatThrownBy(() -> tree.bulkLoad(List.of(new Pair<>("b", "2")).iterator(), 1.0))
+                .isInstanceOf(PersistentBTreeException.class);
+        assertThat(tree.search("b")).isNull();
+    }
+
+    /**
+     * Check that all leaves have the same depth and all nodes except the root
+     * have enough elements
+     *
+     * @return height of the subtree
+     */
+    private static int assertBalanced(PersistentBTreeNode<String> node, int minimumDegree, boolean root) {
+        assertThat(node.getElementCount()).isBetween(root ? 1 : minimumDegree - 1, 2 * minimumDegree - 1);
+        if (node.isLeaf()) {
+            return 1;
+        }
+
+        int height = -1;
+        for (int i = 0; i <= node.getElementCount(); i++) {
+            int childHeight = assertBalanced(node.getChildren().get(i), minimumDegree, false);
+            assertThat(height == -1 || height == childHeight).isTrue();
+            height = childHeight;
+        }
+
+        return height + 1;
+    }
+
+    @Test
+    void reusesIdsOfDeletedNodes() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 100; i++) {
+            tree.insert(String.format("%03d", i), "value");
+        }
+        handler.checkpoint();
+        Set<Integer> ids = storedIds();
+        assertThat(ids).isEqualTo(IntStream.rangeClosed(1, ids.size()).boxed().collect(Collectors.toSet()));
+
+        for (int i = 0; i < 90; i++) {
+            tree.remove(String.format("%03d", i));
+        }
+        handler.checkpoint();
+        Set<Integer> remaining = storedIds();
+        assertThat(handler.allocateNodeId()).isIn(ids).isNotIn(remaining);
+
+        // Released ids are found again when the tree is opened
+        PersistentBTreeDiskStorageHandler<String> reopened = new PersistentBTreeDiskStorageHandler<>("database",
+                false);
+        assertThat(reopened.allocateNodeId()).isIn(ids).isNotIn(remaining);
+    }
+
+    private static Set<Integer> storedIds() {
+        return Arrays.stream(new File("database").list()).filter(name -> name.matches("\\d+"))
+                .map(Integer::valueOf).collect(Collectors.toSet());
+    }
+
+    @Test
+    void concurrentWritesKeepTreeValid() throws Exception {
+        int threads = 8;
+        int keysPerThread = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int i = 0; i < keysPerThread; i++) {
+                    String key = i + "-" + thread;
+                    tree.insert(key, key);
+                    assertThat(tree.search(key)).isEqualTo(key);
+
+                    if (i % 3 == 0) {
+                        assertThat(tree.remove(key)).isNotNull();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+
+        for (int t = 0; t < threads; t++) {
+            for (int i = 0; i < keysPerThread; i++) {
+                String key = i + "-" + t;
+                assertThat(tree.search(key)).isEqualTo(i % 3 == 0 ? null : key);
+            }
+        }
+    }
+
+    @Test
+    void insertsAndRemovesBatches() throws StorageException, PersistentBTreeException {
+        List<Pair<String>> elements = IntStream.range(0, 200)
+                .mapToObj(i -> new Pair<>(String.format("%03d", (i * 37) % 200), "value" + i))
+                .collect(Collectors.toList());
+        tree.insert("050", "old");
+
+        List<String> previous = tree.insertAll(elements);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        for (int i = 0; i < elements.size(); i++) {
+            assertThat(previous.get(i)).isEqualTo(elements.get(i).key.equals("050") ? "old" : null);
+            assertThat(tree.search(elements.get(i).key)).isEqualTo(elements.get(i).value);
+        }
+
+        // Later elements with the same key replace earlier ones
+        assertThat(tree.insertAll(List.of(new Pair<>("300", "a"), new Pair<>("300", "b"))))
+                .containsExactly(null, "a");
+        assertThat(tree.search("300")).isEqualTo("b");
+
+        List<String> keys = IntStream.range(0, 150).mapToObj(i -> String.format("%03d", 149 - i))
+                .collect(Collectors.toList());
+        keys.add("999");
+        List<String> values = new ArrayList<>();
+        for (String key : keys) {
+            values.add(tree.search(key));
+        }
+        List<String> removed = tree.removeAll(keys);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        for (int i = 0; i < 150; i++) {
+            assertThat(removed.get(i)).isNotNull().isEqualTo(values.get(i));
+            assertThat(tree.search(keys.get(i))).isNull();
+        }
+        assertThat(removed.get(150)).isNull();
+        assertThat(tree.searchRange("000", "999")).hasSize(51);
+
+        handler = new PersistentBTreeDiskStorageHandler<>("database");
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        assertThat(tree.searchRange("000", "999")).hasSize(51);
+    }
+
+    @Test
+    void batchesRunWithConcurrentWrites() throws Exception {
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> futures = new ArrayList<>();
+
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            futures.add(executor.submit(() -> {
+                for (int round = 0; round < 20; round++) {
+                    List<Pair<String>> batch = new ArrayList<>();
+                    for (int i = 0; i < 10; i++) {
+                        String key = thread + "-" + round + "-" + i;
+                        if (thread % 2 == 0) {
+                            batch.add(new Pair<>(key, key));
+                        } else {
+                            tree.insert(key, key);
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        tree.insertAll(batch);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executor.shutdown();
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        assertThat(tree.searchRange("0", "9")).hasSize(threads * 20 * 10);
+    }
+
+
 }
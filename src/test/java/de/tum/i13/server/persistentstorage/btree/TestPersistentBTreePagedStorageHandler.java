@@ -0,0 +1,149 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreePagedStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestPersistentBTreePagedStorageHandler {
+
+    private PersistentBTreePagedStorageHandler<String> handler;
+    private PersistentBTree<String> tree;
+
+    @BeforeEach
+    public void createTree() throws StorageException {
+        handler = new PersistentBTreePagedStorageHandler<>("database", true, 16, 256);
+        tree = new PersistentBTree<>(3, handler);
+    }
+
+    @AfterEach
+    public void deleteTree() throws StorageException {
+        tree.delete();
+    }
+
+    @Test
+    void storesTreeInSingleFile() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 300; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        assertThat(new File("database").list()).hasSize(1);
+    }
+
+    @Test
+    void persistsData() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 300; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+        for (int i = 0; i < 300; i += 2) {
+            tree.remove("key" + i);
+        }
+
+        handler.close();
+        handler = new PersistentBTreePagedStorageHandler<>("database", false, 16, 256);
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+        for (int i = 0; i < 300; i++) {
+            assertThat(tree.search("key" + i)).isEqualTo(i % 2 == 0 ? null : "value" + i);
+        }
+    }
+
+    @Test
+    void reusesPagesOfDeletedNodes() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 300; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+        int pageCount = handler.getPageFile().getPageCount();
+
+        for (int i = 0; i < 300; i++) {
+            tree.remove("key" + i);
+        }
+        for (int i = 0; i < 300; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+
+        assertThat(handler.getPageFile().getPageCount()).isLessThanOrEqualTo(pageCount + 1);
+    }
+
+    @Test
+    void keepsNodeIdsDenseAcrossRestarts() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 300; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+        Set<Integer> ids = handler.getPageFile().getChunkIds();
+        assertThat(ids).isEqualTo(IntStream.rangeClosed(1, ids.size()).boxed().collect(Collectors.toSet()));
+
+        for (int i = 0; i < 300; i += 2) {
+            tree.remove("key" + i);
+        }
+
+        handler.close();
+        handler = new PersistentBTreePagedStorageHandler<>("database", false, 16, 256);
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+        Set<Integer> remaining = handler.getPageFile().getChunkIds();
+        assertThat(handler.getPageFile().getSuperblock().getNextNodeId()).isEqualTo(ids.size() + 1);
+
+        // Ids of the deleted nodes are allocated before new ones
+        assertThat(handler.allocateNodeId()).isIn(ids).isNotIn(remaining);
+    }
+
+    @Test
+    void rollsBackTransactions() throws StorageException, PersistentBTreeException {
+        tree = new PersistentBTree<>(3, handler, false);
+        for (int i = 0; i < 100; i++) {
+            tree.insert("key" + i, "value" + i);
+        }
+
+        for (int i = 0; i < 100; i++) {
+            handler.beginTransaction();
+            if (i % 2 == 0) {
+                tree.remove("key" + i);
+            } else {
+                tree.insert("other" + i, "value" + i);
+            }
+            tree.setRoot(handler.rollbackTransaction());
+
+            assertThat(TreeValidator.validTree(tree)).isTrue();
+            assertThat(tree.search("key" + i)).isEqualTo("value" + i);
+            assertThat(tree.search("other" + i)).isNull();
+        }
+    }
+
+    @Test
+    void searchesMemoryMappedFile() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 300; i++) {
+            tree.insert(String.format("key%03d", i), "value" + i);
+        }
+
+        handler.close();
+        handler = new PersistentBTreePagedStorageHandler<>("database", false, 16, 256, true);
+        tree = new PersistentBTree<>(3, handler.load(), handler);
+
+        for (int i = 0; i < 300; i++) {
+            assertThat(tree.search(String.format("key%03d", i))).isEqualTo("value" + i);
+        }
+        assertThat(tree.search("key")).isNull();
+        assertThat(tree.searchRange("key100", "key199")).hasSize(100);
+
+        // Searches after changes must not read stale pages
+        tree.remove("key150");
+        tree.insert("key150a", "new");
+        tree.insert("key001", "changed");
+        assertThat(tree.search("key150")).isNull();
+        assertThat(tree.search("key150a")).isEqualTo("new");
+        assertThat(tree.search("key001")).isEqualTo("changed");
+        assertThat(tree.searchRange("key100", "key199")).hasSize(100);
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+    }
+
+}
@@ -0,0 +1,144 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestSnapshot {
+
+    private PersistentBTree<String> tree;
+    private PersistentBTreeDiskStorageHandler<String> handler;
+
+    @BeforeEach
+    void createTree(@TempDir Path folder) throws StorageException {
+        handler = new PersistentBTreeDiskStorageHandler<>(folder.toString(), true);
+        tree = new PersistentBTree<>(3, handler);
+    }
+
+    @AfterEach
+    void closeTree() throws StorageException {
+        // Committed pages are written in the background until the handler is closed
+        tree.close();
+        handler.close();
+    }
+
+    @Test
+    void readsStateWhenTaken() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 200; i += 2) {
+            tree.insert(key(i), "old");
+        }
+
+        try (Snapshot<String> snapshot = tree.snapshot()) {
+            for (int i = 0; i < 200; i++) {
+                if (i % 2 == 0) {
+                    tree.remove(key(i));
+                } else {
+                    tree.insert(key(i), "new");
+                }
+            }
+            tree.insert(key(10), "new");
+
+            assertThat(snapshot.search(key(10))).isEqualTo("old");
+            assertThat(snapshot.search(key(11))).isNull();
+            assertThat(snapshot.searchRange(key(0), key(199))).extracting(pair -> pair.value).hasSize(100)
+                    .containsOnly("old");
+
+            List<String> iterated = new ArrayList<>();
+            snapshot.iterateRange(key(50), key(99)).forEachRemaining(pair -> iterated.add(pair.key));
+            assertThat(iterated).containsExactlyElementsOf(evenKeys(50, 99));
+        }
+
+        assertThat(tree.search(key(10))).isEqualTo("new");
+        assertThat(tree.search(key(11))).isEqualTo("new");
+        assertThat(TreeValidator.validTree(tree)).isTrue();
+    }
+
+    @Test
+    void readsConsistentlyWhileWritersRun() throws Exception {
+        for (int i = 0; i < 500; i++) {
+            tree.insert(key(i), "0");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (int round = 1; round <= 5; round++) {
+                    for (int i = 0; i < 500; i++) {
+                        tree.insert(key(i), Integer.toString(round));
+                    }
+                }
+                return null;
+            });
+
+            // Every snapshot sees the values of whole rounds, never a mix of more than two
+            while (!writer.isDone()) {
+                try (Snapshot<String> snapshot = tree.snapshot()) {
+                    List<Pair<String>> elements = snapshot.searchRange(key(0), key(499));
+                    assertThat(elements).hasSize(500);
+
+                    List<Integer> rounds = elements.stream().map(pair -> Integer.parseInt(pair.value))
+                            .collect(Collectors.toList());
+                    int first = rounds.get(0);
+                    assertThat(rounds).isSortedAccordingTo((a, b) -> b - a).allMatch(r -> r >= first - 1);
+                    assertThat(snapshot.search(key(0))).isEqualTo(Integer.toString(first));
+                }
+            }
+            writer.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertThat(tree.getVersionedNodeCount()).isZero();
+    }
+
+    @Test
+    void reclaimsVersionsWhenClosed() throws StorageException, PersistentBTreeException {
+        for (int i = 0; i < 100; i++) {
+            tree.insert(key(i), "old");
+        }
+
+        Snapshot<String> snapshot = tree.snapshot();
+        for (int i = 0; i < 100; i++) {
+            tree.insert(key(i), "new");
+        }
+        assertThat(tree.getVersionedNodeCount()).isPositive();
+
+        snapshot.close();
+        assertThat(tree.getVersionedNodeCount()).isZero();
+        assertThatThrownBy(() -> snapshot.search(key(0))).isInstanceOf(PersistentBTreeException.class);
+
+        // Without open snapshots, writers don't keep versions
+        tree.insert(key(0), "newer");
+        assertThat(tree.getVersionedNodeCount()).isZero();
+    }
+
+    private static String key(int i) {
+        return String.format("key%03d", i);
+    }
+
+    private static List<String> evenKeys(int from, int to) {
+        List<String> keys = new ArrayList<>();
+        for (int i = from; i <= to; i++) {
+            if (i % 2 == 0) {
+                keys.add(key(i));
+            }
+        }
+        return keys;
+    }
+
+}
@@ -9,7 +9,6 @@ import org.junit.jupiter.api.Test;
 
 import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
 import de.tum.i13.server.persistentstorage.btree.io.StorageException;
-import de.tum.i13.server.persistentstorage.btree.io.transactions.ChangeListenerImpl;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -21,7 +20,6 @@ public class TestTransactions {
     private PersistentBTree<String> tree;
     private static PersistentBTreeDisplay<String> display;
     private static PersistentBTreeDiskStorageHandler<String> sHandler;
-    private static ChangeListenerImpl cHandler;
 
     @BeforeAll
     public static void setLogLevel() {
@@ -31,8 +29,7 @@ public class TestTransactions {
 
     @BeforeEach
     public void createTree() throws StorageException {
-        cHandler = new ChangeListenerImpl("database");
-        sHandler = new PersistentBTreeDiskStorageHandler<>("database", true, cHandler);
+        sHandler = new PersistentBTreeDiskStorageHandler<>("database", true);
         tree = new PersistentBTree<>(3, sHandler, false);
     }
 
@@ -64,7 +61,6 @@ public class TestTransactions {
         assertThat(validTree).isTrue();
         assertThat(after).isEqualTo(before);
         tree.insert(key, value);
-        cHandler.reset();
     }
 
     private void doManualDelTransRolTransCycle(String key) throws StorageException, PersistentBTreeException {
@@ -79,7 +75,6 @@ public class TestTransactions {
         assertThat(TreeValidator.validTree(tree)).isTrue();
         assertThat(after).isEqualTo(before);
         tree.remove(key);
-        cHandler.reset();
     }
 
     @Test
@@ -144,7 +139,6 @@ public class TestTransactions {
         tree.insert("L", "A");
         tree.insert("M", "A");
         tree.insert("N", "A");
-        cHandler.reset();
 
         this.doManualDelTransRolTransCycle("A");
         this.doManualDelTransRolTransCycle("B");
@@ -174,7 +168,6 @@ public class TestTransactions {
                 tree.insert(c + "", c + "");
                 assertThat(TreeValidator.validTree(tree)).isTrue();
             }
-            cHandler.reset();
 
             StringBuilder sb1 = new StringBuilder();
 
@@ -0,0 +1,118 @@
+package de.tum.i13.server.persistentstorage.btree;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.PersistentBTreeDiskStorageHandler;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.server.persistentstorage.btree.io.chunk.ChunkSerializer;
+import de.tum.i13.shared.Constants;
+import de.tum.i13.shared.hashing.MD5HashAlgorithm;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Compares the size on disk and the read latency of a
+ * {@link BTreePersistentStorage} storing email-like values with and without
+ * value compression. The buffer pool is disabled, so every read decodes the
+ * pages from their files. Run with
+ * {@code java ValueCompressionBenchmark [values] [reads]}.
+ */
+public class ValueCompressionBenchmark {
+
+    private static final Path FOLDER = Paths.get("database_compression_benchmark");
+    private static final int MINIMUM_DEGREE = 15;
+    private static final int[] THRESHOLDS = {ChunkSerializer.NO_COMPRESSION, 1024};
+
+    private static final String[] WORDS = {"the", "meeting", "is", "moved", "to", "thursday", "please", "find",
+            "attached", "report", "regards", "team", "project", "deadline", "budget", "review", "and", "of", "for",
+            "we", "will", "discuss", "next", "steps", "customer", "feedback", "on", "release", "thanks", "all"};
+
+    public static void main(String[] args) throws Exception {
+        int values = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int reads = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        Configurator.setRootLevel(Level.WARN);
+
+        String[] bodies = new String[values];
+        Random random = new Random(42);
+        long rawBytes = 0;
+        for (int i = 0; i < values; i++) {
+            bodies[i] = emailBody(random, 1 + random.nextInt(Constants.MAX_VALUE_SIZE_BYTES - 1));
+            rawBytes += bodies[i].length();
+        }
+        System.out.printf("%d values, %.1f MiB of raw values%n", values, rawBytes / 1024.0 / 1024.0);
+
+        System.out.printf("%10s %16s %16s%n", "threshold", "on disk (MiB)", "get (us/op)");
+        for (int threshold : THRESHOLDS) {
+            long size = load(bodies, threshold);
+            // Warm up before measuring
+            read(values, reads / 10, threshold);
+            double latency = read(values, reads, threshold);
+            System.out.printf("%10d %16.1f %16.1f%n", threshold, size / 1024.0 / 1024.0, latency / 1000);
+        }
+
+        StorageUtils.deleteFile(FOLDER);
+    }
+
+    private static String emailBody(Random random, int length) {
+        StringBuilder body = new StringBuilder(length + 16);
+        while (body.length() < length) {
+            body.append(WORDS[random.nextInt(WORDS.length)]).append(random.nextInt(12) == 0 ? ".\n" : " ");
+        }
+        return body.substring(0, length);
+    }
+
+    private static BTreePersistentStorage open(boolean reset, int threshold) throws Exception {
+        PersistentBTreeDiskStorageHandler<Pair<String>> handler = new PersistentBTreeDiskStorageHandler<>(
+                FOLDER.toString(), reset, 0);
+        handler.setValueCompressionThreshold(threshold);
+        return new BTreePersistentStorage(MINIMUM_DEGREE, handler, new MD5HashAlgorithm());
+    }
+
+    /**
+     * Store all values in a new tree and return its size on disk
+     */
+    private static long load(String[] bodies, int threshold) throws Exception {
+        try (BTreePersistentStorage storage = open(true, threshold)) {
+            for (int i = 0; i < bodies.length; i++) {
+                storage.put("key" + i, bodies[i]);
+            }
+        }
+
+        try (Stream<Path> files = Files.walk(FOLDER)) {
+            return files.filter(Files::isRegularFile).mapToLong(ValueCompressionBenchmark::size).sum();
+        }
+    }
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double read(int values, int reads, int threshold) throws Exception {
+        Random random = new Random(7);
+        long checksum = 0;
+
+        try (BTreePersistentStorage storage = open(false, threshold)) {
+            long start = System.nanoTime();
+            for (int i = 0; i < reads; i++) {
+                checksum += storage.get("key" + random.nextInt(values)).getValue().length();
+            }
+
+            long elapsed = System.nanoTime() - start;
+            if (checksum == -1) {
+                System.out.println(checksum);
+            }
+            return (double) elapsed / reads;
+        }
+    }
+
+}
@@ -0,0 +1,80 @@
+package de.tum.i13.server.persistentstorage.btree.chunk;
+
+import java.util.Random;
+
+/**
+ * Compares searches in a {@link ChunkImpl}, which uses binary search and a
+ * stored element count, with the linear scan over all positions it replaced.
+ * Run with {@code java ChunkSearchBenchmark [lookups]}.
+ */
+public class ChunkSearchBenchmark {
+
+    private static final int[] MINIMUM_DEGREES = {2, 50, 500};
+
+    public static void main(String[] args) {
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Random random = new Random(42);
+
+        System.out.printf("%8s %16s %16s %10s%n", "t", "linear (ns/op)", "binary (ns/op)", "speedup");
+        for (int minimumDegree : MINIMUM_DEGREES) {
+            int size = 2 * minimumDegree - 1;
+            Chunk<String> chunk = new ChunkImpl<>(minimumDegree);
+            for (int i = 0; i < size; i++) {
+                chunk.set(i, new Pair<>(key(2 * i), "value"));
+            }
+
+            String[] probes = new String[1024];
+            for (int i = 0; i < probes.length; i++) {
+                probes[i] = key(random.nextInt(2 * size + 1));
+            }
+
+            // Warm up both variants before measuring
+            run(chunk, probes, lookups, false);
+            run(chunk, probes, lookups, true);
+
+            double linear = run(chunk, probes, lookups, false);
+            double binary = run(chunk, probes, lookups, true);
+            System.out.printf("%8d %16.1f %16.1f %9.1fx%n", minimumDegree, linear, binary, linear / binary);
+        }
+    }
+
+    private static String key(int i) {
+        return String.format("key%08d", i);
+    }
+
+    private static double run(Chunk<String> chunk, String[] probes, int lookups, boolean binary) {
+        long checksum = 0;
+        long start = System.nanoTime();
+
+        for (int i = 0; i < lookups; i++) {
+            String probe = probes[i & (probes.length - 1)];
+            checksum += binary ? chunk.findIndexOfFirstGreaterOrEqualThen(probe) : linearSearch(chunk, probe);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        if (checksum == -1) {
+            System.out.println(checksum);
+        }
+        return (double) elapsed / lookups;
+    }
+
+    /**
+     * Search as chunks did before: count the non-null positions, then scan the
+     * elements in order
+     */
+    private static int linearSearch(Chunk<String> chunk, String key) {
+        int n = 0;
+        for (Pair<String> pair : chunk.getElements()) {
+            if (pair != null) {
+                n++;
+            }
+        }
+
+        int i = 0;
+        while (i < n && key.compareTo(chunk.get(i).key) > 0)
+            i++;
+
+        return i;
+    }
+
+}
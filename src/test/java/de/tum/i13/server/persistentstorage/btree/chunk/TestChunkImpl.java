@@ -0,0 +1,64 @@
+package de.tum.i13.server.persistentstorage.btree.chunk;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestChunkImpl {
+
+    private static Chunk<String> chunkOf(String... keys) {
+        Chunk<String> chunk = new ChunkImpl<>(3);
+        for (int i = 0; i < keys.length; i++) {
+            chunk.set(i, new Pair<>(keys[i], keys[i]));
+        }
+        return chunk;
+    }
+
+    @Test
+    void findsIndexesWithBinarySearch() {
+        Chunk<String> chunk = chunkOf("b", "d", "f");
+
+        assertThat(chunk.findIndexOfFirstGreaterOrEqualThen("a")).isZero();
+        assertThat(chunk.findIndexOfFirstGreaterOrEqualThen("d")).isEqualTo(1);
+        assertThat(chunk.findIndexOfFirstGreaterOrEqualThen("e")).isEqualTo(2);
+        assertThat(chunk.findIndexOfFirstGreaterOrEqualThen("g")).isEqualTo(3);
+        assertThat(chunk.findIndexOfFirstGreaterThen("d")).isEqualTo(2);
+        assertThat(chunk.findIndexOfFirstGreaterThen("f")).isEqualTo(3);
+        assertThat(chunkOf().findIndexOfFirstGreaterOrEqualThen("a")).isZero();
+    }
+
+    @Test
+    void keepsElementCount() {
+        Chunk<String> chunk = chunkOf("b", "d", "f");
+        assertThat(chunk.getElementCount()).isEqualTo(3);
+
+        chunk.set(1, new Pair<>("c", "c"));
+        assertThat(chunk.getElementCount()).isEqualTo(3);
+
+        chunk.remove(2);
+        assertThat(chunk.getElementCount()).isEqualTo(2);
+
+        chunk.shiftLeftOne(0);
+        assertThat(chunk.getElementCount()).isEqualTo(1);
+        assertThat(chunk.get(0).key).isEqualTo("c");
+
+        assertThat(new ChunkImpl<>(chunk).getElementCount()).isEqualTo(1);
+        assertThat(new ChunkImpl<>(3, Arrays.asList(new Pair<>("a", "a"), null)).getElementCount()).isEqualTo(1);
+    }
+
+    @Test
+    void shiftsAfterFirstGreaterKey() {
+        Chunk<String> chunk = chunkOf("b", "d", "f");
+
+        int i = chunk.shiftRightOneAfterFirstGreaterThan("c");
+        chunk.set(i, new Pair<>("c", "c"));
+        chunk.shiftRightOne(0);
+        chunk.set(0, new Pair<>("a", "a"));
+
+        assertThat(chunk.getElements()).extracting(pair -> pair.key).containsExactly("a", "b", "c", "d", "f");
+        assertThat(chunk.getElementCount()).isEqualTo(5);
+    }
+
+}
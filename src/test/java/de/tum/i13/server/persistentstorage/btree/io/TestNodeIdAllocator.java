@@ -0,0 +1,43 @@
+package de.tum.i13.server.persistentstorage.btree.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestNodeIdAllocator {
+
+    @Test
+    void allocatesIncreasingIdsAndReusesReleasedOnes() throws StorageException {
+        NodeIdAllocator allocator = new NodeIdAllocator(NodeIdAllocator.FIRST_ID, List.of());
+        assertThat(allocator.allocate()).isEqualTo(1);
+        assertThat(allocator.allocate()).isEqualTo(2);
+        assertThat(allocator.allocate()).isEqualTo(3);
+
+        allocator.release(2);
+        assertThat(allocator.allocate()).isEqualTo(2);
+        assertThat(allocator.allocate()).isEqualTo(4);
+        assertThat(allocator.getNextId()).isEqualTo(5);
+    }
+
+    @Test
+    void releasesUnusedIdsOfStoredTree() throws StorageException {
+        NodeIdAllocator allocator = new NodeIdAllocator(5, List.of(1, 3, 4));
+        assertThat(allocator.allocate()).isEqualTo(2);
+        assertThat(allocator.allocate()).isEqualTo(5);
+    }
+
+    @Test
+    void skipsIdsStoredAfterSuperblock() throws StorageException {
+        // Ids of pages written after the last checkpoint or derived from hash codes by previous versions
+        NodeIdAllocator allocator = new NodeIdAllocator(3, List.of(1, 2, 3, 4, 7, -12));
+        assertThat(allocator.allocate()).isEqualTo(5);
+        assertThat(allocator.allocate()).isEqualTo(6);
+        assertThat(allocator.allocate()).isEqualTo(8);
+
+        allocator.release(7);
+        assertThat(allocator.allocate()).isEqualTo(7);
+    }
+
+}
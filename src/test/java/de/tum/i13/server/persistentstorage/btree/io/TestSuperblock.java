@@ -0,0 +1,66 @@
+package de.tum.i13.server.persistentstorage.btree.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestSuperblock {
+
+    @Test
+    void serializesRootNextNodeIdAndCheckpoint() throws StorageException {
+        Superblock superblock = Superblock.deserialize(new Superblock(7, 42, 1L << 40).serialize());
+        assertThat(superblock.getRootId()).isEqualTo(7);
+        assertThat(superblock.getNextNodeId()).isEqualTo(42);
+        assertThat(superblock.getCheckpointSequence()).isEqualTo(1L << 40);
+
+        assertThat(Superblock.deserialize(new Superblock(null, 1).serialize()).getRootId()).isNull();
+    }
+
+    @Test
+    void readsSuperblocksOfPreviousVersion() throws StorageException {
+        ByteBuffer buffer = ByteBuffer.allocate(18);
+        buffer.putInt(Superblock.MAGIC).put((byte) 1).put((byte) 1).putInt(-1234);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Superblock superblock = Superblock.deserialize(buffer.array());
+        assertThat(superblock.getRootId()).isEqualTo(-1234);
+        assertThat(superblock.getNextNodeId()).isEqualTo(NodeIdAllocator.FIRST_ID);
+        assertThat(superblock.getCheckpointSequence()).isZero();
+    }
+
+    @Test
+    void serializesFormatFlags() throws StorageException {
+        Superblock superblock = new Superblock(7, 42, 3).withFlags(Superblock.BINARY_KEYS);
+        Superblock read = Superblock.deserialize(superblock.serialize());
+        assertThat(read.getFlags()).isEqualTo(Superblock.BINARY_KEYS);
+        assertThat(read.getCheckpointSequence()).isEqualTo(3);
+    }
+
+    @Test
+    void readsSuperblocksWithoutFlags() throws StorageException {
+        ByteBuffer buffer = ByteBuffer.allocate(Superblock.LENGTH);
+        buffer.putInt(Superblock.MAGIC).put((byte) 3).put((byte) 1).putInt(7).putInt(42).putLong(5);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+
+        Superblock superblock = Superblock.deserialize(buffer.array());
+        assertThat(superblock.getNextNodeId()).isEqualTo(42);
+        assertThat(superblock.getCheckpointSequence()).isEqualTo(5);
+        assertThat(superblock.getFlags()).isZero();
+    }
+
+    @Test
+    void rejectsCorruptedSuperblocks() {
+        byte[] data = new Superblock(7, 42).serialize();
+        data[10] ^= 1;
+        assertThatThrownBy(() -> Superblock.deserialize(data)).isInstanceOf(StorageException.class);
+    }
+
+}
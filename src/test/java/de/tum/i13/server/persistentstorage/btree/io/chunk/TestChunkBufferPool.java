@@ -0,0 +1,213 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.ChunkImpl;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestChunkBufferPool {
+
+    private CountingBackend backend;
+    private ChunkBufferPool<String> pool;
+
+    @BeforeEach
+    void createPool() {
+        backend = new CountingBackend();
+        for (int i = 0; i < 5; i++) {
+            backend.stored.put("c" + i, pageWith("c" + i));
+        }
+        pool = new ChunkBufferPool<>(3, backend);
+    }
+
+    private static NodePage<String> pageWith(String key) {
+        Chunk<String> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>(key, key)));
+        return new NodePage<>(true, Arrays.asList(null, null, null, null), chunk);
+    }
+
+    private Chunk<String> read(String chunkId) throws StorageException {
+        Chunk<String> chunk = pool.pin(chunkId).getChunk();
+        pool.unpin(chunkId, false);
+        return chunk;
+    }
+
+    @Test
+    void residentChunksAreNotReadAgain() throws StorageException {
+        read("c0");
+        read("c0");
+        read("c1");
+        read("c0");
+
+        assertThat(backend.reads).isEqualTo(2);
+        assertThat(pool.size()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsWhenFull() throws StorageException {
+        for (int i = 0; i < 5; i++) {
+            read("c" + i);
+        }
+
+        assertThat(pool.size()).isEqualTo(3);
+        assertThat(backend.reads).isEqualTo(5);
+    }
+
+    @Test
+    void referencedChunksGetSecondChance() throws StorageException {
+        read("c0");
+        read("c1");
+        read("c2");
+        // Sweeps all reference bits and evicts c0
+        read("c3");
+        // c1 is referenced again, so c2 is the next victim
+        read("c1");
+        read("c4");
+
+        int reads = backend.reads;
+        read("c1");
+        assertThat(backend.reads).isEqualTo(reads);
+        read("c2");
+        assertThat(backend.reads).isEqualTo(reads + 1);
+    }
+
+    @Test
+    void pinnedChunksAreNotEvicted() throws Exception {
+        pool.pin("c0");
+        pool.pin("c1");
+        pool.pin("c2");
+
+        // The pin waits for a frame instead of failing
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<NodePage<String>> waiting = executor.submit(() -> pool.pin("c3"));
+            assertThatThrownBy(() -> waiting.get(100, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+
+            pool.unpin("c1", false);
+            assertThat(waiting.get(10, TimeUnit.SECONDS).getChunk().get(0).key).isEqualTo("c3");
+            assertThat(read("c0").get(0).key).isEqualTo("c0");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void servesMoreConcurrentReadersThanFrames() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<Chunk<String>>> reads = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String chunkId = "c" + (i % 5);
+                reads.add(executor.submit(() -> read(chunkId)));
+            }
+
+            for (int i = 0; i < reads.size(); i++) {
+                assertThat(reads.get(i).get(10, TimeUnit.SECONDS).get(0).key).isEqualTo("c" + (i % 5));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void readsChunksWithoutLockingThePool() throws Exception {
+        read("c0");
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        backend.blockedChunk = "c1";
+        backend.reading = reading;
+        backend.release = release;
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Chunk<String>> slowRead = executor.submit(() -> read("c1"));
+            assertThat(reading.await(10, TimeUnit.SECONDS)).isTrue();
+
+            // Resident chunks are served while another chunk loads
+            assertThat(read("c0").get(0).key).isEqualTo("c0");
+
+            release.countDown();
+            assertThat(slowRead.get(10, TimeUnit.SECONDS).get(0).key).isEqualTo("c1");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void dirtyChunksAreWrittenBackOnEvictionAndFlush() throws StorageException {
+        pool.put("c0", pageWith("new0"));
+        pool.put("c1", pageWith("new1"));
+        assertThat(backend.writes).isZero();
+
+        read("c2");
+        read("c3");
+        assertThat(backend.writes).isEqualTo(1);
+
+        pool.flush();
+        assertThat(backend.writes).isEqualTo(2);
+        assertThat(backend.stored.get("c0").getChunk().get(0).key).isEqualTo("new0");
+        assertThat(backend.stored.get("c1").getChunk().get(0).key).isEqualTo("new1");
+
+        pool.flush();
+        assertThat(backend.writes).isEqualTo(2);
+    }
+
+    @Test
+    void invalidatedChunksAreDroppedWithoutWriteBack() throws StorageException {
+        pool.put("c0", pageWith("new0"));
+        pool.invalidate(Arrays.asList("c0"));
+        pool.flush();
+
+        assertThat(backend.writes).isZero();
+        assertThat(read("c0").get(0).key).isEqualTo("c0");
+    }
+
+    private static class CountingBackend implements ChunkBufferPool.Backend<String> {
+
+        private final Map<String, NodePage<String>> stored = new ConcurrentHashMap<>();
+        private final AtomicInteger readCount = new AtomicInteger();
+        private int reads;
+        private int writes;
+        private volatile String blockedChunk; // read of this chunk waits for release
+        private volatile CountDownLatch reading;
+        private volatile CountDownLatch release;
+
+        @Override
+        public NodePage<String> read(String chunkId) throws StorageException {
+            reads = readCount.incrementAndGet();
+            if (chunkId.equals(blockedChunk)) {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new StorageException(e, "Interrupted");
+                }
+            }
+            return stored.get(chunkId);
+        }
+
+        @Override
+        public void write(String chunkId, NodePage<String> page) {
+            writes++;
+            stored.put(chunkId, page);
+        }
+
+    }
+
+}
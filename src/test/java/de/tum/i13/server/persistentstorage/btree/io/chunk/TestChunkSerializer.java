@@ -0,0 +1,186 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.ChunkImpl;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestChunkSerializer {
+
+    private static <V> NodePage<V> leafPage(Chunk<V> chunk) {
+        return new NodePage<>(true, Arrays.asList(null, null, null, null), chunk);
+    }
+
+    @Test
+    void roundTripsStringValues() throws StorageException {
+        Chunk<String> chunk = new ChunkImpl<>(3, Arrays.asList(new Pair<>("a", "1"), new Pair<>("b", "ümlaut")));
+
+        Chunk<String> read = ChunkSerializer.<String>deserialize(ChunkSerializer.serialize(leafPage(chunk)))
+                .getChunk();
+
+        assertThat(read.getElements()).containsExactlyElementsOf(chunk.getElements());
+        assertThat(read.getElementCount()).isEqualTo(2);
+    }
+
+    @Test
+    void roundTripsPairValues() throws StorageException {
+        Chunk<Pair<String>> chunk = new ChunkImpl<>(2,
+                Arrays.asList(new Pair<>("hash", new Pair<>("key", "value"))));
+
+        Chunk<Pair<String>> read = ChunkSerializer.<Pair<String>>deserialize(
+                ChunkSerializer.serialize(leafPage(chunk))).getChunk();
+
+        assertThat(read.get(0)).isEqualTo(chunk.get(0));
+        assertThat(read.getElements()).hasSize(3);
+    }
+
+    @Test
+    void rejectsCorruptedData() throws StorageException {
+        Chunk<String> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a", "1")));
+        byte[] data = ChunkSerializer.serialize(leafPage(chunk));
+        data[data.length / 2] ^= 0x1;
+
+        assertThatThrownBy(() -> ChunkSerializer.deserialize(data)).isInstanceOf(StorageException.class);
+    }
+
+    @Test
+    void roundTripsNodeMetadata() throws StorageException {
+        Chunk<String> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a", "1")));
+        NodePage<String> page = new NodePage<>(false, Arrays.asList(7, -3, null, null), chunk);
+
+        NodePage<String> read = ChunkSerializer.deserialize(ChunkSerializer.serialize(page));
+
+        assertThat(read.isLeaf()).isFalse();
+        assertThat(read.getChildrenIds()).containsExactly(7, -3, null, null);
+        assertThat(read.getChunk().getElements()).containsExactlyElementsOf(chunk.getElements());
+    }
+
+    @Test
+    void compressesLargeValues() throws StorageException {
+        String body = "Dear team, please find the minutes of today's meeting below.\n".repeat(200);
+        Random random = new Random(42);
+        byte[] noise = new byte[4096];
+        random.nextBytes(noise);
+        String incompressible = new String(noise, StandardCharsets.ISO_8859_1);
+        Chunk<Pair<String>> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a", new Pair<>("key a", body)),
+                new Pair<>("b", new Pair<>("key b", "small")), new Pair<>("c", new Pair<>("key c", incompressible))));
+        NodePage<Pair<String>> page = new NodePage<>(true, Arrays.asList(null, null, null, null), chunk);
+
+        byte[] uncompressed = ChunkSerializer.serialize(page);
+        byte[] compressed = ChunkSerializer.serialize(page, 1024);
+
+        assertThat(compressed.length).isLessThan(uncompressed.length - body.length() / 2);
+        assertThat(ChunkSerializer.<Pair<String>>deserialize(compressed).getChunk().getElements())
+                .containsExactlyElementsOf(chunk.getElements());
+
+        NodePageView<Pair<String>> view = new NodePageView<>(ByteBuffer.wrap(compressed));
+        assertThat(view.getKey(2)).isEqualTo("c");
+        assertThat(view.getValue(0)).isEqualTo(chunk.get(0).value);
+        assertThat(view.getValue(2)).isEqualTo(chunk.get(2).value);
+    }
+
+    @Test
+    void readsPagesOfPreviousVersion() throws StorageException {
+        Chunk<String> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a", "1")));
+        byte[] data = ChunkSerializer.serialize(leafPage(chunk));
+
+        // Version 2 pages only differ in their version byte
+        data[Integer.BYTES] = 2;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - Integer.BYTES);
+        ByteBuffer.wrap(data).putInt(data.length - Integer.BYTES, (int) crc.getValue());
+
+        assertThat(ChunkSerializer.<String>deserialize(data).getChunk().getElements())
+                .containsExactlyElementsOf(chunk.getElements());
+    }
+
+    @Test
+    void writesLatin1KeysWithOneBytePerCharacter() throws StorageException {
+        String hashKey = new String(new byte[]{(byte) 0x9a, (byte) 0xff, 0x00, (byte) 0xe9, 0x41, (byte) 0x80,
+                0x12, 0x34, (byte) 0xc3, (byte) 0xa9, 0x7f, (byte) 0xfe, 0x01, 0x02, 0x03, 0x04},
+                StandardCharsets.ISO_8859_1);
+        Chunk<String> hashChunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>(hashKey, "1"),
+                new Pair<>("\u20ac", "2")));
+        Chunk<String> asciiChunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a".repeat(16), "1"),
+                new Pair<>("\u20ac", "2")));
+
+        byte[] data = ChunkSerializer.serialize(leafPage(hashChunk));
+
+        assertThat(data).hasSameSizeAs(ChunkSerializer.serialize(leafPage(asciiChunk)));
+        assertThat(ChunkSerializer.<String>deserialize(data).getChunk().getElements())
+                .containsExactlyElementsOf(hashChunk.getElements());
+        NodePageView<String> view = new NodePageView<>(ByteBuffer.wrap(data));
+        assertThat(view.getKey(0)).isEqualTo(hashKey);
+        assertThat(view.getKey(1)).isEqualTo("\u20ac");
+        assertThat(view.compareKey(hashKey, 0)).isZero();
+        assertThat(view.compareKey("\u20ac", 1)).isZero();
+    }
+
+    @Test
+    void readsUtf8KeysOfPreviousVersion() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(ChunkSerializer.MAGIC);
+            out.writeByte(3);
+            out.writeBoolean(true);
+            out.writeInt(0);
+            out.writeInt(1);
+            out.writeByte(1);
+            byte[] key = "\u00e9".getBytes(StandardCharsets.UTF_8);
+            out.writeInt(key.length);
+            out.write(key);
+            out.writeByte(1);
+            out.writeInt(1);
+            out.write('1');
+            CRC32 crc = new CRC32();
+            crc.update(bytes.toByteArray());
+            out.writeInt((int) crc.getValue());
+        }
+        byte[] data = bytes.toByteArray();
+
+        assertThat(ChunkSerializer.<String>deserialize(data).getChunk().getElements())
+                .containsExactly(new Pair<>("\u00e9", "1"));
+        NodePageView<String> view = new NodePageView<>(ByteBuffer.wrap(data));
+        assertThat(view.getKey(0)).isEqualTo("\u00e9");
+        assertThat(view.compareKey("\u00e9", 0)).isZero();
+        assertThat(view.compareKey("\u00ea", 0)).isPositive();
+    }
+
+    @Test
+    void readsLegacyChunks(@TempDir Path folder) throws Exception {
+        Chunk<String> chunk = new ChunkImpl<>(2, Arrays.asList(new Pair<>("a", "1"), new Pair<>("b", "2")));
+        Path chunkPath = folder.resolve("chunk");
+        StorageUtils.writeObject(chunkPath, chunk);
+
+        Chunk<String> read = ChunkSerializer.deserializeChunk(Files.readAllBytes(chunkPath));
+        assertThat(read.getElements()).containsExactlyElementsOf(chunk.getElements());
+    }
+
+    @Test
+    void isSmallerThanJavaSerialization(@TempDir Path folder) throws Exception {
+        Chunk<String> chunk = new ChunkImpl<>(3, Arrays.asList(new Pair<>("a", "1"), new Pair<>("b", "2")));
+        Path legacyPath = folder.resolve("legacy");
+        Path binaryPath = folder.resolve("binary");
+        StorageUtils.writeObject(legacyPath, chunk);
+        StorageUtils.writePage(binaryPath, leafPage(chunk));
+
+        assertThat(Files.size(binaryPath)).isLessThan(Files.size(legacyPath) / 4);
+    }
+
+}
@@ -0,0 +1,70 @@
+package de.tum.i13.server.persistentstorage.btree.io.chunk;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Chunk;
+import de.tum.i13.server.persistentstorage.btree.chunk.ChunkImpl;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestNodePageView {
+
+    private static <V> NodePageView<V> viewOf(Chunk<V> chunk) throws StorageException {
+        NodePage<V> page = new NodePage<>(false, Arrays.asList(1, 2, 3, null, null, null), chunk);
+        return new NodePageView<>(ByteBuffer.wrap(ChunkSerializer.serialize(page)));
+    }
+
+    @Test
+    void readsElements() throws StorageException {
+        Chunk<Pair<String>> chunk = new ChunkImpl<>(3, Arrays.asList(
+                new Pair<>("a", new Pair<>("key a", "value a")),
+                new Pair<>("b", new Pair<>("key b", ""))));
+
+        NodePageView<Pair<String>> view = viewOf(chunk);
+
+        assertThat(view.isLeaf()).isFalse();
+        assertThat(view.getElementCount()).isEqualTo(2);
+        assertThat(view.getKey(1)).isEqualTo("b");
+        assertThat(view.getValue(0)).isEqualTo(new Pair<>("key a", "value a"));
+        assertThat(view.get(1)).isEqualTo(chunk.get(1));
+    }
+
+    @Test
+    void comparesKeysLikeStrings() throws StorageException {
+        // Includes characters whose UTF-8 order differs from their UTF-16 order
+        List<String> keys = Arrays.asList("", "A", "Ab", "a", "\u00e9", "\ue000", "\ud83d\ude00x",
+                "\ufffd");
+        List<String> probes = Arrays.asList("", "0", "A", "Aa", "Abc", "a", "b", "\u00e9", "\ue000",
+                "\ue001", "\ud83d\ude00", "\ud83d\ude00x", "\uffff");
+
+        for (String key : keys) {
+            NodePageView<String> view = viewOf(new ChunkImpl<>(2, Arrays.asList(new Pair<>(key, "value"))));
+
+            for (String probe : probes) {
+                assertThat(Integer.signum(view.compareKey(probe, 0)))
+                        .as("%s compared to %s", probe, key)
+                        .isEqualTo(Integer.signum(probe.compareTo(key)));
+            }
+        }
+    }
+
+    @Test
+    void findsIndexesLikeChunks() throws StorageException {
+        Chunk<String> chunk = new ChunkImpl<>(3, Arrays.asList(new Pair<>("b", "1"), new Pair<>("d", "2"),
+                new Pair<>("f", "3")));
+
+        NodePageView<String> view = viewOf(chunk);
+
+        for (String key : Arrays.asList("a", "b", "c", "d", "e", "f", "g")) {
+            assertThat(view.findIndexOfFirstGreaterOrEqualThen(key))
+                    .isEqualTo(chunk.findIndexOfFirstGreaterOrEqualThen(key));
+            assertThat(view.findIndexOfFirstGreaterThen(key)).isEqualTo(chunk.findIndexOfFirstGreaterThen(key));
+        }
+    }
+
+}
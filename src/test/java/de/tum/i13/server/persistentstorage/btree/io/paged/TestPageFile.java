@@ -0,0 +1,166 @@
+package de.tum.i13.server.persistentstorage.btree.io.paged;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.Superblock;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TestPageFile {
+
+    private static final int PAGE_SIZE = 64;
+
+    private static byte[] bytes(int length, int seed) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (seed + i);
+        }
+        return data;
+    }
+
+    @Test
+    void readsWrittenChunks(@TempDir Path folder) throws StorageException, IOException {
+        try (PageFile file = new PageFile(folder.resolve("pages"), PAGE_SIZE)) {
+            file.write(1, bytes(10, 1));
+            file.write(2, bytes(500, 2));
+
+            assertThat(file.read(1)).isEqualTo(bytes(10, 1));
+            assertThat(file.read(2)).isEqualTo(bytes(500, 2));
+            assertThat(file.read(3)).isNull();
+        }
+    }
+
+    @Test
+    void reopensClosedFile(@TempDir Path folder) throws StorageException, IOException {
+        try (PageFile file = new PageFile(folder.resolve("pages"), PAGE_SIZE, true)) {
+            file.write(1, bytes(10, 1));
+            file.close();
+
+            file.reopen();
+            file.write(2, bytes(500, 2));
+            assertThat(file.read(1)).isEqualTo(bytes(10, 1));
+            assertThat(file.read(2)).isEqualTo(bytes(500, 2));
+        }
+    }
+
+    @Test
+    void reusesFreedPages(@TempDir Path folder) throws StorageException, IOException {
+        try (PageFile file = new PageFile(folder.resolve("pages"), PAGE_SIZE)) {
+            file.write(1, bytes(500, 1));
+            int pageCount = file.getPageCount();
+
+            file.delete(1);
+            assertThat(file.getFreePageCount()).isEqualTo(pageCount - 1);
+
+            file.write(2, bytes(500, 2));
+            assertThat(file.getPageCount()).isEqualTo(pageCount);
+
+            // Rewrites need room for the new chain before the old one is freed
+            file.write(2, bytes(500, 3));
+            int rewrittenPageCount = file.getPageCount();
+            for (int i = 0; i < 10; i++) {
+                file.write(2, bytes(500, i));
+            }
+            assertThat(file.getPageCount()).isEqualTo(rewrittenPageCount);
+            assertThat(file.read(2)).isEqualTo(bytes(500, 9));
+        }
+    }
+
+    @Test
+    void rebuildsChunkLocationsOnOpen(@TempDir Path folder) throws StorageException, IOException {
+        Path path = folder.resolve("pages");
+
+        try (PageFile file = new PageFile(path, PAGE_SIZE)) {
+            for (int i = 0; i < 20; i++) {
+                file.write(i, bytes(i * 13, i));
+            }
+            file.delete(5);
+            file.write(7, bytes(3, 70));
+            file.setSuperblock(new Superblock(7));
+        }
+
+        try (PageFile file = new PageFile(path, PageFile.DEFAULT_PAGE_SIZE)) {
+            assertThat(file.getPageSize()).isEqualTo(PAGE_SIZE);
+            assertThat(file.getSuperblock().getRootId()).isEqualTo(7);
+            assertThat(file.contains(5)).isFalse();
+            assertThat(file.read(7)).isEqualTo(bytes(3, 70));
+
+            for (int i : Arrays.asList(0, 1, 10, 19)) {
+                assertThat(file.read(i)).isEqualTo(bytes(i * 13, i));
+            }
+        }
+    }
+
+    @Test
+    void memoryMappedReadsSeeWrites(@TempDir Path folder) throws StorageException, IOException {
+        Path path = folder.resolve("pages");
+
+        try (PageFile file = new PageFile(path, PAGE_SIZE)) {
+            file.write(1, bytes(10, 1));
+        }
+
+        try (PageFile file = new PageFile(path, PAGE_SIZE, true)) {
+            assertThat(file.isMemoryMapped()).isTrue();
+            assertThat(file.read(1)).isEqualTo(bytes(10, 1));
+
+            // Pages appended after the file was mapped
+            for (int i = 2; i < 50; i++) {
+                file.write(i, bytes(i * 7, i));
+            }
+            file.write(1, bytes(20, 5));
+
+            assertThat(file.read(1)).isEqualTo(bytes(20, 5));
+            for (int i = 2; i < 50; i++) {
+                assertThat(file.read(i)).isEqualTo(bytes(i * 7, i));
+            }
+
+            ByteBuffer view = file.readView(1);
+            assertThat(view.isReadOnly()).isTrue();
+            assertThat(view.remaining()).isEqualTo(20);
+        }
+    }
+
+    @Test
+    void verifiesEachVersionOfAChunkOnce(@TempDir Path folder) throws StorageException, IOException {
+        try (PageFile file = new PageFile(folder.resolve("pages"), PAGE_SIZE, true)) {
+            AtomicInteger verifications = new AtomicInteger();
+            PageFile.Verifier verifier = data -> verifications.incrementAndGet();
+
+            file.write(1, bytes(10, 1));
+            assertThat(file.readView(1, verifier).remaining()).isEqualTo(10);
+            file.readView(1, verifier);
+            assertThat(verifications).hasValue(1);
+
+            file.write(1, bytes(20, 2));
+            assertThat(file.readView(1, verifier).remaining()).isEqualTo(20);
+            file.readView(1, verifier);
+            assertThat(verifications).hasValue(2);
+
+            file.delete(1);
+            assertThat(file.readView(1, verifier)).isNull();
+            assertThat(verifications).hasValue(2);
+        }
+    }
+
+    @Test
+    void rejectedChunksAreVerifiedAgain(@TempDir Path folder) throws StorageException, IOException {
+        try (PageFile file = new PageFile(folder.resolve("pages"), PAGE_SIZE, true)) {
+            file.write(1, bytes(10, 1));
+
+            PageFile.Verifier rejecting = data -> {
+                throw new StorageException("Invalid chunk");
+            };
+            assertThatThrownBy(() -> file.readView(1, rejecting)).isInstanceOf(StorageException.class);
+            assertThatThrownBy(() -> file.readView(1, rejecting)).isInstanceOf(StorageException.class);
+        }
+    }
+
+}
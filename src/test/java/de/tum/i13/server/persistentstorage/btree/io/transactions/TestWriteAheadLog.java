@@ -0,0 +1,141 @@
+package de.tum.i13.server.persistentstorage.btree.io.transactions;
+
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestWriteAheadLog {
+
+    private static CommitRecord record(Integer rootId, String... chunkIds) {
+        Map<String, byte[]> pages = new LinkedHashMap<>();
+        for (String chunkId : chunkIds) {
+            pages.put(chunkId, chunkId.getBytes());
+        }
+        pages.put("deleted", null);
+        return new CommitRecord(rootId, pages);
+    }
+
+    @Test
+    void readsAppendedRecords(@TempDir Path folder) throws StorageException, IOException {
+        try (WriteAheadLog log = new WriteAheadLog(folder.resolve("wal"), 0)) {
+            log.append(record(1, "1", "2"));
+            log.append(record(null));
+
+            List<CommitRecord> records = log.readRecords();
+            assertThat(records).hasSize(2);
+            assertThat(records.get(0).getRootId()).isEqualTo(1);
+            assertThat(records.get(0).getPages()).containsOnlyKeys("1", "2", "deleted");
+            assertThat(records.get(0).getPages().get("2")).isEqualTo("2".getBytes());
+            assertThat(records.get(0).getPages().get("deleted")).isNull();
+            assertThat(records.get(1).getRootId()).isNull();
+        }
+    }
+
+    @Test
+    void dropsIncompleteRecordsOnOpen(@TempDir Path folder) throws StorageException, IOException {
+        Path file = folder.resolve("wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, 10)) {
+            log.append(record(1, "1"));
+            log.append(record(2, "2"));
+        }
+
+        // Simulate a crash in the middle of the last append
+        long size = Files.size(file);
+        try (SeekableByteChannel channel = Files.newByteChannel(file, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 3);
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, 10)) {
+            assertThat(log.readRecords()).extracting(CommitRecord::getRootId).containsExactly(1);
+
+            log.append(record(3, "3"));
+            assertThat(log.readRecords()).extracting(CommitRecord::getRootId).containsExactly(1, 3);
+        }
+    }
+
+    @Test
+    void tracksSyncedRecords(@TempDir Path folder) throws StorageException, IOException {
+        try (WriteAheadLog log = new WriteAheadLog(folder.resolve("wal"), 60_000)) {
+            AtomicInteger syncs = new AtomicInteger();
+            log.setSyncListener(syncs::incrementAndGet);
+
+            long first = log.append(record(1, "1"));
+            long second = log.append(record(2, "2"));
+            assertThat(second).isGreaterThan(first);
+            assertThat(log.isSynced(first)).isFalse();
+
+            log.sync(first);
+            assertThat(log.isSynced(second)).isTrue();
+            log.sync(second);
+            assertThat(syncs).hasValue(1);
+        }
+    }
+
+    @Test
+    void truncatesRecords(@TempDir Path folder) throws StorageException, IOException {
+        try (WriteAheadLog log = new WriteAheadLog(folder.resolve("wal"), 0)) {
+            log.append(record(1, "1"));
+            assertThat(log.isEmpty()).isFalse();
+
+            log.truncate();
+            assertThat(log.isEmpty()).isTrue();
+            assertThat(log.readRecords()).isEmpty();
+        }
+    }
+
+    @Test
+    void rotatesLogForCheckpoints(@TempDir Path folder) throws StorageException, IOException {
+        Path file = folder.resolve("wal");
+        long checkpointed;
+        try (WriteAheadLog log = new WriteAheadLog(file, 0)) {
+            log.append(record(1, "1"));
+            log.append(record(2, "2"));
+            checkpointed = log.getSequence();
+
+            assertThat(log.rotate()).isTrue();
+            assertThat(log.rotate()).isFalse();
+            log.append(record(3, "3"));
+
+            assertThat(log.readRecords()).extracting(CommitRecord::getRootId).containsExactly(1, 2, 3);
+            assertThat(log.readRecords(checkpointed)).extracting(CommitRecord::getRootId).containsExactly(3);
+        }
+
+        // A crash before the checkpoint finished leaves the sealed records behind
+        try (WriteAheadLog log = new WriteAheadLog(file, 0)) {
+            assertThat(log.readRecords()).extracting(CommitRecord::getRootId).containsExactly(1, 2, 3);
+
+            log.deleteSealed();
+            assertThat(log.readRecords()).extracting(CommitRecord::getRootId).containsExactly(3);
+            assertThat(Files.exists(folder.resolve("wal.sealed"))).isFalse();
+        }
+    }
+
+    @Test
+    void keepsSequenceWhenTruncated(@TempDir Path folder) throws StorageException, IOException {
+        Path file = folder.resolve("wal");
+        try (WriteAheadLog log = new WriteAheadLog(file, 0)) {
+            log.append(record(1, "1"));
+            log.append(record(2, "2"));
+            log.truncate();
+        }
+
+        try (WriteAheadLog log = new WriteAheadLog(file, 0)) {
+            assertThat(log.getSequence()).isEqualTo(2);
+            log.append(record(3, "3"));
+            assertThat(log.readRecords(2)).extracting(CommitRecord::getRootId).containsExactly(3);
+        }
+    }
+
+}
@@ -0,0 +1,110 @@
+package de.tum.i13.server.persistentstorage.btree.io.vlog;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TestValueLog {
+
+    @Test
+    void readsAppendedValuesAcrossSegments(@TempDir Path folder) throws StorageException {
+        List<ValuePointer> pointers = new ArrayList<>();
+        try (ValueLog log = new ValueLog(folder, 256)) {
+            for (int i = 0; i < 20; i++) {
+                pointers.add(log.append("key" + i, "value " + i + " ".repeat(40)));
+            }
+
+            assertThat(log.getSegmentCount()).isGreaterThan(1);
+            assertThat(log.readRecord(pointers.get(7))).isEqualTo(new Pair<>("key7", "value 7" + " ".repeat(40)));
+        }
+
+        try (ValueLog log = new ValueLog(folder, 256)) {
+            for (int i = 0; i < 20; i++) {
+                assertThat(log.read(pointers.get(i))).isEqualTo("value " + i + " ".repeat(40));
+            }
+
+            List<Pair<ValuePointer>> records = log.listRecords(1);
+            assertThat(records).extracting(record -> record.key).startsWith("key0", "key1");
+            assertThat(records.stream().map(record -> record.value).collect(Collectors.toList()))
+                    .containsExactlyElementsOf(pointers.subList(0, records.size()));
+        }
+    }
+
+    @Test
+    void collectsSegmentsWithGarbage(@TempDir Path folder) throws StorageException {
+        try (ValueLog log = new ValueLog(folder, 100)) {
+            ValuePointer first = log.append("a", "x".repeat(80));
+            ValuePointer second = log.append("b", "y".repeat(80));
+            assertThat(first.getSegmentId()).isNotEqualTo(second.getSegmentId());
+            assertThat(log.getCollectableSegments(0.5)).isEmpty();
+
+            log.markGarbage(first);
+            assertThat(log.getCollectableSegments(0.5)).containsExactly(first.getSegmentId());
+
+            log.deleteSegment(first.getSegmentId());
+            assertThat(log.read(first)).isNull();
+            assertThat(log.read(second)).isEqualTo("y".repeat(80));
+        }
+    }
+
+    @Test
+    void dropsIncompleteRecordsWhenOpened(@TempDir Path folder) throws StorageException, IOException {
+        ValuePointer pointer;
+        try (ValueLog log = new ValueLog(folder, ValueLog.DEFAULT_SEGMENT_SIZE)) {
+            pointer = log.append("key", "value");
+            log.append("torn", "value");
+        }
+
+        // Simulate a crash in the middle of the second append
+        try (FileChannel channel = FileChannel.open(folder.resolve("segment-1.vlog"), StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (ValueLog log = new ValueLog(folder, ValueLog.DEFAULT_SEGMENT_SIZE)) {
+            ValuePointer appended = log.append("other", "value");
+            assertThat(appended.getOffset()).isEqualTo(pointer.getOffset() + pointer.getLength());
+            assertThat(log.read(pointer)).isEqualTo("value");
+        }
+    }
+
+    @Test
+    void comparesRecordsWithoutReadingThem(@TempDir Path folder) throws StorageException {
+        try (ValueLog log = new ValueLog(folder, ValueLog.DEFAULT_SEGMENT_SIZE)) {
+            ValuePointer pointer = log.append("key", "value");
+
+            assertThat(ValueLog.isRecordOf(pointer, "key", "value")).isTrue();
+            assertThat(ValueLog.isRecordOf(pointer, "key", "valuf")).isFalse();
+            assertThat(ValueLog.isRecordOf(pointer, "key", "value!")).isFalse();
+            assertThat(ValuePointer.decode(pointer.encode())).isEqualTo(pointer);
+        }
+
+        // Pointers stored before pointers had checksums still point to their records
+        ValuePointer legacy = ValuePointer.decode("\u0000" + "1:0:24");
+        assertThat(legacy.getChecksum()).isEqualTo(ValuePointer.NO_CHECKSUM);
+        assertThat(legacy.encode()).isEqualTo("\u0000" + "1:0:24");
+    }
+
+    @Test
+    void escapesValuesThatLookLikePointers() {
+        ValuePointer pointer = new ValuePointer(3, 1024, 77, 12345);
+        String value = "\u0000" + "3:1024:77";
+
+        assertThat(ValuePointer.isPointer(pointer.encode())).isTrue();
+        assertThat(ValuePointer.decode(pointer.encode())).isEqualTo(pointer);
+        assertThat(ValuePointer.isPointer(ValuePointer.escape(value))).isFalse();
+        assertThat(ValuePointer.unescape(ValuePointer.escape(value))).isEqualTo(value);
+        assertThat(ValuePointer.unescape(ValuePointer.escape("plain"))).isEqualTo("plain");
+    }
+
+}
@@ -0,0 +1,76 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import de.tum.i13.server.kv.KVMessage;
+import de.tum.i13.server.persistentstorage.StorageKeys;
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import de.tum.i13.shared.hashing.HashingAlgorithm;
+import de.tum.i13.shared.hashing.MD5HashAlgorithm;
+import de.tum.i13.shared.persistentstorage.GetException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TestLSMPersistentStorage {
+
+    private static final Path FOLDER = Paths.get("database_lsm");
+
+    @AfterEach
+    public void deleteTree() throws StorageException {
+        StorageUtils.deleteFile(FOLDER);
+    }
+
+    @Test
+    void convertsHexadecimalKeysOfExistingTrees() throws IOException, StorageException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        try (LSMTree legacyTree = new LSMTree(FOLDER, true, LSMTree.DEFAULT_MEMTABLE_SIZE, 0)) {
+            for (int i = 0; i < 30; i++) {
+                String hexKey = HashingAlgorithm.padLeftZeros(hashAlg.hash("key" + i).toString(16), 32);
+                legacyTree.put(hexKey, new Pair<>("key" + i, "value" + i));
+            }
+        }
+
+        try (LSMPersistentStorage storage = new LSMPersistentStorage(FOLDER, false, LSMTree.DEFAULT_MEMTABLE_SIZE, 0,
+                hashAlg)) {
+            for (int i = 0; i < 30; i++) {
+                assertThat(storage.get("key" + i)).extracting(KVMessage::getValue, KVMessage::getStatus)
+                        .containsExactly("value" + i, KVMessage.StatusType.GET_SUCCESS);
+            }
+            assertThat(storage.getRange("0", "f".repeat(32))).hasSize(30);
+        }
+
+        try (LSMTree converted = new LSMTree(FOLDER, false, LSMTree.DEFAULT_MEMTABLE_SIZE, 0)) {
+            assertThat(converted.getRange(StorageKeys.lowest(128), StorageKeys.highest(128))).hasSize(30);
+            // The key format is stored in the manifest, not as an entry
+            assertThat(converted.getFormatFlags()).isNotZero();
+            assertThat(converted.getRange("", StorageKeys.highest(128))).hasSize(30);
+        }
+    }
+
+    @Test
+    void replacesKeyFormatMarkerOfExistingTrees() throws IOException, StorageException, GetException {
+        HashingAlgorithm hashAlg = new MD5HashAlgorithm();
+        try (LSMTree legacyTree = new LSMTree(FOLDER, true, LSMTree.DEFAULT_MEMTABLE_SIZE, 0)) {
+            legacyTree.put(StorageKeys.fromBytes(hashAlg.hashBytes("key")), new Pair<>("key", "value"));
+            legacyTree.put("", new Pair<>("", ""));
+        }
+
+        try (LSMPersistentStorage storage = new LSMPersistentStorage(FOLDER, false, LSMTree.DEFAULT_MEMTABLE_SIZE, 0,
+                hashAlg)) {
+            assertThat(storage.get("key")).extracting(KVMessage::getValue).isEqualTo("value");
+        }
+
+        try (LSMTree converted = new LSMTree(FOLDER, false, LSMTree.DEFAULT_MEMTABLE_SIZE, 0)) {
+            assertThat(converted.getFormatFlags()).isNotZero();
+            assertThat(converted.getRange("", StorageKeys.highest(128))).extracting(value -> value.key)
+                    .containsExactly("key");
+        }
+    }
+
+}
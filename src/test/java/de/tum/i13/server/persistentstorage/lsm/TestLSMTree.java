@@ -0,0 +1,175 @@
+package de.tum.i13.server.persistentstorage.lsm;
+
+import de.tum.i13.server.persistentstorage.btree.chunk.Pair;
+import de.tum.i13.server.persistentstorage.btree.io.StorageException;
+import de.tum.i13.server.persistentstorage.btree.io.StorageUtils;
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.config.Configurator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TestLSMTree {
+
+    private static final Path FOLDER = Paths.get("database_lsm");
+    private static final long SMALL_MEMTABLE = 2048;
+
+    private LSMTree tree;
+
+    @BeforeAll
+    public static void setLogLevel() {
+        Configurator.setRootLevel(Level.INFO);
+    }
+
+    @BeforeEach
+    public void createTree() throws StorageException {
+        tree = new LSMTree(FOLDER, true, SMALL_MEMTABLE, 0);
+    }
+
+    @AfterEach
+    public void deleteTree() throws IOException, StorageException {
+        tree.close();
+        StorageUtils.deleteFile(FOLDER);
+    }
+
+    private static String key(int i) {
+        return String.format("key%05d", i);
+    }
+
+    private static Pair<String> value(int i) {
+        return new Pair<>("original" + i, "value" + i);
+    }
+
+    private void reopen() throws IOException, StorageException {
+        tree.close();
+        tree = new LSMTree(FOLDER, false, SMALL_MEMTABLE, 0);
+    }
+
+    @Test
+    public void putsGetsAndDeletes() throws StorageException {
+        assertThat(tree.put(key(1), value(1))).isNull();
+        assertThat(tree.get(key(1))).isEqualTo(value(1));
+
+        assertThat(tree.put(key(1), value(2))).isEqualTo(value(1));
+        assertThat(tree.get(key(1))).isEqualTo(value(2));
+
+        assertThat(tree.put(key(1), null)).isEqualTo(value(2));
+        assertThat(tree.get(key(1))).isNull();
+        assertThat(tree.put(key(1), null)).isNull();
+        assertThat(tree.get(key(2))).isNull();
+    }
+
+    @Test
+    public void flushesAndCompactsTables() throws StorageException {
+        for (int i = 0; i < 2000; i++) {
+            tree.put(key(i), value(i));
+        }
+        for (int i = 0; i < 2000; i += 2) {
+            tree.put(key(i), null);
+        }
+        tree.flush();
+
+        List<Integer> tableCounts = tree.getTableCounts();
+        assertThat(tableCounts.get(0)).isLessThan(LSMTree.L0_COMPACTION_TRIGGER);
+        assertThat(tableCounts.get(1)).isPositive();
+
+        for (int i = 0; i < 2000; i++) {
+            assertThat(tree.get(key(i))).isEqualTo(i % 2 == 0 ? null : value(i));
+        }
+    }
+
+    @Test
+    public void recoversWritesFromLogAndTables() throws IOException, StorageException {
+        for (int i = 0; i < 500; i++) {
+            tree.put(key(i), value(i));
+        }
+        tree.put(key(7), null);
+        tree.put(key(8), value(80));
+
+        reopen();
+
+        for (int i = 0; i < 500; i++) {
+            Pair<String> expected = i == 7 ? null : (i == 8 ? value(80) : value(i));
+            assertThat(tree.get(key(i))).isEqualTo(expected);
+        }
+        assertThat(tree.getTableCounts().stream().mapToInt(Integer::intValue).sum()).isPositive();
+    }
+
+    @Test
+    public void getsRangesAcrossMemTableAndTables() throws StorageException {
+        for (int i = 0; i < 1000; i++) {
+            tree.put(key(i), value(i));
+        }
+        tree.flush();
+        for (int i = 100; i < 200; i++) {
+            tree.put(key(i), i % 3 == 0 ? null : value(i + 1));
+        }
+
+        List<Pair<String>> expected = new ArrayList<>();
+        for (int i = 50; i <= 250; i++) {
+            if (i >= 100 && i < 200) {
+                if (i % 3 != 0) {
+                    expected.add(value(i + 1));
+                }
+            } else {
+                expected.add(value(i));
+            }
+        }
+
+        assertThat(tree.getRange(key(50), key(250))).containsExactlyElementsOf(expected);
+
+        List<Pair<String>> iterated = new ArrayList<>();
+        Iterator<Pair<String>> iterator = tree.iterateRange(key(50), key(250), 7);
+        iterator.forEachRemaining(iterated::add);
+        assertThat(iterated).containsExactlyElementsOf(expected);
+    }
+
+    @Test
+    public void readsTablesBlockByBlock() throws IOException, StorageException {
+        Path path = FOLDER.resolve("test.sst");
+        SSTable table;
+        try (SSTable.Writer writer = new SSTable.Writer(99, path)) {
+            for (int i = 0; i < 100; i++) {
+                writer.add(new Entry(key(i * 2), i % 10 == 0 ? null : value(i)));
+            }
+            table = writer.finish();
+        }
+
+        try (table) {
+            assertThat(table.getEntryCount()).isEqualTo(100);
+            assertThat(table.getFirstKey()).isEqualTo(key(0));
+            assertThat(table.getLastKey()).isEqualTo(key(198));
+            assertThat(table.get(key(42))).extracting(entry -> entry.value).isEqualTo(value(21));
+            assertThat(table.get(key(40)).isTombstone()).isTrue();
+            assertThat(table.get(key(41))).isNull();
+            assertThat(table.get(key(199))).isNull();
+
+            List<String> keys = new ArrayList<>();
+            table.iterator(key(61), true).forEachRemaining(entry -> keys.add(entry.key));
+            assertThat(keys).containsExactlyElementsOf(
+                    IntStream.range(31, 100).mapToObj(i -> key(i * 2)).collect(Collectors.toList()));
+        }
+    }
+
+    @Test
+    public void rejectsOperationsAfterClose() throws IOException {
+        tree.close();
+
+        assertThatThrownBy(() -> tree.get(key(1))).isInstanceOf(StorageException.class);
+        assertThatThrownBy(() -> tree.put(key(1), value(1))).isInstanceOf(StorageException.class);
+    }
+
+}
@@ -0,0 +1,40 @@
+package de.tum.i13.shared.persistentstorage;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CloseableIteratorTest {
+
+    @Test
+    void concatenatesIteratorsAndClosesBoth() {
+        AtomicInteger closed = new AtomicInteger();
+        List<Integer> iterated = new ArrayList<>();
+
+        try (CloseableIterator<Integer> iterator = CloseableIterator.concat(
+                CloseableIterator.of(List.of(1, 2).iterator(), closed::incrementAndGet),
+                CloseableIterator.of(List.of(3).iterator(), closed::incrementAndGet))) {
+            iterator.forEachRemaining(iterated::add);
+        }
+
+        assertThat(iterated).containsExactly(1, 2, 3);
+        assertThat(closed).hasValue(2);
+    }
+
+    @Test
+    void closesAbandonedIterators() {
+        AtomicInteger closed = new AtomicInteger();
+
+        try (CloseableIterator<Integer> iterator = CloseableIterator.of(List.of(1, 2).iterator(),
+                closed::incrementAndGet)) {
+            assertThat(iterator.next()).isEqualTo(1);
+        }
+
+        assertThat(closed).hasValue(1);
+    }
+
+}